@@ -0,0 +1,282 @@
+/*
+ * Copyright (c) 2014- MHISoft LLC and/or its affiliates. All rights reserved.
+ * Licensed to MHISoft LLC under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. MHISoft LLC licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.mhisoft.fc;
+
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Description: a bounded pool of the copy and hash buffers.
+ *
+ * Each worker thread keeps the last buffer of each size it released, so the same
+ * worker keeps reusing the same memory. The rest go to a shared free list. The virtual
+ * threads live for one file only, they use the shared free list alone. The
+ * direct buffers are not allocated and dropped per file any more, they used to be
+ * reclaimed only by the GC and the cleaner which spikes the native memory on long runs.
+ *
+ * @author Tony Xue
+ * @since Oct, 2026
+ */
+public class BufferPool {
+
+	static final long DEFAULT_MAX_POOLED_BYTES = Long.getLong("bufferPoolMaxBytes", 128L * 1024 * 1024);
+	//larger than this is not worth holding on to.
+	public static final int MAX_POOLED_BUFFER_SIZE = 16 * 1024 * 1024;
+
+	public static BufferPool instance = new BufferPool(DEFAULT_MAX_POOLED_BYTES);
+
+	private final long maxPooledBytes;
+
+	//key: size for the direct buffers, -size for the heap buffers.
+	private final Map<Integer, ConcurrentLinkedDeque<ByteBuffer>> sharedFreeLists = new ConcurrentHashMap<>();
+	private final Set<ThreadCache> threadCaches = ConcurrentHashMap.newKeySet();
+	private final ThreadLocal<ThreadCache> threadCache = new ThreadLocal<ThreadCache>() {
+		@Override
+		protected ThreadCache initialValue() {
+			ThreadCache cache = new ThreadCache();
+			threadCaches.add(cache);
+			return cache;
+		}
+	};
+
+	private final AtomicLong hits = new AtomicLong(0);
+	private final AtomicLong misses = new AtomicLong(0);
+	private final AtomicLong bytesHeld = new AtomicLong(0);
+	private final AtomicLong peakBytesHeld = new AtomicLong(0);
+	private final AtomicLong bytesAllocated = new AtomicLong(0);
+
+
+	static class ThreadCache {
+		private final Map<Integer, ByteBuffer> slots = new HashMap<>();
+		private final WeakReference<Thread> owner = new WeakReference<>(Thread.currentThread());
+
+		boolean isOwnerAlive() {
+			Thread t = owner.get();
+			return t != null && t.isAlive();
+		}
+
+		synchronized ByteBuffer take(Integer key) {
+			return slots.remove(key);
+		}
+
+		synchronized boolean offer(Integer key, ByteBuffer buffer) {
+			if (slots.containsKey(key))
+				return false;
+			slots.put(key, buffer);
+			return true;
+		}
+
+		/**
+		 * Take all the buffers out, the keys are in the map.
+		 */
+		synchronized Map<Integer, ByteBuffer> drain() {
+			Map<Integer, ByteBuffer> buffers = new HashMap<>(slots);
+			slots.clear();
+			return buffers;
+		}
+
+		synchronized long clear() {
+			long bytes = 0;
+			for (ByteBuffer buffer : slots.values()) {
+				bytes += buffer.capacity();
+			}
+			slots.clear();
+			return bytes;
+		}
+	}
+
+
+	public BufferPool(long maxPooledBytes) {
+		this.maxPooledBytes = maxPooledBytes;
+	}
+
+
+	/**
+	 * Get a cleared direct buffer with the capacity of size.
+	 */
+	public ByteBuffer acquire(final int size) {
+		return acquire(size, true);
+	}
+
+	/**
+	 * Get a cleared heap buffer with the capacity of size, for the stream based IO.
+	 * Use array() to get the backing byte array.
+	 */
+	public ByteBuffer acquireHeap(final int size) {
+		return acquire(size, false);
+	}
+
+
+	private ByteBuffer acquire(final int size, final boolean direct) {
+		Integer key = direct ? size : -size;
+
+		ThreadCache cache = localCache();
+		ByteBuffer buffer = cache == null ? null : cache.take(key);
+		if (buffer == null)
+			buffer = pollShared(key);
+		//the workers retired since, their buffers would be held to the end of the run.
+		if (buffer == null && pruneDeadCaches())
+			buffer = pollShared(key);
+
+		if (buffer != null) {
+			hits.incrementAndGet();
+			bytesHeld.addAndGet(-buffer.capacity());
+			buffer.clear();
+			return buffer;
+		}
+
+		misses.incrementAndGet();
+		bytesAllocated.addAndGet(size);
+		return direct ? ByteBuffer.allocateDirect(size) : ByteBuffer.allocate(size);
+	}
+
+
+	/**
+	 * Return the buffer to the pool. It is dropped when the pool is full.
+	 *
+	 * @param buffer the buffer, can be null
+	 */
+	public void release(final ByteBuffer buffer) {
+		if (buffer == null || buffer.capacity() > MAX_POOLED_BUFFER_SIZE)
+			return;
+
+		int capacity = buffer.capacity();
+		if (bytesHeld.addAndGet(capacity) > maxPooledBytes) {
+			//full, let the GC have it.
+			bytesHeld.addAndGet(-capacity);
+			return;
+		}
+		updatePeak();
+
+		Integer key = buffer.isDirect() ? capacity : -capacity;
+		ThreadCache cache = localCache();
+		if (cache == null || !cache.offer(key, buffer))
+			offerShared(key, buffer);
+	}
+
+	/**
+	 * @return the cache of the current thread, null for a virtual thread.
+	 */
+	private ThreadCache localCache() {
+		return VirtualThreadExecutorService.isVirtual(Thread.currentThread()) ? null : threadCache.get();
+	}
+
+	private ByteBuffer pollShared(final Integer key) {
+		ConcurrentLinkedDeque<ByteBuffer> freeList = sharedFreeLists.get(key);
+		return freeList == null ? null : freeList.pollFirst();
+	}
+
+	private void offerShared(final Integer key, final ByteBuffer buffer) {
+		ConcurrentLinkedDeque<ByteBuffer> freeList = sharedFreeLists.get(key);
+		if (freeList == null) {
+			sharedFreeLists.putIfAbsent(key, new ConcurrentLinkedDeque<ByteBuffer>());
+			freeList = sharedFreeLists.get(key);
+		}
+		//LIFO, the most recently used one is the most likely still in the cache.
+		freeList.offerFirst(buffer);
+	}
+
+	/**
+	 * Move the buffers of the threads gone to the shared free lists and forget their caches.
+	 *
+	 * @return true when any buffer was moved.
+	 */
+	private boolean pruneDeadCaches() {
+		boolean moved = false;
+		for (ThreadCache cache : threadCaches) {
+			if (cache.isOwnerAlive() || !threadCaches.remove(cache))
+				continue;
+			for (Map.Entry<Integer, ByteBuffer> entry : cache.drain().entrySet()) {
+				offerShared(entry.getKey(), entry.getValue());
+				moved = true;
+			}
+		}
+		return moved;
+	}
+
+	int getThreadCacheCount() {
+		return threadCaches.size();
+	}
+
+	private void updatePeak() {
+		long held = bytesHeld.get();
+		long peak;
+		while (held > (peak = peakBytesHeld.get())) {
+			if (peakBytesHeld.compareAndSet(peak, held))
+				break;
+		}
+	}
+
+
+	/**
+	 * Drop all the pooled buffers, called when the run is done and the workers are gone.
+	 */
+	public void clear() {
+		for (ThreadCache cache : threadCaches) {
+			bytesHeld.addAndGet(-cache.clear());
+			if (!cache.isOwnerAlive())
+				threadCaches.remove(cache);
+		}
+		for (ConcurrentLinkedDeque<ByteBuffer> freeList : sharedFreeLists.values()) {
+			ByteBuffer buffer;
+			while ((buffer = freeList.pollFirst()) != null) {
+				bytesHeld.addAndGet(-buffer.capacity());
+			}
+		}
+	}
+
+	public void resetStats() {
+		hits.set(0);
+		misses.set(0);
+		bytesAllocated.set(0);
+		peakBytesHeld.set(bytesHeld.get());
+	}
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	public long getBytesHeld() {
+		return bytesHeld.get();
+	}
+
+	public long getPeakBytesHeld() {
+		return peakBytesHeld.get();
+	}
+
+	public String printStats() {
+		return String.format("Buffer pool: hits:%s, misses:%s, allocated:%s Kb, held:%s Kb (peak %s Kb)"
+				, FileUtils.dfLong.format(hits.get())
+				, FileUtils.dfLong.format(misses.get())
+				, FileUtils.dfLong.format(bytesAllocated.get() / 1024)
+				, FileUtils.dfLong.format(bytesHeld.get() / 1024)
+				, FileUtils.dfLong.format(peakBytesHeld.get() / 1024));
+	}
+}
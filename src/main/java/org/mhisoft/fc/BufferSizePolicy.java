@@ -0,0 +1,208 @@
+/*
+ * Copyright (c) 2014- MHISoft LLC and/or its affiliates. All rights reserved.
+ * Licensed to MHISoft LLC under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. MHISoft LLC licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.mhisoft.fc;
+
+import java.io.File;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Description: pick the copy buffer size by the file size, the per root overrides
+ * and what the calibration measured on the first large files copied through a buffer.
+ * The transferTo and the mmap copies have no buffer to size, they are not timed.
+ *
+ * Small buffers on the multi GB files cost too many syscalls, large buffers on the
+ * mid-size files waste direct memory.
+ *
+ * @author Tony Xue
+ * @since Oct, 2026
+ */
+public class BufferSizePolicy {
+
+	static final int KB = 1024;
+	static final int MB = 1024 * 1024;
+
+	public static final int DEFAULT_BUFFER_SIZE = 64 * KB;
+
+	//files at or above this size are probed by the calibration and use the calibrated size.
+	static final long CALIBRATION_MIN_FILE_SIZE = 64L * MB;
+	static final int[] CALIBRATION_CANDIDATES = {1 * MB, 2 * MB, 4 * MB, 8 * MB};
+
+	public static BufferSizePolicy instance = new BufferSizePolicy();
+
+	//buffer size --> best observed bytes/ms
+	private final Map<Integer, Double> calibrationSamples = new ConcurrentHashMap<>();
+	private final AtomicInteger nextCandidate = new AtomicInteger(0);
+	private volatile int calibratedSize = 0;
+
+
+	public void reset() {
+		calibrationSamples.clear();
+		nextCandidate.set(0);
+		calibratedSize = 0;
+	}
+
+
+	/**
+	 * The default buffer size by the file size.
+	 */
+	static int getDefaultBufferSize(final long fileSize) {
+		if (fileSize < 16L * MB)
+			return DEFAULT_BUFFER_SIZE;
+		else if (fileSize < 256L * MB)
+			return 256 * KB;
+		else if (fileSize < 1024L * MB)
+			return 1 * MB;
+		else if (fileSize < 4096L * MB)
+			return 4 * MB;
+		else
+			return 8 * MB;
+	}
+
+
+	/**
+	 * Get the buffer size to copy the file with, the calibrated size once there is one.
+	 * Does not take part in the calibration, ex. the chunks of a file copied at once.
+	 *
+	 * @param source   the source file
+	 * @param target   the target file, can be null when only reading
+	 * @param fileSize the file size in bytes
+	 * @return buffer size in bytes
+	 */
+	public int getBufferSize(final File source, final File target, final long fileSize) {
+
+		Integer override = findOverride(source, target);
+		if (override != null)
+			return override;
+
+		if (fileSize >= CALIBRATION_MIN_FILE_SIZE && calibratedSize > 0)
+			return calibratedSize;
+
+		return getDefaultBufferSize(fileSize);
+	}
+
+
+	/**
+	 * Get the buffer size for the buffered copy, the only one the calibration can time.
+	 * Until the calibration is done the large files get the candidates in turn, a candidate
+	 * lost to a failed copy comes around again. Report the copy back with recordCopy().
+	 */
+	public int getBufferSizeToCalibrate(final File source, final File target, final long fileSize) {
+
+		Integer override = findOverride(source, target);
+		if (override != null)
+			return override;
+
+		if (fileSize >= CALIBRATION_MIN_FILE_SIZE && RunTimeProperties.instance.isBufferCalibration()) {
+			if (calibratedSize > 0)
+				return calibratedSize;
+			int k = nextCandidate.getAndIncrement() & Integer.MAX_VALUE;
+			return CALIBRATION_CANDIDATES[k % CALIBRATION_CANDIDATES.length];
+		}
+
+		return getDefaultBufferSize(fileSize);
+	}
+
+
+	/**
+	 * Buffer size for only reading the file, e.g. hashing. Does not take part in the calibration.
+	 */
+	public int getReadBufferSize(final File source, final long fileSize) {
+		Integer override = findOverride(source, null);
+		if (override != null)
+			return override;
+		if (fileSize >= CALIBRATION_MIN_FILE_SIZE && calibratedSize > 0)
+			return calibratedSize;
+		return getDefaultBufferSize(fileSize);
+	}
+
+
+	/**
+	 * The longest matching root of the source or target wins.
+	 */
+	Integer findOverride(final File source, final File target) {
+		Map<String, Integer> overrides = RunTimeProperties.instance.getBufferSizeOverrides();
+		if (overrides.isEmpty())
+			return null;
+
+		String sourcePath = source == null ? null : source.getAbsolutePath();
+		String targetPath = target == null ? null : target.getAbsolutePath();
+		String bestRoot = null;
+		Integer ret = null;
+		for (Map.Entry<String, Integer> entry : overrides.entrySet()) {
+			String root = entry.getKey();
+			if ((sourcePath != null && sourcePath.startsWith(root)) || (targetPath != null && targetPath.startsWith(root))) {
+				if (bestRoot == null || root.length() > bestRoot.length()) {
+					bestRoot = root;
+					ret = entry.getValue();
+				}
+			}
+		}
+		return ret;
+	}
+
+
+	/**
+	 * Feed the throughput of a finished buffered copy back to the calibration.
+	 * A copy with the size of an override is not a sample, even when it is a candidate size.
+	 *
+	 * @param bufferSize the buffer size used
+	 * @param fileSize   bytes copied
+	 * @param took       time in ms
+	 */
+	public void recordCopy(final File source, final File target, final int bufferSize, final long fileSize, final long took) {
+		if (calibratedSize > 0 || fileSize < CALIBRATION_MIN_FILE_SIZE || !isCandidate(bufferSize)
+				|| findOverride(source, target) != null)
+			return;
+
+		double throughput = (double) fileSize / Math.max(1, took);
+		Double best = calibrationSamples.get(bufferSize);
+		if (best == null || throughput > best)
+			calibrationSamples.put(bufferSize, throughput);
+
+		if (calibrationSamples.size() == CALIBRATION_CANDIDATES.length) {
+			int bestSize = CALIBRATION_CANDIDATES[0];
+			for (Map.Entry<Integer, Double> entry : calibrationSamples.entrySet()) {
+				if (entry.getValue() > calibrationSamples.get(bestSize))
+					bestSize = entry.getKey();
+			}
+			calibratedSize = bestSize;
+		}
+	}
+
+	private boolean isCandidate(int bufferSize) {
+		for (int candidate : CALIBRATION_CANDIDATES) {
+			if (candidate == bufferSize)
+				return true;
+		}
+		return false;
+	}
+
+	public int getCalibratedSize() {
+		return calibratedSize;
+	}
+
+	public String printSummary() {
+		if (calibratedSize > 0)
+			return "Calibrated large file buffer size:" + (calibratedSize / KB) + "K";
+		return "Buffer size calibration not completed, samples:" + calibrationSamples.size();
+	}
+}
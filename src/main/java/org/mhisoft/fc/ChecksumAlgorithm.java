@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2014- MHISoft LLC and/or its affiliates. All rights reserved.
+ * Licensed to MHISoft LLC under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. MHISoft LLC licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.mhisoft.fc;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import org.mhisoft.fc.utils.StrUtils;
+
+/**
+ * Description: the content hash algorithm used by -verify.
+ * The zip entry comment records the algorithm with the hash as "ALG:hex", a comment
+ * without the prefix is an MD5 hash.
+ *
+ * @author Tony Xue
+ * @since Oct, 2026
+ */
+public enum ChecksumAlgorithm {
+
+	/**
+	 * cryptographic, a few hundred MB/s per core.
+	 */
+	md5,
+
+	/**
+	 * java.util.zip.CRC32C, hardware accelerated. JDK 9+ only.
+	 */
+	crc32c,
+
+	/**
+	 * pure java xxHash64, several GB/s per core.
+	 */
+	xxhash64;
+
+
+	public MessageDigest newDigest() throws NoSuchAlgorithmException {
+		switch (this) {
+			case crc32c:
+				return Crc32cDigest.newInstance();
+			case xxhash64:
+				return new XxHash64Digest();
+			default:
+				return MessageDigest.getInstance("MD5");
+		}
+	}
+
+	public boolean isAvailable() {
+		return this != crc32c || Crc32cDigest.isAvailable();
+	}
+
+	/**
+	 * @return the zip entry comment for the hash. MD5 is not prefixed to stay readable by the older versions.
+	 */
+	public String toComment(final byte[] hash) {
+		String hex = StrUtils.toHexString(hash);
+		return this == md5 ? hex : name().toUpperCase() + ":" + hex;
+	}
+
+
+	/**
+	 * @return the algorithm recorded in the zip entry comment, md5 when there is no prefix.
+	 */
+	public static ChecksumAlgorithm fromComment(final String comment) {
+		int k = comment == null ? -1 : comment.indexOf(':');
+		return k < 0 ? md5 : fromString(comment.substring(0, k));
+	}
+
+	/**
+	 * @return the hash recorded in the zip entry comment.
+	 */
+	public static byte[] hashFromComment(final String comment) {
+		if (comment == null)
+			return null;
+		return StrUtils.toByteArray(comment.substring(comment.indexOf(':') + 1));
+	}
+
+
+	public static ChecksumAlgorithm fromString(String s) {
+		for (ChecksumAlgorithm algorithm : values()) {
+			if (algorithm.name().equalsIgnoreCase(s))
+				return algorithm;
+		}
+		throw new IllegalArgumentException("Unknown checksum algorithm:" + s);
+	}
+}
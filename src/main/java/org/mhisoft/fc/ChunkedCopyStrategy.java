@@ -0,0 +1,261 @@
+/*
+ * Copyright (c) 2014- MHISoft LLC and/or its affiliates. All rights reserved.
+ * Licensed to MHISoft LLC under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. MHISoft LLC licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.mhisoft.fc;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.mhisoft.fc.ui.UI;
+
+/**
+ * Description: copy one huge file with several workers at once.
+ * The file is split into chunkSize byte ranges, copied with the positional FileChannel reads
+ * and writes. The worker copying the file offers helper tasks to the idle copy workers and
+ * takes the chunks itself too, so it never waits for a chunk nobody has picked up. The helpers
+ * that start after all the chunks are taken just return.
+ *
+ * @author Tony Xue
+ * @since Oct, 2026
+ */
+public class ChunkedCopyStrategy implements FileCopyStrategy {
+
+	static final long CHUNK_SIZE = 64L * 1024 * 1024;
+
+	public static final ChunkedCopyStrategy instance = new ChunkedCopyStrategy(CHUNK_SIZE);
+
+	private final long chunkSize;
+
+	//the copy workers to share the chunks with, set for the run.
+	private volatile MultiThreadExecutorService workersPool;
+
+	ChunkedCopyStrategy(final long chunkSize) {
+		this.chunkSize = chunkSize;
+	}
+
+	public void setWorkersPool(MultiThreadExecutorService workersPool) {
+		this.workersPool = workersPool;
+	}
+
+	/**
+	 * @return true when the file is large enough to split and there are other workers to share it with.
+	 */
+	public boolean accepts(final File source, final File target, final long fileSize) {
+		MultiThreadExecutorService pool = workersPool;
+		return pool != null && fileSize >= RunTimeProperties.instance.getChunkedCopyThreshold()
+				&& pool.getCorePoolSize(source, target) > 1;
+	}
+
+
+	@Override
+	public FileUtils.CopyFileResultVO copy(final File source, final File target, FileCopyStatistics statistics, final UI rdProUI)
+			throws IOException, NoSuchAlgorithmException {
+
+		FileUtils.CopyFileResultVO vo = new FileUtils.CopyFileResultVO();
+		long startTime = System.currentTimeMillis();
+		rdProUI.showProgress(0, statistics);
+
+		ChunkedCopy job = new ChunkedCopy(source, target, statistics, rdProUI);
+		try {
+			MultiThreadExecutorService pool = workersPool;
+			int helpers = pool == null ? 0 : Math.min(job.chunks - job.firstChunk - 1, pool.getCorePoolSize(source, target) - 1);
+			for (int i = 0; i < helpers; i++) {
+				if (!pool.offerTask(job))
+					break;
+			}
+			job.run();
+			job.await();
+
+			if (job.failure != null)
+				throw job.failure instanceof IOException ? (IOException) job.failure : new IOException(job.failure);
+
+			if (RunTimeProperties.instance.isStopThreads()) {
+				rdProUI.println("[warn]Cancelled by user. Stoping copying.", true);
+				ResumeJournal.instance.interrupted(target, job.size, job.sourceLastModified, job.outChannel, job.getDonePrefix(), rdProUI);
+				vo.interrupted = true;
+				return vo;
+			}
+		} finally {
+			FileUtils.close(job.inChannel);
+			FileUtils.close(job.outChannel);
+		}
+
+		//the chunks were not read in order, the source has to be read for its digest.
+		if (RunTimeProperties.instance.isVerifyAfterCopy()) {
+			vo.verified = TargetVerifier.instance.verify(source, target, null, null, rdProUI);
+		}
+
+		long endTime = System.currentTimeMillis();
+		statistics.addToTotalFileSizeAndTime(job.size, (endTime - startTime));
+		statistics.incrementFileCount();
+		rdProUI.showProgress(100, statistics);
+
+		vo.took = (endTime - startTime);
+		return vo;
+	}
+
+
+	/**
+	 * One file being copied, run by the worker owning the file and by the helpers.
+	 */
+	class ChunkedCopy implements Runnable, ScheduledTask {
+		final File source;
+		final File target;
+		final FileCopyStatistics statistics;
+		final UI rdProUI;
+		final FileChannel inChannel;
+		final FileChannel outChannel;
+		final long size;
+		final long sourceLastModified;
+		final int chunks;
+		final int firstChunk;
+		final int bufferSize;
+
+		final AtomicInteger nextChunk;
+		final CountDownLatch chunksDone;
+		final AtomicLong copied;
+		final boolean[] done;
+		int donePrefixChunks;
+		long lastCheckpoint;
+		volatile Throwable failure;
+
+		ChunkedCopy(final File source, final File target, final FileCopyStatistics statistics, final UI rdProUI) throws IOException {
+			this.source = source;
+			this.target = target;
+			this.statistics = statistics;
+			this.rdProUI = rdProUI;
+			inChannel = FileChannel.open(source.toPath(), StandardOpenOption.READ);
+			FileChannel out = null;
+			try {
+				size = inChannel.size();
+				chunks = (int) ((size + chunkSize - 1) / chunkSize);
+				sourceLastModified = ResumeJournal.instance.isEnabled() ? source.lastModified() : 0;
+				//-resume: continue after the whole chunks already in the target.
+				firstChunk = (int) (ResumeJournal.instance.getResumeOffset(source, target, size) / chunkSize);
+				out = FileChannel.open(target.toPath(), StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+				out.truncate(firstChunk * chunkSize);
+			} catch (IOException e) {
+				FileUtils.close(inChannel);
+				throw e;
+			}
+			outChannel = out;
+			bufferSize = BufferSizePolicy.instance.getBufferSize(source, target, size);
+
+			nextChunk = new AtomicInteger(firstChunk);
+			chunksDone = new CountDownLatch(chunks - firstChunk);
+			copied = new AtomicLong(firstChunk * chunkSize);
+			done = new boolean[chunks];
+			for (int i = 0; i < firstChunk; i++)
+				done[i] = true;
+			donePrefixChunks = firstChunk;
+			lastCheckpoint = firstChunk * chunkSize;
+		}
+
+		//the helpers go to the lane of the file.
+		@Override
+		public long getScheduleSize() {
+			return -1;
+		}
+
+		@Override
+		public File getScheduleSource() {
+			return source;
+		}
+
+		@Override
+		public File getScheduleTarget() {
+			return target;
+		}
+
+		@Override
+		public void run() {
+			int i;
+			while ((i = nextChunk.getAndIncrement()) < chunks) {
+				try {
+					if (failure == null && !RunTimeProperties.instance.isStopThreads())
+						copyChunk(i);
+				} catch (Throwable e) {
+					failure = e;
+				} finally {
+					chunksDone.countDown();
+				}
+			}
+		}
+
+		void await() {
+			try {
+				chunksDone.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				failure = e;
+			}
+		}
+
+		private void copyChunk(final int i) throws IOException {
+			long position = i * chunkSize;
+			long end = Math.min(position + chunkSize, size);
+			ByteBuffer buffer = BufferPool.instance.acquire(bufferSize);
+			try {
+				while (position < end) {
+					if (RunTimeProperties.instance.isStopThreads())
+						return;
+					buffer.clear();
+					if (buffer.capacity() > end - position)
+						buffer.limit((int) (end - position));
+					int n = inChannel.read(buffer, position);
+					if (n < 0)
+						throw new IOException("The source shrank at position " + position + " while copying " + source.getAbsolutePath());
+					buffer.flip();
+					while (buffer.hasRemaining()) {
+						position += outChannel.write(buffer, position);
+					}
+					rdProUI.showProgress((int) (copied.addAndGet(n) * 100 / size), statistics);
+				}
+			} finally {
+				BufferPool.instance.release(buffer);
+			}
+			chunkDone(i);
+		}
+
+		/**
+		 * Advance the prefix of the chunks done, checkpoint it for -resume.
+		 */
+		private synchronized void chunkDone(final int i) throws IOException {
+			done[i] = true;
+			while (donePrefixChunks < chunks && done[donePrefixChunks])
+				donePrefixChunks++;
+			long prefix = getDonePrefix();
+			if (prefix - lastCheckpoint >= ResumeJournal.CHECKPOINT_BYTES && prefix < size) {
+				ResumeJournal.instance.checkpoint(target, size, sourceLastModified, outChannel, prefix);
+				lastCheckpoint = prefix;
+			}
+		}
+
+		synchronized long getDonePrefix() {
+			return Math.min(donePrefixChunks * chunkSize, size);
+		}
+	}
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2014- MHISoft LLC and/or its affiliates. All rights reserved.
+ * Licensed to MHISoft LLC under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. MHISoft LLC licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.mhisoft.fc;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Description: counts the tasks of a worker pool not finished yet and wakes the waiter the moment the last one is done.
+ * A tracker may depend on the trackers of the pools feeding it tasks (the packagers feed the copiers),
+ * it is idle only when they are idle too, so waiting on it covers the tasks they are still going to add.
+ *
+ * @author Tony Xue
+ * @since Oct, 2026
+ */
+public class CompletionTracker {
+
+	private final Object lock = new Object();
+	private int pending;
+	private volatile boolean cancelled;
+	private final List<CompletionTracker> upstreams = new CopyOnWriteArrayList<>();
+	private final List<CompletionTracker> downstreams = new CopyOnWriteArrayList<>();
+
+
+	/**
+	 * This tracker is not idle while the upstream is busy.
+	 */
+	public void dependsOn(final CompletionTracker upstream) {
+		if (upstream == this)
+			throw new IllegalArgumentException("a tracker can not depend on itself");
+		upstreams.add(upstream);
+		upstream.downstreams.add(this);
+		wake();
+	}
+
+	/**
+	 * A task is added.
+	 */
+	public void register() {
+		synchronized (lock) {
+			pending++;
+		}
+	}
+
+	/**
+	 * A task is done.
+	 */
+	public void arrive() {
+		boolean idle;
+		synchronized (lock) {
+			if (pending > 0)
+				pending--;
+			idle = pending == 0;
+		}
+		if (idle)
+			wake();
+	}
+
+	public int getPending() {
+		synchronized (lock) {
+			return pending;
+		}
+	}
+
+	/**
+	 * Gives up on the tasks not done, the waiters return.
+	 */
+	public void cancel() {
+		cancelled = true;
+		wake();
+	}
+
+	public boolean isIdle() {
+		if (cancelled)
+			return true;
+		synchronized (lock) {
+			if (pending > 0)
+				return false;
+		}
+		for (CompletionTracker upstream : upstreams) {
+			if (!upstream.isIdle())
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Blocks until this tracker and the ones it depends on are idle or cancelled.
+	 */
+	public void awaitIdle() throws InterruptedException {
+		synchronized (lock) {
+			//the upstreams wake this one after they are idle, they take this lock to do so.
+			while (!isIdle())
+				lock.wait();
+		}
+	}
+
+	private void wake() {
+		synchronized (lock) {
+			lock.notifyAll();
+		}
+		for (CompletionTracker downstream : downstreams)
+			downstream.wake();
+	}
+}
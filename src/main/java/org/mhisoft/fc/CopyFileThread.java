@@ -20,6 +20,7 @@
 package org.mhisoft.fc;
 
 import java.io.File;
+import java.nio.file.attribute.BasicFileAttributes;
 
 import org.mhisoft.fc.ui.UI;
 
@@ -29,7 +30,7 @@ import org.mhisoft.fc.ui.UI;
  * @author Tony Xue
  * @since Dec 2014
  */
-public class CopyFileThread implements Runnable {
+public class CopyFileThread implements Runnable, ScheduledTask {
 
 	static final int TRIGGER_MULTI_THREAD_THRESHHOLD = 20;
 
@@ -38,6 +39,8 @@ public class CopyFileThread implements Runnable {
 
 	private File sourceFile;
 	private File targetFile;
+	//read by the walker, null when not known.
+	private BasicFileAttributes sourceAttributes;
 	private FileUtils.CompressedPackageVO compressedPackageVO;
 
 
@@ -45,13 +48,40 @@ public class CopyFileThread implements Runnable {
 			, File sourceFile, File targetFile
 			, FileUtils.CompressedPackageVO compressedPackageVO
 			, FileCopyStatistics frs) {
+		this(rdProUI, sourceFile, targetFile, null, compressedPackageVO, frs);
+	}
+
+	public CopyFileThread(UI rdProUI
+			, File sourceFile, File targetFile, BasicFileAttributes sourceAttributes
+			, FileUtils.CompressedPackageVO compressedPackageVO
+			, FileCopyStatistics frs) {
 		this.sourceFile = sourceFile;
 		this.targetFile = targetFile;
+		this.sourceAttributes = sourceAttributes;
 		this.statistics = frs;
 		this.rdProUI = rdProUI;
 		this.compressedPackageVO = compressedPackageVO;
 	}
 
+	@Override
+	public long getScheduleSize() {
+		if (sourceAttributes != null)
+			return sourceAttributes.size();
+		if (compressedPackageVO != null)
+			return compressedPackageVO.zipFileSizeBytes;
+		return -1;
+	}
+
+	@Override
+	public File getScheduleSource() {
+		return sourceFile;
+	}
+
+	@Override
+	public File getScheduleTarget() {
+		return targetFile;
+	}
+
 	@Override
 	public void run() {
 
@@ -61,7 +91,7 @@ public class CopyFileThread implements Runnable {
 				rdProUI.println(Thread.currentThread().getName() + " Starts");
 			long t1 = System.currentTimeMillis();
 
-			FileUtils.instance.copyFile(sourceFile, targetFile, statistics, rdProUI, compressedPackageVO);
+			FileUtils.instance.copyFile(sourceFile, targetFile, sourceAttributes, statistics, rdProUI, compressedPackageVO);
 
 
 			if (RunTimeProperties.instance.isDebug())
@@ -0,0 +1,58 @@
+/*
+ * Copyright (c) 2014- MHISoft LLC and/or its affiliates. All rights reserved.
+ * Licensed to MHISoft LLC under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. MHISoft LLC licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.mhisoft.fc;
+
+/**
+ * Description: the copy strategies to choose from for the large files.
+ *
+ * @author Tony Xue
+ * @since Oct, 2026
+ */
+public enum CopyStrategyType {
+
+	/**
+	 * transferTo when not verifying, buffered otherwise.
+	 */
+	auto,
+
+	/**
+	 * read into a direct buffer and write it out, digests the data in flight for -verify.
+	 */
+	buffered,
+
+	/**
+	 * chunked FileChannel.transferTo, the kernel moves the bytes (sendfile/copy_file_range on Linux).
+	 */
+	transferTo,
+
+	/**
+	 * memory mapped windows of the source and the target, the page cache copies to the page cache.
+	 */
+	mmap;
+
+
+	public static CopyStrategyType fromString(String s) {
+		for (CopyStrategyType type : values()) {
+			if (type.name().equalsIgnoreCase(s))
+				return type;
+		}
+		throw new IllegalArgumentException("Unknown copy strategy:" + s);
+	}
+}
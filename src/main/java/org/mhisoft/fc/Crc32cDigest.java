@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2014- MHISoft LLC and/or its affiliates. All rights reserved.
+ * Licensed to MHISoft LLC under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. MHISoft LLC licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.mhisoft.fc;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.zip.Checksum;
+
+/**
+ * Description: java.util.zip.CRC32C as a MessageDigest.
+ * CRC32C is JDK 9+ and the build targets 8, so it is looked up by reflection.
+ *
+ * @author Tony Xue
+ * @since Oct, 2026
+ */
+class Crc32cDigest extends MessageDigest {
+
+	private static final Constructor<?> CRC32C_CONSTRUCTOR;
+	//Checksum.update(ByteBuffer), JDK 9+ as well.
+	private static final Method UPDATE_BYTE_BUFFER;
+
+	static {
+		Constructor<?> constructor = null;
+		Method update = null;
+		try {
+			constructor = Class.forName("java.util.zip.CRC32C").getConstructor();
+			update = Checksum.class.getMethod("update", ByteBuffer.class);
+		} catch (ReflectiveOperationException e) {
+			//JDK 8
+			constructor = null;
+		}
+		CRC32C_CONSTRUCTOR = constructor;
+		UPDATE_BYTE_BUFFER = update;
+	}
+
+	private final Checksum checksum;
+
+
+	private Crc32cDigest(final Checksum checksum) {
+		super("CRC32C");
+		this.checksum = checksum;
+	}
+
+	static boolean isAvailable() {
+		return CRC32C_CONSTRUCTOR != null;
+	}
+
+	static Crc32cDigest newInstance() throws NoSuchAlgorithmException {
+		if (CRC32C_CONSTRUCTOR == null)
+			throw new NoSuchAlgorithmException("CRC32C requires Java 9 or later.");
+		try {
+			return new Crc32cDigest((Checksum) CRC32C_CONSTRUCTOR.newInstance());
+		} catch (ReflectiveOperationException e) {
+			throw new NoSuchAlgorithmException(e);
+		}
+	}
+
+
+	@Override
+	protected void engineUpdate(byte input) {
+		checksum.update(input);
+	}
+
+	@Override
+	protected void engineUpdate(byte[] input, int offset, int len) {
+		checksum.update(input, offset, len);
+	}
+
+	@Override
+	protected void engineUpdate(ByteBuffer input) {
+		//direct buffers are crc'ed in place.
+		try {
+			UPDATE_BYTE_BUFFER.invoke(checksum, input);
+		} catch (IllegalAccessException e) {
+			throw new IllegalStateException(e);
+		} catch (InvocationTargetException e) {
+			throw new IllegalStateException(e.getCause());
+		}
+	}
+
+	@Override
+	protected int engineGetDigestLength() {
+		return 4;
+	}
+
+	@Override
+	protected byte[] engineDigest() {
+		int value = (int) checksum.getValue();
+		checksum.reset();
+		return new byte[]{(byte) (value >>> 24), (byte) (value >>> 16), (byte) (value >>> 8), (byte) value};
+	}
+
+	@Override
+	protected void engineReset() {
+		checksum.reset();
+	}
+}
@@ -0,0 +1,278 @@
+/*
+ * Copyright (c) 2014- MHISoft LLC and/or its affiliates. All rights reserved.
+ * Licensed to MHISoft LLC under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. MHISoft LLC licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.mhisoft.fc;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.mhisoft.fc.ui.UI;
+
+/**
+ * Description: the copy workers in lanes, one MultiThreadExecutorService per (source device, target device) pair.
+ * Each lane has its own workers and queue, a slow USB disk only holds up its own lane.
+ * The lanes are created as the tasks for a new pair show up, sized by -w unless -laneWorkers
+ * says otherwise for the source or the target root. The paths of the base class going through
+ * getExecutor() see the lanes as one executor.
+ *
+ * @author Tony Xue
+ * @since Oct, 2026
+ */
+public class DeviceLanesExecutorService extends MultiThreadExecutorService {
+
+	private final UI rdProUI;
+	private final int defaultWorkers;
+	private final int laneHighWaterMark;
+	private final SchedulingPolicy lanePolicy;
+	//device pair --> lane
+	private final Map<String, MultiThreadExecutorService> lanes = new ConcurrentHashMap<>();
+	private volatile boolean shutDown;
+	private final LanesExecutor lanesExecutor = new LanesExecutor();
+
+
+	public DeviceLanesExecutorService(final int defaultWorkers, final int highWaterMark, final SchedulingPolicy policy
+			, final UI _rdProUI) {
+		super(defaultWorkers, highWaterMark, policy, _rdProUI);
+		this.rdProUI = _rdProUI;
+		this.defaultWorkers = defaultWorkers;
+		this.laneHighWaterMark = highWaterMark;
+		this.lanePolicy = policy;
+	}
+
+	@Override
+	protected void createExecutor(final int corePoolSize) {
+		//no executor of its own, the lanes have them.
+	}
+
+
+	/**
+	 * @return the lane for the task, created the first time its device pair shows up.
+	 */
+	MultiThreadExecutorService getLane(final Runnable task) {
+		if (task instanceof ScheduledTask)
+			return getLane(((ScheduledTask) task).getScheduleSource(), ((ScheduledTask) task).getScheduleTarget());
+		return getLane(null, null);
+	}
+
+	MultiThreadExecutorService getLane(final File source, final File target) {
+		String key = DeviceResolver.instance.getDevicePair(source, target);
+		MultiThreadExecutorService lane = lanes.get(key);
+		if (lane == null) {
+			synchronized (lanes) {
+				lane = lanes.get(key);
+				if (lane == null) {
+					int workers = getLaneWorkers(source, target);
+					lane = new MultiThreadExecutorService(workers, laneHighWaterMark, lanePolicy, rdProUI);
+					if (shutDown)
+						lane.shutDown();
+					//idle when all the lanes are, the upstreams of this pool are waited on here.
+					getTracker().dependsOn(lane.getTracker());
+					lanes.put(key, lane);
+					rdProUI.println(LogLevel.debug, "New lane " + key + ", workers:" + workers);
+				}
+			}
+		}
+		return lane;
+	}
+
+	/**
+	 * The -laneWorkers of the longest source or target root matching, -w when none does.
+	 */
+	int getLaneWorkers(final File source, final File target) {
+		Map<String, Integer> overrides = RunTimeProperties.instance.getLaneWorkers();
+		String sourcePath = source == null ? null : source.getAbsolutePath();
+		String targetPath = target == null ? null : target.getAbsolutePath();
+		String bestRoot = null;
+		int ret = defaultWorkers;
+		for (Map.Entry<String, Integer> entry : overrides.entrySet()) {
+			String root = entry.getKey();
+			if ((sourcePath != null && sourcePath.startsWith(root)) || (targetPath != null && targetPath.startsWith(root))) {
+				if (bestRoot == null || root.length() > bestRoot.length()) {
+					bestRoot = root;
+					ret = entry.getValue();
+				}
+			}
+		}
+		return ret;
+	}
+
+	private List<MultiThreadExecutorService> getLanes() {
+		return new ArrayList<>(lanes.values());
+	}
+
+
+	@Override
+	public void addTask(final Runnable task) {
+		getLane(task).addTask(task);
+	}
+
+	@Override
+	public boolean offerTask(final Runnable task) {
+		return getLane(task).offerTask(task);
+	}
+
+	@Override
+	public int getCorePoolSize(final File source, final File target) {
+		return getLane(source, target).getCorePoolSize();
+	}
+
+	@Override
+	public int getCorePoolSize() {
+		int n = 0;
+		for (MultiThreadExecutorService lane : getLanes())
+			n += lane.getCorePoolSize();
+		return n == 0 ? defaultWorkers : n;
+	}
+
+	@Override
+	public void setCoreThreadSize(final int corePoolSize) {
+		for (MultiThreadExecutorService lane : getLanes())
+			lane.setCoreThreadSize(corePoolSize);
+	}
+
+	@Override
+	public java.util.concurrent.ExecutorService getExecutor() {
+		return lanesExecutor;
+	}
+
+	@Override
+	public int getNotCompletedTaskCount() {
+		int n = 0;
+		for (MultiThreadExecutorService lane : getLanes())
+			n += lane.getNotCompletedTaskCount();
+		return n;
+	}
+
+	@Override
+	public int getQueueDepth() {
+		int n = 0;
+		for (MultiThreadExecutorService lane : getLanes())
+			n += lane.getQueueDepth();
+		return n;
+	}
+
+	@Override
+	public int getPeakQueueDepth() {
+		int n = 0;
+		for (MultiThreadExecutorService lane : getLanes())
+			n = Math.max(n, lane.getPeakQueueDepth());
+		return n;
+	}
+
+	@Override
+	public long getBlockedCount() {
+		long n = 0;
+		for (MultiThreadExecutorService lane : getLanes())
+			n += lane.getBlockedCount();
+		return n;
+	}
+
+	@Override
+	public long getBlockedMillis() {
+		long n = 0;
+		for (MultiThreadExecutorService lane : getLanes())
+			n += lane.getBlockedMillis();
+		return n;
+	}
+
+	@Override
+	public String printQueueStats() {
+		StringBuilder sb = new StringBuilder("lanes:").append(lanes.size());
+		for (Map.Entry<String, MultiThreadExecutorService> e : lanes.entrySet()) {
+			sb.append("\n\t\t").append(e.getKey()).append(" workers:").append(e.getValue().getCorePoolSize())
+					.append(", ").append(e.getValue().printQueueStats());
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Marks the lanes shut down, under the lock the new lanes are created with.
+	 *
+	 * @return the lanes there are
+	 */
+	private List<MultiThreadExecutorService> markShutDown() {
+		synchronized (lanes) {
+			shutDown = true;
+			return getLanes();
+		}
+	}
+
+
+	/**
+	 * The executors of the lanes as one, the task goes to the executor of its lane.
+	 * The shutdown of the base class, graceful or not, reaches every lane through it.
+	 */
+	private class LanesExecutor extends AbstractExecutorService {
+
+		@Override
+		public void execute(final Runnable command) {
+			if (shutDown)
+				throw new RejectedExecutionException("the lanes are shut down");
+			getLane(command).getExecutor().execute(command);
+		}
+
+		@Override
+		public void shutdown() {
+			for (MultiThreadExecutorService lane : markShutDown())
+				lane.getExecutor().shutdown();
+		}
+
+		@Override
+		public List<Runnable> shutdownNow() {
+			List<Runnable> pending = new ArrayList<>();
+			for (MultiThreadExecutorService lane : markShutDown()) {
+				lane.getTracker().cancel();
+				pending.addAll(lane.getExecutor().shutdownNow());
+			}
+			return pending;
+		}
+
+		@Override
+		public boolean isShutdown() {
+			return shutDown;
+		}
+
+		@Override
+		public boolean isTerminated() {
+			if (!shutDown)
+				return false;
+			for (MultiThreadExecutorService lane : getLanes()) {
+				if (!lane.getExecutor().isTerminated())
+					return false;
+			}
+			return true;
+		}
+
+		@Override
+		public boolean awaitTermination(final long timeout, final TimeUnit unit) throws InterruptedException {
+			long deadline = System.nanoTime() + unit.toNanos(timeout);
+			for (MultiThreadExecutorService lane : getLanes()) {
+				if (!lane.getExecutor().awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS))
+					return false;
+			}
+			return isTerminated();
+		}
+	}
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2014- MHISoft LLC and/or its affiliates. All rights reserved.
+ * Licensed to MHISoft LLC under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. MHISoft LLC licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.mhisoft.fc;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Description: tells the device (file store) a file is on.
+ * Looked up once per directory, a target not created yet takes the device of its nearest existing parent.
+ *
+ * @author Tony Xue
+ * @since Oct, 2026
+ */
+public class DeviceResolver {
+
+	public static final String UNKNOWN = "?";
+	//keep the cache from growing with the tree.
+	static final int MAX_CACHED_DIRS = 10000;
+
+	public static DeviceResolver instance = new DeviceResolver();
+
+	//dir --> device
+	private final Map<String, String> devices = new ConcurrentHashMap<>();
+
+
+	/**
+	 * @return the device name of the file, UNKNOWN when it can not be told.
+	 */
+	public String getDevice(final File file) {
+		if (file == null)
+			return UNKNOWN;
+		File dir = file.getParentFile();
+		if (dir == null)
+			dir = file;
+		String key = dir.getAbsolutePath();
+		String device = devices.get(key);
+		if (device != null)
+			return device;
+
+		device = UNKNOWN;
+		for (File f = dir.getAbsoluteFile(); f != null; f = f.getParentFile()) {
+			try {
+				FileStore store = Files.getFileStore(f.toPath());
+				device = store.toString();
+				break;
+			} catch (IOException e) {
+				//not there yet, try the parent.
+			}
+		}
+		if (devices.size() >= MAX_CACHED_DIRS)
+			devices.clear();
+		devices.put(key, device);
+		return device;
+	}
+
+	/**
+	 * @return the source and target devices of the task.
+	 */
+	public String getDevicePair(final ScheduledTask task) {
+		return getDevicePair(task.getScheduleSource(), task.getScheduleTarget());
+	}
+
+	public String getDevicePair(final File source, final File target) {
+		return getDevice(source) + "->" + getDevice(target);
+	}
+
+	public void reset() {
+		devices.clear();
+	}
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 2014- MHISoft LLC and/or its affiliates. All rights reserved.
+ * Licensed to MHISoft LLC under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. MHISoft LLC licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.mhisoft.fc;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+
+import org.mhisoft.fc.ui.UI;
+
+/**
+ * Description: list a directory with the attributes of each entry read once, so the walker
+ * does not stat the same file over and over with isFile(), length(), lastModified() etc.
+ * walkFileTree() is used with depth 1, on Windows it takes the attributes from the directory
+ * read itself.
+ *
+ * @author Tony Xue
+ * @since Oct, 2026
+ */
+public class DirectoryScanner {
+
+	/**
+	 * A directory entry with its attributes, links are followed the way File.isFile() does.
+	 */
+	public static class Entry {
+		final File file;
+		final BasicFileAttributes attributes;
+
+		Entry(final File file, final BasicFileAttributes attributes) {
+			this.file = file;
+			this.attributes = attributes;
+		}
+
+		public File getFile() {
+			return file;
+		}
+
+		public String getName() {
+			return file.getName();
+		}
+
+		public BasicFileAttributes getAttributes() {
+			return attributes;
+		}
+
+		public boolean isFile() {
+			return attributes.isRegularFile();
+		}
+
+		public boolean isDirectory() {
+			return attributes.isDirectory();
+		}
+
+		public long size() {
+			return attributes.size();
+		}
+
+		public long lastModified() {
+			return attributes.lastModifiedTime().toMillis();
+		}
+	}
+
+
+	/**
+	 * List the children of the directory.
+	 * The entries whose attributes can not be read are reported and left out.
+	 *
+	 * @throws IOException when the directory itself can not be read.
+	 */
+	public static List<Entry> list(final File dir, final FileCopyStatistics statistics, final UI rdProUI) throws IOException {
+		final Path dirPath = dir.toPath();
+		final List<Entry> entries = new ArrayList<>();
+		statistics.incrementMetadataCalls(1);
+
+		Files.walkFileTree(dirPath, EnumSet.of(FileVisitOption.FOLLOW_LINKS), 1, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+				entries.add(new Entry(file.toFile(), attrs));
+				statistics.incrementMetadataCalls(1);
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult visitFileFailed(Path file, IOException exc) throws IOException {
+				if (file.equals(dirPath))
+					throw exc;
+				rdProUI.printError("Can not read the attributes of " + file + ": " + exc.getMessage());
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult postVisitDirectory(Path d, IOException exc) throws IOException {
+				if (exc != null)
+					throw exc;
+				return FileVisitResult.CONTINUE;
+			}
+		});
+		return entries;
+	}
+
+
+	/**
+	 * List the names of the children only, one directory read and no stat at all.
+	 *
+	 * @throws IOException when the directory can not be read.
+	 */
+	public static List<String> listNames(final File dir, final FileCopyStatistics statistics) throws IOException {
+		List<String> names = new ArrayList<>();
+		statistics.incrementMetadataCalls(1);
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir.toPath())) {
+			for (Path p : stream) {
+				names.add(p.getFileName().toString());
+			}
+		}
+		return names;
+	}
+
+
+	/**
+	 * Read the attributes of a single file.
+	 *
+	 * @return null when the file does not exist.
+	 */
+	public static BasicFileAttributes readAttributes(final File file, final FileCopyStatistics statistics) {
+		statistics.incrementMetadataCalls(1);
+		try {
+			return Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+		} catch (IOException e) {
+			//missing or can not tell, the same as File.exists() returning false.
+			return null;
+		}
+	}
+}
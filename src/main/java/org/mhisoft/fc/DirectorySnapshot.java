@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2014- MHISoft LLC and/or its affiliates. All rights reserved.
+ * Licensed to MHISoft LLC under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. MHISoft LLC licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.mhisoft.fc;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.mhisoft.fc.ui.UI;
+
+/**
+ * Description: the entries of one directory with their attributes, listed once by the walker.
+ * The packing decision, the zip writer and the direct copy fallback all work from it,
+ * so a directory is read once no matter how its files end up being copied.
+ *
+ * @author Tony Xue
+ * @since Oct, 2026
+ */
+public class DirectorySnapshot {
+
+	private final File dir;
+	private final List<DirectoryScanner.Entry> entries;
+
+
+	public DirectorySnapshot(final File dir, final List<DirectoryScanner.Entry> entries) {
+		this.dir = dir;
+		this.entries = Collections.unmodifiableList(entries);
+	}
+
+	/**
+	 * List the directory.
+	 *
+	 * @throws IOException when the directory can not be read.
+	 */
+	public static DirectorySnapshot take(final File dir, final FileCopyStatistics statistics, final UI rdProUI) throws IOException {
+		return new DirectorySnapshot(dir, DirectoryScanner.list(dir, statistics, rdProUI));
+	}
+
+	public File getDir() {
+		return dir;
+	}
+
+	public List<DirectoryScanner.Entry> getEntries() {
+		return entries;
+	}
+
+	/**
+	 * @return the files to pack, the regular files up to the threshold, not the zips of the packer itself.
+	 */
+	public List<DirectoryScanner.Entry> getSmallFiles(final long smallFileSizeThreashold) {
+		List<DirectoryScanner.Entry> ret = new ArrayList<>();
+		for (DirectoryScanner.Entry entry : entries) {
+			if (entry.isFile() && entry.size() <= smallFileSizeThreashold
+					&& !entry.getName().startsWith(RunTimeProperties.zip_prefix))
+				ret.add(entry);
+		}
+		return ret;
+	}
+
+	/**
+	 * The same numbers FileUtils.getDirectoryStats() gets by walking the directory again.
+	 */
+	public DirecotryStat getStats(final long smallFileSizeThreashold) {
+		DirecotryStat ret = new DirecotryStat();
+		long size = 0;
+		long fileCount = 0;
+		for (DirectoryScanner.Entry entry : entries) {
+			if (entry.isDirectory())
+				continue;
+			size += entry.size();
+			fileCount++;
+			if (entry.size() <= smallFileSizeThreashold) {
+				ret.incrementSmallFileCount();
+				ret.addToTotalSmallFileSize(entry.size());
+			}
+		}
+		ret.setTotalFileSize(size);
+		ret.setNumberOfFiles(fileCount);
+		return ret;
+	}
+}
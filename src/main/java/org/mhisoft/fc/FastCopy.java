@@ -39,6 +39,7 @@ public class FastCopy {
 	public UI rdProUI;
 	private MultiThreadExecutorService fileCopyWorkersPool = null;
 	private MultiThreadExecutorService packageSmallFilesWorkersPool = null;
+	private MultiThreadExecutorService unzipWorkersPool = null;
 
 
 	public FastCopy(UI rdProUI) {
@@ -61,6 +62,8 @@ public class FastCopy {
 			fileCopyWorkersPool.shutDown();
 		if (packageSmallFilesWorkersPool != null)
 			packageSmallFilesWorkersPool.shutDown();
+		if (unzipWorkersPool != null)
+			unzipWorkersPool.shutDown();
 	}
 
 
@@ -71,11 +74,55 @@ public class FastCopy {
 		rdProUI.println(props.toString());
 
 		frs.reset();
+		BufferSizePolicy.instance.reset();
+		PackCompressionPolicy.instance.reset();
+		PackingCostModel.instance.reset();
+		BufferPool.instance.resetStats();
+		TargetVerifier.instance.reset();
+		SyncManifest.instance.open(props.getDestDir(), rdProUI);
+		ResumeJournal.instance.open(props.getDestDir(), rdProUI);
+		String queueStats = null;
+		WorkerAutoTuner autoTuner = null;
 
 
 		try {
-			fileCopyWorkersPool = new MultiThreadExecutorService(RunTimeProperties.instance.getNumOfThreads(), rdProUI);
-			packageSmallFilesWorkersPool = new MultiThreadExecutorService(RunTimeProperties.instance.getNumberOfThreadsForPackageSmallFiles(), rdProUI);
+			boolean virtualThreads = RunTimeProperties.instance.isVirtualThreads();
+			if (virtualThreads && !VirtualThreadExecutorService.isAvailable()) {
+				rdProUI.println("[warn] -virtual requires Java 21 or later, running on " + System.getProperty("java.version")
+						+ ", using " + RunTimeProperties.instance.getNumOfThreads() + " workers instead.");
+				virtualThreads = false;
+			}
+
+			if (virtualThreads)
+				//-lanes, -schedule and -w auto do not apply, the tasks do not wait on the workers.
+				fileCopyWorkersPool = new VirtualThreadExecutorService(RunTimeProperties.instance.getVirtualThreadsPerDevice()
+						, RunTimeProperties.instance.getMaxQueuedTasks(), "fastcopy-copier-", rdProUI);
+			else if (RunTimeProperties.instance.isDeviceLanes())
+				fileCopyWorkersPool = new DeviceLanesExecutorService(RunTimeProperties.instance.getNumOfThreads()
+						, RunTimeProperties.instance.getMaxQueuedTasks(), RunTimeProperties.instance.getSchedulingPolicy(), rdProUI);
+			else
+				fileCopyWorkersPool = new MultiThreadExecutorService(RunTimeProperties.instance.getNumOfThreads()
+						, RunTimeProperties.instance.getMaxQueuedTasks(), RunTimeProperties.instance.getSchedulingPolicy(), rdProUI);
+			DeviceResolver.instance.reset();
+			if (RunTimeProperties.instance.isAutoTuneWorkers() && !virtualThreads) {
+				autoTuner = new WorkerAutoTuner(fileCopyWorkersPool, frs, rdProUI, RunTimeProperties.instance.getNumOfThreads()
+						, WorkerAutoTuner.getDefaultMaxWorkers(), WorkerAutoTuner.DEFAULT_INTERVAL);
+				autoTuner.start();
+			}
+			if (virtualThreads)
+				//zipping is CPU bound, keep it to the packaging workers count.
+				packageSmallFilesWorkersPool = new VirtualThreadExecutorService(RunTimeProperties.instance.getNumberOfThreadsForPackageSmallFiles()
+						, RunTimeProperties.instance.getMaxQueuedTasks(), "fastcopy-packager-", rdProUI);
+			else
+				packageSmallFilesWorkersPool = new MultiThreadExecutorService(RunTimeProperties.instance.getNumberOfThreadsForPackageSmallFiles(), rdProUI);
+			if (RunTimeProperties.instance.isPackageSmallFiles() && !RunTimeProperties.instance.isStreamSmallFiles()
+					&& !RunTimeProperties.instance.isBatchSmallFiles()) {
+				unzipWorkersPool = new MultiThreadExecutorService(RunTimeProperties.instance.getNumOfUnzipThreads(), rdProUI);
+				FileUtils.instance.setUnzipWorkersPool(unzipWorkersPool);
+			}
+			//the packagers queue the zips to the copiers.
+			fileCopyWorkersPool.dependsOn(packageSmallFilesWorkersPool);
+			ChunkedCopyStrategy.instance.setWorkersPool(fileCopyWorkersPool);
 			FileCopierService fileCopierService = new FileCopierService(rdProUI, props, frs, fileCopyWorkersPool, packageSmallFilesWorkersPool);
 			long t1 = System.currentTimeMillis();
 
@@ -94,10 +141,30 @@ public class FastCopy {
 			
 			if (fileCopyWorkersPool != null) {
 				fileCopyWorkersPool.shutDownandWaitForAllThreadsToComplete();
+				if (autoTuner != null)
+					autoTuner.stop();
+				queueStats = fileCopyWorkersPool.printQueueStats();
+				ChunkedCopyStrategy.instance.setWorkersPool(null);
 				fileCopyWorkersPool = null;
 
 			}
 
+			//the copy workers wait for the ranges they hand out, nothing is left for the unzip workers by now.
+			if (unzipWorkersPool != null) {
+				FileUtils.instance.setUnzipWorkersPool(null);
+				unzipWorkersPool.shutDownandWaitForAllThreadsToComplete();
+				unzipWorkersPool = null;
+			}
+
+			TargetVerifier.instance.awaitDeferred();
+			//after the deferred verify has taken out the failed files.
+			SyncManifest.instance.save(rdProUI);
+			//keep the journal for -resume when the run was stopped.
+			ResumeJournal.instance.close(!RunTimeProperties.instance.isStopThreads(), rdProUI);
+
+			//the workers are gone, do not hold on to their buffers.
+			BufferPool.instance.clear();
+
 			//reset the flags
 			RunTimeProperties.instance.setRunning(false);
 			RunTimeProperties.instance.setStopThreads(false);
@@ -109,11 +176,32 @@ public class FastCopy {
 		rdProUI.println("Copied from " + props.sourceDir + " to " + props.getDestDir());
 		if (RunTimeProperties.instance.isDebug()) {
 			rdProUI.println("\tFile copier workers count:" + RunTimeProperties.instance.getNumOfThreads());
+			rdProUI.println("\tDirectory walker threads:" + RunTimeProperties.instance.getNumOfWalkerThreads()
+					+ ", metadata calls:" + frs.getMetadataCalls());
 			rdProUI.println("\tisPackageSmallFiles:" + RunTimeProperties.instance.isPackageSmallFiles());
 			rdProUI.println("\tPackage Small Files workers count:" + RunTimeProperties.instance.getNumberOfThreadsForPackageSmallFiles());
+			rdProUI.println("\t" + BufferSizePolicy.instance.printSummary());
+			if (SyncManifest.instance.isEnabled())
+				rdProUI.println("\t" + SyncManifest.instance.printSummary());
+			if (ResumeJournal.instance.isEnabled())
+				rdProUI.println("\t" + ResumeJournal.instance.printSummary());
+			if (autoTuner != null)
+				rdProUI.println("\t" + autoTuner.printSummary());
+			if (queueStats != null)
+				rdProUI.println("\tFile copier workers " + queueStats);
 		}
 
 		rdProUI.println(frs.printBucketSpeedSummary());
+		if (frs.getExtractedFiles() > 0)
+			rdProUI.println(frs.printExtractSummary());
+		if (RunTimeProperties.instance.isPackageSmallFiles() && !RunTimeProperties.instance.isStreamSmallFiles()
+				&& !RunTimeProperties.instance.isBatchSmallFiles())
+			rdProUI.println(PackCompressionPolicy.instance.printSummary());
+		if (RunTimeProperties.instance.isPackageSmallFiles() && !RunTimeProperties.instance.isBatchSmallFiles())
+			rdProUI.println(PackingCostModel.instance.printSummary());
+		rdProUI.println(BufferPool.instance.printStats());
+		if (TargetVerifier.instance.getDeferredQueued() > 0)
+			rdProUI.println(TargetVerifier.instance.printDeferredSummary());
 		rdProUI.println("Dir copied:" + frs.getDirCount() + ", Files copied:" + frs.getFilesCount());
 		rdProUI.println(frs.printOverallProgress());
 	}
@@ -20,15 +20,21 @@
 package org.mhisoft.fc;
 
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
 import java.io.File;
-import java.io.FilenameFilter;
+import java.io.IOException;
+import java.nio.file.attribute.BasicFileAttributes;
 
 import org.mhisoft.fc.ui.UI;
 
 /**
- * Description: walk the directory and schedule workers to copy over files
+ * Description: walk the directory and schedule workers to copy over files.
+ * With more than one walker thread the sub directories are walked concurrently on a
+ * work stealing ForkJoinPool, separate from the copy workers.
  *
  * @author Tony Xue
  * @since Oct, 2014
@@ -60,7 +66,131 @@ public class FileCopierService {
 
 	final static long SMALL_FILE_SIZE = 20000;
 
+
+	/**
+	 * Walk one directory level and fork the sub directories.
+	 */
+	class WalkTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final int level;
+		private final String[] rootDirs;
+		private final String destDir;
+		private final long targetDirLastModified;
+		private final TreeBundles treeBundles;
+
+		WalkTask(int level, final String[] rootDirs, final String destDir, long targetDirLastModified
+				, final TreeBundles treeBundles) {
+			this.level = level;
+			this.rootDirs = rootDirs;
+			this.destDir = destDir;
+			this.targetDirLastModified = targetDirLastModified;
+			this.treeBundles = treeBundles;
+		}
+
+		@Override
+		protected void compute() {
+			if (RunTimeProperties.instance.isStopThreads())
+				return;
+			List<WalkTask> subDirTasks = new ArrayList<>();
+			walk(level, rootDirs, destDir, targetDirLastModified, treeBundles, subDirTasks);
+			invokeAll(subDirTasks);
+		}
+	}
+
+
+	/**
+	 * The small files of a source root in bundles across the directories, -packTree.
+	 * The walkers add the files as they list the directories, a full bundle goes to the packaging workers.
+	 */
+	class TreeBundles {
+		private final File sourceRoot;
+		private final File targetRoot;
+		private int bundles;
+		private SmallFileBundle bundle;
+
+		TreeBundles(final File sourceRoot, final File targetRoot) {
+			this.sourceRoot = sourceRoot;
+			this.targetRoot = targetRoot;
+		}
+
+		void add(final DirectoryScanner.Entry source, final File target, final boolean deflate) {
+			SmallFileBundle full = null;
+			synchronized (this) {
+				if (bundle == null)
+					bundle = newBundle();
+				if (!bundle.add(source, target, deflate)) {
+					full = bundle;
+					bundle = newBundle();
+					bundle.add(source, target, deflate);
+				}
+			}
+			//the packaging queue may block, not while holding the lock.
+			if (full != null)
+				packageSmallFilesWorkersPool.addTask(full);
+		}
+
+		private SmallFileBundle newBundle() {
+			return new SmallFileBundle(rdProUI, sourceRoot, targetRoot, ++bundles, statistics, fileCopyWorkersPool);
+		}
+
+		void flush() {
+			SmallFileBundle last;
+			synchronized (this) {
+				last = bundle;
+				bundle = null;
+			}
+			if (last != null)
+				packageSmallFilesWorkersPool.addTask(last);
+		}
+	}
+
+	private final List<TreeBundles> treeBundlesList = Collections.synchronizedList(new ArrayList<TreeBundles>());
+
+	/**
+	 * Queue the bundles not full yet, the walk is done.
+	 */
+	private void flushTreeBundles() {
+		synchronized (treeBundlesList) {
+			for (TreeBundles bundles : treeBundlesList)
+				bundles.flush();
+			treeBundlesList.clear();
+		}
+	}
+
+
 	public void walkTreeAndCopy(int level, final String[] rootDirs, final String destDir, long targetDirLastModified) {
+		int walkerThreads = RunTimeProperties.instance.getNumOfWalkerThreads();
+		if (walkerThreads <= 1) {
+			walk(level, rootDirs, destDir, targetDirLastModified, null, null);
+			flushTreeBundles();
+			return;
+		}
+
+		ForkJoinPool walkerPool = new ForkJoinPool(walkerThreads, new ForkJoinPool.ForkJoinWorkerThreadFactory() {
+			@Override
+			public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+				ForkJoinWorkerThread t = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+				t.setName("walker-" + t.getPoolIndex());
+				return t;
+			}
+		}, null, false);
+
+		try {
+			walkerPool.invoke(new WalkTask(level, rootDirs, destDir, targetDirLastModified, null));
+		} finally {
+			walkerPool.shutdown();
+		}
+		flushTreeBundles();
+	}
+
+
+	/**
+	 * @param treeBundles the bundles of the source root the small files go to, -packTree. null when not packed that way.
+	 * @param subDirTasks collects the sub directories to walk in parallel, null to walk them recursively here.
+	 */
+	private void walk(int level, final String[] rootDirs, final String destDir, long targetDirLastModified
+			, final TreeBundles treeBundles, final List<WalkTask> subDirTasks) {
 
 
 		String _destDir; //the global target dir
@@ -87,23 +217,21 @@ public class FileCopierService {
 
 
 
-			/*examine the dir*/
-			List<File> filesList = new ArrayList<>();
-			if (rootDir.isFile()) {
+			/*examine the dir, the attributes of the entries are read once here, for the packing as well*/
+			List<DirectoryScanner.Entry> filesList = new ArrayList<>();
+			DirectorySnapshot snapshot = null;
+			BasicFileAttributes rootAttributes = DirectoryScanner.readAttributes(rootDir, statistics);
+			if (rootAttributes != null && rootAttributes.isRegularFile()) {
 				//the rootDir here is only a file 
-				filesList.add(rootDir);
+				filesList.add(new DirectoryScanner.Entry(rootDir, rootAttributes));
 			}
-			else {
-
-				File[] childFiles = rootDir.listFiles(new FilenameFilter() {
-					@Override
-					public boolean accept(File dir, String name) {
-						return true; //filters
-					}
-				});
-
-				if (childFiles!=null)
-					filesList = Arrays.asList(childFiles);
+			else if (rootAttributes != null && rootAttributes.isDirectory()) {
+				try {
+					snapshot = DirectorySnapshot.take(rootDir, statistics, rdProUI);
+					filesList = snapshot.getEntries();
+				} catch (IOException e) {
+					rdProUI.printError("Can not list the directory " + rootDir + ": " + e.getMessage());
+				}
 				
 				//rdProUI.showCurrentDir("Copying files under directory: " + rootDir);
 			}
@@ -113,8 +241,10 @@ public class FileCopierService {
 				return;
 
 
+			boolean targetDirCreated = false;
 			if (!_destDirCreated && !new File(_destDir).exists()) {
 				_destDirCreated = true;
+				targetDirCreated = true;
 				FileUtils.createDir(targetDirLastModified, new File(_destDir), rdProUI, statistics);
 			}
 
@@ -122,49 +252,67 @@ public class FileCopierService {
 
 			//make the TheSameSourceFolderUnderTarget only once at the top level.
 			//use the _targetDir
-			if (level == 0 && rootDir.isDirectory()
+			if (level == 0 && rootAttributes.isDirectory()
 					&& RunTimeProperties.instance.isCreateTheSameSourceFolderUnderTarget()) {
 				//   get the last dir of the source and make it under dest
 				//ext  /Users/me/doc --> /Users/me/target make /Users/me/target/doc
 				_targetDir = _targetDir + File.separator + rootDir.getName();
-				if (!new File(_targetDir).exists())
-					FileUtils.createDir(rootDir.lastModified(), new File(_targetDir), rdProUI, statistics);
+				targetDirCreated = !new File(_targetDir).exists();
+				if (targetDirCreated)
+					FileUtils.createDir(rootAttributes.lastModifiedTime().toMillis(), new File(_targetDir), rdProUI, statistics);
 			}
 
 
 
+			//the target dir listed once for all the skip decisions in this dir.
+			TargetDirectoryIndex targetIndex = loadTargetIndex(_targetDir, targetDirCreated, filesList);
+
 			//List<File> notQualifiedToPackDirList = new ArrayList<>();
 			boolean thisRootDirQualifiedToPack = false;
 
 			/* process files under this "source" dir,  package small files */
-			if (RunTimeProperties.instance.isPackageSmallFiles() && rootDir.isDirectory()) {
-				DirecotryStat direcotryStat = FileUtils.getDirectoryStats(rootDir, SMALL_FILE_SIZE);
-
-				if (  direcotryStat.isFail()) {
-					rdProUI.print(LogLevel.debug, direcotryStat.getFailMsg() +", will not pack this directory.");
+			boolean batchSmallFiles = RunTimeProperties.instance.isBatchSmallFiles() && rootAttributes.isDirectory();
+			SmallFileBatch batch = null;
+			TreeBundles bundles = treeBundles;
+			if (bundles == null && snapshot != null && RunTimeProperties.instance.isPackageSmallFiles() && !batchSmallFiles
+					&& RunTimeProperties.instance.isPackSubtrees() && !RunTimeProperties.instance.flatCopy) {
+				//the small files of the whole tree from here go to the bundles of this root.
+				bundles = new TreeBundles(rootDir, new File(_targetDir));
+				treeBundlesList.add(bundles);
+			}
+			else if (bundles == null && snapshot != null && RunTimeProperties.instance.isPackageSmallFiles() && !batchSmallFiles) {
+				//the listing above, not another walk of the directory.
+				DirecotryStat direcotryStat = snapshot.getStats(SMALL_FILE_SIZE);
+				PackingCostModel.Choice choice = PackingCostModel.instance.choose(direcotryStat.getSmallFileCount()
+						, direcotryStat.getTotalSmallFileSize(), false);
+
+				if (choice != PackingCostModel.Choice.direct) {
+					thisRootDirQualifiedToPack = true;
+					PackageSmallFilesThread t = new PackageSmallFilesThread(rdProUI
+							, sRootDir, _targetDir, targetIndex, snapshot, statistics, fileCopyWorkersPool);
+					t.setPredictedNanos(PackingCostModel.instance.predict(choice, direcotryStat.getSmallFileCount()
+							, direcotryStat.getTotalSmallFileSize(), false));
+					t.setCompressionLevel(PackingCostModel.levelOf(choice));
+					packageSmallFilesWorkersPool.addTask(t);
+				} else
 					thisRootDirQualifiedToPack = false;
-				}
-				else{
-
-						if ((direcotryStat.getSmallFileCount() >= 3 //number criteria
-								|| (direcotryStat.getSmallFileCount() >= 2 && direcotryStat.getTotalSmallFileSize() >= 4096 / 0.7) //
-						) //size criteria
-
-
-						) {
-							thisRootDirQualifiedToPack = true;
-							PackageSmallFilesThread t = new PackageSmallFilesThread(rdProUI
-									, sRootDir, _targetDir, statistics, fileCopyWorkersPool);
-							packageSmallFilesWorkersPool.addTask(t);
-						} else
-							thisRootDirQualifiedToPack = false;
-					}
 			}
 
+			//the small files of this dir go to the tree bundles unless the cost model says to copy them directly.
+			TreeBundles dirBundles = bundles;
+			boolean deflateDir = false;
+			if (bundles != null && snapshot != null) {
+				DirecotryStat direcotryStat = snapshot.getStats(SMALL_FILE_SIZE);
+				PackingCostModel.Choice choice = PackingCostModel.instance.choose(direcotryStat.getSmallFileCount()
+						, direcotryStat.getTotalSmallFileSize(), true);
+				if (choice == PackingCostModel.Choice.direct)
+					dirBundles = null;
+				deflateDir = choice == PackingCostModel.Choice.deflate;
+			}
 
 
 			/*iterate the child files  of this "rootDir, copy over the reset of the large files*/
-			for (File childFile : filesList) {
+			for (DirectoryScanner.Entry childFile : filesList) {
 
 				if (RunTimeProperties.instance.isStopThreads()) {
 					rdProUI.println("[warn]Cancelled by user. stop walk. ", true);
@@ -172,16 +320,41 @@ public class FileCopierService {
 				}
 
 
+				if (dirBundles != null && childFile.isFile() && childFile.size() <= SMALL_FILE_SIZE
+						&& !childFile.getName().startsWith(RunTimeProperties.zip_prefix)) {
+					File targetFile = new File(_targetDir + File.separator + childFile.getName());
+					if (shouldCopy(childFile, targetFile, targetIndex)) {
+						SyncManifest.instance.scheduled(targetFile);
+						dirBundles.add(childFile, targetFile, deflateDir);
+					} else if (RunTimeProperties.instance.isVerbose())
+						rdProUI.println(String.format("\tFile %s exists on the target dir, skipped. ", targetFile));
+				}
+				else if (batchSmallFiles && childFile.isFile() && childFile.size() <= SMALL_FILE_SIZE
+						&& !childFile.getName().startsWith(RunTimeProperties.zip_prefix)) {
+					File targetFile = new File(_targetDir + File.separator + childFile.getName());
+					if (shouldCopy(childFile, targetFile, targetIndex)) {
+						SyncManifest.instance.scheduled(targetFile);
+						if (batch == null)
+							batch = new SmallFileBatch(rdProUI, rootDir, new File(_targetDir), statistics, fileCopyWorkersPool);
+						if (!batch.add(childFile, targetFile)) {
+							fileCopyWorkersPool.addTask(batch);
+							batch = new SmallFileBatch(rdProUI, rootDir, new File(_targetDir), statistics, fileCopyWorkersPool);
+							batch.add(childFile, targetFile);
+						}
+					} else if (RunTimeProperties.instance.isVerbose())
+						rdProUI.println(String.format("\tFile %s exists on the target dir, skipped. ", targetFile));
+				}
 				//now what's left in the dir are the large files
-				if (childFile.isFile()
+				else if (childFile.isFile()
 						&& !childFile.getName().startsWith(RunTimeProperties.zip_prefix) //not my zip
-						&& (!thisRootDirQualifiedToPack || childFile.length() > SMALL_FILE_SIZE)) {  //this dir has files I need to copy over
+						&& (!thisRootDirQualifiedToPack || childFile.size() > SMALL_FILE_SIZE)) {  //this dir has files I need to copy over
 
 					String newDestFile = _targetDir + File.separator + childFile.getName();
 					File targetFile = new File(newDestFile);
-					if (!targetFile.exists() || FileUtils.overrideTargetFile(childFile, targetFile)) {
+					if (shouldCopy(childFile, targetFile, targetIndex)) {
+						SyncManifest.instance.scheduled(targetFile);
 						CopyFileThread t = new CopyFileThread(rdProUI
-								, childFile, targetFile, null, statistics);
+								, childFile.getFile(), targetFile, childFile.getAttributes(), null, statistics);
 						fileCopyWorkersPool.addTask(t);
 					} else {
 						if (RunTimeProperties.instance.isVerbose())
@@ -191,11 +364,14 @@ public class FileCopierService {
 
 				}
 			}
+			//the last batch of the dir.
+			if (batch != null)
+				fileCopyWorkersPool.addTask(batch);
 
 
 
 			/*iterate the child directories of this "rootDir*/
-			for (File childDir : filesList) {
+			for (DirectoryScanner.Entry childDir : filesList) {
 
 				if (RunTimeProperties.instance.isStopThreads()) {
 					rdProUI.println("[warn]Cancelled by user. stop walk. ", true);
@@ -205,7 +381,10 @@ public class FileCopierService {
 				if (childDir.isDirectory()) {
 
 					String targeChildDir = _targetDir + File.separator + childDir.getName();
-					walkTreeAndCopy(level + 1, new String[]{childDir.getAbsolutePath()}, targeChildDir, childDir.lastModified());
+					if (subDirTasks != null)
+						subDirTasks.add(new WalkTask(level + 1, new String[]{childDir.getFile().getAbsolutePath()}, targeChildDir, childDir.lastModified(), bundles));
+					else
+						walk(level + 1, new String[]{childDir.getFile().getAbsolutePath()}, targeChildDir, childDir.lastModified(), bundles, null);
 				}
 			}
 
@@ -217,4 +396,45 @@ public class FileCopierService {
 
 
 
+
+	/**
+	 * List the target dir for the skip decisions.
+	 *
+	 * @return null to check the target files one by one.
+	 */
+	private TargetDirectoryIndex loadTargetIndex(final String targetDir, final boolean targetDirCreated
+			, final List<DirectoryScanner.Entry> entries) {
+		//every source dir copies into the same target dir, listing it each time costs more than the stats.
+		if (RunTimeProperties.instance.flatCopy)
+			return null;
+		//nothing to list in a new dir.
+		if (targetDirCreated) {
+			SyncManifest.instance.created(targetDir);
+			return TargetDirectoryIndex.EMPTY;
+		}
+		//always copied, no need to look at the target at all.
+		if (RunTimeProperties.instance.isOverrideTarget())
+			return null;
+		for (DirectoryScanner.Entry entry : entries) {
+			if (entry.isFile())
+				return SyncManifest.instance.getIndex(targetDir, statistics, rdProUI);
+		}
+		return null;
+	}
+
+	private boolean shouldCopy(final DirectoryScanner.Entry source, final File targetFile, final TargetDirectoryIndex targetIndex) {
+		//-resume: the journal knows better than the target.
+		if (ResumeJournal.instance.isDone(targetFile, source.size(), source.lastModified()))
+			return false;
+		if (ResumeJournal.instance.isPartial(targetFile))
+			return true;
+		if (RunTimeProperties.instance.isOverrideTarget())
+			return true;
+		if (targetIndex != null)
+			return targetIndex.shouldCopy(source.getName(), source.getAttributes());
+		//one stat on the target instead of exists(), lastModified() and length().
+		BasicFileAttributes targetAttributes = DirectoryScanner.readAttributes(targetFile, statistics);
+		return targetAttributes == null || FileUtils.overrideTargetFile(source.getAttributes(), targetAttributes);
+	}
+
 }
@@ -38,6 +38,11 @@ public class FileCopyStatistics {
 	private AtomicLong dirCount=new AtomicLong(0);
 	private AtomicLong totalFileSize=new AtomicLong(0);
 	private AtomicLong totalTime=new AtomicLong(0);
+	//directory reads and attribute reads made by the walker.
+	private AtomicLong metadataCalls=new AtomicLong(0);
+	//exploding the small file zips at the target.
+	private AtomicLong extractedFiles=new AtomicLong(0);
+	private AtomicLong extractTime=new AtomicLong(0);
 
 
 	private List<BucketBySize> bucketBySizeList;
@@ -51,6 +56,9 @@ public class FileCopyStatistics {
 		dirCount.set(0);
 		totalFileSize.set(0);
 		totalTime.set(0);
+		metadataCalls.set(0);
+		extractedFiles.set(0);
+		extractTime.set(0);
 		this.bucketBySizeList = new ArrayList<BucketBySize>();
 		//4k, 1M, 100M, 500M
 		bucketBySizeList.add(new BucketBySize(4*1024		, "<4K       "));
@@ -151,6 +159,33 @@ public class FileCopyStatistics {
 		this.dirCount.incrementAndGet();
 	}
 
+	public void incrementMetadataCalls(long value) {
+		this.metadataCalls.addAndGet(value);
+	}
+
+	public long getMetadataCalls() {
+		return metadataCalls.get();
+	}
+
+	//in milli seconds, (ms)
+	public void addExtractTime(final long files, final long ftime) {
+		extractedFiles.addAndGet(files);
+		extractTime.addAndGet(ftime);
+	}
+
+	public long getExtractedFiles() {
+		return extractedFiles.get();
+	}
+
+	public long getExtractTime() {
+		return extractTime.get();
+	}
+
+	public String printExtractSummary() {
+		return String.format("Files extracted from the zips: %s, Total Time:%s"
+				, df.format(getExtractedFiles()), StrUtils.getDisplayTime(getExtractTime()));
+	}
+
 
 
 	static DecimalFormat df = new DecimalFormat("###,###.##");
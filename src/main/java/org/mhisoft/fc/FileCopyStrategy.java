@@ -0,0 +1,48 @@
+/*
+ * Copyright (c) 2014- MHISoft LLC and/or its affiliates. All rights reserved.
+ * Licensed to MHISoft LLC under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. MHISoft LLC licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.mhisoft.fc;
+
+import java.io.File;
+import java.io.IOException;
+import java.security.NoSuchAlgorithmException;
+
+import org.mhisoft.fc.ui.UI;
+
+/**
+ * Description: the way the bytes of one file get from the source to the target.
+ *
+ * Implementations must honor RunTimeProperties.isStopThreads() between chunks,
+ * report the progress through the rdProUI and update the statistics the same way for
+ * a completed file.
+ *
+ * @author Tony Xue
+ * @since Oct, 2026
+ */
+public interface FileCopyStrategy {
+
+	/**
+	 * Copy the source to the target.
+	 *
+	 * @return the result, verified is null when the verification is not requested or the copy is cancelled.
+	 */
+	FileUtils.CopyFileResultVO copy(final File source, final File target, FileCopyStatistics statistics, final UI rdProUI)
+			throws IOException, NoSuchAlgorithmException;
+
+}
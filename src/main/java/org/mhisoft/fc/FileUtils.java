@@ -22,12 +22,19 @@
 
 package org.mhisoft.fc;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Enumeration;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
-import java.util.zip.Deflater;
+import java.util.zip.CRC32;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
 import java.util.zip.ZipOutputStream;
 import java.io.Closeable;
 import java.io.File;
@@ -35,12 +42,9 @@ import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
 import java.nio.ByteBuffer;
-import java.nio.channels.Channels;
 import java.nio.channels.FileChannel;
-import java.nio.channels.ReadableByteChannel;
-import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.DirectoryNotEmptyException;
 import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.FileVisitResult;
@@ -49,14 +53,13 @@ import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardOpenOption;
 import java.nio.file.attribute.BasicFileAttributeView;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.nio.file.attribute.FileTime;
 import java.nio.file.attribute.PosixFilePermission;
 import java.nio.file.attribute.PosixFilePermissions;
 import java.util.Set;
-import java.security.DigestInputStream;
-import java.security.DigestOutputStream;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.text.DecimalFormat;
@@ -72,8 +75,12 @@ import org.mhisoft.fc.utils.StrUtils;
  */
 public class FileUtils {
 
-	private static final int BUFFER = 4096 * 16;
 	private static final int SMALL_FILE_SIZE = 20000;
+	//the packaged small files are read whole into a pooled buffer of this size.
+	static final int SMALL_FILE_READ_BUFFER_SIZE = 64 * 1024;
+	static final int UNZIP_BUFFER_SIZE = 64 * 1024;
+	//the entries of a zip are extracted in ranges of this many, each range on a worker of the unzip pool.
+	static final int UNZIP_RANGE_ENTRIES = 256;
 	static final DecimalFormat df = new DecimalFormat("#,###.##");
 	static final DecimalFormat dfLong = new DecimalFormat("#,###");
 	UI rdProUI;
@@ -88,30 +95,91 @@ public class FileUtils {
 
 	public static FileUtils instance = new FileUtils();
 
+	//helps the copy worker exploding a zip, null to explode it on the copy worker alone.
+	private volatile MultiThreadExecutorService unzipWorkersPool;
+
+	public void setUnzipWorkersPool(MultiThreadExecutorService unzipWorkersPool) {
+		this.unzipWorkersPool = unzipWorkersPool;
+	}
+
+	/**
+	 * The original copy engine: read through a direct buffer and write out, digests the data in flight.
+	 */
+	final FileCopyStrategy bufferedCopyStrategy = new FileCopyStrategy() {
+		@Override
+		public CopyFileResultVO copy(File source, File target, FileCopyStatistics statistics, UI rdProUI)
+				throws IOException, NoSuchAlgorithmException {
+			return nioBufferCopy(source, target, statistics, rdProUI);
+		}
+	};
+
+	/**
+	 * Pick the copy strategy for the files larger than SMALL_FILE_SIZE, by the size bucket of the file.
+	 * auto goes zero copy with transferTo unless -verify wants the digests computed in flight.
+	 */
+	FileCopyStrategy getLargeFileCopyStrategy(final File source, final File target, final long fileSize) {
+		//the huge files are shared by the copy workers.
+		if (ChunkedCopyStrategy.instance.accepts(source, target, fileSize))
+			return ChunkedCopyStrategy.instance;
+		return getLargeFileCopyStrategy(RunTimeProperties.instance.getLargeFileCopyStrategy(fileSize));
+	}
+
+	FileCopyStrategy getLargeFileCopyStrategy() {
+		return getLargeFileCopyStrategy(RunTimeProperties.instance.getLargeFileCopyStrategy());
+	}
+
+	FileCopyStrategy getLargeFileCopyStrategy(final CopyStrategyType type) {
+		switch (type) {
+			case buffered:
+				return bufferedCopyStrategy;
+			case transferTo:
+				return TransferToCopyStrategy.instance;
+			case mmap:
+				return MappedCopyStrategy.instance;
+			default:
+				return RunTimeProperties.instance.isVerifyAfterCopy() ? bufferedCopyStrategy : TransferToCopyStrategy.instance;
+		}
+	}
+
 
 	public void copyFile(final File source, final File target, FileCopyStatistics statistics, final UI rdProUI
 			, final CompressedPackageVO compressedPackageVO) {
+		copyFile(source, target, null, statistics, rdProUI, compressedPackageVO);
+	}
 
+	/**
+	 * @param sourceAttributes the source attributes read by the walker, null to read them here.
+	 */
+	public void copyFile(final File source, final File target, final BasicFileAttributes sourceAttributes
+			, FileCopyStatistics statistics, final UI rdProUI
+			, final CompressedPackageVO compressedPackageVO) {
+
+		final long sourceSize = sourceAttributes != null ? sourceAttributes.size() : source.length();
 		CopyFileResultVO vo;
+		if (compressedPackageVO == null && ResumeJournal.instance.isEnabled())
+			ResumeJournal.instance.started(target, sourceSize
+					, sourceAttributes != null ? sourceAttributes.lastModifiedTime().toMillis() : source.lastModified());
+		long t0 = System.nanoTime();
 		try {
-			if (source.length() < SMALL_FILE_SIZE) {
+			if (sourceSize < SMALL_FILE_SIZE) {
 				vo = FileUtils.instance.copySmallFiles(source, target, statistics, rdProUI);
 			} else
-				vo = FileUtils.instance.nioBufferCopy(source, target, statistics, rdProUI);
+				vo = getLargeFileCopyStrategy(source, target, sourceSize).copy(source, target, statistics, rdProUI);
 
 		} catch (Exception e) {
 			rdProUI.printError("Copy file failed for " + source.getAbsolutePath(), e);
 			return;
 		}
+		long copyNanos = System.nanoTime() - t0;
 
 		rdProUI.showCurrentDir("Copying files under directory: " + source.getParent());
 
 
 		if (RunTimeProperties.instance.isVerbose()) {
-			if (source.length() < 4096)
+			if (sourceSize < 4096)
 				rdProUI.println(String.format("Copied file %s-->%s, size:%s (bytes), took %s. %s"
 						, source.getAbsolutePath(), target.getAbsolutePath()
-						, df.format(source.length())
+						, df.format(sourceSize)
 						, StrUtils.getDisplayTime(vo.took)
 						, vo.verified != null ? (vo.verified ? "Verified" : "Verify Error!") : ""
 
@@ -120,7 +188,7 @@ public class FileUtils {
 			else
 				rdProUI.println(String.format("Copied file %s-->%s, size:%s (Kb), took %s. %s"
 						, source.getAbsolutePath(), target.getAbsolutePath()
-						, df.format(source.length() / 1024)
+						, df.format(sourceSize / 1024)
 						, StrUtils.getDisplayTime(vo.took)
 						, vo.verified != null ? (vo.verified ? "Verified" : "Verify Error!") : ""
 						)
@@ -131,9 +199,19 @@ public class FileUtils {
 			//delete it.
 			target.delete();
 
+		} else if (compressedPackageVO == null && !vo.interrupted
+				&& (SyncManifest.instance.isEnabled() || ResumeJournal.instance.isEnabled())) {
+			long sourceLastModified = sourceAttributes != null ? sourceAttributes.lastModifiedTime().toMillis() : source.lastModified();
+			SyncManifest.instance.copied(target, sourceSize, sourceLastModified, vo.digest);
+			ResumeJournal.instance.done(target, sourceSize, sourceLastModified);
 		}
 
-		statistics.getBucket(source.length()).incrementFileCount();
+		statistics.getBucket(sourceSize).incrementFileCount();
+		if (!vo.interrupted) {
+			PackCompressionPolicy.instance.recordTransfer(sourceSize, vo.took);
+			if (compressedPackageVO == null)
+				PackingCostModel.instance.recordCopy(sourceSize, copyNanos);
+		}
 
 
 		try {
@@ -147,7 +225,10 @@ public class FileUtils {
 					//+File.separator + compressedackageVO.originalDirname);
 					FileUtils.createDir(compressedPackageVO.originalDirLastModified, destZipDir, rdProUI, statistics);
 
+					long t1 = System.nanoTime();
 					unzipFile(target, destZipDir, statistics);
+					PackingCostModel.instance.recordBundle(source.getParent(), compressedPackageVO.predictedNanos
+							, compressedPackageVO.packNanos + copyNanos + System.nanoTime() - t1);
 
 					if (RunTimeProperties.instance.isVerbose()) {
 						rdProUI.println("\tUnzipped under " + destZipDir + ",("
@@ -170,7 +251,7 @@ public class FileUtils {
 
 		if (compressedPackageVO == null) { // Not zipped
 			try {
-                preserveFileTImesAndAttributes(source, target);
+                preserveFileTImesAndAttributes(source, target, sourceAttributes);
             } catch (Exception e) {
 				rdProUI.printError("Failed to preserve file attributes.", e);
 			}
@@ -178,10 +259,13 @@ public class FileUtils {
 
 	}
 
-    private void preserveFileTImesAndAttributes(File source, File target) {
+    private void preserveFileTImesAndAttributes(File source, File target, BasicFileAttributes sourceAttributes) {
         // Preserve all file times and permissions
         if (RunTimeProperties.instance.isPreserveFileTimesAndAccessAttributes()) {
-            preserveAllFileTimes(source.getAbsolutePath(), target.getAbsolutePath());
+            if (sourceAttributes != null)
+                preserveAllFileTimes(sourceAttributes, target.getAbsolutePath());
+            else
+                preserveAllFileTimes(source.getAbsolutePath(), target.getAbsolutePath());
             preserveFilePermissions(source.getAbsolutePath(), target.getAbsolutePath());
         }
     }
@@ -196,11 +280,25 @@ public class FileUtils {
 	public void preserveAllFileTimes(String sourceFile, String targetFile) {
 		if (RunTimeProperties.instance.isPreserveFileTimesAndAccessAttributes()) {
 			try {
-				Path sourcePath = Paths.get(sourceFile);
-				Path targetPath = Paths.get(targetFile);
-
 				// Read all time attributes from source file
-				BasicFileAttributes sourceAttrs = Files.readAttributes(sourcePath, BasicFileAttributes.class);
+				BasicFileAttributes sourceAttrs = Files.readAttributes(Paths.get(sourceFile), BasicFileAttributes.class);
+				preserveAllFileTimes(sourceAttrs, targetFile);
+			} catch (IOException e) {
+				rdProUI.printError("\tFailed to preserve file times for " + targetFile + ": " + e.getMessage());
+			}
+		}
+
+	}
+
+	/**
+	 * Preserve all three file times from the source attributes already read, saves a stat on the source.
+	 * @param sourceAttrs the source file attributes
+	 * @param targetFile the target file path
+	 */
+	public void preserveAllFileTimes(BasicFileAttributes sourceAttrs, String targetFile) {
+		if (RunTimeProperties.instance.isPreserveFileTimesAndAccessAttributes()) {
+			try {
+				Path targetPath = Paths.get(targetFile);
 
 				// Get the attribute view for target file
 				BasicFileAttributeView targetAttrs = Files.getFileAttributeView(targetPath, BasicFileAttributeView.class);
@@ -467,13 +565,11 @@ public class FileUtils {
 	 * Format: Header ID (2 bytes) + Data Size (2 bytes) + Data (24 bytes: 3 longs)
 	 *
 	 * @param filePath the source file path
+	 * @param attrs    the source attributes read by the walker, not read again here
 	 * @param zipEntry the ZIP entry to store times in
 	 */
-	private void storeAllFileTimesInZipEntry(Path filePath, ZipEntry zipEntry) {
+	private void storeAllFileTimesInZipEntry(Path filePath, BasicFileAttributes attrs, ZipEntry zipEntry) {
 		try {
-			// Read all three times from source file
-			BasicFileAttributes attrs = Files.readAttributes(filePath, BasicFileAttributes.class);
-
 			long modifiedMillis = attrs.lastModifiedTime().toMillis();
 			long accessMillis = attrs.lastAccessTime().toMillis();
 			long creationMillis = attrs.creationTime().toMillis();
@@ -538,7 +634,7 @@ public class FileUtils {
 	/**
 	 * Helper method to read a long value from a byte array in little-endian format.
 	 */
-	private long readLong(byte[] buffer, int offset) {
+	private static long readLong(byte[] buffer, int offset) {
 		return (buffer[offset] & 0xFFL)
 			| ((buffer[offset + 1] & 0xFFL) << 8)
 			| ((buffer[offset + 2] & 0xFFL) << 16)
@@ -559,42 +655,22 @@ public class FileUtils {
 	 */
 	private void restoreAllFileTimesFromZipEntry(ZipEntry zipEntry, File targetFile) {
 		try {
-			byte[] extraData = zipEntry.getExtra();
-
-			if (extraData != null && extraData.length >= 28) {
-				// Search for our custom header ID (0x5449 = "TI") in the extra field
-				// Extra field can contain multiple blocks with different header IDs
-				int offset = 0;
-				while (offset + 28 <= extraData.length) {
-					int headerId = (extraData[offset] & 0xFF) | ((extraData[offset + 1] & 0xFF) << 8);
-					int dataSize = (extraData[offset + 2] & 0xFF) | ((extraData[offset + 3] & 0xFF) << 8);
-
-					// Check if this is our custom time info block (0x5449)
-					if (headerId == 0x5449 && dataSize == 24) {
-						// Read the three timestamps
-						long modifiedMillis = readLong(extraData, offset + 4);
-						long accessMillis = readLong(extraData, offset + 12);
-						long creationMillis = readLong(extraData, offset + 20);
-
-						// Apply all three times
-						Path targetPath = targetFile.toPath();
-						BasicFileAttributeView targetAttrs = Files.getFileAttributeView(targetPath, BasicFileAttributeView.class);
-
-						targetAttrs.setTimes(
-							FileTime.fromMillis(modifiedMillis),
-							FileTime.fromMillis(accessMillis),
-							FileTime.fromMillis(creationMillis)
-						);
+			long[] times = readAllFileTimesFromZipEntry(zipEntry);
+			if (times != null) {
+				// Apply all three times
+				Path targetPath = targetFile.toPath();
+				BasicFileAttributeView targetAttrs = Files.getFileAttributeView(targetPath, BasicFileAttributeView.class);
 
-						if (RunTimeProperties.instance.isDebug()) {
-							rdProUI.print(LogLevel.debug, "\tRestored all three file times for " + targetFile.getName());
-						}
-						return; // Success!
-					}
+				targetAttrs.setTimes(
+					FileTime.fromMillis(times[0]),
+					FileTime.fromMillis(times[1]),
+					FileTime.fromMillis(times[2])
+				);
 
-					// Move to next block (header + size + data)
-					offset += 4 + dataSize;
+				if (RunTimeProperties.instance.isDebug()) {
+					rdProUI.print(LogLevel.debug, "\tRestored all three file times for " + targetFile.getName());
 				}
+				return; // Success!
 			}
 
 			// Fallback: Use only the standard ZIP lastModifiedTime
@@ -607,6 +683,82 @@ public class FileUtils {
 	}
 	}
 
+	/**
+	 * @return the modified, access and creation times in millis from our extra field, null when it is not there.
+	 */
+	static long[] readAllFileTimesFromZipEntry(ZipEntry zipEntry) {
+		byte[] extraData = zipEntry.getExtra();
+
+		if (extraData != null && extraData.length >= 28) {
+			// Search for our custom header ID (0x5449 = "TI") in the extra field
+			// Extra field can contain multiple blocks with different header IDs
+			int offset = 0;
+			while (offset + 28 <= extraData.length) {
+				int headerId = (extraData[offset] & 0xFF) | ((extraData[offset + 1] & 0xFF) << 8);
+				int dataSize = (extraData[offset + 2] & 0xFF) | ((extraData[offset + 3] & 0xFF) << 8);
+
+				// Check if this is our custom time info block (0x5449)
+				if (headerId == 0x5449 && dataSize == 24) {
+					return new long[]{readLong(extraData, offset + 4), readLong(extraData, offset + 12), readLong(extraData, offset + 20)};
+				}
+
+				// Move to next block (header + size + data)
+				offset += 4 + dataSize;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @return the source last modified time in millis, the zip entry time is only good to the seconds.
+	 */
+	static long getZipEntryLastModified(ZipEntry zipEntry) {
+		long[] times = readAllFileTimesFromZipEntry(zipEntry);
+		return times != null ? times[0] : zipEntry.getTime();
+	}
+
+	/**
+	 * Store the hash comment in a custom extra field block 0x5348 ("HS").
+	 * Format: Header ID (2 bytes) + Data Size (2 bytes) + the comment in UTF-8
+	 */
+	private void storeHashCommentInZipEntry(String hashComment, ZipEntry zipEntry) {
+		byte[] comment = hashComment.getBytes(StandardCharsets.UTF_8);
+		byte[] hashExtraData = new byte[4 + comment.length];
+		hashExtraData[0] = 0x48; // 'H' (little-endian: 0x5348)
+		hashExtraData[1] = 0x53; // 'S'
+		hashExtraData[2] = (byte) (comment.length & 0xFF);
+		hashExtraData[3] = (byte) ((comment.length >> 8) & 0xFF);
+		System.arraycopy(comment, 0, hashExtraData, 4, comment.length);
+
+		byte[] existingExtra = zipEntry.getExtra();
+		if (existingExtra != null && existingExtra.length > 0) {
+			byte[] combinedExtra = new byte[existingExtra.length + hashExtraData.length];
+			System.arraycopy(existingExtra, 0, combinedExtra, 0, existingExtra.length);
+			System.arraycopy(hashExtraData, 0, combinedExtra, existingExtra.length, hashExtraData.length);
+			zipEntry.setExtra(combinedExtra);
+		} else {
+			zipEntry.setExtra(hashExtraData);
+		}
+	}
+
+	/**
+	 * @return the hash comment stored by storeHashCommentInZipEntry, null when it is not there.
+	 */
+	static String readHashCommentFromZipEntry(ZipEntry zipEntry) {
+		byte[] extraData = zipEntry.getExtra();
+		if (extraData == null)
+			return null;
+		int offset = 0;
+		while (offset + 4 <= extraData.length) {
+			int headerId = (extraData[offset] & 0xFF) | ((extraData[offset + 1] & 0xFF) << 8);
+			int dataSize = (extraData[offset + 2] & 0xFF) | ((extraData[offset + 3] & 0xFF) << 8);
+			if (headerId == 0x5348 && offset + 4 + dataSize <= extraData.length)
+				return new String(extraData, offset + 4, dataSize, StandardCharsets.UTF_8);
+			offset += 4 + dataSize;
+		}
+		return null;
+	}
+
 	public void deleteFile(String file, final UI rdProUI) {
 		try {
 			Files.deleteIfExists(Paths.get(file));
@@ -629,9 +781,13 @@ public class FileUtils {
 		rdProUI.printf("\u0008\u0008\u0008\u0008%s", df.format(p) + "%");
 	}
 
-	class CopyFileResultVO {
+	static class CopyFileResultVO {
 		long took;
 		Boolean verified;
+		//the source digest when it was computed for -verify.
+		byte[] digest;
+		//cancelled, the target is partial.
+		boolean interrupted;
 
 
 	}
@@ -643,6 +799,9 @@ public class FileUtils {
 		FileChannel inChannel = null, outChannel = null;
 		CopyFileResultVO vo = new CopyFileResultVO();
 		long totalFileSize;
+		ByteBuffer buffer = null;
+		byte[] sourceDigest = null;
+		TargetVerifier.SampledDigest sourceSamples = null;
 		try {
 			inChannel = new FileInputStream(source).getChannel();
 			outChannel = new FileOutputStream(target).getChannel();
@@ -650,28 +809,48 @@ public class FileUtils {
 
 			startTime = System.currentTimeMillis();
 
-			//do the copy
-			inChannel.transferTo(0, inChannel.size(), outChannel);
-
+			if (RunTimeProperties.instance.isVerifyAfterCopy() && totalFileSize < SMALL_FILE_READ_BUFFER_SIZE) {
+				//read the source once, digest it and write it out from the same buffer.
+				buffer = BufferPool.instance.acquire(SMALL_FILE_READ_BUFFER_SIZE);
+				while (buffer.hasRemaining() && inChannel.read(buffer) != -1) {
+					//keep reading
+				}
+				buffer.flip();
+				if (TargetVerifier.instance.isSourceDigestNeeded()) {
+					MessageDigest md = RunTimeProperties.instance.getChecksumAlgorithm().newDigest();
+					md.update(buffer.duplicate());
+					sourceDigest = md.digest();
+				}
+				sourceSamples = TargetVerifier.instance.newSampledDigest(buffer.remaining());
+				if (sourceSamples != null)
+					sourceSamples.update(0, buffer);
 
-			//verify
-			if (RunTimeProperties.instance.isVerifyAfterCopy()) {
-				byte[] sourceHash = readFileContentHash(source, rdProUI);
-				byte[] targetHash = readFileContentHash(target, rdProUI);
-				if (!Arrays.equals(sourceHash, targetHash)) {
-					//rdProUI.printError("Failed to verify the copy:" + target.getAbsolutePath());
-					vo.verified = false;
-				} else {
-					vo.verified = true;
+				while (buffer.hasRemaining()) {
+					outChannel.write(buffer);
+				}
+			} else {
+				//do the copy
+				long position = 0;
+				while (position < totalFileSize) {
+					long n = inChannel.transferTo(position, totalFileSize - position, outChannel);
+					if (n <= 0)
+						break;
+					position += n;
 				}
 			}
 
-		} catch (IOException | NoSuchAlgorithmException e) {
-			throw e;
 		} finally {
 			close(inChannel);
 			close(outChannel);
+			BufferPool.instance.release(buffer);
 		}
+
+		//verify
+		if (RunTimeProperties.instance.isVerifyAfterCopy()) {
+			vo.digest = sourceDigest;
+			vo.verified = TargetVerifier.instance.verify(source, target, sourceDigest, sourceSamples, rdProUI);
+		}
+
 		//done
 		endTime = System.currentTimeMillis();
 		rdProUI.showProgress(100, statistics);
@@ -686,48 +865,51 @@ public class FileUtils {
 
 	private CopyFileResultVO nioBufferCopy(final File source, final File target, FileCopyStatistics statistics
 			, final UI rdProUI
-//			, boolean isCalculateDigest
-//			, int bufferCapacity
-
 	) throws IOException, NoSuchAlgorithmException {
-		ReadableByteChannel inChannel = null;
-		WritableByteChannel outChannel = null;
+		FileChannel inChannel = null;
+		FileChannel outChannel = null;
 		long totalFileSize = 0;
 		rdProUI.showProgress(0, statistics);
-		long startTime, endTime = 0;
-		MessageDigest md5In = null, md5Out = null;
+		long startTime, copyEndTime, endTime = 0;
+		MessageDigest sourceDigest = null;
+		TargetVerifier.SampledDigest sourceSamples = null;
+		int bufferSize;
+		ByteBuffer buffer = null;
 
 		startTime = System.currentTimeMillis();
-		InputStream inputStream;
-		OutputStream outputStream;
 
 		CopyFileResultVO vo = new CopyFileResultVO();
 
 		try {
 			totalFileSize = source.length();
 
-			if (RunTimeProperties.instance.isVerifyAfterCopy()) {
-				md5In = MessageDigest.getInstance("MD5");
-				inputStream = new DigestInputStream(new FileInputStream(source), md5In);
-			} else {
-				inputStream = new FileInputStream(source);
+			if (TargetVerifier.instance.isSourceDigestNeeded()) {
+				sourceDigest = RunTimeProperties.instance.getChecksumAlgorithm().newDigest();
 			}
+			sourceSamples = TargetVerifier.instance.newSampledDigest(totalFileSize);
 
-			inChannel = Channels.newChannel(inputStream);
-
-
-			if (RunTimeProperties.instance.isVerifyAfterCopy()) {
-				md5Out = MessageDigest.getInstance("MD5");
-				outputStream = new DigestOutputStream(new FileOutputStream(target), md5Out);
-			} else {
-				outputStream = new FileOutputStream(target);
-			}
-			outChannel = Channels.newChannel(outputStream);
+			//read and write the channels directly, Channels.newChannel() over the streams
+			//moves at most 8K per read no matter how large the buffer is.
+			inChannel = new FileInputStream(source).getChannel();
+			long resumeOffset = ResumeJournal.instance.getResumeOffset(source, target, totalFileSize);
+			if (resumeOffset > 0) {
+				//continue the partial target, the part already there was not digested.
+				outChannel = FileChannel.open(target.toPath(), StandardOpenOption.WRITE);
+				outChannel.truncate(resumeOffset);
+				outChannel.position(resumeOffset);
+				inChannel.position(resumeOffset);
+				sourceDigest = null;
+				sourceSamples = null;
+			} else
+				outChannel = new FileOutputStream(target).getChannel();
+			long sourceLastModified = ResumeJournal.instance.isEnabled() ? source.lastModified() : 0;
 
 
-			ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER);
+			bufferSize = BufferSizePolicy.instance.getBufferSizeToCalibrate(source, target, totalFileSize);
+			buffer = BufferPool.instance.acquire(bufferSize);
 			int readSize = inChannel.read(buffer);
-			long totalRead = 0;
+			long totalRead = resumeOffset;
+			long lastCheckpoint = resumeOffset;
 			int progress = 0;
 
 
@@ -735,13 +917,18 @@ public class FileUtils {
 
 				if (RunTimeProperties.instance.isStopThreads()) {
 					rdProUI.println("[warn]Cancelled by user. Stoping copying.", true);
-					close(outChannel);
-					deleteFile(target.getAbsolutePath(), rdProUI);
+					ResumeJournal.instance.interrupted(target, totalFileSize, sourceLastModified, outChannel, totalRead, rdProUI);
+					vo.interrupted = true;
 					if (RunTimeProperties.instance.isDebug())
 						rdProUI.println("\t" + Thread.currentThread().getName() + "is stopped.", true);
 					return vo;
 				}
 
+				if (totalRead - lastCheckpoint >= ResumeJournal.CHECKPOINT_BYTES) {
+					ResumeJournal.instance.checkpoint(target, totalFileSize, sourceLastModified, outChannel, totalRead);
+					lastCheckpoint = totalRead;
+				}
+
 				totalRead = totalRead + readSize;
 
 				progress = (int) (totalRead * 100 / totalFileSize);
@@ -749,26 +936,20 @@ public class FileUtils {
 
 				buffer.flip();
 
+				//digest the source in flight
+				if (sourceDigest != null)
+					sourceDigest.update(buffer.duplicate());
+				if (sourceSamples != null)
+					sourceSamples.update(totalRead - readSize, buffer);
+
 				while (buffer.hasRemaining()) {
 					outChannel.write(buffer);
-					//System.out.printf(".");
-					//showPercent(rdProUI, totalSize/size );
 				}
 				buffer.clear();
 				readSize = inChannel.read(buffer);
 
 			}
-
-			//verify
-			if (RunTimeProperties.instance.isVerifyAfterCopy()) {
-				byte[] sourceFileMD5 = md5In.digest();
-				byte[] targetHash = readFileContentHash(target, rdProUI);
-				if (!Arrays.equals(sourceFileMD5, targetHash)) {
-					vo.verified = false;
-				} else {
-					vo.verified = true;
-				}
-			}
+			copyEndTime = System.currentTimeMillis();
 
 
 		} finally {
@@ -786,6 +967,13 @@ public class FileUtils {
 					rdProUI.printError("failed to close the outChannel", e);
 				}
 			}
+			BufferPool.instance.release(buffer);
+		}
+
+		//verify the target against the source digest computed in flight.
+		if (RunTimeProperties.instance.isVerifyAfterCopy()) {
+			vo.digest = sourceDigest == null ? null : sourceDigest.digest();
+			vo.verified = TargetVerifier.instance.verify(source, target, vo.digest, sourceSamples, rdProUI);
 		}
 		endTime = System.currentTimeMillis();
 
@@ -793,12 +981,13 @@ public class FileUtils {
 		statistics.addToTotalFileSizeAndTime(totalFileSize, (endTime - startTime));
 		statistics.incrementFileCount();
 		rdProUI.showProgress(100, statistics);
+		BufferSizePolicy.instance.recordCopy(source, target, bufferSize, totalFileSize, copyEndTime - startTime);
 
 		vo.took = (endTime - startTime);
 		return vo;
 	}
 
-	private static void close(Closeable closable) {
+	static void close(Closeable closable) {
 		if (closable != null) {
 			try {
 				closable.close();
@@ -925,6 +1114,9 @@ public class FileUtils {
 		String destDir;
 		long zipFileSizeBytes;
 		int numberOfFiles = 0;
+		//what the cost model said packing the directory would take, -1 when it was not asked.
+		long predictedNanos = -1;
+		long packNanos;
 
 		public CompressedPackageVO(String zipName, String originalDirname, String zipFileWithPath) {
 			this.zipName = zipName;
@@ -964,6 +1156,33 @@ public class FileUtils {
 
 	public CompressedPackageVO compressDirectory(final String dirPath, final String targetDir, final boolean recursive
 			, final long smallFileSizeThreashold) throws IOException {
+		return compressDirectory(dirPath, targetDir, recursive, smallFileSizeThreashold, null);
+	}
+
+	/**
+	 * @param targetIndex the target dir already listed, null to check the target files one by one.
+	 */
+	public CompressedPackageVO compressDirectory(final String dirPath, final String targetDir, final boolean recursive
+			, final long smallFileSizeThreashold, final TargetDirectoryIndex targetIndex) throws IOException {
+		return compressDirectory(dirPath, targetDir, recursive, smallFileSizeThreashold, targetIndex, null);
+	}
+
+	/**
+	 * @param snapshot the directory listed by the walker, null to walk it here. Not for the recursive zip.
+	 */
+	public CompressedPackageVO compressDirectory(final String dirPath, final String targetDir, final boolean recursive
+			, final long smallFileSizeThreashold, final TargetDirectoryIndex targetIndex, final DirectorySnapshot snapshot)
+			throws IOException {
+		return compressDirectory(dirPath, targetDir, recursive, smallFileSizeThreashold, targetIndex, snapshot
+				, PackCompressionPolicy.instance.peekLevel());
+	}
+
+	/**
+	 * @param level STORED or the deflate level, as the PackingCostModel chose.
+	 */
+	public CompressedPackageVO compressDirectory(final String dirPath, final String targetDir, final boolean recursive
+			, final long smallFileSizeThreashold, final TargetDirectoryIndex targetIndex, final DirectorySnapshot snapshot
+			, final int level) throws IOException {
 		Path sourcePath = Paths.get(dirPath);
 
 		//put the zip under the same sourcePath.
@@ -976,11 +1195,14 @@ public class FileUtils {
 
 		try {
 			outputStream = new ZipOutputStream(new FileOutputStream(zipFileName));
-			outputStream.setLevel(Deflater.BEST_COMPRESSION);
+			PackCompressionPolicy.instance.useLevel(level);
+			if (level != PackCompressionPolicy.STORED)
+				outputStream.setLevel(level);
 
-			MyZipFileVisitor visitor = new MyZipFileVisitor(compressedPackageVO, targetDir, smallFileSizeThreashold, zipName, sourcePath, outputStream, recursive);
+			MyZipFileVisitor visitor = new MyZipFileVisitor(compressedPackageVO, targetDir, targetIndex, smallFileSizeThreashold, zipName, sourcePath, outputStream, recursive);
+			visitor.stored = level == PackCompressionPolicy.STORED;
 
-			Files.walkFileTree(sourcePath, visitor);
+			visit(sourcePath, recursive ? null : snapshot, visitor);
 
 
 		} catch (IOException e) {
@@ -1012,20 +1234,78 @@ public class FileUtils {
 	}
 
 
+	/**
+	 * Feed the files of the snapshot to the visitor, walk the directory when there is none.
+	 */
+	private void visit(final Path sourcePath, final DirectorySnapshot snapshot, final MyZipFileVisitor visitor) throws IOException {
+		if (snapshot == null) {
+			Files.walkFileTree(sourcePath, visitor);
+			return;
+		}
+		for (DirectoryScanner.Entry entry : snapshot.getEntries()) {
+			if (!entry.isFile())
+				continue;
+			try {
+				if (visitor.visitFile(entry.getFile().toPath(), entry.getAttributes()) == FileVisitResult.TERMINATE)
+					return;
+			} catch (NoSuchFileException e) {
+				//gone since the walker listed it, the file is read before its entry is started.
+				rdProUI.printError("Packing failed for " + entry.getFile(), e);
+			}
+		}
+	}
+
+	/**
+	 * Zip the files, already checked against the target, named relative to the sourceRoot.
+	 * A file gone since it was listed is reported and left out.
+	 *
+	 * @return the number of the files in the zip.
+	 */
+	int putEntries(final ZipOutputStream outputStream, final CompressedPackageVO compressedPackageVO, final Path sourceRoot
+			, final List<DirectoryScanner.Entry> files, final boolean stored, final boolean hashInExtra) throws IOException {
+		MyZipFileVisitor visitor = new MyZipFileVisitor(compressedPackageVO, compressedPackageVO.getDestDir(), null, -1
+				, compressedPackageVO.zipName, sourceRoot, outputStream, true);
+		visitor.stored = stored;
+		visitor.hashInExtra = hashInExtra;
+		for (DirectoryScanner.Entry entry : files) {
+			if (RunTimeProperties.instance.isStopThreads())
+				break;
+			try {
+				visitor.putEntry(entry.getFile().toPath(), entry.getAttributes());
+			} catch (NoSuchFileException e) {
+				//the file is read before its entry is started.
+				rdProUI.printError("Packing failed for " + entry.getFile(), e);
+			}
+		}
+		return compressedPackageVO.getNumberOfFiles();
+	}
+
 	class MyZipFileVisitor extends SimpleFileVisitor<Path> {
 
 		CompressedPackageVO compressedPackageVO;
 		String targetDir;
+		TargetDirectoryIndex targetIndex;
 		long smallFileSizeThreashold;
 		String zipName;
 		Path sourcePath;
 		ZipOutputStream outputStream;
+		//the small files of the sub directories go in as well, named relative to the sourcePath.
 		boolean recursive;
-
-		public MyZipFileVisitor(CompressedPackageVO compressedPackageVO, String targetDir, long smallFileSizeThreashold, String zipName, Path sourcePath, ZipOutputStream outputStream
+		//the streamed bundles are read without the central directory, the hash goes to the extra field.
+		boolean hashInExtra;
+		//the entries are not deflated.
+		boolean stored;
+		//lists the target sub directories when recursive.
+		FileCopyStatistics statistics;
+		//the target indexes of the parent dirs, while in a sub directory.
+		private final List<TargetDirectoryIndex> parentIndexes = new ArrayList<>();
+
+		public MyZipFileVisitor(CompressedPackageVO compressedPackageVO, String targetDir, TargetDirectoryIndex targetIndex
+				, long smallFileSizeThreashold, String zipName, Path sourcePath, ZipOutputStream outputStream
 				, boolean recursive) {
 			this.compressedPackageVO = compressedPackageVO;
 			this.targetDir = targetDir;
+			this.targetIndex = targetIndex;
 			this.smallFileSizeThreashold = smallFileSizeThreashold;
 			this.zipName = zipName;
 			this.sourcePath = sourcePath;
@@ -1035,52 +1315,102 @@ public class FileUtils {
 
 		@Override
 		public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) throws IOException {
-			boolean include = true;
-			if (!RunTimeProperties.instance.isOverrideTarget()) {
-				//target file
-				File _targetFile = new File(targetDir + File.separator + file.getFileName().toString());
-				if (_targetFile.exists()) {
-					include = overrideTargetFile(file.toFile(), _targetFile);
-					if (!include) {
-						rdProUI.println(LogLevel.debug, "\tFile " + _targetFile.getAbsolutePath() + " exists, skipped.");
-					}
-				} else {
-					include = true;
-				}
-			} else
-				include = true;
+			//only the small files go into the zip, look at the target for those only.
+			if ((smallFileSizeThreashold != -1 && attributes.size() > smallFileSizeThreashold) //
+					|| file.getFileName().toString().startsWith(RunTimeProperties.zip_prefix)) //exclude the zip files.
+				return FileVisitResult.CONTINUE;
 
+			if (include(file, attributes, getTargetFile(file)))
+				putEntry(file, attributes);
+			return FileVisitResult.CONTINUE;
+		}
 
-			if (include) {
-				if ((smallFileSizeThreashold == -1 || file.toFile().length() <= smallFileSizeThreashold) //
-						&& !file.getFileName().toString().equals(zipName)) { //exclude the zip file itself.
+		File getTargetFile(Path file) {
+			return new File(targetDir, sourcePath.relativize(file).toString());
+		}
 
-					compressedPackageVO.incrementFileCount(1);
+		/**
+		 * @return true when the file is to be copied, it is scheduled in the manifest then.
+		 */
+		boolean include(Path file, BasicFileAttributes attributes, File targetFile) {
+			boolean include = !ResumeJournal.instance.isDone(targetFile
+					, attributes.size(), attributes.lastModifiedTime().toMillis());
+			if (include && !RunTimeProperties.instance.isOverrideTarget()) {
+				String name = file.getFileName().toString();
+				if (targetIndex != null) {
+					include = targetIndex.shouldCopy(name, attributes);
+				} else {
+					include = !targetFile.exists() || overrideTargetFile(file.toFile(), targetFile);
+				}
+				if (!include) {
+					rdProUI.println(LogLevel.debug, "\tFile " + targetFile + " exists, skipped.");
+				}
+			}
+			if (include)
+				SyncManifest.instance.scheduled(targetFile);
+			return include;
+		}
 
-				Path targetFile = sourcePath.relativize(file);
-				ZipEntry ze = new ZipEntry(targetFile.toString());
-				ze.setLastModifiedTime(FileTime.fromMillis(file.toFile().lastModified()));
+		/**
+		 * Write the file to the zip.
+		 */
+		void putEntry(Path file, BasicFileAttributes attributes) throws IOException {
+			long t0 = System.nanoTime();
+			Path targetFile = sourcePath.relativize(file);
+			ZipEntry ze = new ZipEntry(targetFile.toString());
+			ze.setLastModifiedTime(attributes.lastModifiedTime());
 
-				// Store all three file times in ZIP entry for complete preservation
-				storeAllFileTimesInZipEntry(file, ze);
+			// Store all three file times in ZIP entry for complete preservation
+			storeAllFileTimesInZipEntry(file, attributes, ze);
 
-				// Store Unix file permissions in ZIP entry for later extraction
-				storeFilePermissionsInZipEntry(file, ze);
+			// Store Unix file permissions in ZIP entry for later extraction
+			storeFilePermissionsInZipEntry(file, ze);
 
-					//note read whole file into memory. it is what we wanted for small size files.
-					byte[] bytes = Files.readAllBytes(file);
-					compressedPackageVO.zipFileSizeBytes = bytes.length;
+			//note read whole file into memory. it is what we wanted for small size files.
+			ByteBuffer pooledBuffer = null;
+			try {
+				byte[] bytes;
+				int length;
+				if (attributes.size() < SMALL_FILE_READ_BUFFER_SIZE) {
+					pooledBuffer = BufferPool.instance.acquireHeap(SMALL_FILE_READ_BUFFER_SIZE);
+					length = readFully(file, pooledBuffer);
+					bytes = pooledBuffer.array();
+				} else {
+					bytes = Files.readAllBytes(file);
+					length = bytes.length;
+				}
+				compressedPackageVO.zipFileSizeBytes = length;
 
-					//set the MD5 to the extra of the entry. this is source MD5. 
-					if (RunTimeProperties.instance.isVerifyAfterCopy()) {
-						ze.setComment(StrUtils.toHexString(getHash(bytes)));
-					}
-					outputStream.putNextEntry(ze);
-					outputStream.write(bytes, 0, bytes.length);
-					outputStream.closeEntry();
+				//set the source hash to the comment of the entry, prefixed with the algorithm.
+				if (RunTimeProperties.instance.isVerifyAfterCopy()) {
+					String hashComment = RunTimeProperties.instance.getChecksumAlgorithm().toComment(getHash(bytes, 0, length));
+					if (hashInExtra)
+						storeHashCommentInZipEntry(hashComment, ze);
+					else
+						ze.setComment(hashComment);
+				}
+				if (stored) {
+					//the sizes and the crc go in the entry header, before the data.
+					CRC32 crc = new CRC32();
+					crc.update(bytes, 0, length);
+					ze.setMethod(ZipEntry.STORED);
+					ze.setSize(length);
+					ze.setCompressedSize(length);
+					ze.setCrc(crc.getValue());
 				}
+				outputStream.putNextEntry(ze);
+				long t1 = System.nanoTime();
+				outputStream.write(bytes, 0, length);
+				outputStream.closeEntry();
+				compressedPackageVO.incrementFileCount(1);
+				long t2 = System.nanoTime();
+				if (!stored)
+					PackCompressionPolicy.instance.recordDeflate(length, ze.getCompressedSize(), t2 - t1);
+				//the deflater is the PackCompressionPolicy's part.
+				PackingCostModel.instance.recordPack(stored ? t2 - t0 : t1 - t0);
+			} finally {
+				BufferPool.instance.release(pooledBuffer);
 			}
-			return FileVisitResult.CONTINUE;
 		}
 
 
@@ -1088,54 +1418,338 @@ public class FileUtils {
 		public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
 			if (dir.equals(sourcePath))
 				return FileVisitResult.CONTINUE;
-			else
-				return recursive ? FileVisitResult.CONTINUE : FileVisitResult.SKIP_SUBTREE;
+			if (!recursive)
+				return FileVisitResult.SKIP_SUBTREE;
+			parentIndexes.add(targetIndex);
+			//without the statistics the target files are checked one by one.
+			targetIndex = RunTimeProperties.instance.isOverrideTarget() || statistics == null ? null
+					: SyncManifest.instance.getIndex(getTargetFile(dir).getPath(), statistics, rdProUI);
+			return FileVisitResult.CONTINUE;
+		}
+
+		@Override
+		public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+			if (recursive && !dir.equals(sourcePath))
+				targetIndex = parentIndexes.remove(parentIndexes.size() - 1);
+			return super.postVisitDirectory(dir, exc);
 		}
 
 	}
 
 	/**
-	 * Unzip the zipFile to the deskDir
+	 * Pack the small files of the directory into in-memory zip bundles and queue them to the copy workers
+	 * to be unpacked at the target. Nothing is written on the source.
+	 *
+	 * @param targetIndex the target dir already listed, null to check the target files one by one.
+	 * @return the number of the files packed.
+	 */
+	public int streamDirectory(final String dirPath, final String targetDir, final long smallFileSizeThreashold
+			, final TargetDirectoryIndex targetIndex, final FileCopyStatistics statistics
+			, final MultiThreadExecutorService fileCopyWorkersPool) throws IOException {
+		return streamDirectory(dirPath, targetDir, smallFileSizeThreashold, targetIndex, null, statistics, fileCopyWorkersPool);
+	}
+
+	/**
+	 * @param snapshot the directory listed by the walker, null to walk it here.
+	 */
+	public int streamDirectory(final String dirPath, final String targetDir, final long smallFileSizeThreashold
+			, final TargetDirectoryIndex targetIndex, final DirectorySnapshot snapshot, final FileCopyStatistics statistics
+			, final MultiThreadExecutorService fileCopyWorkersPool) throws IOException {
+		Path sourcePath = Paths.get(dirPath);
+		CompressedPackageVO compressedPackageVO = new CompressedPackageVO(null, sourcePath.getFileName().toString(), null);
+		compressedPackageVO.originalDirLastModified = sourcePath.toFile().lastModified();
+		compressedPackageVO.setDestDir(targetDir);
+
+		StreamingZipFileVisitor visitor = new StreamingZipFileVisitor(compressedPackageVO, targetDir, targetIndex
+				, smallFileSizeThreashold, sourcePath, statistics, fileCopyWorkersPool);
+		try {
+			visit(sourcePath, snapshot, visitor);
+			visitor.seal();
+		} finally {
+			visitor.discard();
+		}
+		return compressedPackageVO.getNumberOfFiles();
+	}
+
+	class StreamingZipFileVisitor extends MyZipFileVisitor {
+		final MultiThreadExecutorService fileCopyWorkersPool;
+		StreamingBundle bundle;
+		int bundleFiles;
+
+		StreamingZipFileVisitor(CompressedPackageVO compressedPackageVO, String targetDir, TargetDirectoryIndex targetIndex
+				, long smallFileSizeThreashold, Path sourcePath, FileCopyStatistics statistics
+				, MultiThreadExecutorService fileCopyWorkersPool) {
+			super(compressedPackageVO, targetDir, targetIndex, smallFileSizeThreashold, null, sourcePath, null, false);
+			this.hashInExtra = true;
+			//the bytes do not go over the wire, deflating them would only cost CPU.
+			this.stored = true;
+			this.statistics = statistics;
+			this.fileCopyWorkersPool = fileCopyWorkersPool;
+		}
+
+		@Override
+		public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) throws IOException {
+			if (attributes.size() > smallFileSizeThreashold)
+				return FileVisitResult.CONTINUE;
+			if (bundle == null) {
+				bundle = StreamingBundle.open(rdProUI, sourcePath.toFile(), compressedPackageVO, statistics);
+				if (bundle == null) //cancelled
+					return FileVisitResult.TERMINATE;
+				outputStream = bundle.getZipOutputStream();
+				bundleFiles = compressedPackageVO.getNumberOfFiles();
+			}
+
+			int before = compressedPackageVO.getNumberOfFiles();
+			try {
+				super.visitFile(file, attributes);
+			} catch (IOException e) {
+				//the file is read before its entry is started, skip it and go on with the others.
+				rdProUI.printError("Packing failed for " + file, e);
+				if (compressedPackageVO.getNumberOfFiles() > before)
+					compressedPackageVO.incrementFileCount(-1);
+			}
+
+			if (bundle.isFull())
+				seal();
+			return FileVisitResult.CONTINUE;
+		}
+
+		/**
+		 * Hand the bundle to the copy workers.
+		 */
+		void seal() throws IOException {
+			if (bundle == null)
+				return;
+			StreamingBundle sealed = bundle;
+			int files = compressedPackageVO.getNumberOfFiles() - bundleFiles;
+			bundle = null;
+			outputStream = null;
+			if (files == 0) {
+				sealed.discard();
+				return;
+			}
+			sealed.seal(files);
+			fileCopyWorkersPool.addTask(sealed);
+		}
+
+		void discard() {
+			if (bundle != null) {
+				bundle.discard();
+				bundle = null;
+			}
+		}
+	}
+
+	/**
+	 * Unzip the zipFile to the deskDir.
+	 * The directories are created first, then the entries are extracted in ranges by the copy worker
+	 * and the unzip workers free to help.
 	 *
 	 * @param file
 	 * @param destDir
 	 * @throws IOException
 	 */
-    protected void unzipFile(File file, File destDir, FileCopyStatistics statistics) throws NoSuchAlgorithmException, IOException {
+	protected void unzipFile(File file, File destDir, FileCopyStatistics statistics) throws NoSuchAlgorithmException, IOException {
+		long t1 = System.currentTimeMillis();
+		long t0 = System.nanoTime();
+		//zip input stream does not read zip entry comments. use ZipFile.
+		ZipFile zipFile = new ZipFile(file);
+		UnzipRanges ranges;
+		try {
+			List<ZipEntry> entries = new ArrayList<>();
+			Enumeration<? extends ZipEntry> e = zipFile.entries();
+			while (e.hasMoreElements())
+				entries.add(e.nextElement());
+			createEntryDirs(entries, destDir);
+
+			ranges = new UnzipRanges(zipFile, entries, destDir);
+			MultiThreadExecutorService pool = unzipWorkersPool;
+			for (int i = 1; pool != null && i < ranges.count; i++) {
+				if (!pool.offerTask(ranges))
+					break;
+			}
+			ranges.run();
+			ranges.await();
+		} finally {
+			zipFile.close();
+		}
+		ranges.rethrow();
 
-        long filesCount = 0;
-        byte[] buffer = new byte[4096];
-        //zip input stream does not read zip entry comments. use ZipFile.
-        //ZipInputStream zis = new ZipInputStream(new FileInputStream(zipFile));
-        ZipFile zipFile = new ZipFile(file);
+		statistics.addFileCount(ranges.filesCount.get());
+		statistics.addExtractTime(ranges.filesCount.get(), System.currentTimeMillis() - t1);
+		PackingCostModel.instance.recordUnpack(ranges.filesCount.get(), System.nanoTime() - t0);
+	}
 
-        try {
-            Enumeration<? extends ZipEntry> entries = zipFile.entries();
-            while (entries.hasMoreElements()) {
-                ZipEntry zipEntry = entries.nextElement();
+	/**
+	 * Create the directories of the entries, once per directory.
+	 */
+	private static void createEntryDirs(final List<ZipEntry> entries, final File destDir) {
+		Set<File> dirs = new LinkedHashSet<>();
+		for (ZipEntry zipEntry : entries) {
+			File destFile = new File(destDir, zipEntry.getName());
+			if (zipEntry.isDirectory())
+				dirs.add(destFile);
+			else if (destFile.getParentFile() != null)
+				dirs.add(destFile.getParentFile());
+		}
+		for (File dir : dirs) {
+			if (!dir.exists())
+				dir.mkdirs();
+		}
+	}
 
-                File destFile = new File(destDir, zipEntry.getName());
+	/**
+	 * The entries of a zip in ranges, every worker running it claims the next range until none is left.
+	 */
+	class UnzipRanges implements Runnable {
+		final ZipFile zipFile;
+		final List<ZipEntry> entries;
+		final File destDir;
+		final int count;
+		final AtomicInteger nextRange = new AtomicInteger(0);
+		final CountDownLatch rangesDone;
+		final AtomicLong filesCount = new AtomicLong(0);
+		volatile Exception failure;
+
+		UnzipRanges(ZipFile zipFile, List<ZipEntry> entries, File destDir) {
+			this.zipFile = zipFile;
+			this.entries = entries;
+			this.destDir = destDir;
+			this.count = (entries.size() + UNZIP_RANGE_ENTRIES - 1) / UNZIP_RANGE_ENTRIES;
+			this.rangesDone = new CountDownLatch(count);
+		}
 
-                // Create parent directories if they don't exist
-                File parentDir = destFile.getParentFile();
-                if (parentDir != null && !parentDir.exists()) {
-                    parentDir.mkdirs();
-                }
+		@Override
+		public void run() {
+			int range = nextRange.getAndIncrement();
+			if (range >= count)
+				return; //all claimed already.
+			ByteBuffer pooledBuffer = BufferPool.instance.acquireHeap(UNZIP_BUFFER_SIZE);
+			byte[] buffer = pooledBuffer.array();
+			try {
+				for (; range < count; range = nextRange.getAndIncrement()) {
+					try {
+						//the others are not worth starting after a failure.
+						if (failure == null)
+							extractRange(range, buffer);
+					} catch (Exception e) {
+						failure = e;
+					} finally {
+						rangesDone.countDown();
+					}
+				}
+			} finally {
+				BufferPool.instance.release(pooledBuffer);
+			}
+		}
 
-                // Skip directory entries (they end with /)
-                if (zipEntry.isDirectory()) {
-                    destFile.mkdirs();
-                    continue;
-                }
+		private void extractRange(int range, byte[] buffer) throws NoSuchAlgorithmException, IOException {
+			int end = Math.min(entries.size(), (range + 1) * UNZIP_RANGE_ENTRIES);
+			for (int i = range * UNZIP_RANGE_ENTRIES; i < end; i++) {
+				ZipEntry zipEntry = entries.get(i);
+				if (zipEntry.isDirectory())
+					continue;
+				InputStream inputStream = zipFile.getInputStream(zipEntry);
+				try {
+					extractEntry(zipEntry, zipEntry.getComment(), inputStream, destDir, buffer);
+				} finally {
+					inputStream.close();
+				}
+				filesCount.incrementAndGet();
+			}
+		}
 
-                // Only count actual files, not directories
-                filesCount++;
+		/**
+		 * The zip is closed after this, wait for the ranges being extracted by the others.
+		 */
+		void await() {
+			boolean interrupted = false;
+			while (true) {
+				try {
+					rangesDone.await();
+					break;
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+			if (interrupted)
+				Thread.currentThread().interrupt();
+		}
 
+		void rethrow() throws NoSuchAlgorithmException, IOException {
+			if (failure instanceof IOException)
+				throw (IOException) failure;
+			if (failure instanceof NoSuchAlgorithmException)
+				throw (NoSuchAlgorithmException) failure;
+			if (failure != null)
+				throw new IOException(failure);
+		}
+
+		@Override
+		public String toString() {
+			return "unzip " + zipFile.getName() + " ranges:" + count;
+		}
+	}
+
+	/**
+	 * Unzip the streamed bundle to the destDir. The hash of the entries are in the extra field,
+	 * the entry comments are only in the central directory at the end.
+	 */
+	protected void unzipStream(InputStream in, File destDir, FileCopyStatistics statistics) throws NoSuchAlgorithmException, IOException {
+		long filesCount = 0;
+		ByteBuffer pooledBuffer = BufferPool.instance.acquireHeap(UNZIP_BUFFER_SIZE);
+		byte[] buffer = pooledBuffer.array();
+		long t1 = System.currentTimeMillis();
+		long t0 = System.nanoTime();
+		ZipInputStream zis = new ZipInputStream(in);
+		try {
+			ZipEntry zipEntry;
+			while ((zipEntry = zis.getNextEntry()) != null) {
+				createEntryDirs(Collections.singletonList(zipEntry), destDir);
+				if (!zipEntry.isDirectory()) {
+					extractEntry(zipEntry, readHashCommentFromZipEntry(zipEntry), zis, destDir, buffer);
+					filesCount++;
+				}
+			}
+		} finally {
+			zis.close();
+			BufferPool.instance.release(pooledBuffer);
+		}
+		statistics.addFileCount(filesCount);
+		statistics.addExtractTime(filesCount, System.currentTimeMillis() - t1);
+		PackingCostModel.instance.recordUnpack(filesCount, System.nanoTime() - t0);
+	}
+
+	/**
+	 * Write out one zip file entry under the destDir, restore its times and permissions and verify it.
+	 * Its directory is created already.
+	 *
+	 * @param hashComment the source hash prefixed with the algorithm, null when not verifying.
+	 */
+	private void extractEntry(ZipEntry zipEntry, String hashComment, InputStream inputStream, File destDir
+			, byte[] buffer) throws NoSuchAlgorithmException, IOException {
+                File destFile = new File(destDir, zipEntry.getName());
+
+                //the entry comment tells how the source was hashed.
+                ChecksumAlgorithm algorithm = ChecksumAlgorithm.fromComment(hashComment);
+                //sampled mode: hash the bytes being written instead of reading the whole target back,
+                //only the sampled blocks of them are read back.
+                MessageDigest writtenDigest = RunTimeProperties.instance.isVerifyAfterCopy()
+                        && RunTimeProperties.instance.getVerifyMode() == VerifyMode.sampled ? algorithm.newDigest() : null;
+                TargetVerifier.SampledDigest writtenSamples = writtenDigest != null && zipEntry.getSize() >= 0
+                        ? TargetVerifier.instance.newSampledDigest(zipEntry.getSize()) : null;
+
+                ResumeJournal.instance.started(destFile, zipEntry.getSize(), getZipEntryLastModified(zipEntry));
                 FileOutputStream fos = new FileOutputStream(destFile);
-                InputStream inputStream = zipFile.getInputStream(zipEntry);
+                long written = 0;
                 int len;
                 while ((len = inputStream.read(buffer)) > 0) {
                     fos.write(buffer, 0, len);
+                    written += len;
+                    if (writtenDigest != null)
+                        writtenDigest.update(buffer, 0, len);
+                    if (writtenSamples != null)
+                        writtenSamples.update(written - len, ByteBuffer.wrap(buffer, 0, len));
                 }
 			fos.close();
 
@@ -1148,31 +1762,43 @@ public class FileUtils {
 				preserveZipEntryPermissions(zipEntry, destFile);
 			}
 
+                //a failed verify below takes it out again.
+                long sourceLastModified = getZipEntryLastModified(zipEntry);
+                SyncManifest.instance.copied(destFile, written, sourceLastModified
+                        , ChecksumAlgorithm.hashFromComment(hashComment));
+                ResumeJournal.instance.done(destFile, written, sourceLastModified);
+
 			//verify
                 if (RunTimeProperties.instance.isVerifyAfterCopy()) {
-                    byte[] sourceHash = StrUtils.toByteArray(zipEntry.getComment());
-                    byte[] targetHash = readFileContentHash(destFile, this.rdProUI);
+                    byte[] sourceHash = ChecksumAlgorithm.hashFromComment(hashComment);
+                    byte[] targetHash;
+                    if (writtenDigest != null) {
+                        targetHash = writtenDigest.digest();
+                        //the bytes written are right, the target has to have them too. the size is not in
+                        //the header of a streamed deflated entry, the whole target is read back then.
+                        boolean readBack = writtenSamples != null
+                                ? TargetVerifier.instance.matchesSamples(destFile, writtenSamples)
+                                : Arrays.equals(targetHash, TargetVerifier.instance.readTargetHash(destFile, algorithm, this.rdProUI));
+                        if (!readBack)
+                            targetHash = null;
+                    }
+                    else if (RunTimeProperties.instance.getVerifyMode() == VerifyMode.deferred) {
+                        TargetVerifier.instance.verify(null, destFile, sourceHash, algorithm, null, this.rdProUI);
+                        return;
+                    } else
+                        targetHash = TargetVerifier.instance.readTargetHash(destFile, algorithm, this.rdProUI);
+
                     if (!Arrays.equals(sourceHash, targetHash)) {
                         rdProUI.printError("\tVerify file failed:" + destFile.getAbsolutePath());
                         //delete it.
                         destFile.delete();
+                        SyncManifest.instance.removed(destFile);
+                        ResumeJournal.instance.removed(destFile);
                     } else {
                         rdProUI.println(LogLevel.debug, "\tVerified file:" + destFile.getAbsolutePath());
                     }
                 }
-
-
-            }
-
-
-        } finally {
-            zipFile.close();
-        }
-
-
-        statistics.addFileCount(filesCount);
-
-    }
+	}
 
 	/**
 	 * Split the file with full patch into three tokens. 1. dir, 2.filename, 3. extension
@@ -1216,74 +1842,64 @@ public class FileUtils {
 
 
 	public static byte[] getHash(byte[] input) throws IOException {
+		return getHash(input, 0, input.length);
+	}
+
+	public static byte[] getHash(byte[] input, int offset, int length) throws IOException {
 		try {
-			MessageDigest digest = MessageDigest.getInstance("MD5");
-			byte[] md5 = digest.digest(input);
-			return md5;
+			MessageDigest digest = RunTimeProperties.instance.getChecksumAlgorithm().newDigest();
+			digest.update(input, offset, length);
+			return digest.digest();
 		} catch (NoSuchAlgorithmException e) {
 			throw new IOException(e);
 		}
 	}
 
+	/**
+	 * Read the whole file into the buffer, the file must fit.
+	 *
+	 * @return number of bytes read
+	 */
+	static int readFully(final Path file, final ByteBuffer buffer) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			while (buffer.hasRemaining() && channel.read(buffer) != -1) {
+				//keep reading
+			}
+			if (buffer.position() == buffer.capacity() && channel.position() < channel.size())
+				throw new IOException("File " + file + " does not fit into the buffer, size=" + channel.size());
+		}
+		return buffer.position();
+	}
+
 	public static byte[] readFileContentHash(final File source
 			, UI rdProUI) throws NoSuchAlgorithmException, IOException {
-		InputStream fis = null;
-		ReadableByteChannel inChannel = null;
-		try {
-			MessageDigest md5In = MessageDigest.getInstance("MD5");
-			fis = new DigestInputStream(new FileInputStream(source), md5In);
-			/*use channel*/
-//			inChannel = Channels.newChannel(fis);
-//			ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER);
-//
-//			int readSize = inChannel.read(buffer);
-//			while (readSize != -1) {
-//
-//				if (FastCopy.isStopThreads()) {
-//					rdProUI.println("[warn]Cancelled by user. Stoping copying.", true);
-//					rdProUI.println("\t" + Thread.currentThread().getName() + "is stopped.", true);
-//					return null;
-//				}
-//
-//				buffer.flip();
-//
-//				// write it out
-//				//				while (buffer.hasRemaining()) {
-//				//					//outChannel.write(buffer);
-//				//				}
-//				buffer.clear();
-//
-//				readSize = inChannel.read(buffer);
-//
-//			}
-
-
-//			/* compare the digest */
-//			byte[] sourceFileMD5 = md5In.digest();
-//		    return sourceFileMD5;
-
+		return readFileContentHash(source, RunTimeProperties.instance.getChecksumAlgorithm(), rdProUI);
+	}
 
+	public static byte[] readFileContentHash(final File source, final ChecksumAlgorithm algorithm
+			, UI rdProUI) throws NoSuchAlgorithmException, IOException {
+		FileChannel inChannel = null;
+		ByteBuffer buffer = null;
+		try {
+			MessageDigest md = algorithm.newDigest();
+			inChannel = new FileInputStream(source).getChannel();
+			buffer = BufferPool.instance.acquire(BufferSizePolicy.instance.getReadBufferSize(source, inChannel.size()));
 
-			/*use file inputstream*/
-			int i = 0;
-			do {
+			while (inChannel.read(buffer) != -1) {
 
 				if (RunTimeProperties.instance.isStopThreads()) {
 					rdProUI.println("[warn]Cancelled by user. readFileContentHash() stops.", true);
 					return null;
 				}
-				byte[] buf = new byte[10240];
-				i = fis.read(buf);
-			} while (i != -1);
+				buffer.flip();
+				md.update(buffer);
+				buffer.clear();
+			}
 
-			return md5In.digest();
+			return md.digest();
 		} finally {
-			try {
-				if (fis != null)
-					fis.close();
-			} catch (IOException ex) {
-				ex.printStackTrace();
-			}
+			close(inChannel);
+			BufferPool.instance.release(buffer);
 		}
 
 	}
@@ -1295,6 +1911,33 @@ public class FileUtils {
 	 * @param targetFile
 	 * @return
 	 */
+	/**
+	 * The same as overrideTargetFile(File, File) with the attributes already read.
+	 *
+	 * @param targetAttributes null when the target does not exist.
+	 */
+	public static boolean overrideTargetFile(final BasicFileAttributes srcAttributes, final BasicFileAttributes targetAttributes) {
+		if (targetAttributes == null)
+			return RunTimeProperties.instance.overrideTarget || RunTimeProperties.instance.isOverwriteIfNewerOrDifferent();
+		return overrideTargetFile(srcAttributes.lastModifiedTime().toMillis(), srcAttributes.size()
+				, targetAttributes.lastModifiedTime().toMillis(), targetAttributes.size());
+	}
+
+	/**
+	 * Decide on an existing target by the times and sizes.
+	 */
+	public static boolean overrideTargetFile(final long srcLastModified, final long srcSize
+			, final long targetLastModified, final long targetSize) {
+
+		if (RunTimeProperties.instance.overrideTarget)
+			return true;
+
+		if (RunTimeProperties.instance.isOverwriteIfNewerOrDifferent()) {
+			return srcLastModified - targetLastModified > 1000 || srcSize != targetSize;
+		} else
+			return false;
+	}
+
 	public static boolean overrideTargetFile(final File srcFile, final File targetFile) {
 
 		if (RunTimeProperties.instance.overrideTarget)
@@ -0,0 +1,186 @@
+/*
+ * Copyright (c) 2014- MHISoft LLC and/or its affiliates. All rights reserved.
+ * Licensed to MHISoft LLC under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. MHISoft LLC licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.mhisoft.fc;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import org.mhisoft.fc.ui.UI;
+
+/**
+ * Description: copy through memory mapped windows of the source and the target.
+ * The bytes go from the source pages to the target pages in the page cache, no copy
+ * into a buffer of our own in between. At most WINDOW_SIZE of each file is mapped at a time,
+ * each window is unmapped as soon as it is copied (JDK 9+, left to the GC before). The source
+ * digest for -verify is taken on the mapped source window, the same way the buffered copy digests its buffer.
+ * <p>
+ * Not for the sources changed while they are copied: a source cut shorter under a mapped window
+ * faults on the access. The size is checked for every window and the fault is turned into an IOException,
+ * but the file fails instead of being copied as it is, use buffered or transferTo for such files.
+ *
+ * @author Tony Xue
+ * @since Oct, 2026
+ */
+public class MappedCopyStrategy implements FileCopyStrategy {
+
+	static final long WINDOW_SIZE = 16 * 1024 * 1024;
+
+	public static final MappedCopyStrategy instance = new MappedCopyStrategy();
+
+	//sun.misc.Unsafe.invokeCleaner(ByteBuffer), unmaps a window right away.
+	private static final Object UNSAFE;
+	private static final Method INVOKE_CLEANER;
+
+	static {
+		Object unsafe = null;
+		Method invokeCleaner = null;
+		try {
+			Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+			Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+			theUnsafe.setAccessible(true);
+			unsafe = theUnsafe.get(null);
+			invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			//before JDK 9, the GC unmaps the windows.
+			invokeCleaner = null;
+		}
+		UNSAFE = unsafe;
+		INVOKE_CLEANER = invokeCleaner;
+	}
+
+	@Override
+	public FileUtils.CopyFileResultVO copy(final File source, final File target, FileCopyStatistics statistics, final UI rdProUI)
+			throws IOException, NoSuchAlgorithmException {
+
+		FileUtils.CopyFileResultVO vo = new FileUtils.CopyFileResultVO();
+		FileChannel inChannel = null, outChannel = null;
+		MessageDigest sourceDigest = null;
+		TargetVerifier.SampledDigest sourceSamples = null;
+		long totalFileSize;
+		long startTime, endTime;
+
+		rdProUI.showProgress(0, statistics);
+		startTime = System.currentTimeMillis();
+
+		try {
+			inChannel = FileChannel.open(source.toPath(), StandardOpenOption.READ);
+			//READ is needed to map the target read-write. not truncated here, a partial target may be continued with -resume.
+			outChannel = FileChannel.open(target.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+			totalFileSize = inChannel.size();
+
+			long position = ResumeJournal.instance.getResumeOffset(source, target, totalFileSize);
+			if (position == 0) {
+				if (TargetVerifier.instance.isSourceDigestNeeded())
+					sourceDigest = RunTimeProperties.instance.getChecksumAlgorithm().newDigest();
+				sourceSamples = TargetVerifier.instance.newSampledDigest(totalFileSize);
+			}
+			long lastCheckpoint = position;
+			long sourceLastModified = ResumeJournal.instance.isEnabled() ? source.lastModified() : 0;
+			//continue the partial target from the offset, the mapping extends it window by window.
+			outChannel.truncate(position);
+			while (position < totalFileSize) {
+
+				if (RunTimeProperties.instance.isStopThreads()) {
+					rdProUI.println("[warn]Cancelled by user. Stoping copying.", true);
+					ResumeJournal.instance.interrupted(target, totalFileSize, sourceLastModified, outChannel, position, rdProUI);
+					outChannel = null;
+					vo.interrupted = true;
+					if (RunTimeProperties.instance.isDebug())
+						rdProUI.println("\t" + Thread.currentThread().getName() + "is stopped.", true);
+					return vo;
+				}
+
+				if (position - lastCheckpoint >= ResumeJournal.CHECKPOINT_BYTES) {
+					//the windows copied are unmapped, forcing the channel flushes their pages.
+					ResumeJournal.instance.checkpoint(target, totalFileSize, sourceLastModified, outChannel, position);
+					lastCheckpoint = position;
+				}
+
+				long length = Math.min(WINDOW_SIZE, totalFileSize - position);
+				if (inChannel.size() < position + length)
+					throw new IOException("The source shrank at position " + position + " while copying " + source.getAbsolutePath());
+				MappedByteBuffer sourceWindow = null, targetWindow = null;
+				try {
+					sourceWindow = inChannel.map(FileChannel.MapMode.READ_ONLY, position, length);
+					targetWindow = outChannel.map(FileChannel.MapMode.READ_WRITE, position, length);
+
+					//digest the mapped source in flight
+					if (sourceDigest != null)
+						sourceDigest.update(sourceWindow.duplicate());
+					if (sourceSamples != null)
+						sourceSamples.update(position, sourceWindow);
+
+					targetWindow.put(sourceWindow);
+				} catch (InternalError e) {
+					//SIGBUS, the source was cut short under the mapped window.
+					throw new IOException("Can not read the mapped source at position " + position
+							+ ", it changed while copying " + source.getAbsolutePath(), e);
+				} finally {
+					unmap(sourceWindow);
+					unmap(targetWindow);
+				}
+				position += length;
+
+				rdProUI.showProgress((int) (position * 100 / totalFileSize), statistics);
+			}
+
+		} finally {
+			FileUtils.close(inChannel);
+			FileUtils.close(outChannel);
+		}
+
+		//verify the target against the source digest taken on the mapped windows.
+		if (RunTimeProperties.instance.isVerifyAfterCopy()) {
+			vo.digest = sourceDigest == null ? null : sourceDigest.digest();
+			vo.verified = TargetVerifier.instance.verify(source, target, vo.digest, sourceSamples, rdProUI);
+		}
+
+		endTime = System.currentTimeMillis();
+		statistics.addToTotalFileSizeAndTime(totalFileSize, (endTime - startTime));
+		statistics.incrementFileCount();
+		rdProUI.showProgress(100, statistics);
+
+		vo.took = (endTime - startTime);
+		return vo;
+	}
+
+	/**
+	 * Unmap the window now instead of when the GC gets to it, the buffer must not be used after.
+	 */
+	static void unmap(final MappedByteBuffer window) {
+		if (window == null || INVOKE_CLEANER == null)
+			return;
+		try {
+			INVOKE_CLEANER.invoke(UNSAFE, window);
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			//left to the GC.
+			if (RunTimeProperties.instance.isDebug())
+				e.printStackTrace();
+		}
+	}
+}
@@ -19,18 +19,25 @@
  */
 package org.mhisoft.fc;
 
+import java.io.File;
 import java.util.List;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.mhisoft.fc.ui.UI;
 
 /**
- * Description: provide the basic common executor service
+ * Description: provide the basic common executor service.
+ * The number of tasks queued or running is capped at the high-water mark, addTask() blocks
+ * the producer (the walker) until the workers catch up so the heap stays flat on huge trees.
  *
  * @author Tony Xue
  * @since Oct, 2014
@@ -41,10 +48,35 @@ public class MultiThreadExecutorService {
 	private UI rdProUI;
 	protected ThreadFactory threadFactory;
 
+	//backpressure, one permit per task queued or running.
+	private final int highWaterMark;
+	private final Semaphore permits;
+	private final SchedulingPolicy policy;
+	private final AtomicInteger peakQueueDepth = new AtomicInteger(0);
+	private final AtomicLong blockedCount = new AtomicLong(0);
+	private final AtomicLong blockedMillis = new AtomicLong(0);
+	//the tasks queued or running, the shutdown waits on it instead of polling.
+	private final CompletionTracker tracker = new CompletionTracker();
+
 
 	//creating the ThreadPoolExecutor
 	public MultiThreadExecutorService(final int corePoolSize, final UI _rdProUI) {
+		this(corePoolSize, RunTimeProperties.instance.getMaxQueuedTasks(), _rdProUI);
+	}
+
+	public MultiThreadExecutorService(final int corePoolSize, final int highWaterMark, final UI _rdProUI) {
+		this(corePoolSize, highWaterMark, SchedulingPolicy.fifo, _rdProUI);
+	}
+
+	/**
+	 * @param policy the order the workers take the tasks in.
+	 */
+	public MultiThreadExecutorService(final int corePoolSize, final int highWaterMark, final SchedulingPolicy policy
+			, final UI _rdProUI) {
 		this.rdProUI = _rdProUI;
+		this.highWaterMark = highWaterMark;
+		this.permits = new Semaphore(highWaterMark);
+		this.policy = policy;
 
 		threadFactory =new ThreadFactory() {
 			public Thread newThread(Runnable r) {
@@ -55,7 +87,8 @@ public class MultiThreadExecutorService {
 		};
 
 		if (RunTimeProperties.instance.isDebug()) {
-			_rdProUI.println("Create the executor, corePoolSize=" + corePoolSize );
+			_rdProUI.println("Create the executor, corePoolSize=" + corePoolSize + ", highWaterMark=" + highWaterMark
+					+ ", policy=" + policy);
 		}
 		createExecutor(corePoolSize);
 
@@ -68,19 +101,96 @@ public class MultiThreadExecutorService {
 				//LinkedBlockingQueue is an Unbounded queues.
 				// Thus, no more than corePoolSize threads will ever be created.
 				// (And the value of the maximumPoolSize therefore doesn't have any effect.)
-				, new LinkedBlockingQueue<Runnable>()
+				// The queue is bounded by the permits in addTask() instead.
+				, newWorkQueue(corePoolSize)
 				, threadFactory
 				, new RejectedExecutionHandler() {
 			@Override
 			public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
 				rdProUI.println("[warn]rejected thread:" + r.toString());
+				if (r instanceof BoundedTask)
+					((BoundedTask) r).release();
 			}
 		});
+		//the first tasks would go straight to the new threads, passing the scheduler by.
+		if (policy != SchedulingPolicy.fifo)
+			executor.prestartAllCoreThreads();
+	}
+
+	/**
+	 * FIFO as always, the others go through the TaskScheduleQueue.
+	 */
+	private BlockingQueue<Runnable> newWorkQueue(final int corePoolSize) {
+		if (policy == SchedulingPolicy.fifo)
+			return new LinkedBlockingQueue<Runnable>();
+		//the queue leaves at least one worker of the pool for the large files.
+		TaskScheduleQueue queue = new TaskScheduleQueue(policy, RunTimeProperties.instance.getReservedSmallFileWorkers());
+		queue.setPoolSize(corePoolSize);
+		return queue;
+	}
+
+	/**
+	 * Gives the permit back when the task is done.
+	 */
+	private class BoundedTask implements Runnable, ScheduledTask {
+		private final Runnable task;
+
+		BoundedTask(final Runnable task) {
+			this.task = task;
+		}
+
+		@Override
+		public void run() {
+			try {
+				task.run();
+			} finally {
+				release();
+			}
+		}
+
+		void release() {
+			permits.release();
+			tracker.arrive();
+		}
+
+		@Override
+		public long getScheduleSize() {
+			return task instanceof ScheduledTask ? ((ScheduledTask) task).getScheduleSize() : -1;
+		}
+
+		@Override
+		public File getScheduleSource() {
+			return task instanceof ScheduledTask ? ((ScheduledTask) task).getScheduleSource() : null;
+		}
+
+		@Override
+		public File getScheduleTarget() {
+			return task instanceof ScheduledTask ? ((ScheduledTask) task).getScheduleTarget() : null;
+		}
+
+		@Override
+		public String toString() {
+			return task.toString();
+		}
 	}
 
 	public void setCoreThreadSize(final int corePoolSize){
-		executor.setCorePoolSize(corePoolSize);
+		//core and max are kept the same, the max must not be below the core at any time.
+		if (corePoolSize > executor.getMaximumPoolSize()) {
+			executor.setMaximumPoolSize(corePoolSize);
+			executor.setCorePoolSize(corePoolSize);
+		} else {
+			executor.setCorePoolSize(corePoolSize);
+			executor.setMaximumPoolSize(corePoolSize);
+		}
+		if (executor.getQueue() instanceof TaskScheduleQueue)
+			((TaskScheduleQueue) executor.getQueue()).setPoolSize(corePoolSize);
+		if (policy != SchedulingPolicy.fifo)
+			executor.prestartAllCoreThreads();
+	}
 
+	public SchedulingPolicy getPolicy() {
+		return policy;
 	}
 
 	public java.util.concurrent.ExecutorService getExecutor() {
@@ -98,23 +208,133 @@ public class MultiThreadExecutorService {
 //		executor.shutdown();
 //	}
 
+	/**
+	 * Queue the task, blocks while the high-water mark is reached.
+	 * Gives up and drops the task when the copy is cancelled or the pool is shut down.
+	 */
 	public  void addTask(Runnable task) {
-		this.executor.execute(task);
+		if (!permits.tryAcquire()) {
+			long t1 = System.currentTimeMillis();
+			blockedCount.incrementAndGet();
+			try {
+				while (!permits.tryAcquire(200, TimeUnit.MILLISECONDS)) {
+					if (RunTimeProperties.instance.isStopThreads() || isShutdown())
+						return;
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			} finally {
+				blockedMillis.addAndGet(System.currentTimeMillis() - t1);
+			}
+		}
+
+		tracker.register();
+		execute(new BoundedTask(task));
+
+		int depth = getQueueDepth();
+		int peak;
+		while (depth > (peak = peakQueueDepth.get()) && !peakQueueDepth.compareAndSet(peak, depth)) {
+			//retry
+		}
+	}
+
+	/**
+	 * Queue the task only when it can be done without waiting.
+	 *
+	 * @return false when the queue is at the high-water mark or the pool is shut down.
+	 */
+	public boolean offerTask(Runnable task) {
+		if (isShutdown() || !permits.tryAcquire())
+			return false;
+		tracker.register();
+		execute(new BoundedTask(task));
+		return true;
+	}
+
+	/**
+	 * Hands the task, holding its permit, to the executor.
+	 */
+	protected void execute(final Runnable boundedTask) {
+		getExecutor().execute(boundedTask);
+	}
+
+	protected boolean isShutdown() {
+		return getExecutor().isShutdown();
+	}
+
+	public int getCorePoolSize() {
+		return executor.getCorePoolSize();
+	}
+
+	/**
+	 * @return the workers a copy from the source to the target would share the pool with.
+	 */
+	public int getCorePoolSize(final File source, final File target) {
+		return getCorePoolSize();
+	}
+
+	public int getHighWaterMark() {
+		return highWaterMark;
 	}
 
+	/**
+	 * @return the number of tasks waiting in the queue
+	 */
+	public int getQueueDepth() {
+		return executor.getQueue().size();
+	}
+
+	public int getPeakQueueDepth() {
+		return peakQueueDepth.get();
+	}
+
+	/**
+	 * @return how many times addTask() had to wait for the workers
+	 */
+	public long getBlockedCount() {
+		return blockedCount.get();
+	}
+
+	public long getBlockedMillis() {
+		return blockedMillis.get();
+	}
+
+	public String printQueueStats() {
+		return "Queue depth:" + getQueueDepth() + ", peak:" + getPeakQueueDepth() + ", high-water mark:" + highWaterMark
+				+ ", producer blocked:" + getBlockedCount() + " times, " + getBlockedMillis() + "ms";
+	}
+
+	public CompletionTracker getTracker() {
+		return tracker;
+	}
+
+	/**
+	 * The tasks of the upstream pool add tasks to this one, the shutdown of this pool waits for them as well.
+	 */
+	public void dependsOn(final MultiThreadExecutorService upstream) {
+		tracker.dependsOn(upstream.getTracker());
+	}
+
+	/**
+	 * Returns the moment the last task is done.
+	 */
 	public void shutDownandWaitForAllThreadsToComplete() {
-		executor.shutdown();
-		while (!this.executor.isTerminated()) {
-			try {
-				Thread.sleep(500);
-			} catch (InterruptedException e) {
-				e.printStackTrace();
+		try {
+			//the running tasks may still offer helper tasks, shut down only when nothing is queued or running.
+			tracker.awaitIdle();
+			getExecutor().shutdown();
+			while (!getExecutor().awaitTermination(1, TimeUnit.MINUTES)) {
+				rdProUI.println(LogLevel.debug, "Waiting for the workers to exit.");
 			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
 		}
 	}
 
 	public void shutDown() {
-		List<Runnable> pendingWorkers =  executor.shutdownNow();
+		tracker.cancel();
+		List<Runnable> pendingWorkers =  getExecutor().shutdownNow();
 	}
 
 }
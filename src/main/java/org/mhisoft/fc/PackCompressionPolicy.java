@@ -0,0 +1,177 @@
+/*
+ * Copyright (c) 2014- MHISoft LLC and/or its affiliates. All rights reserved.
+ * Licensed to MHISoft LLC under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. MHISoft LLC licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.mhisoft.fc;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Deflater;
+
+/**
+ * Description: pick the compression level of the small file zips.
+ * The zip is there to batch the small files, deflating it only pays when the link is slower than the deflater,
+ * auto compares the deflate throughput and ratio measured on the zips with the copy speed measured on the link.
+ *
+ * @author Tony Xue
+ * @since Oct, 2026
+ */
+public class PackCompressionPolicy {
+
+	//the entries are stored as they are, not deflated.
+	public static final int STORED = -1;
+	public static final int AUTO = -2;
+
+	//auto deflates every this many zips to keep the deflate measurements current.
+	static final int PROBE_EVERY = 16;
+	//the copies smaller than this say more about the file system than about the link.
+	static final long MIN_TRANSFER_SAMPLE_SIZE = 64 * 1024;
+
+	public static PackCompressionPolicy instance = new PackCompressionPolicy();
+
+	private final AtomicLong deflateInBytes = new AtomicLong();
+	private final AtomicLong deflateOutBytes = new AtomicLong();
+	private final AtomicLong deflateNanos = new AtomicLong();
+	private final AtomicLong transferBytes = new AtomicLong();
+	private final AtomicLong transferMillis = new AtomicLong();
+	private final AtomicLong packages = new AtomicLong();
+	private final AtomicLong storedPackages = new AtomicLong();
+
+
+	public void reset() {
+		deflateInBytes.set(0);
+		deflateOutBytes.set(0);
+		deflateNanos.set(0);
+		transferBytes.set(0);
+		transferMillis.set(0);
+		packages.set(0);
+		storedPackages.set(0);
+	}
+
+	/**
+	 * @param s auto, stored, fast, best or a deflate level 0-9
+	 */
+	public static int fromString(final String s) {
+		if (s == null || s.equalsIgnoreCase("auto"))
+			return AUTO;
+		if (s.equalsIgnoreCase("stored"))
+			return STORED;
+		if (s.equalsIgnoreCase("fast"))
+			return Deflater.BEST_SPEED;
+		if (s.equalsIgnoreCase("best"))
+			return Deflater.BEST_COMPRESSION;
+		int level = Integer.parseInt(s);
+		if (level < Deflater.NO_COMPRESSION || level > Deflater.BEST_COMPRESSION)
+			throw new IllegalArgumentException("compression level " + s);
+		return level;
+	}
+
+	public static String toString(final int level) {
+		if (level == AUTO)
+			return "auto";
+		if (level == STORED)
+			return "stored";
+		return String.valueOf(level);
+	}
+
+
+	/**
+	 * @return the level for the next zip, STORED or a deflate level. The zip is counted by useLevel().
+	 */
+	public int peekLevel() {
+		int configured = RunTimeProperties.instance.getPackCompressionLevel();
+		return configured == AUTO ? chooseLevel(packages.get()) : configured;
+	}
+
+	/**
+	 * A zip is made with the level, chosen by the PackingCostModel.
+	 *
+	 * @return the level
+	 */
+	public int useLevel(final int level) {
+		packages.incrementAndGet();
+		if (level == STORED)
+			storedPackages.incrementAndGet();
+		return level;
+	}
+
+	int chooseLevel(final long n) {
+		double deflateSpeed = getDeflateSpeed();
+		double linkSpeed = getLinkSpeed();
+		//measure the deflater first and then now and then.
+		if (deflateSpeed <= 0 || n % PROBE_EVERY == 0)
+			return Deflater.BEST_SPEED;
+		if (linkSpeed <= 0)
+			return STORED;
+		//deflating S bytes takes S/D and saves S(1-r)/L on the link.
+		return deflateSpeed * (1 - getDeflateRatio()) > linkSpeed ? Deflater.BEST_SPEED : STORED;
+	}
+
+	/**
+	 * @param inBytes the bytes given to the deflater
+	 * @param outBytes the bytes it gave back
+	 */
+	public void recordDeflate(final long inBytes, final long outBytes, final long nanos) {
+		deflateInBytes.addAndGet(inBytes);
+		deflateOutBytes.addAndGet(outBytes);
+		deflateNanos.addAndGet(nanos);
+	}
+
+	public void recordTransfer(final long bytes, final long millis) {
+		if (bytes < MIN_TRANSFER_SAMPLE_SIZE)
+			return;
+		transferBytes.addAndGet(bytes);
+		//a copy faster than the clock still took some time.
+		transferMillis.addAndGet(Math.max(1, millis));
+	}
+
+	/**
+	 * @return bytes/ms, 0 when not measured yet.
+	 */
+	double getDeflateSpeed() {
+		long nanos = deflateNanos.get();
+		return nanos == 0 ? 0 : deflateInBytes.get() * 1000000d / nanos;
+	}
+
+	/**
+	 * @return the deflated size over the original size.
+	 */
+	double getDeflateRatio() {
+		long in = deflateInBytes.get();
+		return in == 0 ? 1 : (double) deflateOutBytes.get() / in;
+	}
+
+	/**
+	 * @return bytes/ms, 0 when not measured yet.
+	 */
+	double getLinkSpeed() {
+		long millis = transferMillis.get();
+		return millis == 0 ? 0 : (double) transferBytes.get() / millis;
+	}
+
+	private static String mbPerSecond(final double bytesPerMillis) {
+		return bytesPerMillis <= 0 ? "NA" : String.format("%.1f Mb/s", bytesPerMillis * 1000 / (1024 * 1024));
+	}
+
+	public String printSummary() {
+		return "Small file zips compression:" + toString(RunTimeProperties.instance.getPackCompressionLevel())
+				+ ", zips:" + packages.get() + ", stored:" + storedPackages.get()
+				+ ", deflate speed:" + mbPerSecond(getDeflateSpeed())
+				+ String.format(", ratio:%.2f", getDeflateRatio())
+				+ ", link speed:" + mbPerSecond(getLinkSpeed());
+	}
+}
@@ -20,6 +20,8 @@
 package org.mhisoft.fc;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.attribute.BasicFileAttributes;
 
 import org.mhisoft.fc.ui.UI;
 
@@ -38,27 +40,70 @@ public class PackageSmallFilesThread implements Runnable {
 
 
 	private MultiThreadExecutorService fileCopyWorkersPool;
+	private TargetDirectoryIndex targetIndex;
+	private DirectorySnapshot snapshot;
+	//what the cost model said the zip would take, -1 when not asked.
+	private long predictedNanos = -1;
+	//the level the cost model chose, AUTO for the PackCompressionPolicy to pick.
+	private int compressionLevel = PackCompressionPolicy.AUTO;
 
 
 	public PackageSmallFilesThread(UI rdProUI
 			, String sSourceDir, String sTargetDir
 			, FileCopyStatistics frs
 			, MultiThreadExecutorService fileCopyWorkersPool) {
+		this(rdProUI, sSourceDir, sTargetDir, null, frs, fileCopyWorkersPool);
+	}
+
+	/**
+	 * @param targetIndex the target dir listed by the walker, null to check the target files one by one.
+	 */
+	public PackageSmallFilesThread(UI rdProUI
+			, String sSourceDir, String sTargetDir, TargetDirectoryIndex targetIndex
+			, FileCopyStatistics frs
+			, MultiThreadExecutorService fileCopyWorkersPool) {
+		this(rdProUI, sSourceDir, sTargetDir, targetIndex, null, frs, fileCopyWorkersPool);
+	}
+
+	/**
+	 * @param snapshot the source dir listed by the walker, null to list it here.
+	 */
+	public PackageSmallFilesThread(UI rdProUI
+			, String sSourceDir, String sTargetDir, TargetDirectoryIndex targetIndex, DirectorySnapshot snapshot
+			, FileCopyStatistics frs
+			, MultiThreadExecutorService fileCopyWorkersPool) {
 		this.sSourceDir = sSourceDir;
 		this.sTargetDir = sTargetDir;
+		this.targetIndex = targetIndex;
+		this.snapshot = snapshot;
 		this.statistics = frs;
 		this.rdProUI = rdProUI;
 		this.fileCopyWorkersPool = fileCopyWorkersPool;
 	}
 
+	public void setPredictedNanos(long predictedNanos) {
+		this.predictedNanos = predictedNanos;
+	}
+
+	public void setCompressionLevel(int compressionLevel) {
+		this.compressionLevel = compressionLevel;
+	}
+
 	@Override
 	public void run() {
 
-		if (!RunTimeProperties.instance.isStopThreads()) {
+		if (!RunTimeProperties.instance.isStopThreads() && RunTimeProperties.instance.isStreamSmallFiles()) {
+			streamSmallFiles();
+		}
+		else if (!RunTimeProperties.instance.isStopThreads()) {
 
 			FileUtils.CompressedPackageVO compressedPackageVO = null;
+			long t0 = System.nanoTime();
 			try {
-				compressedPackageVO = FileUtils.instance.compressDirectory(sSourceDir, sTargetDir, false, FileCopierService.SMALL_FILE_SIZE);
+				int level = compressionLevel == PackCompressionPolicy.AUTO ? PackCompressionPolicy.instance.peekLevel() : compressionLevel;
+				compressedPackageVO = FileUtils.instance.compressDirectory(sSourceDir, sTargetDir, false, FileCopierService.SMALL_FILE_SIZE, targetIndex, snapshot, level);
+				compressedPackageVO.packNanos = System.nanoTime() - t0;
+				compressedPackageVO.predictedNanos = predictedNanos;
 			} catch (Exception e) {
 				rdProUI.printError("compressDirectory failed for " + sSourceDir, e);
 				fallbackToCopyFilesDirectly();
@@ -105,32 +150,68 @@ public class PackageSmallFilesThread implements Runnable {
 
 	}
 
+	/**
+	 * Zip the small files in memory and have the copy workers unpack them at the target,
+	 * the bundles are queued as they fill up.
+	 */
+	private void streamSmallFiles() {
+		long t1 = System.currentTimeMillis();
+		try {
+			int n = FileUtils.instance.streamDirectory(sSourceDir, sTargetDir, FileCopierService.SMALL_FILE_SIZE, targetIndex
+					, snapshot, statistics, fileCopyWorkersPool);
+			if (RunTimeProperties.instance.isDebug())
+				rdProUI.println("[PackageSmallFilesThread] Streamed " + n + " files of " + sSourceDir + " to " + sTargetDir
+						+ ", took " + (System.currentTimeMillis() - t1) + "ms");
+		} catch (Exception e) {
+			//the bundles queued already are unpacked, the files not packed yet are left to the next run.
+			rdProUI.printError("Streaming the small files failed for " + sSourceDir, e);
+		}
+	}
+
+	/**
+	 * Copy the small files the zip was for one by one, the walker copies the large ones.
+	 */
 	private void fallbackToCopyFilesDirectly() {
-		File[] files = new File(sSourceDir).listFiles();
 		rdProUI.println(LogLevel.debug, "Fall back to copy files directly for dir:" + sSourceDir );
-		if (files!=null) {
-			for (File childFile : files) {
-
-				if (RunTimeProperties.instance.isStopThreads()) {
-					rdProUI.println("[PackageSmallFilesThread]\n" + Thread.currentThread().getName() + "is stopped.");
-					return;
-				}
+		DirectorySnapshot dir = snapshot;
+		if (dir == null) {
+			try {
+				dir = DirectorySnapshot.take(new File(sSourceDir), statistics, rdProUI);
+			} catch (IOException e) {
+				rdProUI.printError("Can not list the directory " + sSourceDir + ": " + e.getMessage());
+				return;
+			}
+		}
 
+		for (DirectoryScanner.Entry childFile : dir.getSmallFiles(FileCopierService.SMALL_FILE_SIZE)) {
 
-				String newDestFile = sTargetDir + File.separator + childFile.getName();
-				File targetFile = new File(newDestFile);
-				if (!targetFile.exists() || FileUtils.overrideTargetFile(childFile, targetFile)) {
-					CopyFileThread t = new CopyFileThread(rdProUI
-							, childFile, targetFile, null, statistics);
-					fileCopyWorkersPool.addTask(t);
-				} else {
-						rdProUI.println(LogLevel.debug, String.format("\tFile %s exists on the target dir, skipped. ", newDestFile));
-				}
+			if (RunTimeProperties.instance.isStopThreads()) {
+				rdProUI.println("[PackageSmallFilesThread]\n" + Thread.currentThread().getName() + "is stopped.");
+				return;
 			}
 
+			String newDestFile = sTargetDir + File.separator + childFile.getName();
+			File targetFile = new File(newDestFile);
+			if (shouldCopy(childFile, targetFile)) {
+				SyncManifest.instance.scheduled(targetFile);
+				CopyFileThread t = new CopyFileThread(rdProUI
+						, childFile.getFile(), targetFile, childFile.getAttributes(), null, statistics);
+				fileCopyWorkersPool.addTask(t);
+			} else {
+				rdProUI.println(LogLevel.debug, String.format("\tFile %s exists on the target dir, skipped. ", newDestFile));
+			}
 		}
 
 	}
 
+	private boolean shouldCopy(final DirectoryScanner.Entry source, final File targetFile) {
+		if (RunTimeProperties.instance.isOverrideTarget())
+			return true;
+		if (targetIndex != null)
+			return targetIndex.shouldCopy(source.getName(), source.getAttributes());
+		BasicFileAttributes targetAttributes = DirectoryScanner.readAttributes(targetFile, statistics);
+		return targetAttributes == null || FileUtils.overrideTargetFile(source.getAttributes(), targetAttributes);
+	}
+
 
 }
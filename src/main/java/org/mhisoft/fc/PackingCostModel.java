@@ -0,0 +1,270 @@
+/*
+ * Copyright (c) 2014- MHISoft LLC and/or its affiliates. All rights reserved.
+ * Licensed to MHISoft LLC under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. MHISoft LLC licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.mhisoft.fc;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Deflater;
+
+/**
+ * Description: decide per directory whether its small files are copied one by one or packed,
+ * from the costs measured during the run instead of fixed file counts and sizes.
+ * <pre>
+ *   direct  = n * F + S / L
+ *   stored  = n * (P + U) + F + S / L
+ *   deflate = n * (P + U) + F + S / D + S * r / L
+ * </pre>
+ * n files of S bytes, F the cost of a small file copied on its own beyond its bytes, L the link speed,
+ * P and U the cost of a file packed on the source and unpacked on the target, D and r the deflate speed and ratio.
+ * F is learned from the small files copied directly, P and U from the zips, L, D and r come from the
+ * PackCompressionPolicy, which picks stored or deflate by the same terms and probes the deflater now and
+ * then. The zip is made with the level of the choice, see levelOf(). The fixed rules apply until
+ * there are enough samples of both, and the losing choice is tried now and then to keep them current.
+ *
+ * @author Tony Xue
+ * @since Oct, 2026
+ */
+public class PackingCostModel {
+
+	public enum Choice {
+		direct, stored, deflate
+	}
+
+	//the samples of each side before the model is trusted.
+	static final int MIN_SAMPLES = 32;
+	//every this many decisions the other choice is taken, on the directories with few files only.
+	static final int PROBE_EVERY = 16;
+	static final int MAX_PROBE_FILES = 64;
+
+	public static PackingCostModel instance = new PackingCostModel();
+
+	private final AtomicLong decisions = new AtomicLong();
+	private final AtomicLong[] chosen = {new AtomicLong(), new AtomicLong(), new AtomicLong()};
+
+	//the small files copied on their own.
+	private final AtomicLong directFiles = new AtomicLong();
+	private final AtomicLong directBytes = new AtomicLong();
+	private final AtomicLong directNanos = new AtomicLong();
+	private final AtomicLong packFiles = new AtomicLong();
+	private final AtomicLong packNanos = new AtomicLong();
+	private final AtomicLong unpackFiles = new AtomicLong();
+	private final AtomicLong unpackNanos = new AtomicLong();
+
+	//what the model said against what it took.
+	private final AtomicLong directPredictedNanos = new AtomicLong();
+	private final AtomicLong directActualNanos = new AtomicLong();
+	private final AtomicLong bundles = new AtomicLong();
+	private final AtomicLong bundlePredictedNanos = new AtomicLong();
+	private final AtomicLong bundleActualNanos = new AtomicLong();
+
+
+	public void reset() {
+		decisions.set(0);
+		for (AtomicLong n : chosen)
+			n.set(0);
+		directFiles.set(0);
+		directBytes.set(0);
+		directNanos.set(0);
+		packFiles.set(0);
+		packNanos.set(0);
+		unpackFiles.set(0);
+		unpackNanos.set(0);
+		directPredictedNanos.set(0);
+		directActualNanos.set(0);
+		bundles.set(0);
+		bundlePredictedNanos.set(0);
+		bundleActualNanos.set(0);
+	}
+
+
+	/**
+	 * @param files        the small files of the directory
+	 * @param bytes        their total size
+	 * @param sharedBundle the files go in a bundle with the other directories, -packTree, it costs nothing of its own.
+	 */
+	public Choice choose(final long files, final long bytes, final boolean sharedBundle) {
+		if (files == 0)
+			return Choice.direct;
+		long n = decisions.incrementAndGet();
+		Choice ret = decide(files, bytes, sharedBundle, n);
+		chosen[ret.ordinal()].incrementAndGet();
+		return ret;
+	}
+
+	Choice decide(final long files, final long bytes, final boolean sharedBundle, final long n) {
+		if (files == 0)
+			return Choice.direct;
+		boolean probe = n % PROBE_EVERY == 0 && files <= MAX_PROBE_FILES;
+
+		if (!isWarmedUp()) {
+			Choice fixed = sharedBundle || isPackedByTheFixedRules(files, bytes) ? bundleChoice() : Choice.direct;
+			//try the side short of samples.
+			if (probe && fixed != Choice.direct && directFiles.get() < MIN_SAMPLES)
+				return Choice.direct;
+			if (probe && fixed == Choice.direct && files >= 2 && packFiles.get() < MIN_SAMPLES)
+				return bundleChoice();
+			return fixed;
+		}
+
+		Choice bundle = bundleChoice();
+		Choice ret = predict(bundle, files, bytes, sharedBundle) < predict(Choice.direct, files, bytes, sharedBundle)
+				? bundle : Choice.direct;
+		if (probe && files >= 2)
+			return ret == Choice.direct ? bundle : Choice.direct;
+		return ret;
+	}
+
+	/**
+	 * The rules used before the cost model, 3 small files or 2 making up more than a zip entry's worth.
+	 */
+	static boolean isPackedByTheFixedRules(final long files, final long bytes) {
+		return files >= 3 || (files >= 2 && bytes >= 4096 / 0.7);
+	}
+
+	/**
+	 * Stored or deflate, the level the PackCompressionPolicy gives the next zip.
+	 */
+	private Choice bundleChoice() {
+		//the streamed bundles are not zips on the disk, they are stored.
+		if (RunTimeProperties.instance.isStreamSmallFiles())
+			return Choice.stored;
+		return PackCompressionPolicy.instance.peekLevel() == PackCompressionPolicy.STORED ? Choice.stored : Choice.deflate;
+	}
+
+	/**
+	 * @return the level to make the zip of a choice with, STORED or the deflate level.
+	 */
+	public static int levelOf(final Choice choice) {
+		if (choice != Choice.deflate)
+			return PackCompressionPolicy.STORED;
+		int configured = RunTimeProperties.instance.getPackCompressionLevel();
+		return configured >= 0 ? configured : Deflater.BEST_SPEED;
+	}
+
+	boolean isWarmedUp() {
+		return directFiles.get() >= MIN_SAMPLES && packFiles.get() >= MIN_SAMPLES && unpackFiles.get() >= MIN_SAMPLES;
+	}
+
+	/**
+	 * @return the predicted nanos.
+	 */
+	public long predict(final Choice choice, final long files, final long bytes, final boolean sharedBundle) {
+		double transfer = bytesNanos(bytes, PackCompressionPolicy.instance.getLinkSpeed());
+		if (choice == Choice.direct)
+			return (long) (files * getFileNanos() + transfer);
+
+		double ret = files * (getPackNanos() + getUnpackNanos());
+		if (!sharedBundle)
+			ret += getFileNanos();
+		if (choice == Choice.deflate) {
+			ret += bytesNanos(bytes, PackCompressionPolicy.instance.getDeflateSpeed());
+			transfer *= PackCompressionPolicy.instance.getDeflateRatio();
+		}
+		return (long) (ret + transfer);
+	}
+
+	/**
+	 * @param bytesPerMillis 0 when not measured, the bytes cost nothing then.
+	 */
+	private static double bytesNanos(final long bytes, final double bytesPerMillis) {
+		return bytesPerMillis <= 0 ? 0 : bytes * 1000000d / bytesPerMillis;
+	}
+
+	/**
+	 * @return F, the nanos a small file costs beyond its bytes when copied on its own.
+	 */
+	double getFileNanos() {
+		long n = directFiles.get();
+		if (n == 0)
+			return 0;
+		double ret = (directNanos.get() - bytesNanos(directBytes.get(), PackCompressionPolicy.instance.getLinkSpeed())) / n;
+		return Math.max(0, ret);
+	}
+
+	double getPackNanos() {
+		long n = packFiles.get();
+		return n == 0 ? 0 : (double) packNanos.get() / n;
+	}
+
+	double getUnpackNanos() {
+		long n = unpackFiles.get();
+		return n == 0 ? 0 : (double) unpackNanos.get() / n;
+	}
+
+
+	/**
+	 * A file copied on its own, the small ones teach the model.
+	 */
+	public void recordCopy(final long bytes, final long nanos) {
+		if (bytes > FileCopierService.SMALL_FILE_SIZE)
+			return;
+		if (isWarmedUp()) {
+			directPredictedNanos.addAndGet(predict(Choice.direct, 1, bytes, false));
+			directActualNanos.addAndGet(nanos);
+		}
+		directFiles.incrementAndGet();
+		directBytes.addAndGet(bytes);
+		directNanos.addAndGet(nanos);
+	}
+
+	/**
+	 * A file read and put in a zip, the deflate time not counted.
+	 */
+	public void recordPack(final long nanos) {
+		packFiles.incrementAndGet();
+		packNanos.addAndGet(nanos);
+	}
+
+	public void recordUnpack(final long files, final long nanos) {
+		unpackFiles.addAndGet(files);
+		unpackNanos.addAndGet(nanos);
+	}
+
+	/**
+	 * A zip of a directory is exploded on the target.
+	 *
+	 * @param predictedNanos what the model said when it chose to pack the directory, -1 when it did not.
+	 * @param actualNanos    packing, copying and exploding the zip.
+	 */
+	public void recordBundle(final String dir, final long predictedNanos, final long actualNanos) {
+		if (predictedNanos < 0)
+			return;
+		bundles.incrementAndGet();
+		bundlePredictedNanos.addAndGet(predictedNanos);
+		bundleActualNanos.addAndGet(actualNanos);
+		FileUtils.instance.getRdProUI().println(LogLevel.debug, "\tPacking cost of " + dir + ": predicted "
+				+ millis(predictedNanos) + ", actual " + millis(actualNanos));
+	}
+
+	private static String millis(final double nanos) {
+		return String.format("%.2f ms", nanos / 1000000);
+	}
+
+	public String printSummary() {
+		return "Packing cost model: per file:" + millis(getFileNanos()) + ", pack:" + millis(getPackNanos())
+				+ ", unpack:" + millis(getUnpackNanos())
+				+ ", dirs direct:" + chosen[Choice.direct.ordinal()].get()
+				+ ", stored:" + chosen[Choice.stored.ordinal()].get()
+				+ ", deflate:" + chosen[Choice.deflate.ordinal()].get()
+				+ "\n\tdirect copies predicted:" + millis(directPredictedNanos.get())
+				+ ", actual:" + millis(directActualNanos.get())
+				+ "; zips:" + bundles.get() + " predicted:" + millis(bundlePredictedNanos.get())
+				+ ", actual:" + millis(bundleActualNanos.get());
+	}
+}
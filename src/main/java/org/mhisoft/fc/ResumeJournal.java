@@ -0,0 +1,387 @@
+/*
+ * Copyright (c) 2014- MHISoft LLC and/or its affiliates. All rights reserved.
+ * Licensed to MHISoft LLC under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. MHISoft LLC licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.mhisoft.fc;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UTFDataFormatException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.mhisoft.fc.ui.UI;
+
+/**
+ * Description: the write ahead copy journal for -resume, kept in the target root.
+ * It records the files completed and the offsets of the large files in progress, each offset
+ * only after the target has been fsynced up to it and each completed file only after the whole
+ * target has been, so the journal holds through an OS crash or a power loss and not only a JVM
+ * crash. The fsync per file is the price of -resume. An interrupted run keeps its partial targets
+ * and the journal; the next run with -resume skips what was completed and continues the partial
+ * files from their last offset. The journal is deleted when a run finishes without being stopped.
+ *
+ * @author Tony Xue
+ * @since Oct, 2026
+ */
+public class ResumeJournal {
+
+	public static final String FILE_NAME = ".fastcopy_journal";
+	private static final int MAGIC = 0x46434A31; //FCJ1
+	private static final byte DONE = 'D';
+	private static final byte PARTIAL = 'P';
+
+	//fsync the target and record the offset every this many bytes.
+	static final long CHECKPOINT_BYTES = 64L * 1024 * 1024;
+
+	public static ResumeJournal instance = new ResumeJournal();
+
+	static class Record {
+		final boolean done;
+		final long size;
+		final long lastModified;
+		final long offset;
+
+		Record(final boolean done, final long size, final long lastModified, final long offset) {
+			this.done = done;
+			this.size = size;
+			this.lastModified = lastModified;
+			this.offset = offset;
+		}
+	}
+
+	private volatile boolean enabled;
+	private Path targetRoot;
+	private File file;
+	private FileOutputStream fileOut;
+	private DataOutputStream out;
+	//the end of the last complete record replayed, a record cut short after it is cut off before appending.
+	private long replayedLength;
+
+	//relative target path --> the last record replayed from the journal.
+	private final Map<String, Record> replayed = new ConcurrentHashMap<>();
+
+	private final AtomicLong skippedFiles = new AtomicLong(0);
+	private final AtomicLong resumedFiles = new AtomicLong(0);
+	private final AtomicLong resumedBytes = new AtomicLong(0);
+
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+
+	/**
+	 * Start a run, replay the journal left in the target root and keep appending to it.
+	 */
+	public synchronized void open(final String targetRootDir, final UI rdProUI) {
+		close();
+		replayed.clear();
+		replayedLength = 0;
+		skippedFiles.set(0);
+		resumedFiles.set(0);
+		resumedBytes.set(0);
+		enabled = RunTimeProperties.instance.isResume() && targetRootDir != null;
+		if (!enabled)
+			return;
+
+		targetRoot = Paths.get(targetRootDir).toAbsolutePath().normalize();
+		file = targetRoot.resolve(FILE_NAME).toFile();
+		if (file.exists()) {
+			try {
+				replay();
+				rdProUI.println("Resuming from the journal " + file + ", files recorded:" + replayed.size());
+			} catch (IOException e) {
+				//start a new one.
+				replayed.clear();
+				rdProUI.printError("Can not read the copy journal " + file + ", starting over: " + e.getMessage());
+			}
+		}
+		try {
+			targetRoot.toFile().mkdirs();
+			boolean append = file.exists() && !replayed.isEmpty();
+			fileOut = new FileOutputStream(file, append);
+			//the records go after the last complete one, not after the broken bytes of a crashed run.
+			if (append && fileOut.getChannel().size() > replayedLength)
+				fileOut.getChannel().truncate(replayedLength);
+			out = new DataOutputStream(new BufferedOutputStream(fileOut));
+			if (!append)
+				out.writeInt(MAGIC);
+			out.flush();
+		} catch (IOException e) {
+			enabled = false;
+			rdProUI.printError("Can not open the copy journal " + file + ", the copy will not be resumable: " + e.getMessage());
+		}
+	}
+
+
+	private void replay() throws IOException {
+		CountingInputStream counter = new CountingInputStream(new BufferedInputStream(new FileInputStream(file)));
+		try (DataInputStream in = new DataInputStream(counter)) {
+			if (in.readInt() != MAGIC)
+				throw new IOException("not a copy journal");
+			replayedLength = counter.count;
+			while (true) {
+				byte type = in.readByte();
+				if (type != DONE && type != PARTIAL)
+					break;
+				String key = in.readUTF();
+				long size = in.readLong();
+				long lastModified = in.readLong();
+				long offset = type == PARTIAL ? in.readLong() : size;
+				replayed.put(key, new Record(type == DONE, size, lastModified, offset));
+				replayedLength = counter.count;
+			}
+		} catch (EOFException | UTFDataFormatException e) {
+			//the end, or a record cut short when the last run died.
+		}
+	}
+
+	/**
+	 * Counts the bytes read, to find the end of the last complete record.
+	 */
+	private static class CountingInputStream extends FilterInputStream {
+		long count;
+
+		CountingInputStream(final InputStream in) {
+			super(in);
+		}
+
+		@Override
+		public int read() throws IOException {
+			int b = super.read();
+			if (b >= 0)
+				count++;
+			return b;
+		}
+
+		@Override
+		public int read(final byte[] b, final int off, final int len) throws IOException {
+			int n = super.read(b, off, len);
+			if (n > 0)
+				count += n;
+			return n;
+		}
+
+		@Override
+		public long skip(final long n) throws IOException {
+			long skipped = super.skip(n);
+			count += skipped;
+			return skipped;
+		}
+	}
+
+
+	/**
+	 * @return true when the journal says the file was copied from the source as it is now.
+	 */
+	public boolean isDone(final File target, final long sourceSize, final long sourceLastModified) {
+		Record r = get(target);
+		if (r == null || !r.done || r.size != sourceSize || r.lastModified != sourceLastModified)
+			return false;
+		skippedFiles.incrementAndGet();
+		return true;
+	}
+
+	/**
+	 * @return true when the last run left the target partially copied, it has to be copied no matter what the target looks like.
+	 */
+	public boolean isPartial(final File target) {
+		Record r = get(target);
+		return r != null && !r.done;
+	}
+
+
+	/**
+	 * @return the offset to continue the copy from, 0 to copy from the start.
+	 */
+	public long getResumeOffset(final File source, final File target, final long sourceSize) {
+		Record r = get(target);
+		if (r == null || r.done || r.offset <= 0 || r.size != sourceSize || r.lastModified != source.lastModified()
+				|| target.length() < r.offset)
+			return 0;
+		resumedFiles.incrementAndGet();
+		resumedBytes.addAndGet(r.offset);
+		return r.offset;
+	}
+
+
+	/**
+	 * The first byte is about to go to the target, a crash from here on leaves it partial.
+	 * A partial file being continued keeps its offset.
+	 */
+	public void started(final File target, final long sourceSize, final long sourceLastModified) {
+		if (!enabled)
+			return;
+		Record r = get(target);
+		if (r != null && !r.done && r.offset > 0)
+			return;
+		try {
+			write(PARTIAL, target, sourceSize, sourceLastModified, 0, false);
+		} catch (IOException e) {
+			if (RunTimeProperties.instance.isDebug())
+				e.printStackTrace();
+		}
+	}
+
+	/**
+	 * The target is fsynced up to the position, record it.
+	 */
+	public void checkpoint(final File target, final long sourceSize, final long sourceLastModified
+			, final FileChannel outChannel, final long position) throws IOException {
+		if (!enabled)
+			return;
+		outChannel.force(false);
+		write(PARTIAL, target, sourceSize, sourceLastModified, position, true);
+	}
+
+	/**
+	 * A cancelled copy: keep the partial target and record where to continue, without the journal it is deleted.
+	 */
+	public void interrupted(final File target, final long sourceSize, final long sourceLastModified
+			, final FileChannel outChannel, final long position, final UI rdProUI) {
+		if (enabled) {
+			try {
+				checkpoint(target, sourceSize, sourceLastModified, outChannel, position);
+				FileUtils.close(outChannel);
+				return;
+			} catch (IOException e) {
+				rdProUI.printError("Can not record the partial copy of " + target, e);
+			}
+		}
+		FileUtils.close(outChannel);
+		FileUtils.instance.deleteFile(target.getAbsolutePath(), rdProUI);
+	}
+
+	public void done(final File target, final long sourceSize, final long sourceLastModified) {
+		if (!enabled)
+			return;
+		try {
+			force(target);
+			write(DONE, target, sourceSize, sourceLastModified, sourceSize, true);
+		} catch (IOException e) {
+			//not fatal, the file is copied again on resume.
+			if (RunTimeProperties.instance.isDebug())
+				e.printStackTrace();
+		}
+	}
+
+
+	/**
+	 * Flush the target to the disk, a DONE must not point to data still in the OS cache.
+	 */
+	private static void force(final File target) throws IOException {
+		try (FileChannel channel = openToForce(target)) {
+			channel.force(false);
+		}
+	}
+
+	private static FileChannel openToForce(final File target) throws IOException {
+		try {
+			return FileChannel.open(target.toPath(), StandardOpenOption.WRITE);
+		} catch (IOException e) {
+			//a read only target, it can be flushed through a read channel on the unix.
+			return FileChannel.open(target.toPath(), StandardOpenOption.READ);
+		}
+	}
+
+
+	/**
+	 * Copied and then found bad, it has to be copied again.
+	 */
+	public void removed(final File target) {
+		if (!enabled)
+			return;
+		try {
+			write(PARTIAL, target, -1, -1, 0, false);
+		} catch (IOException e) {
+			if (RunTimeProperties.instance.isDebug())
+				e.printStackTrace();
+		}
+	}
+
+
+	private synchronized void write(final byte type, final File target, final long size, final long lastModified
+			, final long offset, final boolean sync) throws IOException {
+		String key = relativize(target);
+		if (out == null || key == null)
+			return;
+		out.writeByte(type);
+		out.writeUTF(key);
+		out.writeLong(size);
+		out.writeLong(lastModified);
+		if (type == PARTIAL)
+			out.writeLong(offset);
+		//in the OS on every record so it survives the JVM, on the disk with the offsets and the completed files.
+		out.flush();
+		if (sync)
+			fileOut.getChannel().force(false);
+	}
+
+
+	private Record get(final File target) {
+		if (!enabled || replayed.isEmpty())
+			return null;
+		String key = relativize(target);
+		return key == null ? null : replayed.get(key);
+	}
+
+	private String relativize(final File target) {
+		Path rel = targetRoot.relativize(target.toPath().toAbsolutePath().normalize());
+		String s = rel.toString().replace(File.separatorChar, '/');
+		if (s.equals("..") || s.startsWith("../"))
+			return null;
+		return s;
+	}
+
+
+	/**
+	 * End of the run. The journal is only needed when the run did not finish.
+	 */
+	public synchronized void close(final boolean finished, final UI rdProUI) {
+		close();
+		if (enabled && finished && file.exists() && !file.delete())
+			rdProUI.printError("Can not delete the copy journal " + file);
+	}
+
+	private void close() {
+		FileUtils.close(out);
+		out = null;
+		fileOut = null;
+	}
+
+
+	public String printSummary() {
+		return "Resume: files skipped as done:" + skippedFiles.get() + ", partial files continued:" + resumedFiles.get()
+				+ ", bytes not copied again:" + resumedBytes.get();
+	}
+}
@@ -1,12 +1,25 @@
 package org.mhisoft.fc;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
 /**
  * Run time properties
  */
 public class RunTimeProperties  implements  java.io.Serializable{
 
+	//pinned to the UID of the class the saved preferences were written with, the new fields must not make them unreadable.
+	private static final long serialVersionUID = -2926606274120569751L;
+
 	public static final int DEFAULT_THREAD_NUM = 2;
 	public static final int DEFAULT_PACKAGE_SMALL_FILES_THREAD_NUM = 5;
+	public static final int DEFAULT_MAX_QUEUED_TASKS = 10000;
+	//the serial walk as before, -walkers to walk the directories in parallel.
+	public static final int DEFAULT_WALKER_THREAD_NUM = 1;
+	public static final long DEFAULT_CHUNKED_COPY_THRESHOLD = 1024L * 1024 * 1024;
+	public static final long DEFAULT_PACK_BUNDLE_SIZE = 16L * 1024 * 1024;
+	public static final int DEFAULT_PACK_BUNDLE_FILES = 2048;
 	public static String userHome = System.getProperty("user.home") ;
 	public static String zip_prefix ="_fastcopy_auto_create_";
 
@@ -45,7 +58,85 @@ public class RunTimeProperties  implements  java.io.Serializable{
 	boolean preserveFileTimesAndAccessAttributes = Boolean.valueOf(System.getProperty("keepOriginalFileDates", "false"));;
 	boolean skipEmptyDirs=Boolean.valueOf(System.getProperty("skipEmptyDirs", "true"));;;
 	boolean packageSmallFiles = Boolean.valueOf(System.getProperty("packageSmallFiles", "true"));
-
+	ChecksumAlgorithm checksumAlgorithm = ChecksumAlgorithm.fromString(System.getProperty("checksum", "md5"));
+	//-w auto, the number of the copy workers follows the throughput.
+	boolean autoTuneWorkers = Boolean.getBoolean("autoTuneWorkers");
+	//the run options below are set on the command line, not saved with the UserPreferences.
+	transient VerifyMode verifyMode = VerifyMode.fromString(System.getProperty("verifyMode", "full"));
+	transient boolean bufferCalibration = Boolean.valueOf(System.getProperty("bufferCalibration", "true"));
+	//root dir --> buffer size in bytes, the "" root applies to all.
+	transient Map<String, Integer> bufferSizeOverrides = new LinkedHashMap<>();
+	transient CopyStrategyType largeFileCopyStrategy = CopyStrategyType.fromString(System.getProperty("copyStrategy", "auto"));
+	//files up to the size --> the copy strategy for them, the larger files use largeFileCopyStrategy.
+	transient TreeMap<Long, CopyStrategyType> copyStrategyBySize = new TreeMap<>();
+	//tasks queued or running per worker pool before the walker waits.
+	transient int maxQueuedTasks = Integer.getInteger("maxQueuedTasks", DEFAULT_MAX_QUEUED_TASKS);
+	//threads walking the source tree, separate from the copy workers. 1 walks on the caller thread.
+	transient int numOfWalkerThreads = Integer.getInteger("walkerThreads", DEFAULT_WALKER_THREAD_NUM);
+	//threads helping the copy workers explode the small file zips at the target.
+	transient int numOfUnzipThreads = Integer.getInteger("unzipThreads", Runtime.getRuntime().availableProcessors());
+	//keep the target listing in a manifest in the target root for the next run.
+	transient boolean syncManifest = Boolean.getBoolean("syncManifest");
+	//journal the copy so an interrupted run can be continued.
+	transient boolean resume = Boolean.getBoolean("resume");
+	//the files this large are split into chunks copied by several workers at once.
+	transient long chunkedCopyThreshold = Long.getLong("chunkedCopyThreshold", DEFAULT_CHUNKED_COPY_THRESHOLD);
+	//the order the copy workers take the files in.
+	transient SchedulingPolicy schedulingPolicy = SchedulingPolicy.fromString(System.getProperty("schedule", "fifo"));
+	//the workers kept for the small files with the mixed policy.
+	transient int reservedSmallFileWorkers = Integer.getInteger("reservedSmallFileWorkers", 1);
+	//a pool of copy workers per (source device, target device) pair.
+	transient boolean deviceLanes = Boolean.getBoolean("deviceLanes");
+	//the compression level of the small file zips, PackCompressionPolicy.AUTO picks it by the link speed.
+	transient int packCompressionLevel = PackCompressionPolicy.fromString(System.getProperty("packLevel", "auto"));
+	//copy the small files of a dir in batches on one worker each, without the zip.
+	transient boolean batchSmallFiles = Boolean.getBoolean("batchSmallFiles");
+	//pack the small files in memory and unpack them at the target, instead of a zip on the source.
+	transient boolean streamSmallFiles = Boolean.getBoolean("streamSmallFiles");
+	//pack the small files of the whole tree into bundles across the directories, instead of a zip per directory.
+	transient boolean packSubtrees = Boolean.getBoolean("packSubtrees");
+	//the caps of a bundle with packSubtrees.
+	transient long packBundleSize = Long.getLong("packBundleSize", DEFAULT_PACK_BUNDLE_SIZE);
+	transient int packBundleFiles = Integer.getInteger("packBundleFiles", DEFAULT_PACK_BUNDLE_FILES);
+	//a virtual thread per copy task, JDK 21+.
+	transient boolean virtualThreads = Boolean.getBoolean("virtualThreads");
+	//the copy tasks running at once per (source device, target device) pair with the virtual threads.
+	transient int virtualThreadsPerDevice = Integer.getInteger("virtualThreadsPerDevice", VirtualThreadExecutorService.DEFAULT_PER_DEVICE_CAP);
+	//source or target root --> workers of its lane.
+	transient Map<String, Integer> laneWorkers = new LinkedHashMap<>();
+
+
+
+	/**
+	 * The transient run options come back with their defaults, not the zeros of the serialization.
+	 */
+	private void readObject(java.io.ObjectInputStream in) throws java.io.IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		RunTimeProperties defaults = new RunTimeProperties();
+		verifyMode = defaults.verifyMode;
+		bufferCalibration = defaults.bufferCalibration;
+		bufferSizeOverrides = defaults.bufferSizeOverrides;
+		largeFileCopyStrategy = defaults.largeFileCopyStrategy;
+		copyStrategyBySize = defaults.copyStrategyBySize;
+		maxQueuedTasks = defaults.maxQueuedTasks;
+		numOfWalkerThreads = defaults.numOfWalkerThreads;
+		numOfUnzipThreads = defaults.numOfUnzipThreads;
+		syncManifest = defaults.syncManifest;
+		resume = defaults.resume;
+		chunkedCopyThreshold = defaults.chunkedCopyThreshold;
+		schedulingPolicy = defaults.schedulingPolicy;
+		reservedSmallFileWorkers = defaults.reservedSmallFileWorkers;
+		deviceLanes = defaults.deviceLanes;
+		packCompressionLevel = defaults.packCompressionLevel;
+		batchSmallFiles = defaults.batchSmallFiles;
+		streamSmallFiles = defaults.streamSmallFiles;
+		packSubtrees = defaults.packSubtrees;
+		packBundleSize = defaults.packBundleSize;
+		packBundleFiles = defaults.packBundleFiles;
+		virtualThreads = defaults.virtualThreads;
+		virtualThreadsPerDevice = defaults.virtualThreadsPerDevice;
+		laneWorkers = defaults.laneWorkers;
+	}
 
 
 	public  boolean isStopThreads() {
@@ -189,6 +280,237 @@ public class RunTimeProperties  implements  java.io.Serializable{
 		this.logLevel = logLevel;
 	}
 
+	public CopyStrategyType getLargeFileCopyStrategy() {
+		//older saved preferences do not have it.
+		return largeFileCopyStrategy == null ? CopyStrategyType.auto : largeFileCopyStrategy;
+	}
+
+	public void setLargeFileCopyStrategy(CopyStrategyType largeFileCopyStrategy) {
+		this.largeFileCopyStrategy = largeFileCopyStrategy;
+	}
+
+	/**
+	 * @return the strategy of the smallest size bucket the file fits in, the -strategy default when none.
+	 */
+	public CopyStrategyType getLargeFileCopyStrategy(final long fileSize) {
+		Map.Entry<Long, CopyStrategyType> entry = getCopyStrategyBySize().ceilingEntry(fileSize);
+		return entry == null ? getLargeFileCopyStrategy() : entry.getValue();
+	}
+
+	public TreeMap<Long, CopyStrategyType> getCopyStrategyBySize() {
+		if (copyStrategyBySize == null)
+			copyStrategyBySize = new TreeMap<>();
+		return copyStrategyBySize;
+	}
+
+	/**
+	 * @param maxFileSize the files up to this size
+	 * @param strategy    are copied with it
+	 */
+	public void addCopyStrategyBySize(long maxFileSize, CopyStrategyType strategy) {
+		getCopyStrategyBySize().put(maxFileSize, strategy);
+	}
+
+	public VerifyMode getVerifyMode() {
+		return verifyMode == null ? VerifyMode.full : verifyMode;
+	}
+
+	public void setVerifyMode(VerifyMode verifyMode) {
+		this.verifyMode = verifyMode;
+	}
+
+	public ChecksumAlgorithm getChecksumAlgorithm() {
+		//older saved preferences do not have it.
+		return checksumAlgorithm == null ? ChecksumAlgorithm.md5 : checksumAlgorithm;
+	}
+
+	public void setChecksumAlgorithm(ChecksumAlgorithm checksumAlgorithm) {
+		this.checksumAlgorithm = checksumAlgorithm;
+	}
+
+	public int getNumOfWalkerThreads() {
+		//older saved preferences do not have it.
+		return numOfWalkerThreads <= 0 ? DEFAULT_WALKER_THREAD_NUM : numOfWalkerThreads;
+	}
+
+	public void setNumOfWalkerThreads(int numOfWalkerThreads) {
+		this.numOfWalkerThreads = numOfWalkerThreads;
+	}
+
+	public int getNumOfUnzipThreads() {
+		return numOfUnzipThreads <= 0 ? Runtime.getRuntime().availableProcessors() : numOfUnzipThreads;
+	}
+
+	public void setNumOfUnzipThreads(int numOfUnzipThreads) {
+		this.numOfUnzipThreads = numOfUnzipThreads;
+	}
+
+	public int getMaxQueuedTasks() {
+		//older saved preferences do not have it.
+		return maxQueuedTasks <= 0 ? DEFAULT_MAX_QUEUED_TASKS : maxQueuedTasks;
+	}
+
+	public void setMaxQueuedTasks(int maxQueuedTasks) {
+		this.maxQueuedTasks = maxQueuedTasks;
+	}
+
+	public boolean isSyncManifest() {
+		return syncManifest;
+	}
+
+	public void setSyncManifest(boolean syncManifest) {
+		this.syncManifest = syncManifest;
+	}
+
+	public boolean isResume() {
+		return resume;
+	}
+
+	public void setResume(boolean resume) {
+		this.resume = resume;
+	}
+
+	public long getChunkedCopyThreshold() {
+		//older saved preferences do not have it.
+		return chunkedCopyThreshold <= 0 ? DEFAULT_CHUNKED_COPY_THRESHOLD : chunkedCopyThreshold;
+	}
+
+	public void setChunkedCopyThreshold(long chunkedCopyThreshold) {
+		this.chunkedCopyThreshold = chunkedCopyThreshold;
+	}
+
+	public SchedulingPolicy getSchedulingPolicy() {
+		return schedulingPolicy == null ? SchedulingPolicy.fifo : schedulingPolicy;
+	}
+
+	public void setSchedulingPolicy(SchedulingPolicy schedulingPolicy) {
+		this.schedulingPolicy = schedulingPolicy;
+	}
+
+	public int getReservedSmallFileWorkers() {
+		return reservedSmallFileWorkers <= 0 ? 1 : reservedSmallFileWorkers;
+	}
+
+	public void setReservedSmallFileWorkers(int reservedSmallFileWorkers) {
+		this.reservedSmallFileWorkers = reservedSmallFileWorkers;
+	}
+
+	public boolean isAutoTuneWorkers() {
+		return autoTuneWorkers;
+	}
+
+	public void setAutoTuneWorkers(boolean autoTuneWorkers) {
+		this.autoTuneWorkers = autoTuneWorkers;
+	}
+
+	public boolean isDeviceLanes() {
+		return deviceLanes;
+	}
+
+	public void setDeviceLanes(boolean deviceLanes) {
+		this.deviceLanes = deviceLanes;
+	}
+
+	public int getPackCompressionLevel() {
+		return packCompressionLevel;
+	}
+
+	public void setPackCompressionLevel(int packCompressionLevel) {
+		this.packCompressionLevel = packCompressionLevel;
+	}
+
+	public boolean isBatchSmallFiles() {
+		return batchSmallFiles;
+	}
+
+	public void setBatchSmallFiles(boolean batchSmallFiles) {
+		this.batchSmallFiles = batchSmallFiles;
+	}
+
+	public boolean isStreamSmallFiles() {
+		return streamSmallFiles;
+	}
+
+	public void setStreamSmallFiles(boolean streamSmallFiles) {
+		this.streamSmallFiles = streamSmallFiles;
+	}
+
+	public boolean isPackSubtrees() {
+		return packSubtrees;
+	}
+
+	public void setPackSubtrees(boolean packSubtrees) {
+		this.packSubtrees = packSubtrees;
+	}
+
+	public long getPackBundleSize() {
+		return packBundleSize <= 0 ? DEFAULT_PACK_BUNDLE_SIZE : packBundleSize;
+	}
+
+	public void setPackBundleSize(long packBundleSize) {
+		this.packBundleSize = packBundleSize;
+	}
+
+	public int getPackBundleFiles() {
+		return packBundleFiles <= 0 ? DEFAULT_PACK_BUNDLE_FILES : packBundleFiles;
+	}
+
+	public void setPackBundleFiles(int packBundleFiles) {
+		this.packBundleFiles = packBundleFiles;
+	}
+
+	public boolean isVirtualThreads() {
+		return virtualThreads;
+	}
+
+	public void setVirtualThreads(boolean virtualThreads) {
+		this.virtualThreads = virtualThreads;
+	}
+
+	public int getVirtualThreadsPerDevice() {
+		return virtualThreadsPerDevice <= 0 ? VirtualThreadExecutorService.DEFAULT_PER_DEVICE_CAP : virtualThreadsPerDevice;
+	}
+
+	public void setVirtualThreadsPerDevice(int virtualThreadsPerDevice) {
+		this.virtualThreadsPerDevice = virtualThreadsPerDevice;
+	}
+
+	public Map<String, Integer> getLaneWorkers() {
+		if (laneWorkers == null)
+			laneWorkers = new LinkedHashMap<>();
+		return laneWorkers;
+	}
+
+	/**
+	 * @param root    the source or target root
+	 * @param workers of the lane copying from or to the root
+	 */
+	public void addLaneWorkers(String root, int workers) {
+		getLaneWorkers().put(root, workers);
+	}
+
+	public boolean isBufferCalibration() {
+		return bufferCalibration;
+	}
+
+	public void setBufferCalibration(boolean bufferCalibration) {
+		this.bufferCalibration = bufferCalibration;
+	}
+
+	public Map<String, Integer> getBufferSizeOverrides() {
+		if (bufferSizeOverrides == null)
+			bufferSizeOverrides = new LinkedHashMap<>();
+		return bufferSizeOverrides;
+	}
+
+	/**
+	 * @param root       the source or target root, empty for all
+	 * @param bufferSize in bytes
+	 */
+	public void addBufferSizeOverride(String root, int bufferSize) {
+		getBufferSizeOverrides().put(root, bufferSize);
+	}
+
 	public boolean isSkipEmptyDirs() {
 		return skipEmptyDirs;
 	}
@@ -210,9 +532,38 @@ public class RunTimeProperties  implements  java.io.Serializable{
 		sb.append(", flatCopy=").append(flatCopy);
 		sb.append(", debugArg=").append(debugArg);
 		sb.append(", compressSmallFiles=").append(RunTimeProperties.instance.isPackageSmallFiles());
+		sb.append(", packLevel=").append(PackCompressionPolicy.toString(packCompressionLevel));
+		sb.append(", streamSmallFiles=").append(streamSmallFiles);
+		sb.append(", packSubtrees=").append(packSubtrees);
+		if (packSubtrees)
+			sb.append(", packBundleSize=").append(getPackBundleSize()).append(", packBundleFiles=").append(getPackBundleFiles());
+		sb.append(", batchSmallFiles=").append(batchSmallFiles);
 		sb.append(", verifyAfterCopy=").append(this.verifyAfterCopy);
+		sb.append(", verifyMode=").append(getVerifyMode());
+		sb.append(", checksumAlgorithm=").append(getChecksumAlgorithm());
+		sb.append(", maxQueuedTasks=").append(getMaxQueuedTasks());
+		sb.append(", syncManifest=").append(syncManifest);
+		sb.append(", resume=").append(resume);
+		sb.append(", chunkedCopyThreshold=").append(getChunkedCopyThreshold());
+		sb.append(", schedulingPolicy=").append(getSchedulingPolicy());
+		sb.append(", autoTuneWorkers=").append(autoTuneWorkers);
+		sb.append(", deviceLanes=").append(deviceLanes);
+		if (deviceLanes)
+			sb.append(", laneWorkers=").append(getLaneWorkers());
+		sb.append(", virtualThreads=").append(virtualThreads);
+		if (virtualThreads)
+			sb.append(", virtualThreadsPerDevice=").append(getVirtualThreadsPerDevice());
+		if (getSchedulingPolicy() == SchedulingPolicy.mixed)
+			sb.append(", reservedSmallFileWorkers=").append(getReservedSmallFileWorkers());
+		sb.append(", walkerThreads=").append(getNumOfWalkerThreads());
+		sb.append(", unzipThreads=").append(getNumOfUnzipThreads());
 		sb.append(", keepOriginalFileDates=").append(RunTimeProperties.instance.isPreserveFileTimesAndAccessAttributes());
 		sb.append(", skipEmptyDirs=").append(RunTimeProperties.instance.isSkipEmptyDirs());
+		sb.append(", bufferCalibration=").append(bufferCalibration);
+		sb.append(", bufferSizeOverrides=").append(getBufferSizeOverrides());
+		sb.append(", largeFileCopyStrategy=").append(getLargeFileCopyStrategy());
+		if (!getCopyStrategyBySize().isEmpty())
+			sb.append(", copyStrategyBySize=").append(getCopyStrategyBySize());
 		sb.append('}');
 		return sb.toString();
 	}
@@ -0,0 +1,46 @@
+/*
+ * Copyright (c) 2014- MHISoft LLC and/or its affiliates. All rights reserved.
+ * Licensed to MHISoft LLC under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. MHISoft LLC licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.mhisoft.fc;
+
+import java.io.File;
+
+/**
+ * Description: a queued task the scheduler can look into.
+ *
+ * @author Tony Xue
+ * @since Oct, 2026
+ */
+public interface ScheduledTask {
+
+	/**
+	 * @return the bytes to copy, -1 when not known.
+	 */
+	long getScheduleSize();
+
+	/**
+	 * @return the file the task reads, null when not known.
+	 */
+	File getScheduleSource();
+
+	/**
+	 * @return the file the task writes, null when not known.
+	 */
+	File getScheduleTarget();
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright (c) 2014- MHISoft LLC and/or its affiliates. All rights reserved.
+ * Licensed to MHISoft LLC under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. MHISoft LLC licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.mhisoft.fc;
+
+/**
+ * Description: the order the copy workers take the queued files in.
+ *
+ * @author Tony Xue
+ * @since Oct, 2026
+ */
+public enum SchedulingPolicy {
+
+	/**
+	 * in the order the walker found them.
+	 */
+	fifo,
+
+	/**
+	 * the largest file first, so the run does not end on one huge file copied alone.
+	 */
+	largestFirst,
+
+	/**
+	 * some workers only take the small files, the rest take everything in order.
+	 */
+	mixed,
+
+	/**
+	 * round robin over the source/target device pairs, one busy device does not hold up the others.
+	 */
+	perDevice;
+
+
+	public static SchedulingPolicy fromString(String s) {
+		for (SchedulingPolicy policy : values()) {
+			if (policy.name().equalsIgnoreCase(s))
+				return policy;
+		}
+		throw new IllegalArgumentException("Unknown scheduling policy:" + s);
+	}
+}
@@ -0,0 +1,268 @@
+/*
+ * Copyright (c) 2014- MHISoft LLC and/or its affiliates. All rights reserved.
+ * Licensed to MHISoft LLC under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. MHISoft LLC licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.mhisoft.fc;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.mhisoft.fc.ui.UI;
+
+/**
+ * Description: copy a batch of the small files of one directory on one worker, without the zip.
+ * The sources are read back to back into one pooled buffer and the targets written from it,
+ * the file times and permissions are then restored by another worker when one is free.
+ * One task per batch instead of one per file, and no zip written on the source or exploded on the target.
+ *
+ * @author Tony Xue
+ * @since Oct, 2026
+ */
+public class SmallFileBatch implements Runnable, ScheduledTask {
+
+	static final int BATCH_BYTES = 1024 * 1024;
+	static final int BATCH_FILES = 256;
+
+	private final UI rdProUI;
+	private final FileCopyStatistics statistics;
+	private final MultiThreadExecutorService fileCopyWorkersPool;
+	private final File sourceDir;
+	private final File targetDir;
+	private final List<DirectoryScanner.Entry> sources = new ArrayList<>();
+	private final List<File> targets = new ArrayList<>();
+	private long bytes;
+
+
+	public SmallFileBatch(final UI rdProUI, final File sourceDir, final File targetDir, final FileCopyStatistics statistics
+			, final MultiThreadExecutorService fileCopyWorkersPool) {
+		this.rdProUI = rdProUI;
+		this.sourceDir = sourceDir;
+		this.targetDir = targetDir;
+		this.statistics = statistics;
+		this.fileCopyWorkersPool = fileCopyWorkersPool;
+	}
+
+	/**
+	 * @return false when the file does not fit, the batch is full.
+	 */
+	public boolean add(final DirectoryScanner.Entry source, final File target) {
+		if (source.size() > BATCH_BYTES)
+			throw new IllegalArgumentException("not a small file: " + source.getFile());
+		if (sources.size() >= BATCH_FILES || bytes + source.size() > BATCH_BYTES)
+			return false;
+		sources.add(source);
+		targets.add(target);
+		bytes += source.size();
+		return true;
+	}
+
+	public boolean isEmpty() {
+		return sources.isEmpty();
+	}
+
+	public int size() {
+		return sources.size();
+	}
+
+
+	@Override
+	public void run() {
+		if (RunTimeProperties.instance.isStopThreads())
+			return;
+
+		long t1 = System.currentTimeMillis();
+		ByteBuffer buffer = BufferPool.instance.acquire(BATCH_BYTES);
+		int n = sources.size();
+		int[] offsets = new int[n];
+		int[] lengths = new int[n];
+		//the files failed or changed since they were listed.
+		boolean[] skipped = new boolean[n];
+		int copied = 0;
+		try {
+			//read them all first, the source disk sees one burst of reads.
+			for (int i = 0; i < n; i++) {
+				offsets[i] = buffer.position();
+				DirectoryScanner.Entry source = sources.get(i);
+				try {
+					lengths[i] = read(source.getFile(), buffer, (int) source.size());
+				} catch (IOException e) {
+					rdProUI.printError("Copy file failed for " + source.getFile().getAbsolutePath(), e);
+					skipped[i] = true;
+					buffer.position(offsets[i]);
+				}
+				if (lengths[i] < 0) {
+					//grew since the listing, copy it on its own.
+					skipped[i] = true;
+					buffer.position(offsets[i]);
+					FileUtils.instance.copyFile(source.getFile(), targets.get(i), null, statistics, rdProUI, null);
+				}
+			}
+
+			//then write them all.
+			for (int i = 0; i < n; i++) {
+				if (skipped[i])
+					continue;
+				if (RunTimeProperties.instance.isStopThreads())
+					break;
+				ByteBuffer data = buffer.duplicate();
+				data.limit(offsets[i] + lengths[i]).position(offsets[i]);
+				try {
+					if (write(i, data.slice()))
+						copied++;
+					else
+						skipped[i] = true;
+				} catch (Exception e) {
+					rdProUI.printError("Copy file failed for " + sources.get(i).getFile().getAbsolutePath(), e);
+					skipped[i] = true;
+				}
+			}
+		} finally {
+			BufferPool.instance.release(buffer);
+		}
+
+		long took = System.currentTimeMillis() - t1;
+		//counted as one copy of the batch size, like the zip it replaces.
+		statistics.addToTotalFileSizeAndTime(bytes, took);
+		statistics.getBucket(bytes).incrementFileCount();
+		statistics.addFileCount(copied);
+		PackCompressionPolicy.instance.recordTransfer(bytes, took);
+		rdProUI.showCurrentDir("Copying files under directory: " + sourceDir);
+		if (RunTimeProperties.instance.isVerbose())
+			rdProUI.println("\tCopied " + copied + " small files " + sourceDir + "-->" + targetDir + ", took " + took + "ms");
+
+		if (RunTimeProperties.instance.isPreserveFileTimesAndAccessAttributes())
+			preserveAttributes(skipped);
+	}
+
+	/**
+	 * Read the file into the buffer from its position.
+	 *
+	 * @return the bytes read, -1 when the file is larger than it was listed.
+	 */
+	private static int read(final File source, final ByteBuffer buffer, final int listedSize) throws IOException {
+		int start = buffer.position();
+		ByteBuffer slot = buffer.duplicate();
+		slot.limit(start + listedSize);
+		try (FileChannel in = FileChannel.open(source.toPath(), StandardOpenOption.READ)) {
+			while (slot.hasRemaining() && in.read(slot) != -1) {
+				//keep reading
+			}
+			if (in.size() > listedSize)
+				return -1;
+		}
+		buffer.position(slot.position());
+		return slot.position() - start;
+	}
+
+	/**
+	 * @return false when the verify failed and the target is deleted.
+	 */
+	private boolean write(final int i, final ByteBuffer data) throws Exception {
+		DirectoryScanner.Entry source = sources.get(i);
+		File target = targets.get(i);
+
+		byte[] sourceDigest = null;
+		TargetVerifier.SampledDigest sourceSamples = null;
+		if (RunTimeProperties.instance.isVerifyAfterCopy()) {
+			//the source bytes are in the buffer, the same way copySmallFiles does it.
+			if (TargetVerifier.instance.isSourceDigestNeeded()) {
+				MessageDigest md = RunTimeProperties.instance.getChecksumAlgorithm().newDigest();
+				md.update(data.duplicate());
+				sourceDigest = md.digest();
+			}
+			sourceSamples = TargetVerifier.instance.newSampledDigest(data.remaining());
+			if (sourceSamples != null)
+				sourceSamples.update(0, data.duplicate());
+		}
+
+		ResumeJournal.instance.started(target, source.size(), source.lastModified());
+		try (FileChannel out = FileChannel.open(target.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE
+				, StandardOpenOption.TRUNCATE_EXISTING)) {
+			while (data.hasRemaining())
+				out.write(data);
+		}
+
+		if (RunTimeProperties.instance.isVerifyAfterCopy()) {
+			Boolean verified = TargetVerifier.instance.verify(source.getFile(), target, sourceDigest, sourceSamples, rdProUI);
+			if (verified != null && !verified) {
+				rdProUI.printError("Verify copy of file failed:" + target.getAbsolutePath());
+				target.delete();
+				return false;
+			}
+		}
+		SyncManifest.instance.copied(target, source.size(), source.lastModified(), sourceDigest);
+		ResumeJournal.instance.done(target, source.size(), source.lastModified());
+		return true;
+	}
+
+	/**
+	 * Restore the times and the permissions on another worker, here when none is free.
+	 */
+	private void preserveAttributes(final boolean[] skipped) {
+		Runnable task = new Runnable() {
+			@Override
+			public void run() {
+				for (int i = 0; i < sources.size(); i++) {
+					if (skipped[i])
+						continue;
+					String target = targets.get(i).getAbsolutePath();
+					try {
+						FileUtils.instance.preserveAllFileTimes(sources.get(i).getAttributes(), target);
+						FileUtils.instance.preserveFilePermissions(sources.get(i).getFile().getAbsolutePath(), target);
+					} catch (Exception e) {
+						rdProUI.printError("Failed to preserve file attributes.", e);
+					}
+				}
+			}
+
+			@Override
+			public String toString() {
+				return "preserve attributes of " + SmallFileBatch.this;
+			}
+		};
+		if (fileCopyWorkersPool == null || !fileCopyWorkersPool.offerTask(task))
+			task.run();
+	}
+
+
+	@Override
+	public long getScheduleSize() {
+		return bytes;
+	}
+
+	@Override
+	public File getScheduleSource() {
+		return sourceDir;
+	}
+
+	@Override
+	public File getScheduleTarget() {
+		return targetDir;
+	}
+
+	@Override
+	public String toString() {
+		return "SmallFileBatch{" + sourceDir + " --> " + targetDir + ", files=" + sources.size() + ", bytes=" + bytes + "}";
+	}
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright (c) 2014- MHISoft LLC and/or its affiliates. All rights reserved.
+ * Licensed to MHISoft LLC under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. MHISoft LLC licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.mhisoft.fc;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.ZipOutputStream;
+
+import org.mhisoft.fc.ui.UI;
+
+/**
+ * Description: the small files of a source tree packed in one zip, -packTree.
+ * The walker adds the files of as many directories as the bundle holds, from the listings it has
+ * already, and queues the bundle to the packaging workers once it is full. The entries are named
+ * relative to the source root, the copy workers explode the zip under the target root.
+ * With -stream the bundle is packed in memory instead of a zip on the source.
+ *
+ * @author Tony Xue
+ * @since Oct, 2026
+ */
+public class SmallFileBundle implements Runnable {
+
+	private final UI rdProUI;
+	private final FileCopyStatistics statistics;
+	private final MultiThreadExecutorService fileCopyWorkersPool;
+	private final File sourceRoot;
+	private final File targetRoot;
+	//names the zip, unique under the source root.
+	private final int number;
+	private final long maxSize;
+	private final int maxFiles;
+	private final List<DirectoryScanner.Entry> sources = new ArrayList<>();
+	private final List<File> targets = new ArrayList<>();
+	private long size;
+	//of the directories the cost model chose to deflate.
+	private long deflateSize;
+
+
+	public SmallFileBundle(final UI rdProUI, final File sourceRoot, final File targetRoot, final int number
+			, final FileCopyStatistics statistics, final MultiThreadExecutorService fileCopyWorkersPool) {
+		this.rdProUI = rdProUI;
+		this.sourceRoot = sourceRoot;
+		this.targetRoot = targetRoot;
+		this.number = number;
+		this.statistics = statistics;
+		this.fileCopyWorkersPool = fileCopyWorkersPool;
+		this.maxFiles = RunTimeProperties.instance.getPackBundleFiles();
+		//a streamed bundle is held in memory until it is unpacked.
+		this.maxSize = RunTimeProperties.instance.isStreamSmallFiles()
+				? Math.min(RunTimeProperties.instance.getPackBundleSize(), StreamingBundle.BUNDLE_SIZE)
+				: RunTimeProperties.instance.getPackBundleSize();
+	}
+
+	/**
+	 * @param deflate the cost model chose to deflate the small files of its directory.
+	 * @return false when the file does not fit, the bundle is full. The first file always fits.
+	 */
+	public boolean add(final DirectoryScanner.Entry source, final File target, final boolean deflate) {
+		if (!sources.isEmpty() && (sources.size() >= maxFiles || size + source.size() > maxSize))
+			return false;
+		sources.add(source);
+		targets.add(target);
+		size += source.size();
+		if (deflate)
+			deflateSize += source.size();
+		return true;
+	}
+
+	/**
+	 * @return the level of the zip, deflated when most of its bytes are from the directories chosen to be.
+	 */
+	int getLevel() {
+		return PackingCostModel.levelOf(deflateSize * 2 > size ? PackingCostModel.Choice.deflate : PackingCostModel.Choice.stored);
+	}
+
+	public boolean isEmpty() {
+		return sources.isEmpty();
+	}
+
+	public int size() {
+		return sources.size();
+	}
+
+
+	@Override
+	public void run() {
+		if (RunTimeProperties.instance.isStopThreads() || sources.isEmpty())
+			return;
+		long t1 = System.currentTimeMillis();
+		try {
+			int n = RunTimeProperties.instance.isStreamSmallFiles() ? stream() : zip();
+			if (RunTimeProperties.instance.isDebug())
+				rdProUI.println("[SmallFileBundle] Packed " + n + " files under " + sourceRoot
+						+ ", took " + (System.currentTimeMillis() - t1) + "ms");
+		} catch (IOException e) {
+			rdProUI.printError("Packing the small files under " + sourceRoot + " failed, copy them one by one.", e);
+			copyDirectly();
+		}
+	}
+
+	private FileUtils.CompressedPackageVO newPackageVO(final String zipName, final String zipFileWithPath) {
+		FileUtils.CompressedPackageVO vo = new FileUtils.CompressedPackageVO(zipName, sourceRoot.getName(), zipFileWithPath);
+		vo.originalDirLastModified = sourceRoot.lastModified();
+		vo.setDestDir(targetRoot.getPath());
+		return vo;
+	}
+
+	private int zip() throws IOException {
+		String zipName = RunTimeProperties.zip_prefix + sourceRoot.getName() + "_" + number + ".zip";
+		File zipFile = new File(sourceRoot, zipName);
+		FileUtils.CompressedPackageVO vo = newPackageVO(zipName, zipFile.getPath());
+
+		ZipOutputStream outputStream = new ZipOutputStream(new FileOutputStream(zipFile));
+		try {
+			int level = PackCompressionPolicy.instance.useLevel(getLevel());
+			if (level != PackCompressionPolicy.STORED)
+				outputStream.setLevel(level);
+			FileUtils.instance.putEntries(outputStream, vo, sourceRoot.toPath(), sources
+					, level == PackCompressionPolicy.STORED, false);
+			outputStream.close();
+			outputStream = null;
+		} finally {
+			if (outputStream != null) {
+				try {
+					outputStream.close();
+				} catch (IOException e) {
+					//
+				}
+				FileUtils.instance.deleteFile(zipFile.getPath(), rdProUI);
+			}
+		}
+
+		if (vo.getNumberOfFiles() == 0) {
+			FileUtils.instance.deleteFile(zipFile.getPath(), rdProUI);
+			return 0;
+		}
+		vo.zipFileSizeBytes = zipFile.length();
+		fileCopyWorkersPool.addTask(new CopyFileThread(rdProUI, zipFile, new File(targetRoot, zipName), vo, statistics));
+		return vo.getNumberOfFiles();
+	}
+
+	private int stream() throws IOException {
+		FileUtils.CompressedPackageVO vo = newPackageVO(null, null);
+		StreamingBundle bundle = StreamingBundle.open(rdProUI, sourceRoot, vo, statistics);
+		if (bundle == null) //cancelled
+			return 0;
+		boolean sealed = false;
+		try {
+			//the bytes do not go over the wire, deflating them would only cost CPU.
+			FileUtils.instance.putEntries(bundle.getZipOutputStream(), vo, sourceRoot.toPath(), sources, true, true);
+			bundle.seal(vo.getNumberOfFiles());
+			sealed = vo.getNumberOfFiles() > 0;
+		} finally {
+			if (!sealed)
+				bundle.discard();
+		}
+		if (sealed)
+			fileCopyWorkersPool.addTask(bundle);
+		return vo.getNumberOfFiles();
+	}
+
+	private void copyDirectly() {
+		for (int i = 0; i < sources.size(); i++) {
+			if (RunTimeProperties.instance.isStopThreads())
+				return;
+			File target = targets.get(i);
+			//the walker may not be in the target dir yet.
+			File dir = target.getParentFile();
+			if (!dir.exists())
+				dir.mkdirs();
+			fileCopyWorkersPool.addTask(new CopyFileThread(rdProUI, sources.get(i).getFile(), target
+					, sources.get(i).getAttributes(), null, statistics));
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "SmallFileBundle " + sourceRoot + " #" + number + " (" + sources.size() + " files)";
+	}
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright (c) 2014- MHISoft LLC and/or its affiliates. All rights reserved.
+ * Licensed to MHISoft LLC under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. MHISoft LLC licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.mhisoft.fc;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipOutputStream;
+
+import org.mhisoft.fc.ui.UI;
+
+/**
+ * Description: a bundle of small files zipped in memory by the packager and unpacked at the target by a copy worker,
+ * so the small files are read once and written once, and the source does not have to be writable.
+ * The bundles in memory at once are capped by MAX_BYTES_IN_FLIGHT, the packagers wait for the copy workers beyond that.
+ *
+ * @author Tony Xue
+ * @since Oct, 2026
+ */
+public class StreamingBundle implements Runnable, ScheduledTask {
+
+	//a bundle is handed to the copy workers once it is this large.
+	static final int BUNDLE_SIZE = 4 * 1024 * 1024;
+	static final int MAX_BYTES_IN_FLIGHT = 64 * 1024 * 1024;
+	//one permit per bundle byte, a bundle takes BUNDLE_SIZE when it is opened.
+	private static final Semaphore inFlight = new Semaphore(MAX_BYTES_IN_FLIGHT);
+
+	/**
+	 * Exposes the buffer so the unpacker reads it without a copy.
+	 */
+	private static class BundleBuffer extends ByteArrayOutputStream {
+		BundleBuffer() {
+			super(BUNDLE_SIZE);
+		}
+
+		ByteArrayInputStream toInputStream() {
+			return new ByteArrayInputStream(buf, 0, count);
+		}
+	}
+
+	private final UI rdProUI;
+	private final File sourceDir;
+	private final FileUtils.CompressedPackageVO compressedPackageVO;
+	private final FileCopyStatistics statistics;
+	private BundleBuffer buffer;
+	private ZipOutputStream zipOutputStream;
+	private int numberOfFiles;
+	private boolean released;
+
+
+	private StreamingBundle(final UI rdProUI, final File sourceDir, final FileUtils.CompressedPackageVO compressedPackageVO
+			, final FileCopyStatistics statistics) {
+		this.rdProUI = rdProUI;
+		this.sourceDir = sourceDir;
+		this.compressedPackageVO = compressedPackageVO;
+		this.statistics = statistics;
+		this.buffer = new BundleBuffer();
+		//the entries are stored, see FileUtils.StreamingZipFileVisitor.
+		this.zipOutputStream = new ZipOutputStream(buffer);
+	}
+
+	/**
+	 * Waits while MAX_BYTES_IN_FLIGHT are packed and not unpacked yet.
+	 *
+	 * @return null when the copy is cancelled.
+	 */
+	static StreamingBundle open(final UI rdProUI, final File sourceDir, final FileUtils.CompressedPackageVO compressedPackageVO
+			, final FileCopyStatistics statistics) {
+		try {
+			while (!inFlight.tryAcquire(BUNDLE_SIZE, 200, TimeUnit.MILLISECONDS)) {
+				if (RunTimeProperties.instance.isStopThreads())
+					return null;
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return null;
+		}
+		return new StreamingBundle(rdProUI, sourceDir, compressedPackageVO, statistics);
+	}
+
+	static int getBytesInFlight() {
+		return MAX_BYTES_IN_FLIGHT - inFlight.availablePermits();
+	}
+
+	ZipOutputStream getZipOutputStream() {
+		return zipOutputStream;
+	}
+
+	boolean isFull() {
+		return buffer.size() >= BUNDLE_SIZE;
+	}
+
+	/**
+	 * Finish the zip, no more files are added.
+	 */
+	void seal(final int numberOfFiles) throws IOException {
+		this.numberOfFiles = numberOfFiles;
+		zipOutputStream.close();
+		zipOutputStream = null;
+	}
+
+	/**
+	 * Drop the bundle without unpacking it.
+	 */
+	void discard() {
+		buffer = null;
+		zipOutputStream = null;
+		release();
+	}
+
+	private synchronized void release() {
+		if (!released) {
+			released = true;
+			inFlight.release(BUNDLE_SIZE);
+		}
+	}
+
+	int getNumberOfFiles() {
+		return numberOfFiles;
+	}
+
+	@Override
+	public void run() {
+		try {
+			if (RunTimeProperties.instance.isStopThreads())
+				return;
+			long t1 = System.currentTimeMillis();
+			File destDir = new File(compressedPackageVO.getDestDir());
+			FileUtils.createDir(compressedPackageVO.originalDirLastModified, destDir, rdProUI, statistics);
+			FileUtils.instance.unzipStream(buffer.toInputStream(), destDir, statistics);
+			//counted as one copy of the bundle size, like the zip it replaces.
+			statistics.addToTotalFileSizeAndTime(buffer.size(), System.currentTimeMillis() - t1);
+			statistics.getBucket(buffer.size()).incrementFileCount();
+
+			if (RunTimeProperties.instance.isVerbose()) {
+				rdProUI.println("\tUnpacked under " + destDir + ",(" + numberOfFiles + " files, "
+						+ buffer.size() + " bytes).");
+			}
+		} catch (Exception e) {
+			rdProUI.printError("Unpacking the small files of " + sourceDir + " failed", e);
+		} finally {
+			buffer = null;
+			release();
+		}
+	}
+
+	@Override
+	public long getScheduleSize() {
+		return buffer == null ? 0 : buffer.size();
+	}
+
+	@Override
+	public File getScheduleSource() {
+		return sourceDir;
+	}
+
+	@Override
+	public File getScheduleTarget() {
+		return new File(compressedPackageVO.getDestDir());
+	}
+
+	@Override
+	public String toString() {
+		return "StreamingBundle{" + sourceDir + " --> " + compressedPackageVO.getDestDir() + ", files=" + numberOfFiles + "}";
+	}
+}
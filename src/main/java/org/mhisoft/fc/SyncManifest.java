@@ -0,0 +1,312 @@
+/*
+ * Copyright (c) 2014- MHISoft LLC and/or its affiliates. All rights reserved.
+ * Licensed to MHISoft LLC under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. MHISoft LLC licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.mhisoft.fc;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.mhisoft.fc.ui.UI;
+
+/**
+ * Description: the incremental sync manifest kept in the target root with -manifest.
+ * It records relative dir, name, size, last modified and the content hash when known for every
+ * file in the target from the last run. The next run takes the target directory listings from it
+ * instead of reading the target, the source is still listed and compared file by file.
+ * It trusts that nobody else changes the target between the runs.
+ *
+ * @author Tony Xue
+ * @since Oct, 2026
+ */
+public class SyncManifest {
+
+	public static final String FILE_NAME = ".fastcopy_manifest";
+	private static final int MAGIC = 0x46434D31; //FCM1
+	private static final int VERSION = 1;
+
+	public static SyncManifest instance = new SyncManifest();
+
+	static class Record {
+		final long size;
+		final long lastModified;
+		final byte[] digest;
+
+		Record(final long size, final long lastModified, final byte[] digest) {
+			this.size = size;
+			this.lastModified = lastModified;
+			this.digest = digest;
+		}
+	}
+
+	//scheduled or failed, not known to be in the target.
+	private static final Record REMOVED = new Record(-1, -1, null);
+
+	private volatile boolean enabled;
+	private Path targetRoot;
+	private ChecksumAlgorithm algorithm;
+
+	//relative target dir --> the entries at the start of the run, from the manifest or listed.
+	private final Map<String, TargetDirectoryIndex> dirs = new ConcurrentHashMap<>();
+	//relative target dir --> the files copied, scheduled or deleted in this run.
+	private final ConcurrentHashMap<String, Map<String, Record>> changes = new ConcurrentHashMap<>();
+
+	private final AtomicLong dirsFromManifest = new AtomicLong(0);
+	private final AtomicLong dirsListed = new AtomicLong(0);
+
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+
+	/**
+	 * Start a run, load the manifest from the target root when -manifest is on.
+	 */
+	public synchronized void open(final String targetRootDir, final UI rdProUI) {
+		dirs.clear();
+		changes.clear();
+		dirsFromManifest.set(0);
+		dirsListed.set(0);
+		algorithm = RunTimeProperties.instance.getChecksumAlgorithm();
+		//flat copy puts everything into one dir, nothing to index by dir.
+		enabled = RunTimeProperties.instance.isSyncManifest() && !RunTimeProperties.instance.isFlatCopy()
+				&& targetRootDir != null;
+		if (!enabled)
+			return;
+
+		targetRoot = Paths.get(targetRootDir).toAbsolutePath().normalize();
+		File file = targetRoot.resolve(FILE_NAME).toFile();
+		if (!file.exists())
+			return;
+		try {
+			read(file);
+			rdProUI.println(LogLevel.debug, "Loaded the sync manifest " + file + ", dirs:" + dirs.size());
+		} catch (IOException | RuntimeException e) {
+			//start over, the target is listed.
+			dirs.clear();
+			rdProUI.printError("Can not read the sync manifest " + file + ", the target will be listed: " + e.getMessage());
+		}
+	}
+
+
+	/**
+	 * The target dir entries, from the manifest, otherwise listed once and recorded.
+	 *
+	 * @return null when the target dir can not be read.
+	 */
+	public TargetDirectoryIndex getIndex(final String targetDir, final FileCopyStatistics statistics, final UI rdProUI) {
+		String key = enabled ? relativize(new File(targetDir)) : null;
+		if (key == null)
+			return TargetDirectoryIndex.load(new File(targetDir), statistics, rdProUI);
+
+		TargetDirectoryIndex index = dirs.get(key);
+		if (index != null) {
+			dirsFromManifest.incrementAndGet();
+			return index;
+		}
+
+		dirsListed.incrementAndGet();
+		index = TargetDirectoryIndex.load(new File(targetDir), true, statistics, rdProUI);
+		if (index != null)
+			dirs.put(key, index);
+		return index;
+	}
+
+
+	/**
+	 * The target dir was just created, whatever the manifest says about it is gone.
+	 */
+	public void created(final String targetDir) {
+		String key = enabled ? relativize(new File(targetDir)) : null;
+		if (key != null)
+			dirs.put(key, TargetDirectoryIndex.EMPTY);
+	}
+
+
+	/**
+	 * The file is about to be copied, it is not in the target until copied() says so.
+	 */
+	public void scheduled(final File target) {
+		put(target, REMOVED);
+	}
+
+	public void copied(final File target, final long size, final long lastModified, final byte[] digest) {
+		put(target, new Record(size, lastModified, digest));
+	}
+
+	public void removed(final File target) {
+		put(target, REMOVED);
+	}
+
+	private void put(final File target, final Record record) {
+		if (!enabled)
+			return;
+		String key = relativize(target.getParentFile());
+		if (key == null)
+			return;
+		Map<String, Record> dirChanges = changes.get(key);
+		if (dirChanges == null) {
+			dirChanges = new ConcurrentHashMap<>();
+			Map<String, Record> existing = changes.putIfAbsent(key, dirChanges);
+			if (existing != null)
+				dirChanges = existing;
+		}
+		dirChanges.put(target.getName(), record);
+	}
+
+
+	/**
+	 * @return the dir relative to the target root with / separators, null when it is not under the root.
+	 */
+	String relativize(final File dir) {
+		if (dir == null)
+			return null;
+		Path rel = targetRoot.relativize(dir.toPath().toAbsolutePath().normalize());
+		String s = rel.toString().replace(File.separatorChar, '/');
+		if (s.equals("..") || s.startsWith("../"))
+			return null;
+		return s;
+	}
+
+
+	/**
+	 * Write the manifest for the next run, the old one is replaced only when the new one is complete.
+	 */
+	public synchronized void save(final UI rdProUI) {
+		if (!enabled)
+			return;
+		File file = targetRoot.resolve(FILE_NAME).toFile();
+		File tmp = targetRoot.resolve(FILE_NAME + ".tmp").toFile();
+		try {
+			if (!targetRoot.toFile().isDirectory())
+				return;
+			write(tmp);
+			Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			rdProUI.println(LogLevel.debug, "Saved the sync manifest " + file);
+		} catch (IOException e) {
+			tmp.delete();
+			rdProUI.printError("Can not save the sync manifest " + file + ": " + e.getMessage());
+		}
+	}
+
+
+	private void write(final File file) throws IOException {
+		Set<String> keys = new TreeSet<>(dirs.keySet());
+		keys.addAll(changes.keySet());
+
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(file), 65536)))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeUTF(algorithm.name());
+
+			for (String key : keys) {
+				TreeMap<String, Record> entries = new TreeMap<>();
+				TargetDirectoryIndex base = dirs.get(key);
+				if (base != null && base.hasAttributes()) {
+					for (int i = 0; i < base.size(); i++)
+						entries.put(base.getName(i), new Record(base.getSize(i), base.getLastModified(i), base.getDigest(i)));
+				}
+				Map<String, Record> dirChanges = changes.get(key);
+				if (dirChanges != null) {
+					for (Map.Entry<String, Record> e : dirChanges.entrySet()) {
+						if (e.getValue() == REMOVED)
+							entries.remove(e.getKey());
+						else
+							entries.put(e.getKey(), e.getValue());
+					}
+				}
+
+				out.writeBoolean(true);
+				out.writeUTF(key);
+				out.writeInt(entries.size());
+				for (Map.Entry<String, Record> e : entries.entrySet()) {
+					Record r = e.getValue();
+					out.writeUTF(e.getKey());
+					out.writeLong(r.size);
+					out.writeLong(r.lastModified);
+					if (r.digest == null) {
+						out.writeShort(0);
+					} else {
+						out.writeShort(r.digest.length);
+						out.write(r.digest);
+					}
+				}
+			}
+			out.writeBoolean(false);
+		}
+	}
+
+
+	private void read(final File file) throws IOException {
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(new FileInputStream(file), 65536)))) {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION)
+				throw new IOException("not a sync manifest or a different version");
+			//the hashes are only kept when they are of the same algorithm.
+			boolean sameAlgorithm = algorithm.name().equals(in.readUTF());
+
+			while (in.readBoolean()) {
+				String key = in.readUTF();
+				int n = in.readInt();
+				String[] names = new String[n];
+				long[] sizes = new long[n];
+				long[] lastModified = new long[n];
+				byte[][] digests = null;
+				for (int i = 0; i < n; i++) {
+					names[i] = in.readUTF();
+					sizes[i] = in.readLong();
+					lastModified[i] = in.readLong();
+					int len = in.readUnsignedShort();
+					if (len > 0) {
+						byte[] digest = new byte[len];
+						in.readFully(digest);
+						if (sameAlgorithm) {
+							if (digests == null)
+								digests = new byte[n][];
+							digests[i] = digest;
+						}
+					}
+				}
+				dirs.put(key, new TargetDirectoryIndex(names, sizes, lastModified, digests));
+			}
+		}
+	}
+
+
+	public String printSummary() {
+		return "Sync manifest: target dirs from the manifest:" + dirsFromManifest.get() + ", listed:" + dirsListed.get();
+	}
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2014- MHISoft LLC and/or its affiliates. All rights reserved.
+ * Licensed to MHISoft LLC under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. MHISoft LLC licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.mhisoft.fc;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.mhisoft.fc.ui.UI;
+
+/**
+ * Description: the target directory listed once, name --> (size, last modified).
+ * The skip/override decisions for all the files copied into the directory consult it
+ * instead of stat'ing the target file by file.
+ *
+ * @author Tony Xue
+ * @since Oct, 2026
+ */
+public class TargetDirectoryIndex {
+
+	public static final TargetDirectoryIndex EMPTY = new TargetDirectoryIndex(new String[0], new long[0], new long[0], null);
+
+	//sorted by name, parallel arrays to keep it compact on huge directories. sizes and times can be null.
+	private final String[] names;
+	private final long[] sizes;
+	private final long[] lastModified;
+	//the content hash recorded in the sync manifest, null when there is none.
+	private final byte[][] digests;
+
+
+	TargetDirectoryIndex(final String[] names, final long[] sizes, final long[] lastModified, final byte[][] digests) {
+		this.names = names;
+		this.sizes = sizes;
+		this.lastModified = lastModified;
+		this.digests = digests;
+	}
+
+
+	/**
+	 * List the target directory. The sizes and times are only read with -n or the sync manifest,
+	 * without them an existing target is always skipped and the names are all it takes.
+	 *
+	 * @return the index, EMPTY when the directory does not exist yet, null when it can not be read.
+	 */
+	public static TargetDirectoryIndex load(final File targetDir, final FileCopyStatistics statistics, final UI rdProUI) {
+		return load(targetDir, RunTimeProperties.instance.isOverwriteIfNewerOrDifferent() || SyncManifest.instance.isEnabled()
+				, statistics, rdProUI);
+	}
+
+	public static TargetDirectoryIndex load(final File targetDir, final boolean withAttributes
+			, final FileCopyStatistics statistics, final UI rdProUI) {
+		List<DirectoryScanner.Entry> entries;
+		try {
+			if (!withAttributes) {
+				String[] names = DirectoryScanner.listNames(targetDir, statistics).toArray(new String[0]);
+				Arrays.sort(names);
+				return new TargetDirectoryIndex(names, null, null, null);
+			}
+			entries = DirectoryScanner.list(targetDir, statistics, rdProUI);
+		} catch (NoSuchFileException e) {
+			return EMPTY;
+		} catch (IOException e) {
+			rdProUI.println(LogLevel.debug, "\tCan not list the target dir " + targetDir + ", check the files one by one:" + e.getMessage());
+			return null;
+		}
+
+		Collections.sort(entries, new Comparator<DirectoryScanner.Entry>() {
+			@Override
+			public int compare(DirectoryScanner.Entry o1, DirectoryScanner.Entry o2) {
+				return o1.getName().compareTo(o2.getName());
+			}
+		});
+
+		int n = entries.size();
+		String[] names = new String[n];
+		long[] sizes = new long[n];
+		long[] lastModified = new long[n];
+		for (int i = 0; i < n; i++) {
+			DirectoryScanner.Entry e = entries.get(i);
+			names[i] = e.getName();
+			sizes[i] = e.size();
+			lastModified[i] = e.lastModified();
+		}
+		return new TargetDirectoryIndex(names, sizes, lastModified, null);
+	}
+
+
+	public int size() {
+		return names.length;
+	}
+
+	boolean hasAttributes() {
+		return sizes != null;
+	}
+
+	String getName(final int i) {
+		return names[i];
+	}
+
+	long getSize(final int i) {
+		return sizes[i];
+	}
+
+	long getLastModified(final int i) {
+		return lastModified[i];
+	}
+
+	byte[] getDigest(final int i) {
+		return digests == null ? null : digests[i];
+	}
+
+	public boolean contains(final String name) {
+		return Arrays.binarySearch(names, name) >= 0;
+	}
+
+	/**
+	 * @return true when the source file should be copied over to the target dir,
+	 * the same decision as FileUtils.overrideTargetFile() on the listed target.
+	 */
+	public boolean shouldCopy(final String name, final BasicFileAttributes sourceAttributes) {
+		int i = Arrays.binarySearch(names, name);
+		if (i < 0)
+			return true;
+		if (sizes == null)
+			return RunTimeProperties.instance.isOverrideTarget();
+		return FileUtils.overrideTargetFile(sourceAttributes.lastModifiedTime().toMillis(), sourceAttributes.size()
+				, lastModified[i], sizes[i]);
+	}
+}
@@ -0,0 +1,405 @@
+/*
+ * Copyright (c) 2014- MHISoft LLC and/or its affiliates. All rights reserved.
+ * Licensed to MHISoft LLC under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. MHISoft LLC licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.mhisoft.fc;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+import org.mhisoft.fc.ui.UI;
+
+/**
+ * Description: verify the copied target against the source digest computed in flight,
+ * the way the VerifyMode says.
+ *
+ * @author Tony Xue
+ * @since Oct, 2026
+ */
+public class TargetVerifier {
+
+	static final int SAMPLE_SIZE = 64 * 1024;
+	static final int SAMPLE_COUNT = 8;
+
+	public static TargetVerifier instance = new TargetVerifier();
+
+	//O_DIRECT, only on JDK 10+
+	private static final OpenOption DIRECT_OPEN_OPTION = lookupDirectOpenOption();
+
+	private ExecutorService deferredExecutor;
+	private final AtomicLong deferredQueued = new AtomicLong(0);
+	private final AtomicLong deferredVerified = new AtomicLong(0);
+	private final AtomicLong deferredFailed = new AtomicLong(0);
+	private volatile boolean directReadFallback = false;
+
+
+	/**
+	 * The CRC32 of a few sampled ranges of a file. The first and the last block are always sampled.
+	 */
+	public static class SampledDigest {
+		final long fileSize;
+		final long[] offsets;
+		final int[] lengths;
+		final CRC32[] crcs;
+
+		SampledDigest(final long fileSize) {
+			this.fileSize = fileSize;
+			long blocks = (fileSize + SAMPLE_SIZE - 1) / SAMPLE_SIZE;
+			int count = (int) Math.min(blocks, SAMPLE_COUNT);
+			long[] blockIndexes = new long[count];
+			if (count == blocks) {
+				for (int i = 0; i < count; i++)
+					blockIndexes[i] = i;
+			} else {
+				//first, last and the random ones in between. the same file size gets the same samples.
+				Random random = new Random(fileSize);
+				blockIndexes[0] = 0;
+				blockIndexes[1] = blocks - 1;
+				int i = 2;
+				while (i < count) {
+					long candidate = 1 + (long) (random.nextDouble() * (blocks - 2));
+					boolean dup = false;
+					for (int j = 0; j < i; j++)
+						dup |= blockIndexes[j] == candidate;
+					if (!dup)
+						blockIndexes[i++] = candidate;
+				}
+				Arrays.sort(blockIndexes);
+			}
+
+			offsets = new long[count];
+			lengths = new int[count];
+			crcs = new CRC32[count];
+			for (int i = 0; i < count; i++) {
+				offsets[i] = blockIndexes[i] * SAMPLE_SIZE;
+				lengths[i] = (int) Math.min(SAMPLE_SIZE, fileSize - offsets[i]);
+				crcs[i] = new CRC32();
+			}
+		}
+
+		/**
+		 * Feed the bytes being copied.
+		 *
+		 * @param position the file position of data.position()
+		 * @param data     the data, its position and limit are not changed.
+		 */
+		public void update(final long position, final ByteBuffer data) {
+			long end = position + data.remaining();
+			for (int i = 0; i < offsets.length; i++) {
+				long from = Math.max(position, offsets[i]);
+				long to = Math.min(end, offsets[i] + lengths[i]);
+				if (from < to) {
+					ByteBuffer slice = data.duplicate();
+					slice.position(data.position() + (int) (from - position));
+					slice.limit(slice.position() + (int) (to - from));
+					crcs[i].update(slice);
+				}
+			}
+		}
+
+		/**
+		 * Read the sampled ranges of the file.
+		 */
+		static SampledDigest read(final File file, final long fileSize) throws IOException {
+			SampledDigest ret = new SampledDigest(fileSize);
+			ByteBuffer buffer = BufferPool.instance.acquire(SAMPLE_SIZE);
+			try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+				for (int i = 0; i < ret.offsets.length; i++) {
+					buffer.clear();
+					buffer.limit(ret.lengths[i]);
+					long position = ret.offsets[i];
+					while (buffer.hasRemaining()) {
+						int n = channel.read(buffer, position + buffer.position());
+						if (n == -1)
+							break;
+					}
+					buffer.flip();
+					ret.crcs[i].update(buffer);
+				}
+			} finally {
+				BufferPool.instance.release(buffer);
+			}
+			return ret;
+		}
+
+		boolean matches(final SampledDigest other) {
+			if (other == null || fileSize != other.fileSize || offsets.length != other.offsets.length)
+				return false;
+			for (int i = 0; i < offsets.length; i++) {
+				if (crcs[i].getValue() != other.crcs[i].getValue())
+					return false;
+			}
+			return true;
+		}
+	}
+
+
+	public void reset() {
+		deferredQueued.set(0);
+		deferredVerified.set(0);
+		deferredFailed.set(0);
+	}
+
+
+	/**
+	 * Do the copies need the whole source digest computed in flight.
+	 */
+	public boolean isSourceDigestNeeded() {
+		return RunTimeProperties.instance.isVerifyAfterCopy()
+				&& RunTimeProperties.instance.getVerifyMode() != VerifyMode.sampled;
+	}
+
+	/**
+	 * @return the sampled digest to feed in flight, null when not in the sampled mode.
+	 */
+	public SampledDigest newSampledDigest(final long fileSize) {
+		if (RunTimeProperties.instance.isVerifyAfterCopy()
+				&& RunTimeProperties.instance.getVerifyMode() == VerifyMode.sampled)
+			return new SampledDigest(fileSize);
+		return null;
+	}
+
+
+	/**
+	 * Verify the target.
+	 *
+	 * @param source        the source file, null when sourceDigest is given and the mode is not sampled.
+	 * @param target        the copied target file
+	 * @param sourceDigest  the source digest computed in flight, null to read the source.
+	 * @param sourceSamples the source samples computed in flight, null to read the source samples.
+	 * @param rdProUI       the ui
+	 * @return true or false, null when the verification is deferred or cancelled.
+	 */
+	public Boolean verify(final File source, final File target, final byte[] sourceDigest
+			, final SampledDigest sourceSamples, final UI rdProUI) throws IOException, NoSuchAlgorithmException {
+		return verify(source, target, sourceDigest, RunTimeProperties.instance.getChecksumAlgorithm(), sourceSamples, rdProUI);
+	}
+
+	/**
+	 * Verify the target with the algorithm the sourceDigest was computed with.
+	 */
+	public Boolean verify(final File source, final File target, final byte[] sourceDigest, final ChecksumAlgorithm algorithm
+			, final SampledDigest sourceSamples, final UI rdProUI) throws IOException, NoSuchAlgorithmException {
+
+		switch (RunTimeProperties.instance.getVerifyMode()) {
+			case sampled: {
+				long size = source.length();
+				if (target.length() != size)
+					return false;
+				SampledDigest expected = sourceSamples != null ? sourceSamples : SampledDigest.read(source, size);
+				return expected.matches(SampledDigest.read(target, size));
+			}
+			case deferred: {
+				submitDeferred(source, target, sourceDigest, algorithm, rdProUI);
+				return null;
+			}
+			default: {
+				byte[] expected = sourceDigest != null ? sourceDigest : FileUtils.readFileContentHash(source, algorithm, rdProUI);
+				byte[] targetHash = readTargetHash(target, algorithm, rdProUI);
+				if (expected == null || targetHash == null)
+					return null; //cancelled
+				return Arrays.equals(expected, targetHash);
+			}
+		}
+	}
+
+
+	/**
+	 * Read the sampled blocks back from the target.
+	 *
+	 * @param expected the samples of the bytes written to it.
+	 */
+	public boolean matchesSamples(final File target, final SampledDigest expected) throws IOException {
+		return target.length() == expected.fileSize && expected.matches(SampledDigest.read(target, expected.fileSize));
+	}
+
+
+	/**
+	 * Read the target digest the way the verify mode says: direct or through the page cache.
+	 */
+	public byte[] readTargetHash(final File target, final ChecksumAlgorithm algorithm, final UI rdProUI)
+			throws IOException, NoSuchAlgorithmException {
+		if (RunTimeProperties.instance.getVerifyMode() == VerifyMode.direct && DIRECT_OPEN_OPTION != null && !directReadFallback) {
+			try {
+				return readFileContentHashDirect(target, algorithm, rdProUI);
+			} catch (IOException | UnsupportedOperationException | IllegalArgumentException | ReflectiveOperationException e) {
+				//tmpfs and some others do not take O_DIRECT. do not try again.
+				directReadFallback = true;
+				rdProUI.println(LogLevel.debug, "\tDirect read not supported, fall back to the cached read:" + e.getMessage());
+			}
+		}
+		return FileUtils.readFileContentHash(target, algorithm, rdProUI);
+	}
+
+
+	/**
+	 * Read the file with O_DIRECT. The buffer address and the read sizes must be aligned to the block size.
+	 */
+	static byte[] readFileContentHashDirect(final File file, final ChecksumAlgorithm algorithm, final UI rdProUI)
+			throws IOException, NoSuchAlgorithmException, ReflectiveOperationException {
+		Path path = file.toPath();
+		FileStore store = Files.getFileStore(path);
+		int blockSize = (int) (long) (Long) FileStore.class.getMethod("getBlockSize").invoke(store);
+		Method alignedSlice = ByteBuffer.class.getMethod("alignedSlice", int.class);
+
+		int size = BufferSizePolicy.instance.getReadBufferSize(file, file.length());
+		size = Math.max(blockSize, size / blockSize * blockSize);
+
+		MessageDigest md = algorithm.newDigest();
+		ByteBuffer raw = BufferPool.instance.acquire(size + blockSize);
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, DIRECT_OPEN_OPTION)) {
+			ByteBuffer buffer = (ByteBuffer) alignedSlice.invoke(raw, blockSize);
+			buffer.limit(size);
+			//positional reads, the last short read would leave the channel position unaligned.
+			long fileSize = channel.size();
+			long position = 0;
+			while (position < fileSize) {
+				if (RunTimeProperties.instance.isStopThreads()) {
+					rdProUI.println("[warn]Cancelled by user. readFileContentHashDirect() stops.", true);
+					return null;
+				}
+				int n = channel.read(buffer, position);
+				if (n <= 0)
+					break;
+				position += n;
+				buffer.flip();
+				md.update(buffer);
+				buffer.clear();
+				buffer.limit(size);
+			}
+		} finally {
+			BufferPool.instance.release(raw);
+		}
+		return md.digest();
+	}
+
+
+	private static OpenOption lookupDirectOpenOption() {
+		try {
+			Class<?> c = Class.forName("com.sun.nio.file.ExtendedOpenOption");
+			for (Object option : c.getEnumConstants()) {
+				if ("DIRECT".equals(((Enum<?>) option).name()))
+					return (OpenOption) option;
+			}
+		} catch (Throwable e) {
+			//not available
+		}
+		return null;
+	}
+
+
+	private synchronized void submitDeferred(final File source, final File target, final byte[] sourceDigest
+			, final ChecksumAlgorithm algorithm, final UI rdProUI) {
+		if (deferredExecutor == null) {
+			deferredExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+				public Thread newThread(Runnable r) {
+					Thread t = Executors.defaultThreadFactory().newThread(r);
+					t.setName("deferred-verifier");
+					t.setDaemon(true);
+					//yield the IO to the copy workers.
+					t.setPriority(Thread.MIN_PRIORITY);
+					return t;
+				}
+			});
+		}
+		deferredQueued.incrementAndGet();
+		deferredExecutor.execute(new Runnable() {
+			@Override
+			public void run() {
+				if (RunTimeProperties.instance.isStopThreads())
+					return;
+				try {
+					byte[] expected = sourceDigest != null ? sourceDigest : FileUtils.readFileContentHash(source, algorithm, rdProUI);
+					byte[] targetHash = FileUtils.readFileContentHash(target, algorithm, rdProUI);
+					if (expected == null || targetHash == null)
+						return; //cancelled
+
+					if (Arrays.equals(expected, targetHash)) {
+						deferredVerified.incrementAndGet();
+						rdProUI.println(LogLevel.debug, "\tVerified file:" + target.getAbsolutePath());
+						//reading it may have touched the access time.
+						if (source != null)
+							FileUtils.instance.preserveAllFileTimes(source.getAbsolutePath(), target.getAbsolutePath());
+					} else {
+						deferredFailed.incrementAndGet();
+						rdProUI.printError("Verify copy of file failed:" + target.getAbsolutePath());
+						target.delete();
+						SyncManifest.instance.removed(target);
+						ResumeJournal.instance.removed(target);
+					}
+				} catch (IOException | NoSuchAlgorithmException e) {
+					deferredFailed.incrementAndGet();
+					rdProUI.printError("Deferred verification failed for " + target.getAbsolutePath(), e);
+				}
+			}
+		});
+	}
+
+
+	/**
+	 * Wait for the deferred verifications to finish. Called after the copy workers are done.
+	 */
+	public void awaitDeferred() {
+		ExecutorService executor;
+		synchronized (this) {
+			executor = deferredExecutor;
+			deferredExecutor = null;
+		}
+		if (executor == null)
+			return;
+
+		if (RunTimeProperties.instance.isStopThreads()) {
+			executor.shutdownNow();
+			return;
+		}
+		executor.shutdown();
+		try {
+			executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			executor.shutdownNow();
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	public long getDeferredQueued() {
+		return deferredQueued.get();
+	}
+
+	public String printDeferredSummary() {
+		return String.format("Deferred verification: queued:%s, verified:%s, failed:%s"
+				, deferredQueued.get(), deferredVerified.get(), deferredFailed.get());
+	}
+}
@@ -0,0 +1,375 @@
+/*
+ * Copyright (c) 2014- MHISoft LLC and/or its affiliates. All rights reserved.
+ * Licensed to MHISoft LLC under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. MHISoft LLC licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.mhisoft.fc;
+
+import java.util.AbstractQueue;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Description: the work queue of the copy workers ordered by the SchedulingPolicy.
+ * The tasks are put in lanes by the size and the devices known at the walk time, the worker
+ * asking for a task gets the one the policy picks for it. Unbounded, the MultiThreadExecutorService
+ * permits bound it.
+ *
+ * @author Tony Xue
+ * @since Oct, 2026
+ */
+public class TaskScheduleQueue extends AbstractQueue<Runnable> implements BlockingQueue<Runnable> {
+
+	//the mixed policy reserves workers for the files smaller than this.
+	static final long SMALL_TASK_SIZE = 1024 * 1024;
+
+	private static final String SMALL = "small";
+	private static final String LARGE = "large";
+	//size not known, ex. the chunk helpers, any worker takes them.
+	private static final String ANY = "any";
+
+	static class Entry {
+		final Runnable task;
+		final long size;
+		final long seq;
+
+		Entry(final Runnable task, final long size, final long seq) {
+			this.task = task;
+			this.size = size;
+			this.seq = seq;
+		}
+	}
+
+	private static final Comparator<Entry> LARGEST_FIRST = new Comparator<Entry>() {
+		@Override
+		public int compare(Entry o1, Entry o2) {
+			if (o1.size != o2.size)
+				return o1.size > o2.size ? -1 : 1;
+			return Long.compare(o1.seq, o2.seq);
+		}
+	};
+
+	private final SchedulingPolicy policy;
+	private final int reservedWorkers;
+
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition notEmpty = lock.newCondition();
+	//lane key --> tasks, in the order the lanes were created.
+	private final Map<String, Queue<Entry>> lanes = new LinkedHashMap<>();
+	private final List<Queue<Entry>> laneList = new ArrayList<>();
+	private final Set<Thread> reservedThreads = new HashSet<>();
+	//the workers of the pool now, at least one of them is left for the large files.
+	private int poolSize = Integer.MAX_VALUE;
+	private int nextLane;
+	private long seq;
+	private int count;
+
+
+	/**
+	 * @param reservedWorkers the workers taking the small files only with the mixed policy.
+	 */
+	public TaskScheduleQueue(final SchedulingPolicy policy, final int reservedWorkers) {
+		this.policy = policy;
+		this.reservedWorkers = reservedWorkers;
+	}
+
+	public SchedulingPolicy getPolicy() {
+		return policy;
+	}
+
+	/**
+	 * The pool was resized, a reserved worker beyond the new share takes the large files again.
+	 */
+	public void setPoolSize(final int poolSize) {
+		lock.lock();
+		try {
+			this.poolSize = poolSize;
+			notEmpty.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+
+	private String laneOf(final Runnable task, final long size) {
+		switch (policy) {
+			case mixed:
+				return size < 0 ? ANY : (size < SMALL_TASK_SIZE ? SMALL : LARGE);
+			case perDevice:
+				return task instanceof ScheduledTask ? DeviceResolver.instance.getDevicePair((ScheduledTask) task) : ANY;
+			default:
+				return ANY;
+		}
+	}
+
+	private Queue<Entry> lane(final String key) {
+		Queue<Entry> lane = lanes.get(key);
+		if (lane == null) {
+			lane = policy == SchedulingPolicy.largestFirst ? new PriorityQueue<Entry>(64, LARGEST_FIRST) : new ArrayDeque<Entry>();
+			lanes.put(key, lane);
+			laneList.add(lane);
+		}
+		return lane;
+	}
+
+
+	@Override
+	public boolean offer(final Runnable task) {
+		if (task == null)
+			throw new NullPointerException();
+		long size = task instanceof ScheduledTask ? ((ScheduledTask) task).getScheduleSize() : -1;
+		//the device lookup may touch the disk, not under the lock.
+		String key = laneOf(task, size);
+		lock.lock();
+		try {
+			lane(key).add(new Entry(task, size, seq++));
+			count++;
+			//not signal(), the worker woken may not be the one allowed to take it.
+			notEmpty.signalAll();
+		} finally {
+			lock.unlock();
+		}
+		return true;
+	}
+
+
+	/**
+	 * Pick the task for the worker, under the lock.
+	 */
+	private Entry next(final Thread worker) {
+		if (count == 0)
+			return null;
+		Entry e;
+		switch (policy) {
+			case mixed:
+				if (isReserved(worker)) {
+					e = poll(lanes.get(SMALL));
+					return e != null ? e : poll(lanes.get(ANY));
+				}
+				return poll(oldest(Arrays.asList(lanes.get(SMALL), lanes.get(LARGE), lanes.get(ANY))));
+			case perDevice:
+				for (int k = 0; k < laneList.size(); k++) {
+					int i = (nextLane + k) % laneList.size();
+					e = poll(laneList.get(i));
+					if (e != null) {
+						nextLane = i + 1;
+						return e;
+					}
+				}
+				return null;
+			default:
+				return poll(lanes.get(ANY));
+		}
+	}
+
+	private Entry poll(final Queue<Entry> lane) {
+		if (lane == null)
+			return null;
+		Entry e = lane.poll();
+		if (e != null)
+			count--;
+		return e;
+	}
+
+	private static Queue<Entry> oldest(final List<Queue<Entry>> queues) {
+		Queue<Entry> oldest = null;
+		for (Queue<Entry> q : queues) {
+			if (q != null && !q.isEmpty() && (oldest == null || q.peek().seq < oldest.peek().seq))
+				oldest = q;
+		}
+		return oldest;
+	}
+
+	/**
+	 * The first workers asking are reserved for the small files, a dead one gives its place up.
+	 * One worker of the pool is never reserved, or nothing would take the large files.
+	 */
+	private boolean isReserved(final Thread worker) {
+		Iterator<Thread> it = reservedThreads.iterator();
+		while (it.hasNext()) {
+			if (!it.next().isAlive())
+				it.remove();
+		}
+		int reserved = Math.min(reservedWorkers, poolSize - 1);
+		if (reservedThreads.contains(worker)) {
+			//the pool shrank under the reserved ones.
+			if (reservedThreads.size() > reserved) {
+				reservedThreads.remove(worker);
+				return false;
+			}
+			return true;
+		}
+		if (reservedThreads.size() < reserved) {
+			reservedThreads.add(worker);
+			return true;
+		}
+		return false;
+	}
+
+
+	@Override
+	public Runnable poll() {
+		lock.lock();
+		try {
+			Entry e = next(Thread.currentThread());
+			return e == null ? null : e.task;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public Runnable take() throws InterruptedException {
+		lock.lockInterruptibly();
+		try {
+			Entry e;
+			while ((e = next(Thread.currentThread())) == null)
+				notEmpty.await();
+			return e.task;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public Runnable poll(final long timeout, final TimeUnit unit) throws InterruptedException {
+		long nanos = unit.toNanos(timeout);
+		lock.lockInterruptibly();
+		try {
+			Entry e;
+			while ((e = next(Thread.currentThread())) == null) {
+				if (nanos <= 0)
+					return null;
+				nanos = notEmpty.awaitNanos(nanos);
+			}
+			return e.task;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public void put(final Runnable task) {
+		offer(task);
+	}
+
+	@Override
+	public boolean offer(final Runnable task, final long timeout, final TimeUnit unit) {
+		return offer(task);
+	}
+
+	@Override
+	public Runnable peek() {
+		lock.lock();
+		try {
+			Queue<Entry> lane = oldest(laneList);
+			return lane == null ? null : lane.peek().task;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public int size() {
+		lock.lock();
+		try {
+			return count;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public int remainingCapacity() {
+		return Integer.MAX_VALUE;
+	}
+
+	@Override
+	public boolean remove(final Object o) {
+		lock.lock();
+		try {
+			for (Queue<Entry> lane : laneList) {
+				for (Iterator<Entry> it = lane.iterator(); it.hasNext(); ) {
+					if (it.next().task.equals(o)) {
+						it.remove();
+						count--;
+						return true;
+					}
+				}
+			}
+			return false;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public int drainTo(final Collection<? super Runnable> c) {
+		return drainTo(c, Integer.MAX_VALUE);
+	}
+
+	@Override
+	public int drainTo(final Collection<? super Runnable> c, final int maxElements) {
+		lock.lock();
+		try {
+			int n = 0;
+			for (Queue<Entry> lane : laneList) {
+				Entry e;
+				while (n < maxElements && (e = poll(lane)) != null) {
+					c.add(e.task);
+					n++;
+				}
+			}
+			return n;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * A snapshot, not in the policy order.
+	 */
+	@Override
+	public Iterator<Runnable> iterator() {
+		lock.lock();
+		try {
+			List<Runnable> all = new ArrayList<>(count);
+			for (Queue<Entry> lane : laneList) {
+				for (Entry e : lane)
+					all.add(e.task);
+			}
+			return all.iterator();
+		} finally {
+			lock.unlock();
+		}
+	}
+}
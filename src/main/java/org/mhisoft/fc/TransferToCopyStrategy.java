@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2014- MHISoft LLC and/or its affiliates. All rights reserved.
+ * Licensed to MHISoft LLC under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. MHISoft LLC licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.mhisoft.fc;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.security.NoSuchAlgorithmException;
+
+import org.mhisoft.fc.ui.UI;
+
+/**
+ * Description: zero copy of the large files with chunked FileChannel.transferTo.
+ * The data does not pass through the user space, so the CPU per GB is much lower
+ * than the buffered copy. Chunking keeps the cancel check and the progress going.
+ *
+ * @author Tony Xue
+ * @since Oct, 2026
+ */
+public class TransferToCopyStrategy implements FileCopyStrategy {
+
+	static final long CHUNK_SIZE = 8 * 1024 * 1024;
+
+	public static final TransferToCopyStrategy instance = new TransferToCopyStrategy();
+
+	@Override
+	public FileUtils.CopyFileResultVO copy(final File source, final File target, FileCopyStatistics statistics, final UI rdProUI)
+			throws IOException, NoSuchAlgorithmException {
+
+		FileUtils.CopyFileResultVO vo = new FileUtils.CopyFileResultVO();
+		FileChannel inChannel = null, outChannel = null;
+		long totalFileSize;
+		long startTime, endTime;
+
+		rdProUI.showProgress(0, statistics);
+		startTime = System.currentTimeMillis();
+
+		try {
+			inChannel = FileChannel.open(source.toPath(), StandardOpenOption.READ);
+			//not truncated here, a partial target may be continued with -resume.
+			outChannel = FileChannel.open(target.toPath(), StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+			totalFileSize = inChannel.size();
+
+			long position = ResumeJournal.instance.getResumeOffset(source, target, totalFileSize);
+			long lastCheckpoint = position;
+			long sourceLastModified = ResumeJournal.instance.isEnabled() ? source.lastModified() : 0;
+			//continue the partial target from the offset.
+			outChannel.truncate(position);
+			outChannel.position(position);
+			while (position < totalFileSize) {
+
+				if (RunTimeProperties.instance.isStopThreads()) {
+					rdProUI.println("[warn]Cancelled by user. Stoping copying.", true);
+					ResumeJournal.instance.interrupted(target, totalFileSize, sourceLastModified, outChannel, position, rdProUI);
+					outChannel = null;
+					vo.interrupted = true;
+					if (RunTimeProperties.instance.isDebug())
+						rdProUI.println("\t" + Thread.currentThread().getName() + "is stopped.", true);
+					return vo;
+				}
+
+				if (position - lastCheckpoint >= ResumeJournal.CHECKPOINT_BYTES) {
+					ResumeJournal.instance.checkpoint(target, totalFileSize, sourceLastModified, outChannel, position);
+					lastCheckpoint = position;
+				}
+
+				long transferred = inChannel.transferTo(position, Math.min(CHUNK_SIZE, totalFileSize - position), outChannel);
+				if (transferred <= 0) {
+					//a short copy is not a complete one.
+					if (inChannel.size() <= position)
+						throw new IOException("The source shrank at position " + position + " of " + totalFileSize
+								+ " bytes while copying " + source.getAbsolutePath());
+					throw new IOException("transferTo made no progress at position " + position + " for " + source.getAbsolutePath());
+				}
+				position += transferred;
+
+				rdProUI.showProgress((int) (position * 100 / totalFileSize), statistics);
+			}
+
+		} finally {
+			FileUtils.close(inChannel);
+			FileUtils.close(outChannel);
+		}
+
+		//verify, the data never came to the user space, the source has to be read for its digest.
+		if (RunTimeProperties.instance.isVerifyAfterCopy()) {
+			vo.verified = TargetVerifier.instance.verify(source, target, null, null, rdProUI);
+		}
+
+		endTime = System.currentTimeMillis();
+		statistics.addToTotalFileSizeAndTime(totalFileSize, (endTime - startTime));
+		statistics.incrementFileCount();
+		rdProUI.showProgress(100, statistics);
+
+		vo.took = (endTime - startTime);
+		return vo;
+	}
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright (c) 2014- MHISoft LLC and/or its affiliates. All rights reserved.
+ * Licensed to MHISoft LLC under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. MHISoft LLC licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.mhisoft.fc;
+
+/**
+ * Description: how the target is verified with -verify.
+ * The source is always digested in flight while it is copied.
+ *
+ * @author Tony Xue
+ * @since Oct, 2026
+ */
+public enum VerifyMode {
+
+	/**
+	 * read the whole target back and compare the digest.
+	 */
+	full,
+
+	/**
+	 * read the whole target back bypassing the page cache (O_DIRECT) so the disk is checked,
+	 * not the cached pages we just wrote. Falls back to full where not supported.
+	 */
+	direct,
+
+	/**
+	 * compare a few sampled blocks of the target only.
+	 */
+	sampled,
+
+	/**
+	 * queue the full verification and do it in the background, the copy does not wait for it.
+	 */
+	deferred;
+
+
+	public static VerifyMode fromString(String s) {
+		for (VerifyMode mode : values()) {
+			if (mode.name().equalsIgnoreCase(s))
+				return mode;
+		}
+		throw new IllegalArgumentException("Unknown verify mode:" + s);
+	}
+}
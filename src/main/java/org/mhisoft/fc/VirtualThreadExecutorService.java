@@ -0,0 +1,272 @@
+/*
+ * Copyright (c) 2014- MHISoft LLC and/or its affiliates. All rights reserved.
+ * Licensed to MHISoft LLC under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. MHISoft LLC licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.mhisoft.fc;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.mhisoft.fc.ui.UI;
+
+/**
+ * Description: a virtual thread per task instead of a fixed pool of workers, for the latency bound copies
+ * (many small files on a network mount) that do better with thousands of opens in flight.
+ * How many tasks run at once is capped per (source device, target device) pair by a semaphore,
+ * the other tasks park their virtual threads on it.
+ * Virtual threads are JDK 21+ and the build targets 8, so they are looked up by reflection.
+ *
+ * @author Tony Xue
+ * @since Oct, 2026
+ */
+public class VirtualThreadExecutorService extends MultiThreadExecutorService {
+
+	public static final int DEFAULT_PER_DEVICE_CAP = 64;
+
+	//Thread.ofVirtual(), Thread.Builder.name(String, long) and factory()
+	private static final Method OF_VIRTUAL;
+	private static final Method BUILDER_NAME;
+	private static final Method BUILDER_FACTORY;
+	//Executors.newThreadPerTaskExecutor(ThreadFactory)
+	private static final Method NEW_THREAD_PER_TASK_EXECUTOR;
+	//Thread.isVirtual()
+	private static final Method IS_VIRTUAL;
+
+	static {
+		Method ofVirtual = null, name = null, factory = null, newExecutor = null, isVirtual = null;
+		try {
+			ofVirtual = Thread.class.getMethod("ofVirtual");
+			Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+			name = builderClass.getMethod("name", String.class, long.class);
+			factory = builderClass.getMethod("factory");
+			newExecutor = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+			isVirtual = Thread.class.getMethod("isVirtual");
+		} catch (ReflectiveOperationException e) {
+			//before JDK 21
+			ofVirtual = null;
+		}
+		OF_VIRTUAL = ofVirtual;
+		BUILDER_NAME = name;
+		BUILDER_FACTORY = factory;
+		NEW_THREAD_PER_TASK_EXECUTOR = newExecutor;
+		IS_VIRTUAL = ofVirtual == null ? null : isVirtual;
+	}
+
+	private final ExecutorService executor;
+	private volatile int perDeviceCap;
+	//device pair --> the permits of the tasks running on it
+	private final Map<String, AdjustableSemaphore> deviceSlots = new ConcurrentHashMap<>();
+	//started but waiting for a slot on their device
+	private final AtomicInteger waiting = new AtomicInteger(0);
+	private final AtomicInteger running = new AtomicInteger(0);
+
+
+	/**
+	 * @param perDeviceCap the tasks running at once per device pair
+	 * @param threadNamePrefix the virtual threads are named prefix0, prefix1...
+	 */
+	public VirtualThreadExecutorService(final int perDeviceCap, final int highWaterMark, final String threadNamePrefix
+			, final UI _rdProUI) {
+		this(perDeviceCap, highWaterMark, newThreadPerTaskExecutor(threadNamePrefix), _rdProUI);
+	}
+
+	VirtualThreadExecutorService(final int perDeviceCap, final int highWaterMark, final ExecutorService executor
+			, final UI _rdProUI) {
+		super(perDeviceCap, highWaterMark, SchedulingPolicy.fifo, _rdProUI);
+		this.perDeviceCap = perDeviceCap;
+		this.executor = executor;
+	}
+
+	static boolean isAvailable() {
+		return OF_VIRTUAL != null;
+	}
+
+	/**
+	 * @return true when the thread is a virtual one, always false before JDK 21.
+	 */
+	static boolean isVirtual(final Thread thread) {
+		if (IS_VIRTUAL == null)
+			return false;
+		try {
+			return (Boolean) IS_VIRTUAL.invoke(thread);
+		} catch (IllegalAccessException | InvocationTargetException e) {
+			return false;
+		}
+	}
+
+	private static ExecutorService newThreadPerTaskExecutor(final String threadNamePrefix) {
+		if (!isAvailable())
+			throw new IllegalStateException("Virtual threads require Java 21 or later.");
+		try {
+			Object builder = OF_VIRTUAL.invoke(null);
+			builder = BUILDER_NAME.invoke(builder, threadNamePrefix, 0L);
+			ThreadFactory factory = (ThreadFactory) BUILDER_FACTORY.invoke(builder);
+			return (ExecutorService) NEW_THREAD_PER_TASK_EXECUTOR.invoke(null, factory);
+		} catch (IllegalAccessException e) {
+			throw new IllegalStateException(e);
+		} catch (InvocationTargetException e) {
+			throw new IllegalStateException(e.getCause());
+		}
+	}
+
+	@Override
+	protected void createExecutor(final int corePoolSize) {
+		//the thread per task executor is passed in.
+	}
+
+
+	/**
+	 * Semaphore.reducePermits() is protected.
+	 */
+	static class AdjustableSemaphore extends Semaphore {
+		private static final long serialVersionUID = 1L;
+
+		AdjustableSemaphore(final int permits) {
+			super(permits);
+		}
+
+		@Override
+		protected void reducePermits(final int reduction) {
+			super.reducePermits(reduction);
+		}
+	}
+
+	AdjustableSemaphore getDeviceSlots(final String devicePair) {
+		AdjustableSemaphore slots = deviceSlots.get(devicePair);
+		if (slots == null) {
+			//the cap is not changed while a new device pair is added.
+			synchronized (deviceSlots) {
+				slots = deviceSlots.get(devicePair);
+				if (slots == null) {
+					slots = new AdjustableSemaphore(perDeviceCap);
+					deviceSlots.put(devicePair, slots);
+				}
+			}
+		}
+		return slots;
+	}
+
+
+	/**
+	 * Takes a slot on the device of the task before running it.
+	 */
+	private class DeviceCappedTask implements Runnable {
+		private final Runnable boundedTask;
+
+		DeviceCappedTask(final Runnable boundedTask) {
+			this.boundedTask = boundedTask;
+		}
+
+		@Override
+		public void run() {
+			//resolved on the virtual thread, the file store lookup does not hold up the walker.
+			String devicePair = boundedTask instanceof ScheduledTask
+					? DeviceResolver.instance.getDevicePair((ScheduledTask) boundedTask)
+					: DeviceResolver.instance.getDevicePair(null, null);
+			AdjustableSemaphore slots = getDeviceSlots(devicePair);
+			waiting.incrementAndGet();
+			boolean acquired = false;
+			try {
+				slots.acquire();
+				acquired = true;
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} finally {
+				waiting.decrementAndGet();
+			}
+
+			running.incrementAndGet();
+			try {
+				//still run when interrupted so the permit of the bounded task is given back,
+				//the copy sees the interrupt and stops.
+				boundedTask.run();
+			} finally {
+				running.decrementAndGet();
+				if (acquired)
+					slots.release();
+			}
+		}
+
+		@Override
+		public String toString() {
+			return boundedTask.toString();
+		}
+	}
+
+
+	@Override
+	protected void execute(final Runnable boundedTask) {
+		executor.execute(new DeviceCappedTask(boundedTask));
+	}
+
+	@Override
+	public ExecutorService getExecutor() {
+		return executor;
+	}
+
+	/**
+	 * Changes the cap of every device pair, the tasks running above a lowered cap are let finish.
+	 */
+	@Override
+	public void setCoreThreadSize(final int corePoolSize) {
+		synchronized (deviceSlots) {
+			int delta = corePoolSize - perDeviceCap;
+			perDeviceCap = corePoolSize;
+			for (AdjustableSemaphore slots : deviceSlots.values()) {
+				if (delta > 0)
+					slots.release(delta);
+				else if (delta < 0)
+					slots.reducePermits(-delta);
+			}
+		}
+	}
+
+	/**
+	 * @return the cap per device pair
+	 */
+	@Override
+	public int getCorePoolSize() {
+		return perDeviceCap;
+	}
+
+	/**
+	 * @return the tasks waiting for a slot on their device
+	 */
+	@Override
+	public int getQueueDepth() {
+		return waiting.get();
+	}
+
+	@Override
+	public int getNotCompletedTaskCount() {
+		return waiting.get() + running.get();
+	}
+
+	@Override
+	public String printQueueStats() {
+		return "virtual threads, per device cap:" + perDeviceCap + ", devices:" + deviceSlots.size()
+				+ ", " + super.printQueueStats();
+	}
+}
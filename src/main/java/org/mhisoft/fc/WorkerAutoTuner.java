@@ -0,0 +1,217 @@
+/*
+ * Copyright (c) 2014- MHISoft LLC and/or its affiliates. All rights reserved.
+ * Licensed to MHISoft LLC under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. MHISoft LLC licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.mhisoft.fc;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.mhisoft.fc.ui.UI;
+
+/**
+ * Description: tunes the number of copy workers from the throughput observed, for -w auto.
+ * Every few seconds it samples the files and bytes copied from the FileCopyStatistics and
+ * climbs the hill: one worker more or less in the direction that raised the throughput, back
+ * and the other way when it dropped, held when it is flat. The small file phases are measured
+ * in files/s, the large file phases in bytes/s, each phase keeps its own worker count.
+ *
+ * @author Tony Xue
+ * @since Oct, 2026
+ */
+public class WorkerAutoTuner implements Runnable {
+
+	static final long DEFAULT_INTERVAL = 3000;
+	//the change in the throughput taken as real, below it is the noise of a plateau.
+	static final double THRESHOLD = 0.05;
+	//probe again after this many flat samples, the file mix may have changed.
+	static final int PLATEAU_PROBE = 5;
+
+	/**
+	 * The controller state of one phase.
+	 */
+	static class Phase {
+		final String name;
+		int workers;
+		int lastWorkers;
+		double lastThroughput = -1;
+		int direction = 1;
+		int plateaus;
+
+		Phase(final String name, final int workers) {
+			this.name = name;
+			this.workers = workers;
+			this.lastWorkers = workers;
+		}
+	}
+
+	private final MultiThreadExecutorService pool;
+	private final FileCopyStatistics statistics;
+	private final UI rdProUI;
+	private final long interval;
+	private final int minWorkers;
+	private final int maxWorkers;
+
+	final Phase smallFiles;
+	final Phase largeFiles;
+	private Phase current;
+	private int workers;
+	private final AtomicLong adjustments = new AtomicLong(0);
+
+	private long lastFiles;
+	private double lastBytes;
+	private long lastTime;
+	private volatile boolean running;
+	private Thread thread;
+
+
+	public WorkerAutoTuner(final MultiThreadExecutorService pool, final FileCopyStatistics statistics, final UI rdProUI
+			, final int initialWorkers, final int maxWorkers, final long interval) {
+		this.pool = pool;
+		this.statistics = statistics;
+		this.rdProUI = rdProUI;
+		this.interval = interval;
+		//with the mixed policy one worker more than the ones reserved for the small files.
+		this.minWorkers = pool.getPolicy() == SchedulingPolicy.mixed
+				? RunTimeProperties.instance.getReservedSmallFileWorkers() + 1 : 1;
+		this.maxWorkers = Math.max(maxWorkers, Math.max(initialWorkers, minWorkers));
+		this.workers = initialWorkers;
+		this.smallFiles = new Phase("small files", Math.max(initialWorkers, minWorkers));
+		this.largeFiles = new Phase("large files", Math.max(initialWorkers, minWorkers));
+	}
+
+	/**
+	 * @return the default upper bound, the copy is I/O bound so a few times the cores.
+	 */
+	public static int getDefaultMaxWorkers() {
+		return Math.max(8, 4 * Runtime.getRuntime().availableProcessors());
+	}
+
+
+	public void start() {
+		running = true;
+		lastTime = System.currentTimeMillis();
+		lastFiles = statistics.getFilesCount();
+		lastBytes = statistics.getTotalFileSize();
+		thread = new Thread(this, "worker-autotuner");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	public void stop() {
+		running = false;
+		if (thread != null) {
+			thread.interrupt();
+			try {
+				thread.join(1000);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	@Override
+	public void run() {
+		while (running) {
+			try {
+				Thread.sleep(interval);
+			} catch (InterruptedException e) {
+				return;
+			}
+			long now = System.currentTimeMillis();
+			long files = statistics.getFilesCount();
+			double bytes = statistics.getTotalFileSize();
+			//only tune with a backlog, more workers can not help when they are waiting for the walker.
+			if (pool.getQueueDepth() > 0)
+				sample(files - lastFiles, bytes - lastBytes, now - lastTime);
+			lastFiles = files;
+			lastBytes = bytes;
+			lastTime = now;
+		}
+	}
+
+
+	/**
+	 * One step of the controller.
+	 *
+	 * @return the worker count to run with next.
+	 */
+	int sample(final long files, final double bytes, final long millis) {
+		if (files <= 0 || millis <= 0)
+			return workers;
+
+		boolean small = bytes / files < TaskScheduleQueue.SMALL_TASK_SIZE;
+		Phase phase = small ? smallFiles : largeFiles;
+		double throughput = (small ? files : bytes) * 1000d / millis;
+
+		if (phase != current) {
+			//the other phase has its own count, measure it again before moving.
+			current = phase;
+			phase.lastThroughput = -1;
+			setWorkers(phase.workers);
+			return workers;
+		}
+
+		int next = phase.workers;
+		if (phase.lastThroughput < 0) {
+			next = phase.workers + phase.direction;
+		} else {
+			double change = (throughput - phase.lastThroughput) / phase.lastThroughput;
+			if (change > THRESHOLD) {
+				//keep climbing.
+				phase.plateaus = 0;
+				next = phase.workers + phase.direction;
+			} else if (change < -THRESHOLD) {
+				//worse, go back and try the other way next time. compare with what it did there.
+				phase.plateaus = 0;
+				phase.direction = -phase.direction;
+				next = phase.lastWorkers;
+				throughput = phase.lastThroughput;
+			} else if (++phase.plateaus >= PLATEAU_PROBE) {
+				phase.plateaus = 0;
+				next = phase.workers + phase.direction;
+			}
+		}
+
+		next = Math.max(minWorkers, Math.min(maxWorkers, next));
+		if (next == phase.workers && (next == minWorkers || next == maxWorkers))
+			phase.direction = -phase.direction;
+		phase.lastThroughput = throughput;
+		phase.lastWorkers = phase.workers;
+		phase.workers = next;
+		setWorkers(next);
+		return workers;
+	}
+
+	private void setWorkers(final int n) {
+		if (n == workers)
+			return;
+		rdProUI.println(LogLevel.debug, "[autotune] " + current.name + " workers " + workers + " -> " + n);
+		workers = n;
+		adjustments.incrementAndGet();
+		pool.setCoreThreadSize(n);
+	}
+
+	public int getWorkers() {
+		return workers;
+	}
+
+	public String printSummary() {
+		return "Worker autotune: small files workers:" + smallFiles.workers + ", large files workers:" + largeFiles.workers
+				+ ", adjustments:" + adjustments.get();
+	}
+}
@@ -97,12 +97,13 @@ public class Workers {
 
 	public void shutDownandWaitForAllThreadsToComplete() {
 		executor.shutdown();
-		while (!this.executor.isTerminated()) {
-			try {
-				Thread.sleep(500);
-			} catch (InterruptedException e) {
-				e.printStackTrace();
+		try {
+			//returns the moment the last worker exits.
+			while (!this.executor.awaitTermination(1, TimeUnit.MINUTES)) {
+				//keep waiting
 			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
 		}
 	}
 
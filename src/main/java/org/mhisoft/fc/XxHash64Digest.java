@@ -0,0 +1,208 @@
+/*
+ * Copyright (c) 2014- MHISoft LLC and/or its affiliates. All rights reserved.
+ * Licensed to MHISoft LLC under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. MHISoft LLC licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.mhisoft.fc;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.security.MessageDigest;
+
+/**
+ * Description: streaming xxHash64 (seed 0) as a MessageDigest.
+ * The digest is the 64 bit hash in big endian, the canonical xxHash form.
+ *
+ * @author Tony Xue
+ * @since Oct, 2026
+ */
+class XxHash64Digest extends MessageDigest {
+
+	private static final long PRIME1 = 0x9E3779B185EBCA87L;
+	private static final long PRIME2 = 0xC2B2AE3D27D4EB4FL;
+	private static final long PRIME3 = 0x165667B19E3779F9L;
+	private static final long PRIME4 = 0x85EBCA77C2B2AE63L;
+	private static final long PRIME5 = 0x27D4EB2F165667C5L;
+
+	private static final int STRIPE = 32;
+
+	private long v1, v2, v3, v4;
+	private long totalLength;
+	//the tail that does not make a full stripe yet.
+	private final byte[] memory = new byte[STRIPE];
+	private int memorySize;
+
+
+	XxHash64Digest() {
+		super("XXHASH64");
+		engineReset();
+	}
+
+
+	@Override
+	protected void engineReset() {
+		v1 = PRIME1 + PRIME2;
+		v2 = PRIME2;
+		v3 = 0;
+		v4 = -PRIME1;
+		totalLength = 0;
+		memorySize = 0;
+	}
+
+	@Override
+	protected int engineGetDigestLength() {
+		return 8;
+	}
+
+	@Override
+	protected void engineUpdate(byte input) {
+		engineUpdate(new byte[]{input}, 0, 1);
+	}
+
+	@Override
+	protected void engineUpdate(byte[] input, int offset, int len) {
+		totalLength += len;
+		int end = offset + len;
+
+		if (memorySize > 0) {
+			int n = Math.min(STRIPE - memorySize, len);
+			System.arraycopy(input, offset, memory, memorySize, n);
+			memorySize += n;
+			offset += n;
+			if (memorySize < STRIPE)
+				return;
+			processStripe(memory, 0);
+			memorySize = 0;
+		}
+
+		while (end - offset >= STRIPE) {
+			processStripe(input, offset);
+			offset += STRIPE;
+		}
+
+		if (offset < end) {
+			System.arraycopy(input, offset, memory, 0, end - offset);
+			memorySize = end - offset;
+		}
+	}
+
+	@Override
+	protected void engineUpdate(ByteBuffer input) {
+		if (input.hasArray()) {
+			engineUpdate(input.array(), input.arrayOffset() + input.position(), input.remaining());
+			input.position(input.limit());
+			return;
+		}
+
+		//direct buffer, read the stripes in place.
+		int len = input.remaining();
+		totalLength += len;
+		if (memorySize > 0) {
+			int n = Math.min(STRIPE - memorySize, len);
+			input.get(memory, memorySize, n);
+			memorySize += n;
+			if (memorySize < STRIPE)
+				return;
+			processStripe(memory, 0);
+			memorySize = 0;
+		}
+
+		ByteBuffer le = input.slice().order(ByteOrder.LITTLE_ENDIAN);
+		while (le.remaining() >= STRIPE) {
+			v1 = round(v1, le.getLong());
+			v2 = round(v2, le.getLong());
+			v3 = round(v3, le.getLong());
+			v4 = round(v4, le.getLong());
+		}
+		memorySize = le.remaining();
+		le.get(memory, 0, memorySize);
+		input.position(input.limit());
+	}
+
+	@Override
+	protected byte[] engineDigest() {
+		long h;
+		if (totalLength >= STRIPE) {
+			h = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) + Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+			h = mergeRound(h, v1);
+			h = mergeRound(h, v2);
+			h = mergeRound(h, v3);
+			h = mergeRound(h, v4);
+		} else {
+			h = PRIME5;
+		}
+		h += totalLength;
+
+		int i = 0;
+		while (i + 8 <= memorySize) {
+			h ^= round(0, getLong(memory, i));
+			h = Long.rotateLeft(h, 27) * PRIME1 + PRIME4;
+			i += 8;
+		}
+		if (i + 4 <= memorySize) {
+			h ^= (getInt(memory, i) & 0xFFFFFFFFL) * PRIME1;
+			h = Long.rotateLeft(h, 23) * PRIME2 + PRIME3;
+			i += 4;
+		}
+		while (i < memorySize) {
+			h ^= (memory[i] & 0xFFL) * PRIME5;
+			h = Long.rotateLeft(h, 11) * PRIME1;
+			i++;
+		}
+
+		h ^= h >>> 33;
+		h *= PRIME2;
+		h ^= h >>> 29;
+		h *= PRIME3;
+		h ^= h >>> 32;
+
+		engineReset();
+		byte[] ret = new byte[8];
+		for (int k = 7; k >= 0; k--) {
+			ret[k] = (byte) h;
+			h >>>= 8;
+		}
+		return ret;
+	}
+
+
+	private void processStripe(final byte[] b, final int offset) {
+		v1 = round(v1, getLong(b, offset));
+		v2 = round(v2, getLong(b, offset + 8));
+		v3 = round(v3, getLong(b, offset + 16));
+		v4 = round(v4, getLong(b, offset + 24));
+	}
+
+	private static long round(long acc, final long input) {
+		acc += input * PRIME2;
+		acc = Long.rotateLeft(acc, 31);
+		return acc * PRIME1;
+	}
+
+	private static long mergeRound(long acc, final long val) {
+		acc ^= round(0, val);
+		return acc * PRIME1 + PRIME4;
+	}
+
+	private static long getLong(final byte[] b, final int i) {
+		return (getInt(b, i) & 0xFFFFFFFFL) | ((long) getInt(b, i + 4) << 32);
+	}
+
+	private static int getInt(final byte[] b, final int i) {
+		return (b[i] & 0xFF) | (b[i + 1] & 0xFF) << 8 | (b[i + 2] & 0xFF) << 16 | (b[i + 3] & 0xFF) << 24;
+	}
+}
@@ -25,9 +25,16 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
 
+import org.mhisoft.fc.BufferPool;
+import org.mhisoft.fc.ChecksumAlgorithm;
+import org.mhisoft.fc.CopyStrategyType;
 import org.mhisoft.fc.FileCopyStatistics;
 import org.mhisoft.fc.LogLevel;
+import org.mhisoft.fc.PackCompressionPolicy;
 import org.mhisoft.fc.RunTimeProperties;
+import org.mhisoft.fc.SchedulingPolicy;
+import org.mhisoft.fc.VerifyMode;
+import org.mhisoft.fc.utils.StrUtils;
 
 /**
  * Description: Console UI
@@ -135,14 +142,32 @@ public class ConsoleRdProUIImpl extends AbstractUIImpl {
 		println("\t Options: ");
 		println("\t\t -v      verbose mode.");
 		println("\t\t -verify verify each file copy by comparing the file content hash.");
+		println("\t\t -verifyMode  full, direct (bypass the page cache), sampled (sampled blocks only) or deferred (in the background). implies -verify.");
+		println("\t\t -checksum  content hash for -verify: md5, crc32c (Java 9+) or xxhash64. default:md5. implies -verify.");
 		println("\t\t -m      use multiple threads, best for copying across the SSD drives.");
-		println("\t\t -w      number of worker threads in the multi threads mode, default:" + RunTimeProperties.DEFAULT_THREAD_NUM+".");
+		println("\t\t -w      number of worker threads in the multi threads mode, default:" + RunTimeProperties.DEFAULT_THREAD_NUM+". auto tunes it from the throughput observed.");
+		println("\t\t -unzipThreads number of threads helping to explode the small file zips at the target. default: the number of cores.");
+		println("\t\t -walkers number of threads walking the source directories, separate from -w. default:" + RunTimeProperties.DEFAULT_WALKER_THREAD_NUM + ", 1 walks one directory at a time.");
+		println("\t\t -queue  max number of files queued to the workers before the directory walk waits, default:" + RunTimeProperties.DEFAULT_MAX_QUEUED_TASKS + ".");
 		println("\t\t -o      always override.");
 		println("\t\t -n      override only when the source file newer or different in size.");
+		println("\t\t -manifest  keep a manifest of the copied files in the target root, the next run reads it instead of listing the target. the target must not be changed by others in between.");
+		println("\t\t -resume  journal the copy in the target root. when a run is stopped, run it again with -resume to skip the files done and continue the partial large files.");
 		println("\t\t -f      flat copy, copy everything to the same target directory.");
 		println("\t\t -pack   Package the small files first to speed up the copy, requires write access on the source folder or drive.");
+		println("\t\t -packLevel  compression of the small file zips: stored, fast, best, 0-9 or auto (deflate only when the link is slower than the deflater). default:auto.");
+		println("\t\t -stream  Package the small files in memory and unpack them at the target, nothing is written on the source. implies -pack.");
+		println("\t\t -packTree [size[,files]]  Package the small files of the whole tree in bundles across the directories, capped by size and number of files. default:16M,2048. implies -pack.");
+		println("\t\t -batch  Copy the small files of a directory in batches, read into one buffer and written out by one worker, no zip. overrides -pack and -stream.");
 		println("\t\t -k      Keep the original file timestamp.");
 		println("\t\t -sf     Create the same source folder under the target and copies to it.");
+		println("\t\t -buffer  copy buffer size up to 16M, ex: 4M, or per source/target root, ex: /mnt/usb=256K. default: scales with the file size.");
+		println("\t\t -chunk  files this large are copied in chunks by all the -w workers at once, default:1G.");
+		println("\t\t -lanes  a pool of -w workers per source/target device pair, a slow disk does not hold up the others.");
+		println("\t\t -laneWorkers  workers of the lane copying from or to a root, ex: /mnt/usb=1. implies -lanes.");
+		println("\t\t -virtual  Java 21+, a virtual thread per file instead of the -w workers, for many small files on a network mount. optional: the files copied at once per source/target device pair, default:64.");
+		println("\t\t -schedule  the order the workers take the files in: fifo, largestFirst, mixed[:workers kept for the small files, default 1] or perDevice. default:fifo.");
+		println("\t\t -strategy  copy strategy for the large files: auto, buffered, transferTo or mmap. default:auto (transferTo unless -verify). repeat it with a size for the files up to that size, ex: -strategy 256M=mmap.");
 		println("Examples:");
 		println("\t\t copy from current dir to the backup directory: fastcopy t:\\backup");
 		println("\t\t fastcopy -from s:\\projects\\dir1;s:\\projects\\dir2 -to t:\\backup");
@@ -181,11 +206,53 @@ public class ConsoleRdProUIImpl extends AbstractUIImpl {
 			}else if (arg.equalsIgnoreCase("-pack")) {
 				props.setPackageSmallFiles(true);
 			}
+			else if (arg.equalsIgnoreCase("-packLevel")) {
+				try {
+					props.setPackCompressionLevel(PackCompressionPolicy.fromString(args[i + 1]));
+					i++; //skip the next arg, it is the value.
+				} catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+					System.err.println("Invalid value for -packLevel, use auto, stored, fast, best or 0-9.");
+					props.setSuccess(false);
+					return props;
+				}
+			}
+			else if (arg.equalsIgnoreCase("-packTree")) {
+				props.setPackageSmallFiles(true);
+				props.setPackSubtrees(true);
+				//the caps are optional, the next arg may be the source or the target.
+				if (args.length > i + 1 && args[i + 1].matches("\\d+[kKmMgG]?[bB]?(,\\d{1,9})?")) {
+					try {
+						String[] caps = args[i + 1].split(",");
+						long size = StrUtils.parseSize(caps[0]);
+						int files = caps.length > 1 ? Integer.parseInt(caps[1]) : RunTimeProperties.DEFAULT_PACK_BUNDLE_FILES;
+						if (size <= 0 || files <= 0)
+							throw new NumberFormatException(args[i + 1]);
+						props.setPackBundleSize(size);
+						props.setPackBundleFiles(files);
+						i++; //skip the next arg, it is the value.
+					} catch (NumberFormatException e) {
+						System.err.println("Invalid value for -packTree, ex: -packTree 16M,2048");
+						props.setSuccess(false);
+						return props;
+					}
+				}
+			}
+			else if (arg.equalsIgnoreCase("-batch")) {
+				props.setBatchSmallFiles(true);
+			}
+			else if (arg.equalsIgnoreCase("-stream")) {
+				props.setPackageSmallFiles(true);
+				props.setStreamSmallFiles(true);
+			}
 			else if (arg.equalsIgnoreCase("-k")) {
 				props.setPreserveFileTimesAndAccessAttributes(true);
 			}
 			else if (arg.equalsIgnoreCase("-n")) {
 				props.setOverwriteIfNewerOrDifferent(true);
+			}else if (arg.equalsIgnoreCase("-manifest")) {
+				props.setSyncManifest(true);
+			}else if (arg.equalsIgnoreCase("-resume")) {
+				props.setResume(true);
 			}else if (arg.equalsIgnoreCase("-f")) {
 				props.setFlatCopy(true);
 			}else if (arg.equalsIgnoreCase("-verify")) {
@@ -193,10 +260,184 @@ public class ConsoleRdProUIImpl extends AbstractUIImpl {
 			}else if (arg.equalsIgnoreCase("-sf")) {
 				props.setCreateTheSameSourceFolderUnderTarget(true);
 			}
+			else if (arg.equalsIgnoreCase("-verifyMode")) {
+				try {
+					props.setVerifyMode(VerifyMode.fromString(args[i + 1]));
+					props.setVerifyAfterCopy(true);
+					i++; //skip the next arg, it is the value.
+				} catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+					System.err.println("Invalid value for -verifyMode, use full, direct, sampled or deferred.");
+					props.setSuccess(false);
+					return props;
+				}
+			}
+			else if (arg.equalsIgnoreCase("-checksum")) {
+				try {
+					ChecksumAlgorithm algorithm = ChecksumAlgorithm.fromString(args[i + 1]);
+					if (!algorithm.isAvailable()) {
+						System.err.println(algorithm + " is not available on this Java version.");
+						props.setSuccess(false);
+						return props;
+					}
+					props.setChecksumAlgorithm(algorithm);
+					props.setVerifyAfterCopy(true);
+					i++; //skip the next arg, it is the value.
+				} catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+					System.err.println("Invalid value for -checksum, use md5, crc32c or xxhash64.");
+					props.setSuccess(false);
+					return props;
+				}
+			}
+			else if (arg.equalsIgnoreCase("-buffer")) {
+				try {
+					String v = args[i + 1];
+					int k = v.lastIndexOf('=');
+					String root = k > 0 ? v.substring(0, k) : "";
+					long size = StrUtils.parseSize(v.substring(k + 1));
+					//larger is not pooled, and a buffer can not go past 2G.
+					if (size <= 0 || size > BufferPool.MAX_POOLED_BUFFER_SIZE)
+						throw new NumberFormatException(v);
+					props.addBufferSizeOverride(root, (int) size);
+					i++; //skip the next arg, it is the value.
+				} catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+					System.err.println("Invalid value for -buffer, up to 16M, ex: -buffer 4M or -buffer /mnt/usb=256K");
+					props.setSuccess(false);
+					return props;
+				}
+			}
+			else if (arg.equalsIgnoreCase("-chunk")) {
+				try {
+					long threshold = StrUtils.parseSize(args[i + 1]);
+					if (threshold <= 0)
+						throw new NumberFormatException(args[i + 1]);
+					props.setChunkedCopyThreshold(threshold);
+					i++; //skip the next arg, it is the value.
+				} catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+					System.err.println("Invalid value for -chunk, ex: -chunk 2G");
+					props.setSuccess(false);
+					return props;
+				}
+			}
+			else if (arg.equalsIgnoreCase("-lanes")) {
+				props.setDeviceLanes(true);
+			}
+			else if (arg.equalsIgnoreCase("-virtual")) {
+				props.setVirtualThreads(true);
+				//the cap is optional, the next arg may be the source or the target.
+				if (args.length > i + 1 && args[i + 1].matches("\\d{1,9}")) {
+					int cap = Integer.parseInt(args[i + 1]);
+					if (cap <= 0) {
+						System.err.println("Invalid value for -virtual, use a positive number.");
+						props.setSuccess(false);
+						return props;
+					}
+					props.setVirtualThreadsPerDevice(cap);
+					i++; //skip the next arg, it is the value.
+				}
+			}
+			else if (arg.equalsIgnoreCase("-laneWorkers")) {
+				try {
+					String v = args[i + 1];
+					int k = v.lastIndexOf('=');
+					if (k <= 0)
+						throw new NumberFormatException(v);
+					int workers = Integer.parseInt(v.substring(k + 1));
+					if (workers <= 0)
+						throw new NumberFormatException(v);
+					props.addLaneWorkers(v.substring(0, k), workers);
+					props.setDeviceLanes(true);
+					i++; //skip the next arg, it is the value.
+				} catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+					System.err.println("Invalid value for -laneWorkers, ex: -laneWorkers /mnt/usb=1");
+					props.setSuccess(false);
+					return props;
+				}
+			}
+			else if (arg.equalsIgnoreCase("-schedule")) {
+				try {
+					//mixed takes the number of the workers for the small files, ex: mixed:2
+					String[] v = args[i + 1].split(":");
+					props.setSchedulingPolicy(SchedulingPolicy.fromString(v[0]));
+					if (v.length > 1) {
+						int reserved = Integer.parseInt(v[1]);
+						if (reserved <= 0 || props.getSchedulingPolicy() != SchedulingPolicy.mixed)
+							throw new IllegalArgumentException(args[i + 1]);
+						props.setReservedSmallFileWorkers(reserved);
+					}
+					i++; //skip the next arg, it is the value.
+				} catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+					System.err.println("Invalid value for -schedule, use fifo, largestFirst, mixed[:workers] or perDevice.");
+					props.setSuccess(false);
+					return props;
+				}
+			}
+			else if (arg.equalsIgnoreCase("-strategy")) {
+				try {
+					String v = args[i + 1];
+					int k = v.lastIndexOf('=');
+					CopyStrategyType strategy = CopyStrategyType.fromString(v.substring(k + 1));
+					if (k > 0) {
+						long maxFileSize = StrUtils.parseSize(v.substring(0, k));
+						if (maxFileSize <= 0)
+							throw new NumberFormatException(v);
+						props.addCopyStrategyBySize(maxFileSize, strategy);
+					} else
+						props.setLargeFileCopyStrategy(strategy);
+					i++; //skip the next arg, it is the value.
+				} catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+					System.err.println("Invalid value for -strategy, use auto, buffered, transferTo or mmap, or per file size, ex: -strategy 256M=mmap");
+					props.setSuccess(false);
+					return props;
+				}
+			}
+			else if (arg.equalsIgnoreCase("-walkers")) {
+				try {
+					int walkers = Integer.parseInt(args[i + 1]);
+					if (walkers <= 0)
+						throw new NumberFormatException(args[i + 1]);
+					props.setNumOfWalkerThreads(walkers);
+					i++; //skip the next arg, it is the value.
+				} catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+					System.err.println("Invalid value for -walkers, use a positive number.");
+					props.setSuccess(false);
+					return props;
+				}
+			}
+			else if (arg.equalsIgnoreCase("-unzipThreads")) {
+				try {
+					int unzipThreads = Integer.parseInt(args[i + 1]);
+					if (unzipThreads <= 0)
+						throw new NumberFormatException(args[i + 1]);
+					props.setNumOfUnzipThreads(unzipThreads);
+					i++; //skip the next arg, it is the value.
+				} catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+					System.err.println("Invalid value for -unzipThreads, use a positive number.");
+					props.setSuccess(false);
+					return props;
+				}
+			}
+			else if (arg.equalsIgnoreCase("-queue")) {
+				try {
+					int max = Integer.parseInt(args[i + 1]);
+					if (max <= 0)
+						throw new NumberFormatException(args[i + 1]);
+					props.setMaxQueuedTasks(max);
+					i++; //skip the next arg, it is the value.
+				} catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+					System.err.println("Invalid value for -queue, use a positive number.");
+					props.setSuccess(false);
+					return props;
+				}
+			}
 			else if (arg.equalsIgnoreCase("-w")) {
 
 				try {
-					props.setNumOfThreads(Integer.parseInt(args[i + 1]));
+					if (args.length > i + 1 && args[i + 1].equalsIgnoreCase("auto")) {
+						//start with the default and let the throughput decide.
+						props.setAutoTuneWorkers(true);
+						props.setNumOfThreads(RunTimeProperties.DEFAULT_THREAD_NUM);
+					} else
+						props.setNumOfThreads(Integer.parseInt(args[i + 1]));
 					i++; //skip the next arg, it is the target.
 				} catch (NumberFormatException e) {
 					props.setNumOfThreads( 1 );
@@ -34,6 +34,7 @@ import java.io.File;
 
 import javax.swing.JButton;
 import javax.swing.JCheckBox;
+import javax.swing.JComboBox;
 import javax.swing.JFrame;
 import javax.swing.JLabel;
 import javax.swing.JOptionPane;
@@ -49,6 +50,7 @@ import javax.swing.SpinnerNumberModel;
 import javax.swing.event.ChangeEvent;
 import javax.swing.event.ChangeListener;
 
+import org.mhisoft.fc.ChecksumAlgorithm;
 import org.mhisoft.fc.FastCopy;
 import org.mhisoft.fc.FileUtils;
 import org.mhisoft.fc.RunTimeProperties;
@@ -72,6 +74,7 @@ public class FastCopyMainForm {
 
 
 	JCheckBox chkMultiThread;
+	private JCheckBox ckAutoTuneWorkers;
 	JCheckBox chkShowInfo;
 
 	JPanel layoutPanel1;
@@ -95,6 +98,7 @@ public class FastCopyMainForm {
 	private JSpinner fldFontSize;
 	private JLabel labelFontSize;
 	private JCheckBox ckVerify;
+	private JComboBox<ChecksumAlgorithm> cbChecksumAlgorithm;
 	private JLabel labelCurrentDir;
 	private JCheckBox ckPackageSmallFiles;
 	private JCheckBox ckKeepOriginalFileTimestamp;
@@ -239,6 +243,7 @@ public class FastCopyMainForm {
 
         componentsList = ViewHelper.getAllComponents(frame);
         setupFontSpinner();
+        setupChecksumAlgorithms();
         ViewHelper.setFontSize(componentsList, UserPreference.getInstance().getFontSize());
 
         //initialize the preferences
@@ -251,10 +256,13 @@ public class FastCopyMainForm {
             ckFlatCopy.setSelected(props.isFlatCopy());
             ckCreateTheSameSourceCheckBox.setSelected(props.isCreateTheSameSourceFolderUnderTarget());
             ckVerify.setSelected(props.isVerifyAfterCopy());
+            cbChecksumAlgorithm.setSelectedItem(props.getChecksumAlgorithm());
             ckOverrideOnlyIfNewerCheckBox.setSelected(props.isOverwriteIfNewerOrDifferent());
             ckKeepOriginalFileTimestamp.setSelected(props.isPreserveFileTimesAndAccessAttributes());
             ckPackageSmallFiles.setSelected(props.isPackageSmallFiles());
             chkMultiThread.setSelected(props.getNumOfThreads() > 1);
+            ckAutoTuneWorkers.setSelected(props.isAutoTuneWorkers());
+            ckAutoTuneWorkers.setEnabled(chkMultiThread.isSelected());
             chkShowInfo.setSelected(props.isVerbose());
         }
     }
@@ -266,6 +274,8 @@ public class FastCopyMainForm {
                 @Override
                 public void actionPerformed(ActionEvent e) {
                     //outputTextArea.append("Value of the checkbox:" + chkForceDelete.isSelected());
+                    //the workers are tuned only when there are several.
+                    ckAutoTuneWorkers.setEnabled(chkMultiThread.isSelected());
                 }
             });
 
@@ -438,8 +448,11 @@ public class FastCopyMainForm {
 
 		if (chkMultiThread.isSelected()) {
 			props.setNumOfThreads(RunTimeProperties.DEFAULT_THREAD_NUM);
+			//the autotuner starts from the default and finds the count for the disks, only when asked to.
+			props.setAutoTuneWorkers(ckAutoTuneWorkers.isSelected());
 		} else {
 			props.setNumOfThreads(1);
+			props.setAutoTuneWorkers(false);
 		}
 
 		if (ckVerify.isSelected()) {
@@ -457,6 +470,7 @@ public class FastCopyMainForm {
 		props.setCreateTheSameSourceFolderUnderTarget(ckCreateTheSameSourceCheckBox.isSelected());
 		props.setPreserveFileTimesAndAccessAttributes(ckKeepOriginalFileTimestamp.isSelected());
 		props.setVerifyAfterCopy(ckVerify.isSelected());
+		props.setChecksumAlgorithm((ChecksumAlgorithm) cbChecksumAlgorithm.getSelectedItem());
 
 		return true;
 
@@ -526,6 +540,15 @@ public class FastCopyMainForm {
 
 	}
 
+	//only the algorithms this JVM can do.
+	public void setupChecksumAlgorithms() {
+		for (ChecksumAlgorithm algorithm : ChecksumAlgorithm.values()) {
+			if (algorithm.isAvailable())
+				cbChecksumAlgorithm.addItem(algorithm);
+		}
+		cbChecksumAlgorithm.setSelectedItem(ChecksumAlgorithm.md5);
+	}
+
 	public static void main(String[] args) {
 
 		UserPreference.getInstance().readSettingsFromFile();
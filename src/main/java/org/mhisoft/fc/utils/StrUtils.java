@@ -22,6 +22,30 @@ public class StrUtils {
 		return DatatypeConverter.parseHexBinary(s);
 	}
 
+	/**
+	 * Parse the size like 64K, 4M, 1G or plain bytes.
+	 *
+	 * @param s the size string
+	 * @return size in bytes
+	 * @throws NumberFormatException if it is not a valid size
+	 */
+	public static long parseSize(final String s) {
+		String v = s.trim().toUpperCase();
+		long unit = 1;
+		if (v.endsWith("B"))
+			v = v.substring(0, v.length() - 1);
+		if (v.endsWith("K")) {
+			unit = 1024;
+		} else if (v.endsWith("M")) {
+			unit = 1024 * 1024;
+		} else if (v.endsWith("G")) {
+			unit = 1024 * 1024 * 1024;
+		}
+		if (unit > 1)
+			v = v.substring(0, v.length() - 1);
+		return Long.parseLong(v.trim()) * unit;
+	}
+
 	public static String getDisplayTime(final long millis) {
 		double _d= millis;
 		if (millis<1000) {
@@ -0,0 +1,104 @@
+package org.mhisoft.fc;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the pooled copy buffers.
+ *
+ * @author Tony Xue
+ * @since Oct, 2026
+ */
+public class BufferPoolTest {
+
+    @Test
+    public void testSameThreadReusesTheBuffer() {
+        BufferPool pool = new BufferPool(1024 * 1024);
+
+        ByteBuffer b1 = pool.acquire(64 * 1024);
+        assertTrue(b1.isDirect());
+        b1.put((byte) 1);
+        pool.release(b1);
+        assertEquals(64 * 1024, pool.getBytesHeld());
+
+        ByteBuffer b2 = pool.acquire(64 * 1024);
+        assertSame("Should get the same buffer back on the same thread", b1, b2);
+        assertEquals("Should be cleared", 0, b2.position());
+        assertEquals(1, pool.getHits());
+        assertEquals(1, pool.getMisses());
+        assertEquals(0, pool.getBytesHeld());
+    }
+
+    @Test
+    public void testHeapAndDirectAreKeptApart() {
+        BufferPool pool = new BufferPool(1024 * 1024);
+        ByteBuffer heap = pool.acquireHeap(4096);
+        assertFalse(heap.isDirect());
+        assertNotNull(heap.array());
+        pool.release(heap);
+
+        ByteBuffer direct = pool.acquire(4096);
+        assertTrue(direct.isDirect());
+        assertEquals(2, pool.getMisses());
+    }
+
+    @Test
+    public void testPoolIsBounded() {
+        BufferPool pool = new BufferPool(100 * 1024);
+        ByteBuffer b1 = pool.acquire(64 * 1024);
+        ByteBuffer b2 = pool.acquire(64 * 1024);
+        pool.release(b1);
+        pool.release(b2);
+
+        assertEquals("Only one fits into the pool", 64 * 1024, pool.getBytesHeld());
+        assertEquals(64 * 1024, pool.getPeakBytesHeld());
+
+        pool.clear();
+        assertEquals(0, pool.getBytesHeld());
+    }
+
+    @Test
+    public void testSharedFreeListAcrossThreads() throws Exception {
+        final BufferPool pool = new BufferPool(1024 * 1024);
+        final ByteBuffer[] fromOtherThread = new ByteBuffer[1];
+        Thread t = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                ByteBuffer b1 = pool.acquire(8192);
+                ByteBuffer b2 = pool.acquire(8192);
+                pool.release(b1); // stays with the thread
+                pool.release(b2); // goes to the shared list
+                fromOtherThread[0] = b2;
+            }
+        });
+        t.start();
+        t.join();
+
+        assertSame(fromOtherThread[0], pool.acquire(8192));
+        pool.clear();
+        assertEquals(0, pool.getBytesHeld());
+    }
+
+    @Test
+    public void testShortLivedThreadsDoNotPinTheBuffers() throws Exception {
+        final BufferPool pool = new BufferPool(64 * 1024);
+        //a thread per file, as the virtual thread executor does.
+        for (int i = 0; i < 200; i++) {
+            Thread t = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    pool.release(pool.acquire(4096));
+                }
+            });
+            t.start();
+            t.join();
+        }
+        assertTrue("caches:" + pool.getThreadCacheCount(), pool.getThreadCacheCount() <= 2);
+        assertTrue("misses:" + pool.getMisses(), pool.getMisses() <= 2);
+        assertEquals(198, pool.getHits(), 2);
+        assertEquals(4096, pool.getBytesHeld());
+    }
+}
@@ -0,0 +1,107 @@
+package org.mhisoft.fc;
+
+import java.io.File;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mhisoft.fc.utils.StrUtils;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the adaptive copy buffer sizing.
+ *
+ * @author Tony Xue
+ * @since Oct, 2026
+ */
+public class BufferSizePolicyTest {
+
+    private static final long MB = 1024 * 1024;
+    private BufferSizePolicy policy;
+
+    @Before
+    public void setUp() {
+        policy = new BufferSizePolicy();
+        RunTimeProperties.instance.getBufferSizeOverrides().clear();
+        RunTimeProperties.instance.setBufferCalibration(true);
+    }
+
+    @After
+    public void tearDown() {
+        RunTimeProperties.instance.getBufferSizeOverrides().clear();
+    }
+
+    @Test
+    public void testScalesWithFileSize() {
+        File f = new File("/src/a.bin");
+        RunTimeProperties.instance.setBufferCalibration(false);
+        assertEquals(64 * 1024, policy.getBufferSize(f, null, 100000));
+        assertEquals(256 * 1024, policy.getBufferSize(f, null, 100 * MB));
+        assertEquals(4 * MB, policy.getBufferSize(f, null, 2048 * MB));
+        assertEquals(8 * MB, policy.getBufferSize(f, null, 10240 * MB));
+    }
+
+    @Test
+    public void testLongestRootOverrideWins() {
+        RunTimeProperties.instance.addBufferSizeOverride("", 128 * 1024);
+        RunTimeProperties.instance.addBufferSizeOverride("/mnt/usb", 32 * 1024);
+
+        assertEquals(32 * 1024, policy.getBufferSize(new File("/data/a.bin"), new File("/mnt/usb/a.bin"), 100 * MB));
+        assertEquals(128 * 1024, policy.getBufferSize(new File("/data/a.bin"), new File("/mnt/ssd/a.bin"), 100 * MB));
+    }
+
+    @Test
+    public void testCalibrationPicksTheFastestCandidate() {
+        long fileSize = 100 * MB;
+        int[] handedOut = new int[BufferSizePolicy.CALIBRATION_CANDIDATES.length];
+        for (int i = 0; i < handedOut.length; i++) {
+            handedOut[i] = policy.getBufferSizeToCalibrate(new File("/src/" + i), null, fileSize);
+        }
+        assertEquals(0, policy.getCalibratedSize());
+        //the chunks and the other copies the calibration does not time do not take a candidate.
+        assertEquals(256 * 1024, policy.getBufferSize(new File("/src/chunked"), null, fileSize));
+
+        for (int size : handedOut) {
+            // 4M is the fastest one
+            policy.recordCopy(new File("/src/a"), null, size, fileSize, size == 4 * MB ? 100 : 400);
+        }
+
+        assertEquals(4 * MB, policy.getCalibratedSize());
+        assertEquals(4 * MB, policy.getBufferSize(new File("/src/next"), null, fileSize));
+        // mid-size files are not affected
+        assertEquals(64 * 1024, policy.getBufferSize(new File("/src/small"), null, MB));
+    }
+
+    @Test
+    public void testLostCandidateComesAroundAgain() {
+        long fileSize = 100 * MB;
+        int lost = policy.getBufferSizeToCalibrate(new File("/src/failed"), null, fileSize);
+        for (int i = 1; i < BufferSizePolicy.CALIBRATION_CANDIDATES.length; i++) {
+            int size = policy.getBufferSizeToCalibrate(new File("/src/" + i), null, fileSize);
+            policy.recordCopy(new File("/src/" + i), null, size, fileSize, 100);
+        }
+        assertEquals(0, policy.getCalibratedSize());
+        assertEquals(lost, policy.getBufferSizeToCalibrate(new File("/src/again"), null, fileSize));
+        policy.recordCopy(new File("/src/again"), null, lost, fileSize, 50);
+        assertEquals(lost, policy.getCalibratedSize());
+    }
+
+    @Test
+    public void testOverrideSizedCopyIsNotASample() {
+        long fileSize = 100 * MB;
+        RunTimeProperties.instance.addBufferSizeOverride("/mnt/usb", (int) (4 * MB));
+        for (int size : BufferSizePolicy.CALIBRATION_CANDIDATES)
+            policy.recordCopy(new File("/data/a.bin"), new File("/mnt/usb/a.bin"), size, fileSize, 100);
+        assertEquals(0, policy.getCalibratedSize());
+        assertTrue(policy.printSummary(), policy.printSummary().endsWith("samples:0"));
+    }
+
+    @Test
+    public void testParseSize() {
+        assertEquals(64 * 1024, StrUtils.parseSize("64K"));
+        assertEquals(4 * MB, StrUtils.parseSize("4m"));
+        assertEquals(4 * MB, StrUtils.parseSize("4MB"));
+        assertEquals(1000, StrUtils.parseSize("1000"));
+    }
+}
@@ -0,0 +1,156 @@
+package org.mhisoft.fc;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mhisoft.fc.ui.ConsoleRdProUIImpl;
+import org.mhisoft.fc.utils.StrUtils;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the checksum algorithms used by -verify.
+ *
+ * @author Tony Xue
+ * @since Oct, 2026
+ */
+public class ChecksumAlgorithmTest {
+
+    private ConsoleRdProUIImpl ui;
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Before
+    public void setUp() throws Exception {
+        ui = new ConsoleRdProUIImpl();
+        FileUtils.instance.setRdProUI(ui);
+        RunTimeProperties.instance.setStopThreads(false);
+        RunTimeProperties.instance.setVerifyAfterCopy(true);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        RunTimeProperties.instance.setVerifyAfterCopy(false);
+        RunTimeProperties.instance.setChecksumAlgorithm(ChecksumAlgorithm.md5);
+    }
+
+    private static String hash(ChecksumAlgorithm algorithm, String s) throws Exception {
+        MessageDigest md = algorithm.newDigest();
+        md.update(s.getBytes("UTF-8"));
+        return StrUtils.toHexString(md.digest()).toLowerCase();
+    }
+
+    @Test
+    public void testXxHash64KnownValues() throws Exception {
+        assertEquals("ef46db3751d8e999", hash(ChecksumAlgorithm.xxhash64, ""));
+        assertEquals("44bc2cf5ad770999", hash(ChecksumAlgorithm.xxhash64, "abc"));
+        //longer than a 32 byte stripe
+        assertEquals("fbcea83c8a378bf1", hash(ChecksumAlgorithm.xxhash64, "Nobody inspects the spammish repetition"));
+    }
+
+    @Test
+    public void testCrc32cKnownValue() throws Exception {
+        if (!ChecksumAlgorithm.crc32c.isAvailable())
+            return;
+        assertEquals("e3069283", hash(ChecksumAlgorithm.crc32c, "123456789"));
+    }
+
+    @Test
+    public void testStreamingMatchesOneShot() throws Exception {
+        byte[] data = new byte[1000003];
+        new Random(7).nextBytes(data);
+
+        for (ChecksumAlgorithm algorithm : ChecksumAlgorithm.values()) {
+            if (!algorithm.isAvailable())
+                continue;
+            MessageDigest md = algorithm.newDigest();
+            md.update(data);
+            byte[] expected = md.digest();
+
+            //odd sized chunks through a direct buffer, the way the copy feeds it.
+            ByteBuffer direct = ByteBuffer.allocateDirect(4099);
+            Random random = new Random(11);
+            int position = 0;
+            while (position < data.length) {
+                int n = Math.min(data.length - position, 1 + random.nextInt(direct.capacity()));
+                direct.clear();
+                direct.put(data, position, n);
+                direct.flip();
+                md.update(direct);
+                position += n;
+            }
+            assertArrayEquals(algorithm + " direct buffer", expected, md.digest());
+
+            //heap chunks, the digest must reset itself after digest().
+            for (int i = 0; i < data.length; i += 37)
+                md.update(data, i, Math.min(37, data.length - i));
+            assertArrayEquals(algorithm + " heap chunks", expected, md.digest());
+        }
+    }
+
+    @Test
+    public void testZipEntryComment() throws Exception {
+        byte[] hash = new byte[]{1, 2, 3, (byte) 0xff};
+        //md5 is not prefixed, the older versions read it.
+        assertEquals(ChecksumAlgorithm.md5, ChecksumAlgorithm.fromComment(ChecksumAlgorithm.md5.toComment(hash)));
+        assertFalse(ChecksumAlgorithm.md5.toComment(hash).contains(":"));
+
+        String comment = ChecksumAlgorithm.xxhash64.toComment(hash);
+        assertTrue(comment.startsWith("XXHASH64:"));
+        assertEquals(ChecksumAlgorithm.xxhash64, ChecksumAlgorithm.fromComment(comment));
+        assertArrayEquals(hash, ChecksumAlgorithm.hashFromComment(comment));
+        assertArrayEquals(hash, ChecksumAlgorithm.hashFromComment(ChecksumAlgorithm.md5.toComment(hash)));
+    }
+
+    @Test
+    public void testCopyVerifiedWithXxHash64() throws Exception {
+        RunTimeProperties.instance.setChecksumAlgorithm(ChecksumAlgorithm.xxhash64);
+        byte[] bytes = new byte[3 * 1024 * 1024 + 5];
+        new Random(3).nextBytes(bytes);
+        File source = tempFolder.newFile("source.bin");
+        Files.write(source.toPath(), bytes);
+        File target = new File(tempFolder.getRoot(), "target.bin");
+
+        FileUtils.CopyFileResultVO vo = FileUtils.instance.bufferedCopyStrategy.copy(source, target, new FileCopyStatistics(), ui);
+        assertEquals(Boolean.TRUE, vo.verified);
+        assertTrue(Arrays.equals(bytes, Files.readAllBytes(target.toPath())));
+    }
+
+    @Test
+    public void testPackageRecordsTheAlgorithm() throws Exception {
+        RunTimeProperties.instance.setChecksumAlgorithm(ChecksumAlgorithm.xxhash64);
+        File sourceDir = tempFolder.newFolder("src");
+        for (int i = 0; i < 5; i++)
+            Files.write(new File(sourceDir, "f" + i + ".txt").toPath(), ("file " + i).getBytes());
+        File zipDir = tempFolder.newFolder("zip");
+
+        FileUtils.CompressedPackageVO vo = FileUtils.instance.compressDirectory(sourceDir.getAbsolutePath()
+                , zipDir.getAbsolutePath(), false, -1);
+        File zip = new File(vo.sourceZipFileWithPath);
+        try (ZipFile zipFile = new ZipFile(zip)) {
+            Enumeration<? extends ZipEntry> entries = zipFile.entries();
+            while (entries.hasMoreElements())
+                assertEquals(ChecksumAlgorithm.xxhash64, ChecksumAlgorithm.fromComment(entries.nextElement().getComment()));
+        }
+
+        //unzip with md5 selected, the entries still verify with xxhash64.
+        RunTimeProperties.instance.setChecksumAlgorithm(ChecksumAlgorithm.md5);
+        File extractDir = tempFolder.newFolder("extract");
+        FileUtils.instance.unzipFile(zip, extractDir, new FileCopyStatistics());
+        for (int i = 0; i < 5; i++)
+            assertEquals("file " + i, new String(Files.readAllBytes(new File(extractDir, "f" + i + ".txt").toPath())));
+    }
+}
@@ -0,0 +1,88 @@
+package org.mhisoft.fc;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mhisoft.fc.ui.ConsoleRdProUIImpl;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the chunk parallel copy of the huge files.
+ *
+ * @author Tony Xue
+ * @since Oct, 2026
+ */
+public class ChunkedCopyStrategyTest {
+
+    private static final long CHUNK = 256 * 1024;
+
+    private ConsoleRdProUIImpl ui;
+    private MultiThreadExecutorService pool;
+    private ChunkedCopyStrategy strategy;
+    private File source;
+    private File target;
+    private byte[] data;
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Before
+    public void setUp() throws Exception {
+        ui = new ConsoleRdProUIImpl();
+        RunTimeProperties.instance.setStopThreads(false);
+        RunTimeProperties.instance.setVerifyAfterCopy(false);
+        RunTimeProperties.instance.setResume(false);
+        FileUtils.instance.setRdProUI(ui);
+        pool = new MultiThreadExecutorService(4, ui);
+        strategy = new ChunkedCopyStrategy(CHUNK);
+        strategy.setWorkersPool(pool);
+
+        //not a multiple of the chunk size.
+        data = new byte[(int) (CHUNK * 9 + 4321)];
+        new Random(3).nextBytes(data);
+        source = tempFolder.newFile("huge.bin");
+        Files.write(source.toPath(), data);
+        target = new File(tempFolder.getRoot(), "huge.copy");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        pool.shutDownandWaitForAllThreadsToComplete();
+        RunTimeProperties.instance.setVerifyAfterCopy(false);
+    }
+
+    @Test
+    public void testCopyAndVerify() throws Exception {
+        RunTimeProperties.instance.setVerifyAfterCopy(true);
+        FileCopyStatistics statistics = new FileCopyStatistics();
+
+        FileUtils.CopyFileResultVO vo = strategy.copy(source, target, statistics, ui);
+
+        assertArrayEquals(data, Files.readAllBytes(target.toPath()));
+        assertEquals(Boolean.TRUE, vo.verified);
+        assertEquals(1, statistics.getFilesCount());
+    }
+
+    @Test
+    public void testOverwriteLongerTarget() throws Exception {
+        Files.write(target.toPath(), new byte[data.length * 2]);
+        strategy.copy(source, target, new FileCopyStatistics(), ui);
+        assertArrayEquals(data, Files.readAllBytes(target.toPath()));
+    }
+
+    @Test
+    public void testThreshold() throws Exception {
+        long threshold = RunTimeProperties.instance.getChunkedCopyThreshold();
+        assertTrue(strategy.accepts(source, target, threshold));
+        assertFalse(strategy.accepts(source, target, threshold - 1));
+        strategy.setWorkersPool(null);
+        assertFalse(strategy.accepts(source, target, threshold));
+    }
+}
@@ -0,0 +1,102 @@
+package org.mhisoft.fc;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.mhisoft.fc.ui.ConsoleRdProUIImpl;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the completion tracker and the shutdown of the worker pools on it.
+ *
+ * @author Tony Xue
+ * @since Oct, 2026
+ */
+public class CompletionTrackerTest {
+
+    private static Thread awaitIdle(final CompletionTracker tracker, final CountDownLatch idle) {
+        Thread t = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    tracker.awaitIdle();
+                    idle.countDown();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        t.start();
+        return t;
+    }
+
+    @Test
+    public void testWaitsForTheUpstream() throws Exception {
+        CompletionTracker packagers = new CompletionTracker();
+        CompletionTracker copiers = new CompletionTracker();
+        copiers.dependsOn(packagers);
+        assertTrue(copiers.isIdle());
+
+        packagers.register();
+        assertFalse(copiers.isIdle());
+        CountDownLatch idle = new CountDownLatch(1);
+        awaitIdle(copiers, idle);
+
+        //the packager queues a zip to the copiers before it is done.
+        copiers.register();
+        packagers.arrive();
+        assertFalse(idle.await(200, TimeUnit.MILLISECONDS));
+
+        copiers.arrive();
+        assertTrue(idle.await(1, TimeUnit.SECONDS));
+        assertEquals(0, copiers.getPending());
+    }
+
+    @Test
+    public void testCancelReleasesTheWaiter() throws Exception {
+        CompletionTracker tracker = new CompletionTracker();
+        tracker.register();
+        CountDownLatch idle = new CountDownLatch(1);
+        awaitIdle(tracker, idle);
+        assertFalse(idle.await(100, TimeUnit.MILLISECONDS));
+
+        tracker.cancel();
+        assertTrue(idle.await(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testShutdownReturnsWhenTheLastTaskIsDone() throws Exception {
+        final MultiThreadExecutorService packagers = new MultiThreadExecutorService(1, 10, new ConsoleRdProUIImpl());
+        final MultiThreadExecutorService copiers = new MultiThreadExecutorService(2, 10, new ConsoleRdProUIImpl());
+        copiers.dependsOn(packagers);
+        final AtomicInteger copied = new AtomicInteger();
+        final Runnable copy = new Runnable() {
+            @Override
+            public void run() {
+                copied.incrementAndGet();
+            }
+        };
+
+        for (int i = 0; i < 3; i++) {
+            packagers.addTask(new Runnable() {
+                @Override
+                public void run() {
+                    copiers.addTask(copy);
+                }
+            });
+        }
+
+        long t1 = System.currentTimeMillis();
+        //the copiers wait for the packagers before they shut down.
+        copiers.shutDownandWaitForAllThreadsToComplete();
+        assertEquals(3, copied.get());
+        packagers.shutDownandWaitForAllThreadsToComplete();
+        long elapsed = System.currentTimeMillis() - t1;
+        assertTrue("took " + elapsed + "ms", elapsed < 400);
+        assertTrue(copiers.getExecutor().isTerminated());
+        assertTrue(packagers.getExecutor().isTerminated());
+    }
+}
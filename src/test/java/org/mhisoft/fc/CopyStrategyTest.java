@@ -0,0 +1,228 @@
+package org.mhisoft.fc;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mhisoft.fc.ui.ConsoleRdProUIImpl;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the large file copy strategies.
+ *
+ * @author Tony Xue
+ * @since Oct, 2026
+ */
+public class CopyStrategyTest {
+
+    private ConsoleRdProUIImpl ui;
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Before
+    public void setUp() throws Exception {
+        ui = new ConsoleRdProUIImpl();
+        FileUtils.instance.setRdProUI(ui);
+        RunTimeProperties.instance.setStopThreads(false);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        RunTimeProperties.instance.setVerifyAfterCopy(false);
+        RunTimeProperties.instance.setLargeFileCopyStrategy(CopyStrategyType.auto);
+        RunTimeProperties.instance.getCopyStrategyBySize().clear();
+    }
+
+    private File createRandomFile(String name, int size) throws Exception {
+        byte[] bytes = new byte[size];
+        new Random(size).nextBytes(bytes);
+        File f = tempFolder.newFile(name);
+        Files.write(f.toPath(), bytes);
+        return f;
+    }
+
+    @Test
+    public void testTransferToCopiesMultipleChunks() throws Exception {
+        // larger than one transferTo chunk
+        File source = createRandomFile("source.bin", (int) TransferToCopyStrategy.CHUNK_SIZE + 12345);
+        File target = new File(tempFolder.getRoot(), "target.bin");
+
+        FileCopyStatistics statistics = new FileCopyStatistics();
+        FileUtils.CopyFileResultVO vo = TransferToCopyStrategy.instance.copy(source, target, statistics, ui);
+
+        assertNull("Not verified when -verify is off", vo.verified);
+        assertTrue("Target content should match",
+                Arrays.equals(Files.readAllBytes(source.toPath()), Files.readAllBytes(target.toPath())));
+        assertEquals(1, statistics.getFilesCount());
+        assertEquals(source.length(), (long) statistics.getTotalFileSize());
+    }
+
+    @Test
+    public void testTransferToWithVerify() throws Exception {
+        RunTimeProperties.instance.setVerifyAfterCopy(true);
+        File source = createRandomFile("source.bin", 300000);
+        File target = new File(tempFolder.getRoot(), "target.bin");
+
+        FileUtils.CopyFileResultVO vo = TransferToCopyStrategy.instance.copy(source, target, new FileCopyStatistics(), ui);
+
+        assertEquals(Boolean.TRUE, vo.verified);
+    }
+
+    @Test
+    public void testBufferedCopyWithVerify() throws Exception {
+        RunTimeProperties.instance.setVerifyAfterCopy(true);
+        File source = createRandomFile("source.bin", 700000);
+        File target = new File(tempFolder.getRoot(), "target.bin");
+
+        FileUtils.CopyFileResultVO vo = FileUtils.instance.bufferedCopyStrategy.copy(source, target, new FileCopyStatistics(), ui);
+
+        assertEquals(Boolean.TRUE, vo.verified);
+        assertTrue("Target content should match",
+                Arrays.equals(Files.readAllBytes(source.toPath()), Files.readAllBytes(target.toPath())));
+    }
+
+    @Test
+    public void testAutoStrategySelection() {
+        RunTimeProperties.instance.setLargeFileCopyStrategy(CopyStrategyType.auto);
+        RunTimeProperties.instance.setVerifyAfterCopy(false);
+        assertSame(TransferToCopyStrategy.instance, FileUtils.instance.getLargeFileCopyStrategy());
+
+        RunTimeProperties.instance.setVerifyAfterCopy(true);
+        assertSame(FileUtils.instance.bufferedCopyStrategy, FileUtils.instance.getLargeFileCopyStrategy());
+
+        RunTimeProperties.instance.setLargeFileCopyStrategy(CopyStrategyType.transferTo);
+        assertSame(TransferToCopyStrategy.instance, FileUtils.instance.getLargeFileCopyStrategy());
+    }
+
+    @Test
+    public void testMappedCopiesMultipleWindows() throws Exception {
+        // larger than one mapped window
+        File source = createRandomFile("source.bin", (int) MappedCopyStrategy.WINDOW_SIZE + 54321);
+        File target = new File(tempFolder.getRoot(), "target.bin");
+        // a stale longer target is cut
+        Files.write(target.toPath(), new byte[(int) MappedCopyStrategy.WINDOW_SIZE * 2]);
+
+        FileCopyStatistics statistics = new FileCopyStatistics();
+        FileUtils.CopyFileResultVO vo = MappedCopyStrategy.instance.copy(source, target, statistics, ui);
+
+        assertNull("Not verified when -verify is off", vo.verified);
+        assertTrue("Target content should match",
+                Arrays.equals(Files.readAllBytes(source.toPath()), Files.readAllBytes(target.toPath())));
+        assertEquals(1, statistics.getFilesCount());
+        assertEquals(source.length(), (long) statistics.getTotalFileSize());
+    }
+
+    @Test
+    public void testMappedWithVerify() throws Exception {
+        RunTimeProperties.instance.setVerifyAfterCopy(true);
+        File source = createRandomFile("source.bin", 300000);
+        File target = new File(tempFolder.getRoot(), "target.bin");
+
+        FileUtils.CopyFileResultVO vo = MappedCopyStrategy.instance.copy(source, target, new FileCopyStatistics(), ui);
+
+        assertEquals(Boolean.TRUE, vo.verified);
+        assertNotNull("The source digest is taken on the mapped windows", vo.digest);
+    }
+
+    @Test
+    public void testMappedFailsCleanlyWhenTheSourceShrinks() throws Exception {
+        final File source = createRandomFile("source.bin", (int) MappedCopyStrategy.WINDOW_SIZE * 2 + 100);
+        File target = new File(tempFolder.getRoot(), "target.bin");
+        //cut the source after the first window is copied.
+        ConsoleRdProUIImpl truncatingUi = new ConsoleRdProUIImpl() {
+            @Override
+            public void showProgress(int value, FileCopyStatistics statistics) {
+                if (value > 0 && value < 100 && source.length() > MappedCopyStrategy.WINDOW_SIZE + 10) {
+                    try (java.io.RandomAccessFile f = new java.io.RandomAccessFile(source, "rw")) {
+                        f.setLength(MappedCopyStrategy.WINDOW_SIZE + 10);
+                    } catch (java.io.IOException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            }
+        };
+
+        try {
+            MappedCopyStrategy.instance.copy(source, target, new FileCopyStatistics(), truncatingUi);
+            fail("the source shrank");
+        } catch (java.io.IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("shrank"));
+        }
+    }
+
+    @Test
+    public void testTransferToFailsWhenTheSourceShrinks() throws Exception {
+        final File source = createRandomFile("source.bin", (int) TransferToCopyStrategy.CHUNK_SIZE * 2 + 100);
+        File target = new File(tempFolder.getRoot(), "target.bin");
+        ConsoleRdProUIImpl truncatingUi = new ConsoleRdProUIImpl() {
+            @Override
+            public void showProgress(int value, FileCopyStatistics statistics) {
+                if (value > 0 && value < 100 && source.length() > TransferToCopyStrategy.CHUNK_SIZE + 10) {
+                    try (java.io.RandomAccessFile f = new java.io.RandomAccessFile(source, "rw")) {
+                        f.setLength(TransferToCopyStrategy.CHUNK_SIZE + 10);
+                    } catch (java.io.IOException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            }
+        };
+
+        FileCopyStatistics statistics = new FileCopyStatistics();
+        try {
+            TransferToCopyStrategy.instance.copy(source, target, statistics, truncatingUi);
+            fail("the source shrank");
+        } catch (java.io.IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("shrank at position " + (TransferToCopyStrategy.CHUNK_SIZE + 10)));
+        }
+        assertEquals("a short copy is not counted", 0, statistics.getFilesCount());
+    }
+
+    @Test
+    public void testStrategyBySize() {
+        RunTimeProperties.instance.setLargeFileCopyStrategy(CopyStrategyType.transferTo);
+        RunTimeProperties.instance.addCopyStrategyBySize(1024 * 1024, CopyStrategyType.buffered);
+        RunTimeProperties.instance.addCopyStrategyBySize(256 * 1024 * 1024, CopyStrategyType.mmap);
+        File f = new File("x");
+
+        assertSame(FileUtils.instance.bufferedCopyStrategy, FileUtils.instance.getLargeFileCopyStrategy(f, f, 500000));
+        assertSame(FileUtils.instance.bufferedCopyStrategy, FileUtils.instance.getLargeFileCopyStrategy(f, f, 1024 * 1024));
+        assertSame(MappedCopyStrategy.instance, FileUtils.instance.getLargeFileCopyStrategy(f, f, 1024 * 1024 + 1));
+        assertSame(TransferToCopyStrategy.instance, FileUtils.instance.getLargeFileCopyStrategy(f, f, 300L * 1024 * 1024));
+    }
+
+    @Test
+    public void testStrategiesBenchmark() throws Exception {
+        File source = createRandomFile("mid.bin", 48 * 1024 * 1024);
+        FileCopyStrategy[] strategies = {FileUtils.instance.bufferedCopyStrategy, TransferToCopyStrategy.instance
+                , MappedCopyStrategy.instance};
+        String[] names = {"buffered", "transferTo", "mmap"};
+        for (int i = 0; i < strategies.length; i++) {
+            File target = new File(tempFolder.getRoot(), names[i] + ".bin");
+            long t1 = System.nanoTime();
+            strategies[i].copy(source, target, new FileCopyStatistics(), ui);
+            long took = System.nanoTime() - t1;
+            assertEquals(source.length(), target.length());
+            System.out.println(String.format("%-10s %6.1f ms", names[i], took / 1000000d));
+        }
+    }
+
+    @Test
+    public void testCopyFileUsesLargeFileStrategy() throws Exception {
+        File source = createRandomFile("large.bin", 500000);
+        File target = new File(tempFolder.getRoot(), "large-copy.bin");
+
+        FileCopyStatistics statistics = new FileCopyStatistics();
+        FileUtils.instance.copyFile(source, target, statistics, ui, null);
+
+        assertTrue("Target content should match",
+                Arrays.equals(Files.readAllBytes(source.toPath()), Files.readAllBytes(target.toPath())));
+    }
+}
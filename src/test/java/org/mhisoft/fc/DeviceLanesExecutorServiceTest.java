@@ -0,0 +1,120 @@
+package org.mhisoft.fc;
+
+import java.io.File;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mhisoft.fc.ui.ConsoleRdProUIImpl;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the per device lanes of copy workers.
+ *
+ * @author Tony Xue
+ * @since Oct, 2026
+ */
+public class DeviceLanesExecutorServiceTest {
+
+    private DeviceLanesExecutorService lanes;
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Before
+    public void setUp() throws Exception {
+        RunTimeProperties.instance.getLaneWorkers().clear();
+        lanes = new DeviceLanesExecutorService(3, 100, SchedulingPolicy.fifo, new ConsoleRdProUIImpl());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        RunTimeProperties.instance.getLaneWorkers().clear();
+        lanes.shutDown();
+    }
+
+    private Runnable task(final File source, final File target, final AtomicInteger done) {
+        return new TaskScheduleQueueTest.SizedTask(1) {
+            @Override
+            public File getScheduleSource() {
+                return source;
+            }
+
+            @Override
+            public File getScheduleTarget() {
+                return target;
+            }
+
+            @Override
+            public void run() {
+                done.incrementAndGet();
+            }
+        };
+    }
+
+    @Test
+    public void testTasksGoToTheLaneOfTheirDevices() throws Exception {
+        File source = tempFolder.newFile("a.txt");
+        File target = new File(tempFolder.getRoot(), "not/created/yet/a.txt");
+        AtomicInteger done = new AtomicInteger();
+
+        for (int i = 0; i < 20; i++)
+            lanes.addTask(task(source, target, done));
+        //a task that does not tell its files goes to the unknown lane.
+        lanes.addTask(task(null, null, done));
+
+        assertSame(lanes.getLane(source, target), lanes.getLane(task(source, target, done)));
+        assertNotSame(lanes.getLane(source, target), lanes.getLane(null, null));
+        assertEquals(6, lanes.getCorePoolSize());
+
+        lanes.shutDownandWaitForAllThreadsToComplete();
+        assertEquals(21, done.get());
+        assertTrue(lanes.printQueueStats().startsWith("lanes:2"));
+    }
+
+    @Test
+    public void testLaneWorkers() throws Exception {
+        File root = tempFolder.getRoot();
+        RunTimeProperties.instance.addLaneWorkers(root.getAbsolutePath(), 1);
+        RunTimeProperties.instance.addLaneWorkers(new File(root, "usb").getAbsolutePath(), 2);
+
+        assertEquals(1, lanes.getLaneWorkers(new File(root, "a.txt"), null));
+        assertEquals(2, lanes.getLaneWorkers(null, new File(root, "usb/a.txt")));
+        assertEquals(3, lanes.getLaneWorkers(new File("/elsewhere/a.txt"), null));
+        assertEquals(1, lanes.getCorePoolSize(new File(root, "a.txt"), new File(root, "b.txt")));
+    }
+
+    @Test
+    public void testTheExecutorOfTheBaseClassReachesTheLanes() throws Exception {
+        File source = tempFolder.newFile("a.txt");
+        AtomicInteger done = new AtomicInteger();
+        ExecutorService executor = lanes.getExecutor();
+        assertFalse(executor.isShutdown());
+
+        lanes.addTask(task(source, null, done));
+        executor.execute(task(null, null, done));
+        lanes.getTracker().awaitIdle();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+        assertTrue(executor.isShutdown());
+        assertTrue(executor.isTerminated());
+        assertEquals(2, done.get());
+        //a lane created after the shutdown is shut down as well.
+        assertTrue(lanes.getLane(new File("/elsewhere/b.txt"), null).getExecutor().isShutdown());
+
+        try {
+            executor.execute(task(null, null, done));
+            fail("the lanes are shut down");
+        } catch (RejectedExecutionException e) {
+            //expected
+        }
+        assertFalse("the walker gives up on a shut down pool", lanes.offerTask(task(source, null, done)));
+    }
+}
@@ -0,0 +1,112 @@
+package org.mhisoft.fc;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mhisoft.fc.ui.ConsoleRdProUIImpl;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the attribute batched directory listing.
+ *
+ * @author Tony Xue
+ * @since Oct, 2026
+ */
+public class DirectoryScannerTest {
+
+    private ConsoleRdProUIImpl ui;
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Before
+    public void setUp() throws Exception {
+        ui = new ConsoleRdProUIImpl();
+        RunTimeProperties.instance.setOverrideTarget(false);
+        RunTimeProperties.instance.setOverwriteIfNewerOrDifferent(false);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        RunTimeProperties.instance.setOverrideTarget(false);
+        RunTimeProperties.instance.setOverwriteIfNewerOrDifferent(false);
+    }
+
+    @Test
+    public void testListReadsAttributesOnce() throws Exception {
+        File dir = tempFolder.newFolder("dir");
+        Files.write(new File(dir, "a.txt").toPath(), new byte[123]);
+        Files.write(new File(dir, "b.txt").toPath(), new byte[0]);
+        new File(dir, "sub").mkdir();
+        Files.write(new File(dir, "sub/c.txt").toPath(), new byte[5]);
+
+        FileCopyStatistics statistics = new FileCopyStatistics();
+        List<DirectoryScanner.Entry> entries = DirectoryScanner.list(dir, statistics, ui);
+
+        assertEquals("children only, no recursion", 3, entries.size());
+        for (DirectoryScanner.Entry e : entries) {
+            if (e.getName().equals("sub")) {
+                assertTrue(e.isDirectory());
+                assertFalse(e.isFile());
+            } else {
+                assertTrue(e.isFile());
+                assertEquals(e.getFile().length(), e.size());
+                assertEquals(e.getFile().lastModified(), e.lastModified());
+            }
+        }
+        //the directory read plus one per entry
+        assertEquals(4, statistics.getMetadataCalls());
+    }
+
+    @Test
+    public void testListMissingDirectory() throws Exception {
+        try {
+            DirectoryScanner.list(new File(tempFolder.getRoot(), "missing"), new FileCopyStatistics(), ui);
+            fail("IOException expected");
+        } catch (IOException e) {
+            //expected
+        }
+    }
+
+    @Test
+    public void testReadAttributesOfMissingFile() throws Exception {
+        assertNull(DirectoryScanner.readAttributes(new File(tempFolder.getRoot(), "missing"), new FileCopyStatistics()));
+    }
+
+    @Test
+    public void testOverrideTargetWithAttributes() throws Exception {
+        File source = tempFolder.newFile("source.txt");
+        File target = tempFolder.newFile("target.txt");
+        Files.write(source.toPath(), new byte[10]);
+        Files.write(target.toPath(), new byte[10]);
+        Files.setLastModifiedTime(target.toPath(), FileTime.fromMillis(source.lastModified()));
+
+        FileCopyStatistics statistics = new FileCopyStatistics();
+        BasicFileAttributes sourceAttributes = DirectoryScanner.readAttributes(source, statistics);
+        BasicFileAttributes targetAttributes = DirectoryScanner.readAttributes(target, statistics);
+
+        RunTimeProperties.instance.setOverwriteIfNewerOrDifferent(true);
+        assertFalse("same size and time", FileUtils.overrideTargetFile(sourceAttributes, targetAttributes));
+        assertTrue("missing target", FileUtils.overrideTargetFile(sourceAttributes, null));
+
+        Files.setLastModifiedTime(target.toPath(), FileTime.fromMillis(source.lastModified() - 5000));
+        assertTrue("source newer", FileUtils.overrideTargetFile(sourceAttributes, DirectoryScanner.readAttributes(target, statistics)));
+        assertEquals(FileUtils.overrideTargetFile(source, target)
+                , FileUtils.overrideTargetFile(sourceAttributes, DirectoryScanner.readAttributes(target, statistics)));
+
+        RunTimeProperties.instance.setOverwriteIfNewerOrDifferent(false);
+        assertFalse(FileUtils.overrideTargetFile(sourceAttributes, targetAttributes));
+        RunTimeProperties.instance.setOverrideTarget(true);
+        assertTrue(FileUtils.overrideTargetFile(sourceAttributes, targetAttributes));
+    }
+}
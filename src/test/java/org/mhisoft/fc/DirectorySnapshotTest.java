@@ -0,0 +1,75 @@
+package org.mhisoft.fc;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mhisoft.fc.ui.ConsoleRdProUIImpl;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the directory snapshot the walker and the packer share.
+ *
+ * @author Tony Xue
+ * @since Oct, 2026
+ */
+public class DirectorySnapshotTest {
+
+    private ConsoleRdProUIImpl ui;
+    private File dir;
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Before
+    public void setUp() throws Exception {
+        ui = new ConsoleRdProUIImpl();
+        dir = tempFolder.newFolder("source");
+        Files.write(new File(dir, "a.txt").toPath(), new byte[100]);
+        Files.write(new File(dir, "b.txt").toPath(), new byte[3000]);
+        Files.write(new File(dir, "large.bin").toPath(), new byte[30000]);
+        Files.write(new File(dir, RunTimeProperties.zip_prefix + "source.zip").toPath(), new byte[10]);
+        File sub = new File(dir, "sub");
+        assertTrue(sub.mkdir());
+        Files.write(new File(sub, "c.txt").toPath(), new byte[10]);
+    }
+
+    @Test
+    public void testStatsMatchTheWalk() throws Exception {
+        DirectorySnapshot snapshot = DirectorySnapshot.take(dir, new FileCopyStatistics(), ui);
+        DirecotryStat walked = FileUtils.getDirectoryStats(dir, FileCopierService.SMALL_FILE_SIZE);
+        DirecotryStat stats = snapshot.getStats(FileCopierService.SMALL_FILE_SIZE);
+
+        assertEquals(walked.getNumberOfFiles(), stats.getNumberOfFiles());
+        assertEquals(walked.getTotalFileSize(), stats.getTotalFileSize(), 0);
+        assertEquals(walked.getSmallFileCount(), stats.getSmallFileCount());
+        assertEquals(walked.getTotalSmallFileSize(), stats.getTotalSmallFileSize());
+        assertEquals(5, snapshot.getEntries().size());
+    }
+
+    @Test
+    public void testSmallFilesLeaveOutTheZipsAndTheDirs() throws Exception {
+        DirectorySnapshot snapshot = DirectorySnapshot.take(dir, new FileCopyStatistics(), ui);
+        List<DirectoryScanner.Entry> small = snapshot.getSmallFiles(FileCopierService.SMALL_FILE_SIZE);
+        assertEquals(2, small.size());
+        for (DirectoryScanner.Entry entry : small)
+            assertTrue(entry.getName(), entry.getName().endsWith(".txt"));
+    }
+
+    @Test
+    public void testZipFromTheSnapshot() throws Exception {
+        DirectorySnapshot snapshot = DirectorySnapshot.take(dir, new FileCopyStatistics(), ui);
+        //gone since the listing, left out of the zip.
+        assertTrue(new File(dir, "b.txt").delete());
+        FileUtils.instance.setRdProUI(ui);
+        FileUtils.CompressedPackageVO vo = FileUtils.instance.compressDirectory(dir.getAbsolutePath()
+                , tempFolder.newFolder("target").getAbsolutePath(), false, FileCopierService.SMALL_FILE_SIZE, null, snapshot);
+        assertEquals(1, vo.getNumberOfFiles());
+        new File(vo.sourceZipFileWithPath).delete();
+    }
+}
@@ -0,0 +1,141 @@
+package org.mhisoft.fc;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mhisoft.fc.ui.ConsoleRdProUIImpl;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the directory walker.
+ *
+ * @author Tony Xue
+ * @since Oct, 2026
+ */
+public class FileCopierServiceTest {
+
+    private ConsoleRdProUIImpl ui;
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Before
+    public void setUp() throws Exception {
+        ui = new ConsoleRdProUIImpl();
+        FileUtils.instance.setRdProUI(ui);
+        RunTimeProperties.instance.setStopThreads(false);
+        RunTimeProperties.instance.setPackageSmallFiles(false);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        RunTimeProperties.instance.setNumOfWalkerThreads(RunTimeProperties.DEFAULT_WALKER_THREAD_NUM);
+        RunTimeProperties.instance.setPackageSmallFiles(false);
+        RunTimeProperties.instance.setPackSubtrees(false);
+        RunTimeProperties.instance.setPackBundleFiles(RunTimeProperties.DEFAULT_PACK_BUNDLE_FILES);
+        RunTimeProperties.instance.setStreamSmallFiles(false);
+    }
+
+    private int createTree(File dir, int depth, Random random) throws Exception {
+        int count = 0;
+        for (int i = 0; i < 5; i++) {
+            byte[] bytes = new byte[random.nextInt(50000)];
+            random.nextBytes(bytes);
+            Files.write(new File(dir, "f" + i + ".bin").toPath(), bytes);
+            count++;
+        }
+        if (depth > 0) {
+            for (int i = 0; i < 3; i++) {
+                File sub = new File(dir, "d" + i);
+                sub.mkdir();
+                count += createTree(sub, depth - 1, random);
+            }
+        }
+        return count;
+    }
+
+    private void assertSameTree(File source, File target) throws Exception {
+        assertTrue("missing " + target, target.exists());
+        if (source.isDirectory()) {
+            String[] names = source.list();
+            Arrays.sort(names);
+            String[] targetNames = target.list();
+            Arrays.sort(targetNames);
+            assertArrayEquals(names, targetNames);
+            for (String name : names)
+                assertSameTree(new File(source, name), new File(target, name));
+        } else {
+            assertArrayEquals(source.getAbsolutePath(), Files.readAllBytes(source.toPath()), Files.readAllBytes(target.toPath()));
+        }
+    }
+
+    private FileCopyStatistics walk(File source, File target, int walkerThreads) {
+        RunTimeProperties.instance.setNumOfWalkerThreads(walkerThreads);
+        FileCopyStatistics statistics = new FileCopyStatistics();
+        MultiThreadExecutorService copyPool = new MultiThreadExecutorService(3, 4, ui);
+        MultiThreadExecutorService packagePool = new MultiThreadExecutorService(1, ui);
+        new FileCopierService(ui, RunTimeProperties.instance, statistics, copyPool, packagePool)
+                .walkTreeAndCopy(0, new String[]{source.getAbsolutePath()}, target.getAbsolutePath(), -1);
+        packagePool.shutDownandWaitForAllThreadsToComplete();
+        copyPool.shutDownandWaitForAllThreadsToComplete();
+        return statistics;
+    }
+
+    @Test
+    public void testParallelWalkCopiesTheTree() throws Exception {
+        File source = tempFolder.newFolder("source");
+        int files = createTree(source, 3, new Random(5));
+        File target = new File(tempFolder.getRoot(), "target");
+
+        FileCopyStatistics statistics = walk(source, target, 4);
+        assertSameTree(source, target);
+        assertEquals(files, statistics.getFilesCount());
+    }
+
+    @Test
+    public void testSingleWalkerCopiesTheTree() throws Exception {
+        File source = tempFolder.newFolder("source");
+        int files = createTree(source, 2, new Random(6));
+        File target = new File(tempFolder.getRoot(), "target");
+
+        FileCopyStatistics statistics = walk(source, target, 1);
+        assertSameTree(source, target);
+        assertEquals(files, statistics.getFilesCount());
+    }
+
+    @Test
+    public void testPackTreeCopiesTheTree() throws Exception {
+        RunTimeProperties.instance.setPackageSmallFiles(true);
+        RunTimeProperties.instance.setPackSubtrees(true);
+        RunTimeProperties.instance.setPackBundleFiles(7);
+        File source = tempFolder.newFolder("source");
+        int files = createTree(source, 2, new Random(7));
+        File target = new File(tempFolder.getRoot(), "target");
+
+        walk(source, target, 4);
+        //the bundles are gone from both sides.
+        assertSameTree(source, target);
+    }
+
+    @Test
+    public void testPackTreeStreamsTheTree() throws Exception {
+        RunTimeProperties.instance.setPackageSmallFiles(true);
+        RunTimeProperties.instance.setPackSubtrees(true);
+        RunTimeProperties.instance.setStreamSmallFiles(true);
+        RunTimeProperties.instance.setPackBundleFiles(7);
+        File source = tempFolder.newFolder("source");
+        createTree(source, 2, new Random(8));
+        File target = new File(tempFolder.getRoot(), "target");
+
+        walk(source, target, 1);
+        assertSameTree(source, target);
+    }
+}
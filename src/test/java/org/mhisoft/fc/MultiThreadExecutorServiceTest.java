@@ -0,0 +1,108 @@
+package org.mhisoft.fc;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+import org.mhisoft.fc.ui.ConsoleRdProUIImpl;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the bounded queue of the worker pool.
+ *
+ * @author Tony Xue
+ * @since Oct, 2026
+ */
+public class MultiThreadExecutorServiceTest {
+
+    @After
+    public void tearDown() {
+        RunTimeProperties.instance.setStopThreads(false);
+    }
+
+    @Test
+    public void testProducerBlocksAtHighWaterMark() throws Exception {
+        final MultiThreadExecutorService pool = new MultiThreadExecutorService(1, 3, new ConsoleRdProUIImpl());
+        final CountDownLatch gate = new CountDownLatch(1);
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxOutstanding = new AtomicInteger();
+        final AtomicInteger added = new AtomicInteger();
+        final AtomicInteger done = new AtomicInteger();
+
+        Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < 10; i++) {
+                    pool.addTask(new Runnable() {
+                        @Override
+                        public void run() {
+                            running.incrementAndGet();
+                            try {
+                                gate.await();
+                            } catch (InterruptedException e) {
+                                Thread.currentThread().interrupt();
+                            }
+                            done.incrementAndGet();
+                        }
+                    });
+                    added.incrementAndGet();
+                    maxOutstanding.accumulateAndGet(added.get() - done.get(), Math::max);
+                }
+            }
+        });
+        producer.start();
+
+        //1 running + 2 queued, the 4th add waits.
+        Thread.sleep(500);
+        assertEquals(3, added.get());
+        assertTrue(producer.isAlive());
+        assertEquals(2, pool.getQueueDepth());
+
+        gate.countDown();
+        producer.join(5000);
+        assertFalse(producer.isAlive());
+        pool.shutDownandWaitForAllThreadsToComplete();
+
+        assertEquals(10, done.get());
+        assertTrue("outstanding " + maxOutstanding.get(), maxOutstanding.get() <= 3);
+        assertTrue(pool.getBlockedCount() > 0);
+        assertTrue(pool.getPeakQueueDepth() <= pool.getHighWaterMark());
+    }
+
+    @Test
+    public void testCancelReleasesBlockedProducer() throws Exception {
+        final MultiThreadExecutorService pool = new MultiThreadExecutorService(1, 1, new ConsoleRdProUIImpl());
+        final CountDownLatch gate = new CountDownLatch(1);
+        final Runnable blocked = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    gate.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        pool.addTask(blocked);
+
+        Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                pool.addTask(blocked);
+            }
+        });
+        producer.start();
+        Thread.sleep(300);
+        assertTrue(producer.isAlive());
+
+        RunTimeProperties.instance.setStopThreads(true);
+        producer.join(2000);
+        assertFalse("the walker gives up when cancelled", producer.isAlive());
+
+        gate.countDown();
+        pool.shutDownandWaitForAllThreadsToComplete();
+    }
+}
@@ -0,0 +1,100 @@
+package org.mhisoft.fc;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Enumeration;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mhisoft.fc.ui.ConsoleRdProUIImpl;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the compression level of the small file zips.
+ *
+ * @author Tony Xue
+ * @since Oct, 2026
+ */
+public class PackCompressionPolicyTest {
+
+    private PackCompressionPolicy policy;
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Before
+    public void setUp() throws Exception {
+        FileUtils.instance.setRdProUI(new ConsoleRdProUIImpl());
+        policy = new PackCompressionPolicy();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        RunTimeProperties.instance.setPackCompressionLevel(PackCompressionPolicy.AUTO);
+        PackCompressionPolicy.instance.reset();
+    }
+
+    @Test
+    public void testFromString() {
+        assertEquals(PackCompressionPolicy.AUTO, PackCompressionPolicy.fromString("auto"));
+        assertEquals(PackCompressionPolicy.STORED, PackCompressionPolicy.fromString("Stored"));
+        assertEquals(Deflater.BEST_SPEED, PackCompressionPolicy.fromString("fast"));
+        assertEquals(Deflater.BEST_COMPRESSION, PackCompressionPolicy.fromString("best"));
+        assertEquals(0, PackCompressionPolicy.fromString("0"));
+        try {
+            PackCompressionPolicy.fromString("10");
+            fail("level out of range");
+        } catch (IllegalArgumentException e) {
+            //expected
+        }
+    }
+
+    @Test
+    public void testAutoFollowsTheLink() {
+        RunTimeProperties.instance.setPackCompressionLevel(PackCompressionPolicy.AUTO);
+        //nothing measured, deflate to measure it.
+        assertEquals(Deflater.BEST_SPEED, policy.chooseLevel(1));
+
+        //100 MB/s deflater halving the size.
+        policy.recordDeflate(100000000, 50000000, 1000000000L);
+        //a 1 GB/s disk, stored.
+        policy.recordTransfer(1000000000, 1000);
+        assertEquals(PackCompressionPolicy.STORED, policy.chooseLevel(1));
+        //probing now and then.
+        assertEquals(Deflater.BEST_SPEED, policy.chooseLevel(PackCompressionPolicy.PROBE_EVERY));
+
+        //add a lot of slow link time, 10 MB/s overall: deflate.
+        policy.recordTransfer(1000000000, 200000);
+        assertEquals(Deflater.BEST_SPEED, policy.chooseLevel(1));
+        assertTrue(policy.printSummary().contains("link speed:"));
+    }
+
+    @Test
+    public void testStoredZip() throws Exception {
+        RunTimeProperties.instance.setPackCompressionLevel(PackCompressionPolicy.STORED);
+        File sourceDir = tempFolder.newFolder("source");
+        for (int i = 0; i < 5; i++)
+            Files.write(new File(sourceDir, "f" + i + ".txt").toPath(), ("file file file file " + i).getBytes());
+
+        FileUtils.CompressedPackageVO vo = FileUtils.instance.compressDirectory(sourceDir.getAbsolutePath()
+                , tempFolder.newFolder("zip").getAbsolutePath(), false, -1);
+        File zip = new File(vo.sourceZipFileWithPath);
+        try (ZipFile zipFile = new ZipFile(zip)) {
+            Enumeration<? extends ZipEntry> entries = zipFile.entries();
+            while (entries.hasMoreElements())
+                assertEquals(ZipEntry.STORED, entries.nextElement().getMethod());
+        }
+
+        File extractDir = tempFolder.newFolder("extract");
+        FileUtils.instance.unzipFile(zip, extractDir, new FileCopyStatistics());
+        for (int i = 0; i < 5; i++)
+            assertEquals("file file file file " + i, new String(Files.readAllBytes(new File(extractDir, "f" + i + ".txt").toPath())));
+    }
+}
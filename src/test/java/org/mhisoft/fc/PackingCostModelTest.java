@@ -0,0 +1,117 @@
+package org.mhisoft.fc;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mhisoft.fc.ui.ConsoleRdProUIImpl;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the packing decision of the cost model.
+ *
+ * @author Tony Xue
+ * @since Oct, 2026
+ */
+public class PackingCostModelTest {
+
+    private PackingCostModel model;
+
+    @Before
+    public void setUp() {
+        FileUtils.instance.setRdProUI(new ConsoleRdProUIImpl());
+        //no link speed left behind by the other tests, the bytes cost nothing here.
+        PackCompressionPolicy.instance.reset();
+        model = new PackingCostModel();
+        //no deflate measured, the bundles are stored.
+        RunTimeProperties.instance.setPackCompressionLevel(PackCompressionPolicy.STORED);
+    }
+
+    @After
+    public void tearDown() {
+        RunTimeProperties.instance.setPackCompressionLevel(PackCompressionPolicy.AUTO);
+        PackCompressionPolicy.instance.reset();
+        PackingCostModel.instance.reset();
+    }
+
+    @Test
+    public void testFixedRulesBeforeWarmUp() {
+        assertFalse(model.isWarmedUp());
+        assertEquals(PackingCostModel.Choice.stored, model.decide(3, 300, false, 1));
+        assertEquals(PackingCostModel.Choice.stored, model.decide(2, 8000, false, 1));
+        assertEquals(PackingCostModel.Choice.direct, model.decide(2, 100, false, 1));
+        assertEquals(PackingCostModel.Choice.direct, model.decide(1, 100, false, 1));
+        //the tree bundles take every directory until the model knows better.
+        assertEquals(PackingCostModel.Choice.stored, model.decide(1, 100, true, 1));
+        assertEquals(PackingCostModel.Choice.direct, model.decide(0, 0, false, 1));
+    }
+
+    @Test
+    public void testProbeTheSideShortOfSamples() {
+        assertEquals(PackingCostModel.Choice.direct, model.decide(5, 500, false, PackingCostModel.PROBE_EVERY));
+        //too many files to probe with.
+        assertEquals(PackingCostModel.Choice.stored
+                , model.decide(PackingCostModel.MAX_PROBE_FILES + 1, 500, false, PackingCostModel.PROBE_EVERY));
+    }
+
+    @Test
+    public void testPackWhenFilesAreExpensive() {
+        warmUp(2000000, 10000, 10000);
+        assertTrue(model.isWarmedUp());
+        assertEquals(2000000, model.getFileNanos(), 1);
+        //1 file is still better copied on its own, the zip is a file copy as well.
+        assertEquals(PackingCostModel.Choice.direct, model.decide(1, 100, false, 1));
+        assertEquals(PackingCostModel.Choice.stored, model.decide(2, 100, false, 1));
+        assertEquals(PackingCostModel.Choice.stored, model.decide(1, 100, true, 1));
+        assertTrue(model.predict(PackingCostModel.Choice.stored, 10, 1000, false)
+                < model.predict(PackingCostModel.Choice.direct, 10, 1000, false));
+    }
+
+    @Test
+    public void testCopyDirectlyWhenFilesAreCheap() {
+        warmUp(10000, 50000, 50000);
+        assertEquals(PackingCostModel.Choice.direct, model.decide(10, 1000, false, 1));
+        assertEquals(PackingCostModel.Choice.direct, model.decide(10, 1000, true, 1));
+        //the probe packs once in a while.
+        assertEquals(PackingCostModel.Choice.stored, model.decide(10, 1000, false, PackingCostModel.PROBE_EVERY));
+    }
+
+    @Test
+    public void testRecordCopySkipsTheLargeFiles() {
+        model.recordCopy(FileCopierService.SMALL_FILE_SIZE + 1, 1000000);
+        assertEquals(0, model.getFileNanos(), 0);
+        model.recordCopy(100, 1000000);
+        assertEquals(1000000, model.getFileNanos(), 1);
+    }
+
+    @Test
+    public void testTheChoiceIsTheLevelOfTheZip() {
+        RunTimeProperties.instance.setPackCompressionLevel(PackCompressionPolicy.AUTO);
+        //the deflater is not measured yet, the policy probes it with the next zip.
+        assertEquals(PackingCostModel.Choice.deflate, model.decide(3, 300, false, 1));
+        assertEquals(java.util.zip.Deflater.BEST_SPEED, PackingCostModel.levelOf(PackingCostModel.Choice.deflate));
+        assertEquals(PackCompressionPolicy.STORED, PackingCostModel.levelOf(PackingCostModel.Choice.stored));
+
+        RunTimeProperties.instance.setPackCompressionLevel(9);
+        assertEquals(PackingCostModel.Choice.deflate, model.decide(3, 300, false, 1));
+        assertEquals(9, PackingCostModel.levelOf(PackingCostModel.Choice.deflate));
+    }
+
+    @Test
+    public void testSummary() {
+        warmUp(2000000, 10000, 10000);
+        model.choose(10, 1000, false);
+        model.recordBundle("/tmp/a", 100000, 200000);
+        String summary = model.printSummary();
+        assertTrue(summary, summary.contains("stored:1"));
+        assertTrue(summary, summary.contains("zips:1"));
+    }
+
+    private void warmUp(long fileNanos, long packNanos, long unpackNanos) {
+        for (int i = 0; i < PackingCostModel.MIN_SAMPLES; i++) {
+            model.recordCopy(100, fileNanos);
+            model.recordPack(packNanos);
+        }
+        model.recordUnpack(PackingCostModel.MIN_SAMPLES, PackingCostModel.MIN_SAMPLES * unpackNanos);
+    }
+}
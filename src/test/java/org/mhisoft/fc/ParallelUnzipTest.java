@@ -0,0 +1,70 @@
+package org.mhisoft.fc;
+
+import java.io.File;
+import java.nio.file.Files;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mhisoft.fc.ui.ConsoleRdProUIImpl;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for exploding the small file zips in ranges on the unzip workers.
+ *
+ * @author Tony Xue
+ * @since Oct, 2026
+ */
+public class ParallelUnzipTest {
+
+    private MultiThreadExecutorService unzipPool;
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Before
+    public void setUp() throws Exception {
+        ConsoleRdProUIImpl ui = new ConsoleRdProUIImpl();
+        FileUtils.instance.setRdProUI(ui);
+        RunTimeProperties.instance.setStopThreads(false);
+        RunTimeProperties.instance.setVerifyAfterCopy(true);
+        unzipPool = new MultiThreadExecutorService(3, 100, ui);
+        FileUtils.instance.setUnzipWorkersPool(unzipPool);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        FileUtils.instance.setUnzipWorkersPool(null);
+        unzipPool.shutDown();
+        RunTimeProperties.instance.setVerifyAfterCopy(false);
+    }
+
+    @Test
+    public void testExtractsAllTheRanges() throws Exception {
+        int files = FileUtils.UNZIP_RANGE_ENTRIES * 3 + 7;
+        File sourceDir = tempFolder.newFolder("source");
+        File subDir = new File(sourceDir, "sub");
+        assertTrue(subDir.mkdir());
+        for (int i = 0; i < files; i++)
+            Files.write(new File(i % 2 == 0 ? sourceDir : subDir, "f" + i + ".txt").toPath(), ("file " + i).getBytes());
+
+        FileUtils.CompressedPackageVO vo = FileUtils.instance.compressDirectory(sourceDir.getAbsolutePath()
+                , tempFolder.newFolder("zip").getAbsolutePath(), true, -1);
+        assertEquals(files, vo.getNumberOfFiles());
+
+        File extractDir = tempFolder.newFolder("extract");
+        FileCopyStatistics statistics = new FileCopyStatistics();
+        FileUtils.instance.unzipFile(new File(vo.sourceZipFileWithPath), extractDir, statistics);
+
+        assertEquals(files, statistics.getFilesCount());
+        assertEquals(files, statistics.getExtractedFiles());
+        for (int i = 0; i < files; i++) {
+            File target = new File(i % 2 == 0 ? extractDir : new File(extractDir, "sub"), "f" + i + ".txt");
+            assertEquals("file " + i, new String(Files.readAllBytes(target.toPath())));
+        }
+        assertTrue(statistics.printExtractSummary().startsWith("Files extracted from the zips: " + files));
+    }
+}
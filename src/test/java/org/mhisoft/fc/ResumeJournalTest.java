@@ -0,0 +1,185 @@
+package org.mhisoft.fc;
+
+import java.io.File;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mhisoft.fc.ui.ConsoleRdProUIImpl;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the -resume copy journal.
+ *
+ * @author Tony Xue
+ * @since Oct, 2026
+ */
+public class ResumeJournalTest {
+
+    private ConsoleRdProUIImpl ui;
+    private File source;
+    private File target;
+    private File targetRoot;
+    private byte[] data;
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Before
+    public void setUp() throws Exception {
+        ui = new ConsoleRdProUIImpl();
+        RunTimeProperties.instance.setResume(true);
+        RunTimeProperties.instance.setVerifyAfterCopy(false);
+        RunTimeProperties.instance.setStopThreads(false);
+        FileUtils.instance.setRdProUI(ui);
+        data = new byte[3 * 1024 * 1024 + 123];
+        new Random(7).nextBytes(data);
+        source = tempFolder.newFile("big.bin");
+        Files.write(source.toPath(), data);
+        targetRoot = tempFolder.newFolder("target");
+        target = new File(targetRoot, "big.bin");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        RunTimeProperties.instance.setResume(false);
+        ResumeJournal.instance.open(null, ui);
+    }
+
+    /**
+     * Leave the first bytes of the source in the target, recorded in the journal as the last run would.
+     */
+    private void interruptedRun(int offset) throws Exception {
+        ResumeJournal.instance.open(targetRoot.getAbsolutePath(), ui);
+        byte[] partial = Arrays.copyOf(data, offset + 1000);
+        //the bytes after the offset were not fsynced, they are garbage.
+        Arrays.fill(partial, offset, partial.length, (byte) 0);
+        Files.write(target.toPath(), partial);
+        try (FileChannel out = FileChannel.open(target.toPath(), StandardOpenOption.WRITE)) {
+            ResumeJournal.instance.checkpoint(target, data.length, source.lastModified(), out, offset);
+        }
+        ResumeJournal.instance.close(false, ui);
+        assertTrue(new File(targetRoot, ResumeJournal.FILE_NAME).exists());
+    }
+
+    @Test
+    public void testTransferToContinuesThePartialFile() throws Exception {
+        interruptedRun(1024 * 1024);
+
+        ResumeJournal.instance.open(targetRoot.getAbsolutePath(), ui);
+        assertTrue(ResumeJournal.instance.isPartial(target));
+        TransferToCopyStrategy.instance.copy(source, target, new FileCopyStatistics(), ui);
+        assertArrayEquals(data, Files.readAllBytes(target.toPath()));
+        assertTrue(ResumeJournal.instance.printSummary().contains("partial files continued:1"));
+    }
+
+    @Test
+    public void testBufferedCopyContinuesThePartialFile() throws Exception {
+        interruptedRun(2 * 1024 * 1024);
+
+        ResumeJournal.instance.open(targetRoot.getAbsolutePath(), ui);
+        FileUtils.instance.bufferedCopyStrategy.copy(source, target, new FileCopyStatistics(), ui);
+        assertArrayEquals(data, Files.readAllBytes(target.toPath()));
+    }
+
+    @Test
+    public void testChangedSourceStartsOver() throws Exception {
+        interruptedRun(1024 * 1024);
+        assertTrue(source.setLastModified(source.lastModified() - 60000));
+
+        ResumeJournal.instance.open(targetRoot.getAbsolutePath(), ui);
+        assertEquals(0, ResumeJournal.instance.getResumeOffset(source, target, data.length));
+    }
+
+    @Test
+    public void testDoneFilesAndFinishedRun() throws Exception {
+        Files.write(target.toPath(), data);
+        ResumeJournal.instance.open(targetRoot.getAbsolutePath(), ui);
+        ResumeJournal.instance.done(target, data.length, 1000L);
+        ResumeJournal.instance.close(false, ui);
+
+        ResumeJournal.instance.open(targetRoot.getAbsolutePath(), ui);
+        assertTrue(ResumeJournal.instance.isDone(target, data.length, 1000L));
+        assertFalse(ResumeJournal.instance.isDone(target, data.length, 2000L));
+        assertFalse(ResumeJournal.instance.isPartial(target));
+
+        //a finished run does not need the journal any more.
+        ResumeJournal.instance.close(true, ui);
+        assertFalse(new File(targetRoot, ResumeJournal.FILE_NAME).exists());
+    }
+
+    @Test
+    public void testRecordCutShortIsCutOffBeforeAppending() throws Exception {
+        File other = new File(targetRoot, "other.bin");
+        Files.write(target.toPath(), data);
+        Files.write(other.toPath(), new byte[10]);
+        ResumeJournal.instance.open(targetRoot.getAbsolutePath(), ui);
+        ResumeJournal.instance.done(target, data.length, 1000L);
+        ResumeJournal.instance.done(other, 10, 1000L);
+        ResumeJournal.instance.close(false, ui);
+
+        //the last run died in the middle of the second record.
+        File journal = new File(targetRoot, ResumeJournal.FILE_NAME);
+        try (FileChannel ch = FileChannel.open(journal.toPath(), StandardOpenOption.WRITE)) {
+            ch.truncate(ch.size() - 5);
+        }
+
+        ResumeJournal.instance.open(targetRoot.getAbsolutePath(), ui);
+        assertTrue(ResumeJournal.instance.isDone(target, data.length, 1000L));
+        assertFalse(ResumeJournal.instance.isDone(other, 10, 1000L));
+        ResumeJournal.instance.done(other, 10, 1000L);
+        ResumeJournal.instance.close(false, ui);
+
+        //the records appended by the second run are read back.
+        ResumeJournal.instance.open(targetRoot.getAbsolutePath(), ui);
+        assertTrue(ResumeJournal.instance.isDone(target, data.length, 1000L));
+        assertTrue(ResumeJournal.instance.isDone(other, 10, 1000L));
+    }
+
+    @Test
+    public void testStartedFileIsPartial() throws Exception {
+        File small = new File(targetRoot, "small.bin");
+        Files.write(target.toPath(), data);
+        ResumeJournal.instance.open(targetRoot.getAbsolutePath(), ui);
+        ResumeJournal.instance.done(target, data.length, 1000L);
+        //the run dies after the first bytes of the small file.
+        ResumeJournal.instance.started(small, 100, 1000L);
+        Files.write(small.toPath(), new byte[10]);
+        ResumeJournal.instance.close(false, ui);
+
+        ResumeJournal.instance.open(targetRoot.getAbsolutePath(), ui);
+        assertTrue(ResumeJournal.instance.isPartial(small));
+        assertFalse(ResumeJournal.instance.isPartial(target));
+    }
+
+    @Test
+    public void testStartedKeepsTheOffsetOfAPartialFile() throws Exception {
+        interruptedRun(1024 * 1024);
+
+        ResumeJournal.instance.open(targetRoot.getAbsolutePath(), ui);
+        ResumeJournal.instance.started(target, data.length, source.lastModified());
+        ResumeJournal.instance.close(false, ui);
+
+        ResumeJournal.instance.open(targetRoot.getAbsolutePath(), ui);
+        assertEquals(1024 * 1024, ResumeJournal.instance.getResumeOffset(source, target, data.length));
+    }
+
+    @Test
+    public void testDoneOnlyForATargetOnTheDisk() throws Exception {
+        ResumeJournal.instance.open(targetRoot.getAbsolutePath(), ui);
+        //the target can not be flushed, it is copied again on resume.
+        ResumeJournal.instance.done(target, data.length, 1000L);
+        ResumeJournal.instance.close(false, ui);
+
+        ResumeJournal.instance.open(targetRoot.getAbsolutePath(), ui);
+        assertFalse(ResumeJournal.instance.isDone(target, data.length, 1000L));
+    }
+}
@@ -0,0 +1,58 @@
+package org.mhisoft.fc;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the RunTimeProperties saved with the UserPreferences.
+ *
+ * @author Tony Xue
+ * @since Oct, 2026
+ */
+public class RunTimePropertiesTest {
+
+    @After
+    public void tearDown() {
+        RunTimeProperties.instance.setResume(false);
+        RunTimeProperties.instance.setPackCompressionLevel(PackCompressionPolicy.AUTO);
+        RunTimeProperties.instance.setNumOfThreads(1);
+    }
+
+    @Test
+    public void testSerialVersionUIDIsPinned() {
+        //the UID of the class the older preferences were saved with.
+        assertEquals(-2926606274120569751L, ObjectStreamClass.lookup(RunTimeProperties.class).getSerialVersionUID());
+    }
+
+    @Test
+    public void testRunOptionsAreNotSaved() throws Exception {
+        RunTimeProperties props = RunTimeProperties.instance;
+        props.setNumOfThreads(7);
+        props.setResume(true);
+        props.setPackCompressionLevel(PackCompressionPolicy.STORED);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(props);
+        }
+        RunTimeProperties read;
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            read = (RunTimeProperties) in.readObject();
+        }
+
+        assertEquals(7, read.getNumOfThreads());
+        //back to the defaults, not the zeros.
+        assertFalse(read.isResume());
+        assertEquals(PackCompressionPolicy.AUTO, read.getPackCompressionLevel());
+        assertEquals(RunTimeProperties.DEFAULT_MAX_QUEUED_TASKS, read.getMaxQueuedTasks());
+        assertNotNull(read.getLaneWorkers());
+    }
+}
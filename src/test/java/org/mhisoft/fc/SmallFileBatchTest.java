@@ -0,0 +1,102 @@
+package org.mhisoft.fc;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mhisoft.fc.ui.ConsoleRdProUIImpl;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the batch copy of the small files.
+ *
+ * @author Tony Xue
+ * @since Oct, 2026
+ */
+public class SmallFileBatchTest {
+
+    private ConsoleRdProUIImpl ui;
+    private File sourceDir;
+    private File targetDir;
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Before
+    public void setUp() throws Exception {
+        ui = new ConsoleRdProUIImpl();
+        FileUtils.instance.setRdProUI(ui);
+        RunTimeProperties.instance.setStopThreads(false);
+        sourceDir = tempFolder.newFolder("source");
+        targetDir = tempFolder.newFolder("target");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        RunTimeProperties.instance.setPreserveFileTimesAndAccessAttributes(false);
+        RunTimeProperties.instance.setVerifyAfterCopy(false);
+    }
+
+    private DirectoryScanner.Entry newSource(String name, int size) throws Exception {
+        byte[] data = new byte[size];
+        new Random(size).nextBytes(data);
+        File f = new File(sourceDir, name);
+        Files.write(f.toPath(), data);
+        Files.setLastModifiedTime(f.toPath(), FileTime.fromMillis(1500000000000L + size));
+        return new DirectoryScanner.Entry(f, Files.readAttributes(f.toPath(), BasicFileAttributes.class));
+    }
+
+    @Test
+    public void testBatchIsFull() throws Exception {
+        SmallFileBatch batch = new SmallFileBatch(ui, sourceDir, targetDir, new FileCopyStatistics(), null);
+        DirectoryScanner.Entry source = newSource("a.bin", 20000);
+        int n = 0;
+        while (batch.add(source, new File(targetDir, "a" + n + ".bin")))
+            n++;
+        assertEquals(SmallFileBatch.BATCH_BYTES / 20000, n);
+        assertEquals(n, batch.size());
+    }
+
+    @Test
+    public void testCopiesAndPreservesTheTimes() throws Exception {
+        RunTimeProperties.instance.setPreserveFileTimesAndAccessAttributes(true);
+        RunTimeProperties.instance.setVerifyAfterCopy(true);
+        FileCopyStatistics statistics = new FileCopyStatistics();
+        SmallFileBatch batch = new SmallFileBatch(ui, sourceDir, targetDir, statistics, null);
+        for (int i = 0; i < 20; i++) {
+            DirectoryScanner.Entry source = newSource("f" + i + ".bin", 100 * i);
+            assertTrue(batch.add(source, new File(targetDir, source.getName())));
+        }
+        batch.run();
+
+        assertEquals(20, statistics.getFilesCount());
+        for (int i = 0; i < 20; i++) {
+            File source = new File(sourceDir, "f" + i + ".bin");
+            File target = new File(targetDir, "f" + i + ".bin");
+            assertArrayEquals(Files.readAllBytes(source.toPath()), Files.readAllBytes(target.toPath()));
+            assertEquals(source.lastModified(), target.lastModified());
+        }
+    }
+
+    @Test
+    public void testFileGrownSinceTheListingIsCopiedOnItsOwn() throws Exception {
+        SmallFileBatch batch = new SmallFileBatch(ui, sourceDir, targetDir, new FileCopyStatistics(), null);
+        DirectoryScanner.Entry small = newSource("small.bin", 10);
+        DirectoryScanner.Entry grown = newSource("grown.bin", 100);
+        batch.add(small, new File(targetDir, "small.bin"));
+        batch.add(grown, new File(targetDir, "grown.bin"));
+        Files.write(grown.getFile().toPath(), new byte[5000]);
+        batch.run();
+
+        assertEquals(10, new File(targetDir, "small.bin").length());
+        assertEquals(5000, new File(targetDir, "grown.bin").length());
+    }
+}
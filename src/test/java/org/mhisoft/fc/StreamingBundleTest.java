@@ -0,0 +1,109 @@
+package org.mhisoft.fc;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mhisoft.fc.ui.ConsoleRdProUIImpl;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for streaming the small files to the target in memory bundles.
+ *
+ * @author Tony Xue
+ * @since Oct, 2026
+ */
+public class StreamingBundleTest {
+
+    private ConsoleRdProUIImpl ui;
+    private MultiThreadExecutorService pool;
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Before
+    public void setUp() throws Exception {
+        ui = new ConsoleRdProUIImpl();
+        FileUtils.instance.setRdProUI(ui);
+        RunTimeProperties.instance.setStopThreads(false);
+        RunTimeProperties.instance.setOverrideTarget(false);
+        pool = new MultiThreadExecutorService(2, 100, ui);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        pool.shutDown();
+        RunTimeProperties.instance.setVerifyAfterCopy(false);
+        RunTimeProperties.instance.setVerifyMode(VerifyMode.full);
+    }
+
+    private File createSource(int files, int size) throws Exception {
+        File sourceDir = tempFolder.newFolder("source");
+        Random random = new Random(3);
+        for (int i = 0; i < files; i++) {
+            byte[] data = new byte[size];
+            random.nextBytes(data);
+            Files.write(new File(sourceDir, "f" + i + ".bin").toPath(), data);
+        }
+        //too large to be packed.
+        Files.write(new File(sourceDir, "large.bin").toPath(), new byte[(int) FileCopierService.SMALL_FILE_SIZE + 1]);
+        return sourceDir;
+    }
+
+    private void assertCopied(File sourceDir, File targetDir, int files) throws Exception {
+        for (int i = 0; i < files; i++) {
+            File target = new File(targetDir, "f" + i + ".bin");
+            assertTrue(target + " missing", target.exists());
+            assertArrayEquals(Files.readAllBytes(new File(sourceDir, "f" + i + ".bin").toPath())
+                    , Files.readAllBytes(target.toPath()));
+        }
+    }
+
+    @Test
+    public void testStreamsWithoutTouchingTheSource() throws Exception {
+        //more than one bundle.
+        int files = StreamingBundle.BUNDLE_SIZE / 15000 + 50;
+        File sourceDir = createSource(files, 15000);
+        String[] before = sourceDir.list();
+        Arrays.sort(before);
+        File targetDir = new File(tempFolder.getRoot(), "target");
+        FileCopyStatistics statistics = new FileCopyStatistics();
+
+        int n = FileUtils.instance.streamDirectory(sourceDir.getAbsolutePath(), targetDir.getAbsolutePath()
+                , FileCopierService.SMALL_FILE_SIZE, null, statistics, pool);
+        pool.shutDownandWaitForAllThreadsToComplete();
+
+        assertEquals(files, n);
+        assertEquals(files, statistics.getFilesCount());
+        assertCopied(sourceDir, targetDir, files);
+        assertFalse(new File(targetDir, "large.bin").exists());
+        String[] after = sourceDir.list();
+        Arrays.sort(after);
+        assertArrayEquals("nothing written on the source", before, after);
+        assertEquals(0, StreamingBundle.getBytesInFlight());
+    }
+
+    @Test
+    public void testVerifyReadsTheHashFromTheExtraField() throws Exception {
+        RunTimeProperties.instance.setVerifyAfterCopy(true);
+        File sourceDir = createSource(10, 1000);
+        File targetDir = tempFolder.newFolder("target");
+
+        for (VerifyMode mode : new VerifyMode[]{VerifyMode.full, VerifyMode.sampled}) {
+            RunTimeProperties.instance.setVerifyMode(mode);
+            File modeDir = new File(targetDir, mode.toString());
+            FileUtils.instance.streamDirectory(sourceDir.getAbsolutePath(), modeDir.getAbsolutePath()
+                    , FileCopierService.SMALL_FILE_SIZE, null, new FileCopyStatistics(), pool);
+            //a missing hash would fail the verify and the files would be deleted.
+            pool.getTracker().awaitIdle();
+            assertCopied(sourceDir, modeDir, 10);
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package org.mhisoft.fc;
+
+import java.io.File;
+import java.nio.file.Files;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mhisoft.fc.ui.ConsoleRdProUIImpl;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the incremental sync manifest kept in the target root.
+ *
+ * @author Tony Xue
+ * @since Oct, 2026
+ */
+public class SyncManifestTest {
+
+    private ConsoleRdProUIImpl ui;
+    private File target;
+    private File sub;
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Before
+    public void setUp() throws Exception {
+        ui = new ConsoleRdProUIImpl();
+        RunTimeProperties.instance.setOverrideTarget(false);
+        RunTimeProperties.instance.setOverwriteIfNewerOrDifferent(true);
+        RunTimeProperties.instance.setFlatCopy(false);
+        RunTimeProperties.instance.setSyncManifest(true);
+        target = tempFolder.newFolder("target");
+        sub = new File(target, "sub");
+        sub.mkdirs();
+        Files.write(new File(sub, "a.txt").toPath(), "aaa".getBytes());
+        Files.write(new File(sub, "b.txt").toPath(), "bbbbbb".getBytes());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        RunTimeProperties.instance.setSyncManifest(false);
+        RunTimeProperties.instance.setOverwriteIfNewerOrDifferent(false);
+        SyncManifest.instance.open(null, ui);
+    }
+
+    @Test
+    public void testSecondRunReadsTheManifest() throws Exception {
+        SyncManifest.instance.open(target.getAbsolutePath(), ui);
+        FileCopyStatistics stats = new FileCopyStatistics();
+        TargetDirectoryIndex index = SyncManifest.instance.getIndex(sub.getAbsolutePath(), stats, ui);
+        assertEquals(2, index.size());
+        assertTrue(stats.getMetadataCalls() > 0);
+
+        SyncManifest.instance.scheduled(new File(sub, "c.txt"));
+        SyncManifest.instance.copied(new File(sub, "c.txt"), 7, 1000L, new byte[]{1, 2});
+        SyncManifest.instance.save(ui);
+        assertTrue(new File(target, SyncManifest.FILE_NAME).exists());
+
+        SyncManifest.instance.open(target.getAbsolutePath(), ui);
+        stats = new FileCopyStatistics();
+        index = SyncManifest.instance.getIndex(sub.getAbsolutePath(), stats, ui);
+        assertEquals(0, stats.getMetadataCalls());
+        assertEquals(3, index.size());
+        assertTrue(index.contains("a.txt"));
+        int c = 2; //sorted by name
+        assertEquals("c.txt", index.getName(c));
+        assertEquals(7, index.getSize(c));
+        assertEquals(1000L, index.getLastModified(c));
+        assertArrayEquals(new byte[]{1, 2}, index.getDigest(c));
+        assertEquals(new File(sub, "b.txt").lastModified(), index.getLastModified(1));
+    }
+
+    @Test
+    public void testFailedCopyIsLeftOut() throws Exception {
+        SyncManifest.instance.open(target.getAbsolutePath(), ui);
+        SyncManifest.instance.getIndex(sub.getAbsolutePath(), new FileCopyStatistics(), ui);
+        //scheduled over an existing file and never finished.
+        SyncManifest.instance.scheduled(new File(sub, "a.txt"));
+        SyncManifest.instance.scheduled(new File(sub, "new.txt"));
+        SyncManifest.instance.save(ui);
+
+        SyncManifest.instance.open(target.getAbsolutePath(), ui);
+        TargetDirectoryIndex index = SyncManifest.instance.getIndex(sub.getAbsolutePath(), new FileCopyStatistics(), ui);
+        assertEquals(1, index.size());
+        assertFalse(index.contains("a.txt"));
+        assertFalse(index.contains("new.txt"));
+        assertTrue(index.contains("b.txt"));
+    }
+
+    @Test
+    public void testCreatedDirIsEmpty() throws Exception {
+        SyncManifest.instance.open(target.getAbsolutePath(), ui);
+        SyncManifest.instance.getIndex(sub.getAbsolutePath(), new FileCopyStatistics(), ui);
+        SyncManifest.instance.save(ui);
+
+        SyncManifest.instance.open(target.getAbsolutePath(), ui);
+        SyncManifest.instance.created(sub.getAbsolutePath());
+        assertEquals(0, SyncManifest.instance.getIndex(sub.getAbsolutePath(), new FileCopyStatistics(), ui).size());
+    }
+
+    @Test
+    public void testCorruptManifestListsTheTarget() throws Exception {
+        Files.write(new File(target, SyncManifest.FILE_NAME).toPath(), "not a manifest".getBytes());
+        SyncManifest.instance.open(target.getAbsolutePath(), ui);
+        FileCopyStatistics stats = new FileCopyStatistics();
+        TargetDirectoryIndex index = SyncManifest.instance.getIndex(sub.getAbsolutePath(), stats, ui);
+        assertEquals(2, index.size());
+        assertTrue(stats.getMetadataCalls() > 0);
+    }
+}
@@ -0,0 +1,104 @@
+package org.mhisoft.fc;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mhisoft.fc.ui.ConsoleRdProUIImpl;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the target directory index used by the skip decisions.
+ *
+ * @author Tony Xue
+ * @since Oct, 2026
+ */
+public class TargetDirectoryIndexTest {
+
+    private ConsoleRdProUIImpl ui;
+    private File source;
+    private File target;
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Before
+    public void setUp() throws Exception {
+        ui = new ConsoleRdProUIImpl();
+        RunTimeProperties.instance.setOverrideTarget(false);
+        RunTimeProperties.instance.setOverwriteIfNewerOrDifferent(false);
+        FileUtils.instance.setRdProUI(ui);
+        source = tempFolder.newFolder("source");
+        target = tempFolder.newFolder("target");
+        for (String name : new String[]{"same.txt", "changed.txt", "new.txt"}) {
+            Files.write(new File(source, name).toPath(), name.getBytes());
+        }
+        for (String name : new String[]{"same.txt", "changed.txt"}) {
+            File t = new File(target, name);
+            Files.write(t.toPath(), name.getBytes());
+            Files.setLastModifiedTime(t.toPath(), FileTime.fromMillis(new File(source, name).lastModified()));
+        }
+        Files.write(new File(target, "changed.txt").toPath(), "changed, different size".getBytes());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        RunTimeProperties.instance.setOverrideTarget(false);
+        RunTimeProperties.instance.setOverwriteIfNewerOrDifferent(false);
+    }
+
+    private BasicFileAttributes attributes(String name) {
+        return DirectoryScanner.readAttributes(new File(source, name), new FileCopyStatistics());
+    }
+
+    @Test
+    public void testNewerOrDifferent() throws Exception {
+        RunTimeProperties.instance.setOverwriteIfNewerOrDifferent(true);
+        TargetDirectoryIndex index = TargetDirectoryIndex.load(target, new FileCopyStatistics(), ui);
+
+        assertEquals(2, index.size());
+        assertFalse(index.shouldCopy("same.txt", attributes("same.txt")));
+        assertTrue(index.shouldCopy("changed.txt", attributes("changed.txt")));
+        assertTrue(index.shouldCopy("new.txt", attributes("new.txt")));
+    }
+
+    @Test
+    public void testNamesOnlyWithoutNewerOrDifferent() throws Exception {
+        FileCopyStatistics statistics = new FileCopyStatistics();
+        TargetDirectoryIndex index = TargetDirectoryIndex.load(target, statistics, ui);
+
+        assertEquals("one directory read, no stat", 1, statistics.getMetadataCalls());
+        assertTrue(index.contains("same.txt"));
+        assertFalse(index.shouldCopy("same.txt", attributes("same.txt")));
+        assertFalse("exists, not overridden", index.shouldCopy("changed.txt", attributes("changed.txt")));
+        assertTrue(index.shouldCopy("new.txt", attributes("new.txt")));
+    }
+
+    @Test
+    public void testMissingTargetDir() throws Exception {
+        TargetDirectoryIndex index = TargetDirectoryIndex.load(new File(target, "missing"), new FileCopyStatistics(), ui);
+        assertSame(TargetDirectoryIndex.EMPTY, index);
+        assertTrue(index.shouldCopy("same.txt", attributes("same.txt")));
+    }
+
+    @Test
+    public void testPackageSkipsUnchangedTargets() throws Exception {
+        RunTimeProperties.instance.setOverwriteIfNewerOrDifferent(true);
+        TargetDirectoryIndex index = TargetDirectoryIndex.load(target, new FileCopyStatistics(), ui);
+
+        FileUtils.CompressedPackageVO vo = FileUtils.instance.compressDirectory(source.getAbsolutePath()
+                , target.getAbsolutePath(), false, FileCopierService.SMALL_FILE_SIZE, index);
+        try {
+            assertEquals("changed.txt and new.txt", 2, vo.getNumberOfFiles());
+        } finally {
+            new File(vo.sourceZipFileWithPath).delete();
+        }
+    }
+}
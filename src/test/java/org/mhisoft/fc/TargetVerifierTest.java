@@ -0,0 +1,149 @@
+package org.mhisoft.fc;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mhisoft.fc.ui.ConsoleRdProUIImpl;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the verification modes.
+ *
+ * @author Tony Xue
+ * @since Oct, 2026
+ */
+public class TargetVerifierTest {
+
+    private ConsoleRdProUIImpl ui;
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Before
+    public void setUp() throws Exception {
+        ui = new ConsoleRdProUIImpl();
+        FileUtils.instance.setRdProUI(ui);
+        RunTimeProperties.instance.setStopThreads(false);
+        RunTimeProperties.instance.setVerifyAfterCopy(true);
+        TargetVerifier.instance.reset();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        RunTimeProperties.instance.setVerifyAfterCopy(false);
+        RunTimeProperties.instance.setVerifyMode(VerifyMode.full);
+    }
+
+    private File createRandomFile(String name, int size) throws Exception {
+        byte[] bytes = new byte[size];
+        new Random(size).nextBytes(bytes);
+        File f = tempFolder.newFile(name);
+        Files.write(f.toPath(), bytes);
+        return f;
+    }
+
+    private void corrupt(File f, long position) throws Exception {
+        try (RandomAccessFile raf = new RandomAccessFile(f, "rw")) {
+            raf.seek(position);
+            int b = raf.read();
+            raf.seek(position);
+            raf.write(b ^ 0xFF);
+        }
+    }
+
+    @Test
+    public void testSampledDigestInFlightMatchesTheRead() throws Exception {
+        File source = createRandomFile("source.bin", 3 * 1024 * 1024 + 77);
+        byte[] bytes = Files.readAllBytes(source.toPath());
+
+        // feed it in odd sized chunks like the copy loop does
+        TargetVerifier.SampledDigest inFlight = new TargetVerifier.SampledDigest(bytes.length);
+        int chunk = 100003;
+        for (int pos = 0; pos < bytes.length; pos += chunk) {
+            inFlight.update(pos, ByteBuffer.wrap(bytes, pos, Math.min(chunk, bytes.length - pos)).slice());
+        }
+
+        assertTrue(inFlight.matches(TargetVerifier.SampledDigest.read(source, bytes.length)));
+    }
+
+    @Test
+    public void testSampledModeDetectsCorruptedSample() throws Exception {
+        RunTimeProperties.instance.setVerifyMode(VerifyMode.sampled);
+        File source = createRandomFile("source.bin", 2 * 1024 * 1024);
+        File target = new File(tempFolder.getRoot(), "target.bin");
+
+        FileUtils.CopyFileResultVO vo = FileUtils.instance.bufferedCopyStrategy.copy(source, target, new FileCopyStatistics(), ui);
+        assertEquals(Boolean.TRUE, vo.verified);
+
+        // the last block is always sampled
+        corrupt(target, target.length() - 10);
+        assertEquals(Boolean.FALSE, TargetVerifier.instance.verify(source, target, null, null, ui));
+    }
+
+    @Test
+    public void testMatchesSamplesReadsTheTargetBack() throws Exception {
+        File target = createRandomFile("unzipped.bin", 2 * 1024 * 1024 + 5);
+        byte[] bytes = Files.readAllBytes(target.toPath());
+        // the samples of the bytes written, the way the unzip feeds them
+        TargetVerifier.SampledDigest written = new TargetVerifier.SampledDigest(bytes.length);
+        written.update(0, ByteBuffer.wrap(bytes));
+
+        assertTrue(TargetVerifier.instance.matchesSamples(target, written));
+        // the last block is always sampled
+        corrupt(target, target.length() - 2);
+        assertFalse(TargetVerifier.instance.matchesSamples(target, written));
+    }
+
+    @Test
+    public void testDirectModeVerifies() throws Exception {
+        // falls back to the cached read where O_DIRECT is not supported
+        RunTimeProperties.instance.setVerifyMode(VerifyMode.direct);
+        File source = createRandomFile("source.bin", 500000);
+        File target = new File(tempFolder.getRoot(), "target.bin");
+
+        FileUtils.CopyFileResultVO vo = FileUtils.instance.bufferedCopyStrategy.copy(source, target, new FileCopyStatistics(), ui);
+        assertEquals(Boolean.TRUE, vo.verified);
+
+        corrupt(target, 12345);
+        assertEquals(Boolean.FALSE, TargetVerifier.instance.verify(source, target, null, null, ui));
+    }
+
+    @Test
+    public void testDeferredModeVerifiesInTheBackground() throws Exception {
+        RunTimeProperties.instance.setVerifyMode(VerifyMode.deferred);
+        File source = createRandomFile("source.bin", 500000);
+        File good = new File(tempFolder.getRoot(), "good.bin");
+        File bad = new File(tempFolder.getRoot(), "bad.bin");
+
+        FileUtils.CopyFileResultVO vo = FileUtils.instance.bufferedCopyStrategy.copy(source, good, new FileCopyStatistics(), ui);
+        assertNull("Deferred, not known yet", vo.verified);
+
+        Files.copy(source.toPath(), bad.toPath());
+        corrupt(bad, 100);
+        TargetVerifier.instance.verify(source, bad, null, null, ui);
+
+        TargetVerifier.instance.awaitDeferred();
+        assertEquals(2, TargetVerifier.instance.getDeferredQueued());
+        assertTrue(good.exists());
+        assertFalse("Failed copy should be deleted", bad.exists());
+    }
+
+    @Test
+    public void testSmallFileVerifiedWithOneSourceRead() throws Exception {
+        File source = createRandomFile("small.txt", 5000);
+        File target = new File(tempFolder.getRoot(), "small-copy.txt");
+
+        FileUtils.instance.copyFile(source, target, new FileCopyStatistics(), ui, null);
+
+        assertArrayEquals(Files.readAllBytes(source.toPath()), Files.readAllBytes(target.toPath()));
+    }
+}
@@ -0,0 +1,167 @@
+package org.mhisoft.fc;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+import org.mhisoft.fc.ui.ConsoleRdProUIImpl;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the scheduling policies of the copy workers queue.
+ *
+ * @author Tony Xue
+ * @since Oct, 2026
+ */
+public class TaskScheduleQueueTest {
+
+    static class SizedTask implements Runnable, ScheduledTask {
+        final long size;
+
+        SizedTask(long size) {
+            this.size = size;
+        }
+
+        @Override
+        public long getScheduleSize() {
+            return size;
+        }
+
+        @Override
+        public File getScheduleSource() {
+            return null;
+        }
+
+        @Override
+        public File getScheduleTarget() {
+            return null;
+        }
+
+        @Override
+        public void run() {
+        }
+    }
+
+    private static long sizeOf(Runnable r) {
+        return ((SizedTask) r).size;
+    }
+
+    @Test
+    public void testPerDeviceKeepsTheOrderOnOneDevice() throws Exception {
+        TaskScheduleQueue queue = new TaskScheduleQueue(SchedulingPolicy.perDevice, 0);
+        for (long size : new long[]{5, 100, 1})
+            queue.offer(new SizedTask(size));
+        assertEquals(3, queue.size());
+        assertEquals(5, sizeOf(queue.poll()));
+        assertEquals(100, sizeOf(queue.poll()));
+        assertEquals(1, sizeOf(queue.poll()));
+        assertNull(queue.poll());
+    }
+
+    @Test
+    public void testLargestFirst() throws Exception {
+        TaskScheduleQueue queue = new TaskScheduleQueue(SchedulingPolicy.largestFirst, 0);
+        for (long size : new long[]{5, 100, -1, 7, 100})
+            queue.offer(new SizedTask(size));
+        long[] expected = {100, 100, 7, 5, -1};
+        for (long size : expected)
+            assertEquals(size, sizeOf(queue.take()));
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void testMixedReservesWorkersForSmallFiles() throws Exception {
+        final TaskScheduleQueue queue = new TaskScheduleQueue(SchedulingPolicy.mixed, 1);
+        long big = TaskScheduleQueue.SMALL_TASK_SIZE * 10;
+        queue.offer(new SizedTask(big));
+        queue.offer(new SizedTask(big + 1));
+        queue.offer(new SizedTask(10));
+
+        //the first worker asking is reserved, it skips the large files.
+        assertEquals(10, sizeOf(queue.poll()));
+        assertNull(queue.poll());
+
+        final AtomicReference<Runnable> taken = new AtomicReference<>();
+        Thread other = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                taken.set(queue.poll());
+            }
+        });
+        other.start();
+        other.join();
+        assertEquals(big, sizeOf(taken.get()));
+        assertEquals(1, queue.size());
+    }
+
+    @Test
+    public void testMixedPoolShrunkToOneWorkerTakesTheLargeFiles() throws Exception {
+        int reserved = RunTimeProperties.instance.getReservedSmallFileWorkers();
+        RunTimeProperties.instance.setReservedSmallFileWorkers(2);
+        try {
+            final MultiThreadExecutorService pool = new MultiThreadExecutorService(3, 100, SchedulingPolicy.mixed
+                    , new ConsoleRdProUIImpl());
+            final AtomicInteger done = new AtomicInteger();
+            //the workers asking first are the reserved ones.
+            for (int i = 0; i < 6; i++) {
+                pool.addTask(new SizedTask(10) {
+                    @Override
+                    public void run() {
+                        done.incrementAndGet();
+                    }
+                });
+            }
+            Thread.sleep(200);
+            pool.setCoreThreadSize(1);
+            Thread.sleep(200);
+
+            for (int i = 0; i < 5; i++) {
+                pool.addTask(new SizedTask(TaskScheduleQueue.SMALL_TASK_SIZE * 10) {
+                    @Override
+                    public void run() {
+                        done.incrementAndGet();
+                    }
+                });
+            }
+            Thread waiter = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    pool.shutDownandWaitForAllThreadsToComplete();
+                }
+            });
+            waiter.setDaemon(true);
+            waiter.start();
+            waiter.join(5000);
+            assertFalse("the large files are left in the queue", waiter.isAlive());
+            assertEquals(11, done.get());
+        } finally {
+            RunTimeProperties.instance.setReservedSmallFileWorkers(reserved);
+        }
+    }
+
+    @Test
+    public void testPoolRunsEveryTask() throws Exception {
+        for (SchedulingPolicy policy : SchedulingPolicy.values()) {
+            MultiThreadExecutorService pool = new MultiThreadExecutorService(3, 100, policy, new ConsoleRdProUIImpl());
+            final AtomicInteger done = new AtomicInteger();
+            List<Runnable> tasks = new ArrayList<>();
+            for (int i = 0; i < 50; i++) {
+                final long size = (i % 5) * TaskScheduleQueue.SMALL_TASK_SIZE;
+                tasks.add(new SizedTask(size) {
+                    @Override
+                    public void run() {
+                        done.incrementAndGet();
+                    }
+                });
+            }
+            for (Runnable task : tasks)
+                pool.addTask(task);
+            pool.shutDownandWaitForAllThreadsToComplete();
+            assertEquals(policy.name(), 50, done.get());
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package org.mhisoft.fc;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mhisoft.fc.ui.ConsoleRdProUIImpl;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the virtual thread executor and its per device cap.
+ * The cap is tested on platform threads, the virtual ones need Java 21.
+ *
+ * @author Tony Xue
+ * @since Oct, 2026
+ */
+public class VirtualThreadExecutorServiceTest {
+
+    private VirtualThreadExecutorService service;
+
+    @Before
+    public void setUp() throws Exception {
+        DeviceResolver.instance.reset();
+        service = new VirtualThreadExecutorService(2, 100, Executors.newCachedThreadPool(), new ConsoleRdProUIImpl());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        service.shutDown();
+    }
+
+    private Runnable task(final CountDownLatch release, final AtomicInteger running, final AtomicInteger peak
+            , final AtomicInteger done) {
+        return new TaskScheduleQueueTest.SizedTask(1) {
+            @Override
+            public void run() {
+                int n = running.incrementAndGet();
+                peak.accumulateAndGet(n, Math::max);
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                running.decrementAndGet();
+                done.incrementAndGet();
+            }
+        };
+    }
+
+    private static void waitFor(final int expected, final AtomicInteger n) throws InterruptedException {
+        for (int i = 0; i < 100 && n.get() != expected; i++)
+            Thread.sleep(20);
+    }
+
+    @Test
+    public void testPerDeviceCap() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger running = new AtomicInteger(), peak = new AtomicInteger(), done = new AtomicInteger();
+        for (int i = 0; i < 10; i++)
+            service.addTask(task(release, running, peak, done));
+
+        waitFor(2, running);
+        Thread.sleep(100);
+        //every task has its own thread, all but the cap wait for a slot on the device.
+        assertEquals(2, running.get());
+        assertEquals(8, service.getQueueDepth());
+        assertEquals(10, service.getNotCompletedTaskCount());
+
+        release.countDown();
+        service.shutDownandWaitForAllThreadsToComplete();
+        assertEquals(10, done.get());
+        assertEquals(2, peak.get());
+        assertEquals(0, service.getNotCompletedTaskCount());
+    }
+
+    @Test
+    public void testSetCoreThreadSize() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger running = new AtomicInteger(), peak = new AtomicInteger(), done = new AtomicInteger();
+        for (int i = 0; i < 10; i++)
+            service.addTask(task(release, running, peak, done));
+        waitFor(2, running);
+
+        service.setCoreThreadSize(5);
+        assertEquals(5, service.getCorePoolSize());
+        waitFor(5, running);
+        assertEquals(5, running.get());
+
+        //lowered, the running tasks finish and no new ones take their place.
+        service.setCoreThreadSize(1);
+        assertEquals(-4, service.getDeviceSlots(DeviceResolver.instance.getDevicePair(null, null)).availablePermits());
+        release.countDown();
+        service.shutDownandWaitForAllThreadsToComplete();
+        assertEquals(10, done.get());
+        assertEquals(1, service.getDeviceSlots(DeviceResolver.instance.getDevicePair(null, null)).availablePermits());
+    }
+
+    @Test
+    public void testAvailability() throws Exception {
+        String version = System.getProperty("java.specification.version");
+        boolean java21 = !version.startsWith("1.") && Integer.parseInt(version) >= 21;
+        assertEquals(java21, VirtualThreadExecutorService.isAvailable());
+        if (!java21) {
+            try {
+                new VirtualThreadExecutorService(2, 100, "test-", new ConsoleRdProUIImpl());
+                fail("virtual threads before Java 21");
+            } catch (IllegalStateException e) {
+                //expected
+            }
+        }
+    }
+}
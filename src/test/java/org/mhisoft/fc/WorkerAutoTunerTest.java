@@ -0,0 +1,98 @@
+package org.mhisoft.fc;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mhisoft.fc.ui.ConsoleRdProUIImpl;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the hill climbing worker count controller.
+ *
+ * @author Tony Xue
+ * @since Oct, 2026
+ */
+public class WorkerAutoTunerTest {
+
+    private MultiThreadExecutorService pool;
+    private WorkerAutoTuner tuner;
+
+    @Before
+    public void setUp() throws Exception {
+        ConsoleRdProUIImpl ui = new ConsoleRdProUIImpl();
+        pool = new MultiThreadExecutorService(2, ui);
+        tuner = new WorkerAutoTuner(pool, new FileCopyStatistics(), ui, 2, 16, 1000);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        pool.shutDownandWaitForAllThreadsToComplete();
+    }
+
+    /**
+     * files/s of a disk that peaks at the given workers.
+     */
+    private static long smallFilesPerSecond(int workers, int peak) {
+        return 1000 - 60L * Math.abs(workers - peak);
+    }
+
+    @Test
+    public void testClimbsToThePeak() throws Exception {
+        int workers = tuner.getWorkers();
+        for (int i = 0; i < 30; i++)
+            workers = tuner.sample(smallFilesPerSecond(workers, 6), 1000 * 1024, 1000);
+        assertTrue("workers:" + workers, Math.abs(workers - 6) <= 1);
+        assertEquals(workers, pool.getCorePoolSize());
+    }
+
+    @Test
+    public void testPhasesKeepTheirOwnCounts() throws Exception {
+        int workers = tuner.getWorkers();
+        for (int i = 0; i < 30; i++)
+            workers = tuner.sample(smallFilesPerSecond(workers, 8), 1000 * 1024, 1000);
+        int smallWorkers = workers;
+
+        //large files, 100MB each, the bytes/s peaks at 3 workers.
+        for (int i = 0; i < 30; i++) {
+            long files = Math.max(1, 10 - 2 * Math.abs(workers - 3));
+            workers = tuner.sample(files, files * 100d * 1024 * 1024, 1000);
+        }
+        assertTrue("workers:" + workers, Math.abs(workers - 3) <= 1);
+        assertEquals(smallWorkers, tuner.smallFiles.workers);
+
+        //back to the small files, the count of that phase comes back.
+        assertEquals(smallWorkers, tuner.sample(100, 100 * 1024, 1000));
+    }
+
+    @Test
+    public void testBounds() throws Exception {
+        int workers = tuner.getWorkers();
+        for (int i = 0; i < 60; i++)
+            workers = tuner.sample(100L * workers, 100 * 1024, 1000);
+        //at the top it only probes one down now and then.
+        assertTrue("workers:" + workers, workers >= 15 && workers <= 16);
+        //nothing copied, nothing to learn.
+        assertEquals(workers, tuner.sample(0, 0, 1000));
+    }
+
+    @Test
+    public void testMixedKeepsAWorkerForTheLargeFiles() throws Exception {
+        int reserved = RunTimeProperties.instance.getReservedSmallFileWorkers();
+        RunTimeProperties.instance.setReservedSmallFileWorkers(2);
+        ConsoleRdProUIImpl ui = new ConsoleRdProUIImpl();
+        MultiThreadExecutorService mixed = new MultiThreadExecutorService(4, 100, SchedulingPolicy.mixed, ui);
+        try {
+            WorkerAutoTuner mixedTuner = new WorkerAutoTuner(mixed, new FileCopyStatistics(), ui, 4, 16, 1000);
+            int workers = mixedTuner.getWorkers();
+            //fewer workers always better, it goes down to the floor.
+            for (int i = 0; i < 30; i++)
+                workers = mixedTuner.sample(1000 - 100L * workers, 1000 * 1024, 1000);
+            assertEquals(3, workers);
+            assertEquals(3, mixed.getCorePoolSize());
+        } finally {
+            mixed.shutDownandWaitForAllThreadsToComplete();
+            RunTimeProperties.instance.setReservedSmallFileWorkers(reserved);
+        }
+    }
+}